@@ -26,14 +26,19 @@ import com.google.api.client.sample.structuredcontent.model.Link;
 import com.google.api.client.sample.structuredcontent.model.Product;
 import com.google.api.client.sample.structuredcontent.model.ProductFeed;
 import com.google.api.client.sample.structuredcontent.model.ServiceErrors;
+import com.google.api.client.sample.structuredcontent.utils.BatchResultParser;
+import com.google.api.client.sample.structuredcontent.utils.BatchResultParser.BatchResult;
 import com.google.api.client.sample.structuredcontent.utils.BatchUtils;
 import com.google.api.client.sample.structuredcontent.utils.ClientLibraryUtils;
+import com.google.api.client.sample.structuredcontent.utils.RateLimiter;
 import com.google.api.client.sample.structuredcontent.utils.UserInformation;
 import com.google.api.client.xml.XmlNamespaceDictionary;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -68,6 +73,19 @@ public class BatchDeleteSample {
    */
   HttpRequestFactory requestFactory;
 
+  /**
+   * The lock held while a batch request is sent, so that only one is sent at
+   * a time. Unlike the monitor of the request factory, a virtual thread waiting
+   * for it does not pin its carrier thread.
+   */
+  private final ReentrantLock requestLock = new ReentrantLock();
+
+  /**
+   * The limiter of the requests sent for the account, or {@code null} for
+   * sending as fast as possible.
+   */
+  private RateLimiter rateLimiter;
+
   /**
    * The user's account ID.
    */
@@ -77,18 +95,71 @@ public class BatchDeleteSample {
    * Creates an instance of this class and uses it for deleting all products
    * stored for the the user.
    *
-   * @param args (none expected)
+   * @param args Optionally:
+   *   <ul>
+   *     <li>{@code --max-requests-per-second=<rate>}: the maximum number of
+   *         listings and batches sent per second for the account, lowered
+   *         automatically while the server throttles the account; no limit by
+   *         default</li>
+   *     <li>{@code --max-entries-per-second=<rate>}: the maximum number of
+   *         products deleted per second for the account, likewise</li>
+   *   </ul>
    * @throws IOException if input or output errors occurred.
    * @throws ServiceErrors if the server reported errors.
    */
   public static void main(String[] args) throws IOException, ServiceErrors {
+    double maxRequestsPerSecond = 0;
+    double maxEntriesPerSecond = 0;
+    for (String arg : args) {
+      try {
+        if (arg.startsWith("--max-requests-per-second=")) {
+          maxRequestsPerSecond = Double.parseDouble(optionValue(arg));
+          if (!(maxRequestsPerSecond > 0)) {
+            throw new NumberFormatException();
+          }
+        } else if (arg.startsWith("--max-entries-per-second=")) {
+          maxEntriesPerSecond = Double.parseDouble(optionValue(arg));
+          if (!(maxEntriesPerSecond > 0)) {
+            throw new NumberFormatException();
+          }
+        } else {
+          logger.log(Level.SEVERE, "Unknown option: " + arg + ". Expected:"
+              + " [--max-requests-per-second=<rate>] [--max-entries-per-second=<rate>]");
+          System.exit(-1);
+        }
+      } catch (NumberFormatException e) {
+        logger.log(Level.SEVERE, "Option could not be parsed: " + arg);
+        System.exit(-1);
+      }
+    }
+
     UserInformation userInformation = new UserInformation("1234567",
         null,
         "your.username@gmail.com", "yourPassword");
     BatchDeleteSample sample = new BatchDeleteSample(userInformation.getUid(),
         "https://content.googleapis.com/content/v1/",
         createAuthorizedTransport(userInformation));
+    RateLimiter rateLimiter = null;
+    if (maxRequestsPerSecond > 0 || maxEntriesPerSecond > 0) {
+      rateLimiter = RateLimiter.forAccount(userInformation.getUid(), maxRequestsPerSecond,
+          maxEntriesPerSecond);
+      sample.setRateLimiter(rateLimiter);
+    }
     sample.deleteAllProducts();
+    if (rateLimiter != null) {
+      logger.info("Rate limiter: " + rateLimiter.getStatistics());
+    }
+  }
+
+  /**
+   * Returns the value of a command line option of the form
+   * {@code --name=value}.
+   *
+   * @param option The option
+   * @return the part after the first '='
+   */
+  private static String optionValue(String option) {
+    return option.substring(option.indexOf('=') + 1);
   }
 
   /**
@@ -127,6 +198,18 @@ public class BatchDeleteSample {
     namespaceDictionary = ClientLibraryUtils.createBatchingNamespaceDictionary();
   }
 
+  /**
+   * Sets the limiter the listings and batches wait for before they are sent,
+   * see {@link RateLimiter#forAccount}. By default, requests are sent as fast
+   * as possible.
+   *
+   * @param rateLimiter The limiter of the requests sent for the account, or
+   *   {@code null}
+   */
+  public void setRateLimiter(RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
   /**
    * Deletes all products stored by the user specified in {@link UserInformation}.
    * It does this by retrieving the first page of products, sending a batch
@@ -189,22 +272,23 @@ public class BatchDeleteSample {
     // create atom feed content
     AtomContent atomFeedContent = AtomContent.forFeed(namespaceDictionary, batchedProducts);
 
-    synchronized (requestFactory) {
+    requestLock.lock();
+    try {
       // build HTTP request
       HttpRequest request = requestFactory
           .buildPostRequest(new GoogleUrl(rootUrl + userId + "/items/products/schema/batch"),
               atomFeedContent);
 
       // execute the HTTP request
-      HttpResponse response = request.execute();
+      HttpResponse response = execute(request, batchedProducts.getEntries().size());
 
       // Interpret the results. Throw an exception if there is any error,
       // because an error means the product could not be deleted, and if we just
       // try again without fixing the problem, we will just end up in an
       // endless loop. (No pun intended.)
       if (HttpResponse.isSuccessStatusCode(response.getStatusCode())) {
-        ProductFeed processedProducts = response.parseAs(ProductFeed.class);
-        boolean errorsFound = examineReturnedProducts(processedProducts);
+        List<BatchResult> results = BatchResultParser.parse(response);
+        boolean errorsFound = examineReturnedProducts(results);
         if (errorsFound) {
           logger.log(Level.SEVERE, "One or more errors occured during deletion.");
           throw new ServiceErrors();
@@ -213,6 +297,8 @@ public class BatchDeleteSample {
         reportBug(batchedProducts, response);
         throw new ServiceErrors();
       }
+    } finally {
+      requestLock.unlock();
     }
   }
 
@@ -221,21 +307,21 @@ public class BatchDeleteSample {
    * products by the Content API for Shopping Server. This function also checks whether
    * the batch has been interrupted.</p>
    *
-   * @param processedProducts The {@link ProductFeed} returned by the
-   *     Content API for Shopping Server (and parsed by the Google API Client Library).
+   * @param results The results of the products returned by the
+   *     Content API for Shopping Server.
    * @return {@code true} if one or more errors occurred, {@code false} otherwise.
    */
-  private boolean examineReturnedProducts(ProductFeed processedProducts) {
+  private boolean examineReturnedProducts(List<BatchResult> results) {
     boolean errorsFound = false;
-    for (Product p : processedProducts.getEntries()) {
-      if (p.batchInterrupted != null) {
+    for (BatchResult result : results) {
+      if (result.interrupted) {
         errorsFound = true;
         logger.log(Level.SEVERE, "Batch was interrupted.");
       } else {
-        if (!HttpResponse.isSuccessStatusCode(p.batchStatus.code)) {
+        if (!HttpResponse.isSuccessStatusCode(result.code)) {
           logger.log(Level.SEVERE, "Server error during deletion: \n"
-              + "  Product: " + p.batchID + "  \tCode: " + p.batchStatus.code
-              + "  \tReason: " + p.batchStatus.reason);
+              + "  Product: " + result.batchId + "  \tCode: " + result.code
+              + "  \tReason: " + result.reason);
           errorsFound = true;
         }
       }
@@ -293,6 +379,39 @@ public class BatchDeleteSample {
     HttpRequest request = requestFactory.buildGetRequest(new GoogleUrl(url));
 
     // get ProductFeed as response
-    return request.execute().parseAs(ProductFeed.class);
+    return execute(request, 0).parseAs(ProductFeed.class);
+  }
+
+  /**
+   * Executes the given request once the account's rate allows it, and tells
+   * the rate limiter whether the server has throttled it.
+   *
+   * @param request The request
+   * @param entries The number of entries the request carries
+   * @return The response
+   * @throws HttpResponseException if the server answered with an HTTP error code.
+   * @throws IOException if anything went wrong during the request.
+   */
+  private HttpResponse execute(HttpRequest request, int entries) throws IOException {
+    if (rateLimiter == null) {
+      return request.execute();
+    }
+    try {
+      rateLimiter.acquire(entries);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for sending a request");
+    }
+    long startNanos = System.nanoTime();
+    try {
+      HttpResponse response = request.execute();
+      rateLimiter.recordSuccess();
+      return response;
+    } catch (HttpResponseException e) {
+      if (RateLimiter.isThrottling(e.getResponse().getStatusCode())) {
+        rateLimiter.recordThrottled(startNanos);
+      }
+      throw e;
+    }
   }
 }
@@ -0,0 +1,663 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.googleapis.GoogleUrl;
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.sample.structuredcontent.batchinsert.MultiThreadingAndBatchingExample.BatchError;
+import com.google.api.client.sample.structuredcontent.utils.BatchResultParser;
+import com.google.api.client.sample.structuredcontent.utils.BatchResultParser.BatchResult;
+import com.google.api.client.sample.structuredcontent.utils.RateLimiter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>Sends the products of a {@link ColumnarInputAdapter} in batches without
+ * tying a thread to each batch in flight, as an alternative to a number of
+ * {@link WorkerThread}s.
+ *
+ * <p>The submitter thread reads and serializes the batches, and hands them to
+ * an asynchronous {@link HttpClient} as long as fewer than the given window
+ * of batches are in flight. The responses are read and their results
+ * recorded by a few threads shared by all batches, with the same
+ * {@link BatchResultHandler} the worker threads use; the submitter waits only
+ * when the window is full. The number of batches in flight thus depends on
+ * the window, not on the number of threads.
+ *
+ * <p>Otherwise, batches are treated like by the worker threads: the same
+ * products are left out, batches are limited in bytes and split in half if the
+ * server rejects them as too large, bodies are compressed if a
+ * {@link DeflaterPool} is given, serialized entries are kept in the
+ * {@link EntryFragmentCache}, the {@link BatchSizeController} is informed of
+ * each batch, and batches the server processed completely are acknowledged to
+ * the input adapter. Since the asynchronous client needs the body as a whole,
+ * each batch is serialized into memory before it is sent.
+ *
+ * <p>Products the server has not processed, since their batch failed with a
+ * transient HTTP error, could not be sent, timed out, or was interrupted, are queued
+ * again as the {@link RetryPolicy} allows, to be sent once their delay has
+ * passed; meanwhile, other batches are sent. If a {@link RateLimiter} is
+ * given, the submitter waits for it before sending each batch.
+ *
+ * <p>The requests carry the headers, including the authorization, of a
+ * request built by the given request factory. Any other HTTP error stops the
+ * submission; the batches in flight are still completed, and the thread then
+ * terminates with an exception.
+ *
+ * <p>Requires Java 11 for {@link HttpClient}.
+ */
+final class AsyncBatchSubmitter extends Thread {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger
+      = Logger.getLogger(MultiThreadingAndBatchingExample.class.getName());
+
+  /**
+   * The request headers that are not copied from the request factory, since
+   * they are set by the client or describe the body.
+   */
+  private static final List<String> EXCLUDED_HEADERS = Arrays.asList("connection",
+      "content-encoding", "content-length", "content-type", "expect", "host", "upgrade");
+
+  /**
+   * How long to wait for a connection to the server, and for the response to
+   * a batch to start, in milliseconds; the defaults of the client library's
+   * requests, which the worker threads send.
+   */
+  private static final int CONNECT_TIMEOUT = 20 * 1000;
+  private static final int READ_TIMEOUT = 20 * 1000;
+
+  /**
+   * How long the response to a batch may take as a whole, in milliseconds, so
+   * that a response that stalls after it has started does not keep its place
+   * in the window forever.
+   */
+  private static final int RESPONSE_TIMEOUT = 5 * 60 * 1000;
+
+  /**
+   * Some rows of a batch read from the input, to be sent in one request once
+   * it is ready.
+   */
+  private static final class Submission implements Delayed {
+    final InputBatch inputBatch;
+    final int[] rows;
+
+    /**
+     * The number of the attempt to send the rows, starting at 1.
+     */
+    final int attempt;
+
+    /**
+     * When the submission may be sent, from {@link System#nanoTime()}.
+     */
+    final long readyNanos;
+
+    Submission(InputBatch inputBatch, int[] rows) {
+      this(inputBatch, rows, 1, System.nanoTime());
+    }
+
+    Submission(InputBatch inputBatch, int[] rows, int attempt, long readyNanos) {
+      this.inputBatch = inputBatch;
+      this.rows = rows;
+      this.attempt = attempt;
+      this.readyNanos = readyNanos;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(readyNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      long difference = readyNanos - ((Submission) other).readyNanos;
+      return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+    }
+  }
+
+  /**
+   * A batch read from the input, which may be sent in several requests. It is
+   * acknowledged once all of them have been processed.
+   */
+  private static final class InputBatch {
+    final ColumnarProductBatch batch;
+    final Map<String, Long> fingerprints;
+    final AtomicInteger outstandingSubmissions = new AtomicInteger();
+    volatile boolean allProcessed = true;
+
+    InputBatch(ColumnarProductBatch batch, Map<String, Long> fingerprints) {
+      this.batch = batch;
+      this.fingerprints = fingerprints;
+    }
+  }
+
+  private final HttpRequestFactory requestFactory;
+  private final ColumnarInputAdapter inputAdapter;
+  private final int maxProductsInBatch;
+  private final String url;
+  private final long maxBatchBytes;
+  private final ProductFingerprintIndex deltaIndex;
+  private final DeflaterPool deflaterPool;
+  private final EntryFragmentCache fragmentCache;
+  private final BatchSizeController batchSizeController;
+  private final BatchResultHandler resultHandler;
+  private final RetryPolicy retryPolicy;
+  private final RateLimiter rateLimiter;
+
+  /**
+   * The maximum number of batches in flight.
+   */
+  private final int window;
+
+  /**
+   * One permit for each batch that may still be sent before the window is
+   * full.
+   */
+  private final Semaphore permits;
+
+  /**
+   * The threads reading the responses.
+   */
+  private final ExecutorService executor;
+
+  private final HttpClient httpClient;
+
+  /**
+   * The submissions to be sent: the further parts of a batch read from the
+   * input, the halves of batches rejected as too large, and the products to
+   * be sent again, which become ready only after their delay.
+   */
+  private final DelayQueue<Submission> readySubmissions = new DelayQueue<Submission>();
+
+  /**
+   * Guards waiting for the batches in flight; notified whenever one is
+   * completed.
+   */
+  private final Object completionLock = new Object();
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong contentBytes = new AtomicLong();
+  private final AtomicLong wireBytes = new AtomicLong();
+
+  /**
+   * The first exception that stopped the submission, or {@code null}.
+   */
+  private volatile Exception failure;
+
+  /**
+   * Constructor setting up all required (final) parameters.
+   *
+   * @param requestFactory The HTTP request factory whose requests' headers
+   *   are sent with all requests
+   * @param inputAdapter An input adapter that will supply the products to
+   *   be inserted. Must not be {@code null}.
+   * @param maxProductsInBatch The maximum number of products that can be sent
+   *   in one batch
+   * @param serviceErrorList A list where service and batching errors should
+   *   be added to. If it is {@code null}, these errors will not be recorded.
+   * @param userId Account ID of the user who is sending the products
+   * @param rootUrl URL of the Content API for Shopping Server
+   * @param window The maximum number of batches in flight
+   * @param options The maximum size of a batch in bytes and the helpers
+   *   shared with the other senders, see {@link SenderOptions}. Without a
+   *   rate limiter, batches are sent as fast as the window allows.
+   */
+  AsyncBatchSubmitter(HttpRequestFactory requestFactory,
+      ColumnarInputAdapter inputAdapter,
+      int maxProductsInBatch,
+      Collection<BatchError> serviceErrorList,
+      String userId,
+      String rootUrl,
+      int window,
+      SenderOptions options) {
+    super("async-submitter");
+    if (requestFactory == null) {
+      throw new IllegalArgumentException("requestFactory must not be null");
+    }
+    if (inputAdapter == null) {
+      throw new IllegalArgumentException("inputAdapter must not be null");
+    }
+    if (window < 1) {
+      throw new IllegalArgumentException("window must be at least 1");
+    }
+    this.requestFactory = requestFactory;
+    this.inputAdapter = inputAdapter;
+    this.maxProductsInBatch = maxProductsInBatch;
+    this.url = rootUrl + userId + "/items/products/schema/batch";
+    this.window = window;
+    this.maxBatchBytes = options.getMaxBatchBytes();
+    this.deltaIndex = options.getDeltaIndex();
+    this.deflaterPool = options.getDeflaterPool();
+    this.fragmentCache = options.getFragmentCache();
+    this.batchSizeController = options.getBatchSizeController();
+    this.resultHandler = new BatchResultHandler(serviceErrorList, options.getDeltaIndex(),
+        options.getValidator());
+    this.retryPolicy = options.getRetryPolicy();
+    this.rateLimiter = options.getRateLimiter();
+    this.permits = new Semaphore(window);
+
+    final AtomicInteger threadNumber = new AtomicInteger();
+    executor = Executors.newFixedThreadPool(
+        Math.min(window, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "async-responses-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    httpClient = HttpClient.newBuilder()
+        .executor(executor)
+        .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT))
+        .build();
+  }
+
+  /**
+   * Returns the number of bytes of the feeds sent so far, before compression.
+   */
+  public long getContentBytes() {
+    return contentBytes.get();
+  }
+
+  /**
+   * Returns the number of bytes of the request bodies sent so far, after
+   * compression.
+   */
+  public long getWireBytes() {
+    return wireBytes.get();
+  }
+
+  /**
+   * Sends all products of the input adapter, and waits until all batches have
+   * been completed.
+   *
+   * @throws RuntimeException if the submission has been stopped by an
+   *   exception or an unexpected response
+   */
+  @Override
+  public void run() {
+    try {
+      submitAll();
+      // wait until the last batches in flight have been completed
+      permits.acquire(window);
+    } catch (IOException e) {
+      failure = e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure = e;
+    } finally {
+      executor.shutdown();
+    }
+    if (failure != null) {
+      throw new RuntimeException(failure);
+    }
+  }
+
+  /**
+   * Sends batches as long as there are any, waiting whenever the window is
+   * full.
+   */
+  private void submitAll() throws IOException, InterruptedException {
+    boolean inputExhausted = false;
+    while (true) {
+      permits.acquire();
+      if (failure != null) {
+        permits.release();
+        return;
+      }
+      Submission submission = readySubmissions.poll();
+      while (submission == null && !inputExhausted) {
+        ColumnarProductBatch batch = inputAdapter.getNextBatch(getBatchSize());
+        if (batch.size() == 0) {
+          inputExhausted = true; // no more products available
+        } else {
+          prepare(batch);
+          submission = readySubmissions.poll();
+        }
+      }
+      if (submission != null) {
+        submit(submission);
+        continue;
+      }
+      permits.release();
+
+      // the batches in flight may still be split and sent again, and the
+      // products queued for sending again become ready after their delay
+      synchronized (completionLock) {
+        while (failure == null) {
+          Submission next = readySubmissions.peek();
+          if (next == null) {
+            if (inFlight.get() == 0) {
+              break;
+            }
+            completionLock.wait();
+          } else {
+            long delayNanos = next.getDelay(TimeUnit.NANOSECONDS);
+            if (delayNanos <= 0) {
+              break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(completionLock, delayNanos);
+          }
+        }
+        if (inFlight.get() == 0 && readySubmissions.isEmpty()) {
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of products to be read for the next batch.
+   */
+  private int getBatchSize() {
+    return batchSizeController != null ? batchSizeController.getBatchSize() : maxProductsInBatch;
+  }
+
+  /**
+   * Leaves out the products of the batch that need not be sent, and queues
+   * the others in as many submissions as their size requires.
+   */
+  private void prepare(ColumnarProductBatch batch) throws IOException {
+    int[] rows = new int[batch.size()];
+    InputBatch inputBatch = new InputBatch(batch,
+        deltaIndex != null ? new HashMap<String, Long>() : null);
+    int count = resultHandler.selectRows(batch, rows, inputBatch.fingerprints);
+    if (count == 0) {
+      inputAdapter.acknowledge(batch);
+      return;
+    }
+    List<int[]> groups
+        = ColumnarFeedContent.splitRows(batch, rows, count, fragmentCache, maxBatchBytes);
+    inputBatch.outstandingSubmissions.set(groups.size());
+    for (int[] group : groups) {
+      readySubmissions.add(new Submission(inputBatch, group));
+    }
+  }
+
+  /**
+   * Serializes a submission and sends it asynchronously, once the account's
+   * rate allows it. Its permit is released once it has been completed.
+   */
+  private void submit(final Submission submission) throws IOException, InterruptedException {
+    ColumnarFeedContent content = new ColumnarFeedContent(submission.inputBatch.batch,
+        submission.rows, submission.rows.length, fragmentCache);
+    ChunkedContent sentContent = new ChunkedContent(content, deflaterPool);
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    sentContent.writeTo(body);
+    contentBytes.addAndGet(sentContent.getContentBytes());
+    wireBytes.addAndGet(sentContent.getWireBytes());
+
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+        .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+        .timeout(Duration.ofMillis(READ_TIMEOUT))
+        .header("Content-Type", content.getType());
+    copyHeaders(request, sentContent);
+    if (sentContent.getEncoding() != null) {
+      request.header("Content-Encoding", sentContent.getEncoding());
+    }
+    if (deflaterPool != null) {
+      // the response is decompressed while it is parsed
+      request.header("Accept-Encoding", "gzip");
+    }
+
+    if (rateLimiter != null) {
+      rateLimiter.acquire(submission.rows.length);
+    }
+    final long startNanos = System.nanoTime();
+    inFlight.incrementAndGet();
+    httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+        .orTimeout(RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS)
+        .whenComplete(new BiConsumer<HttpResponse<byte[]>, Throwable>() {
+          @Override
+          public void accept(HttpResponse<byte[]> response, Throwable exception) {
+            try {
+              if (exception != null) {
+                // the connection failed or timed out (HttpTimeoutException or
+                // TimeoutException), which may not happen again
+                Throwable cause = exception instanceof CompletionException
+                    && exception.getCause() != null ? exception.getCause() : exception;
+                retry(submission, allPositions(submission.rows.length), 500,
+                    "the batch could not be sent (" + cause + ")");
+              } else {
+                complete(submission, response, startNanos);
+              }
+            } catch (Exception e) {
+              fail(e);
+            } finally {
+              synchronized (completionLock) {
+                inFlight.decrementAndGet();
+                completionLock.notifyAll();
+              }
+              permits.release();
+            }
+          }
+        });
+  }
+
+  /**
+   * Adds the headers of a request built by the request factory, among them
+   * the authorization, to the given request.
+   */
+  private void copyHeaders(HttpRequest.Builder request, ChunkedContent content)
+      throws IOException {
+    com.google.api.client.http.HttpRequest template
+        = requestFactory.buildPostRequest(new GoogleUrl(url), content);
+    HttpExecuteInterceptor interceptor = template.getInterceptor();
+    if (interceptor != null) {
+      interceptor.intercept(template);
+    }
+    for (Map.Entry<String, Object> header : template.getHeaders().entrySet()) {
+      if (header.getValue() == null
+          || EXCLUDED_HEADERS.contains(header.getKey().toLowerCase(Locale.US))) {
+        continue;
+      }
+      if (header.getValue() instanceof Iterable) {
+        for (Object value : (Iterable<?>) header.getValue()) {
+          request.header(header.getKey(), String.valueOf(value));
+        }
+      } else {
+        request.header(header.getKey(), String.valueOf(header.getValue()));
+      }
+    }
+  }
+
+  /**
+   * Records the results of a submission the server has answered, or queues
+   * its halves if it was too large, or the products not processed for
+   * sending them again.
+   */
+  private void complete(Submission submission, HttpResponse<byte[]> response, long startNanos)
+      throws IOException {
+    InputBatch inputBatch = submission.inputBatch;
+    List<String> batchIds = inputBatch.batch.getIds(submission.rows, submission.rows.length);
+    if (logger.isLoggable(Level.FINE)) {
+      logger.log(Level.FINE, "Batch of " + batchIds.size() + " product(s) answered with HTTP "
+          + response.statusCode() + ".");
+    }
+    if (rateLimiter != null) {
+      if (RateLimiter.isThrottling(response.statusCode())) {
+        rateLimiter.recordThrottled(startNanos);
+      } else if (response.statusCode() / 100 == 2) {
+        rateLimiter.recordSuccess();
+      }
+    }
+
+    if (response.statusCode() == WorkerThread.REQUEST_TOO_LARGE) {
+      if (batchSizeController != null) {
+        batchSizeController.recordTooLarge(startNanos);
+      }
+      if (submission.rows.length == 1) {
+        resultHandler.reportTooLarge(batchIds);
+        finish(inputBatch, true);
+        return;
+      }
+      logger.log(Level.INFO, "A batch of " + batchIds.size() + " product(s) was too large;"
+          + " splitting it.");
+      // the halves keep the attempt, so that splitting does not give the
+      // products more attempts
+      int half = submission.rows.length / 2;
+      long now = System.nanoTime();
+      inputBatch.outstandingSubmissions.incrementAndGet();
+      readySubmissions.add(new Submission(inputBatch,
+          Arrays.copyOfRange(submission.rows, 0, half), submission.attempt, now));
+      readySubmissions.add(new Submission(inputBatch,
+          Arrays.copyOfRange(submission.rows, half, submission.rows.length),
+          submission.attempt, now));
+    } else if (response.statusCode() / 100 == 2) {
+      List<BatchResult> results = BatchResultParser.parse(openBody(response));
+      boolean batchWasInterrupted
+          = resultHandler.processReturnedProducts(results, inputBatch.fingerprints);
+      if (batchSizeController != null) {
+        batchSizeController.recordProcessed(batchIds.size(), startNanos, batchWasInterrupted);
+      }
+      if (batchWasInterrupted) {
+        retry(submission, resultHandler.getUnprocessed(batchIds, results), 500,
+            "batch was interrupted");
+      } else {
+        finish(inputBatch, true);
+      }
+    } else if (RetryPolicy.isTransient(response.statusCode())) {
+      retry(submission, allPositions(submission.rows.length), response.statusCode(),
+          "the server answered with HTTP " + response.statusCode());
+    } else {
+      logger.log(Level.SEVERE, "Content API for Shopping unexpectedly returned "
+          + "an HTTP error code (" + response.statusCode() + ") for a batch "
+          + "request:\n" + new String(response.body(), StandardCharsets.UTF_8));
+      throw new IOException("Unexpected HTTP error code " + response.statusCode());
+    }
+  }
+
+  /**
+   * Queues the given products of a submission for sending them again after
+   * a delay, or reports them as errors if they have used up their attempts.
+   *
+   * @param submission The submission the server has not processed completely
+   * @param unprocessed The positions in the submission's rows of the products
+   *   not processed
+   * @param statusCode The HTTP status code to report if the products are
+   *   given up
+   * @param reason Why the products were not processed
+   */
+  private void retry(Submission submission, int[] unprocessed, int statusCode, String reason) {
+    InputBatch inputBatch = submission.inputBatch;
+    if (retryPolicy == null || !retryPolicy.canRetry(submission.attempt)) {
+      if (retryPolicy != null) {
+        retryPolicy.recordExhausted(unprocessed.length);
+      }
+      resultHandler.reportUnprocessedProducts(
+          inputBatch.batch.getIds(submission.rows, submission.rows.length), unprocessed,
+          statusCode, "Not processed because " + reason + " (" + submission.attempt
+          + " attempt(s))");
+      finish(inputBatch, false);
+      return;
+    }
+    long delayMillis = retryPolicy.recordRetry(submission.attempt, unprocessed.length);
+    logger.log(Level.INFO, unprocessed.length + " product(s) not processed because " + reason
+        + "; sending them again in " + delayMillis + " ms.");
+    int[] rows = new int[unprocessed.length];
+    for (int i = 0; i < unprocessed.length; i++) {
+      rows[i] = submission.rows[unprocessed[i]];
+    }
+    readySubmissions.add(new Submission(inputBatch, rows, submission.attempt + 1,
+        System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis)));
+  }
+
+  /**
+   * Returns the positions of all rows of a submission.
+   */
+  private static int[] allPositions(int size) {
+    int[] positions = new int[size];
+    for (int i = 0; i < size; i++) {
+      positions[i] = i;
+    }
+    return positions;
+  }
+
+  /**
+   * Returns the body of the response, decompressed if necessary.
+   */
+  private static InputStream openBody(HttpResponse<byte[]> response) throws IOException {
+    InputStream body = new ByteArrayInputStream(response.body());
+    if ("gzip".equalsIgnoreCase(
+        response.headers().firstValue("Content-Encoding").orElse(null))) {
+      return new GZIPInputStream(body);
+    }
+    return body;
+  }
+
+  /**
+   * Records that one submission of the batch has been completed, and
+   * acknowledges the batch once all have been processed.
+   */
+  private void finish(InputBatch inputBatch, boolean processed) {
+    if (!processed) {
+      inputBatch.allProcessed = false;
+    }
+    if (inputBatch.outstandingSubmissions.decrementAndGet() == 0) {
+      if (inputBatch.allProcessed) {
+        inputAdapter.acknowledge(inputBatch.batch);
+      }
+      if (fragmentCache != null) {
+        fragmentCache.removeBatch(inputBatch.batch);
+      }
+    }
+  }
+
+  /**
+   * Stops the submission because of the given exception, unless it has been
+   * stopped already.
+   */
+  private void fail(Exception e) {
+    logger.log(Level.SEVERE, "Stopping the submission of batches.", e);
+    synchronized (completionLock) {
+      if (failure == null) {
+        failure = e;
+      }
+    }
+  }
+}
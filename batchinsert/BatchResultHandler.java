@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvColumnPlan.Column;
+import com.google.api.client.sample.structuredcontent.batchinsert.MultiThreadingAndBatchingExample.BatchError;
+import com.google.api.client.sample.structuredcontent.model.Product;
+import com.google.api.client.sample.structuredcontent.utils.BatchResultParser.BatchResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Records the results of the products of a batch: the results the server
+ * returned for them, and the results known without sending them, namely the
+ * errors found by the {@link ProductValidator} and, in delta mode, that a
+ * product has not changed since it was last sent.
+ *
+ * <p>Errors are added to the given error list, and the fingerprints of the
+ * products inserted successfully to the given {@link ProductFingerprintIndex}.
+ * Both the {@link WorkerThread}s and the {@link AsyncBatchSubmitter} use it,
+ * and it may be shared between threads.
+ */
+final class BatchResultHandler {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger
+      = Logger.getLogger(MultiThreadingAndBatchingExample.class.getName());
+
+  /**
+   * A list where service and batching errors should be added to. If it is
+   * {@code null}, these errors will not be recorded.
+   */
+  private final Collection<BatchError> serviceErrorList;
+
+  /**
+   * The fingerprints of the products sent before, or {@code null} for sending
+   * all products.
+   */
+  private final ProductFingerprintIndex deltaIndex;
+
+  /**
+   * The validator products are checked with before they are sent, or
+   * {@code null} for sending all products.
+   */
+  private final ProductValidator validator;
+
+  /**
+   * Creates a handler.
+   *
+   * @param serviceErrorList A list where service and batching errors should
+   *   be added to. If it is {@code null}, these errors will not be recorded.
+   * @param deltaIndex The fingerprints of the products sent before, or
+   *   {@code null} for sending all products
+   * @param validator The validator products are checked with before they are
+   *   sent, or {@code null} for sending all products
+   */
+  BatchResultHandler(Collection<BatchError> serviceErrorList,
+      ProductFingerprintIndex deltaIndex, ProductValidator validator) {
+    this.serviceErrorList = serviceErrorList;
+    this.deltaIndex = deltaIndex;
+    this.validator = validator;
+  }
+
+  /**
+   * Returns the products that have to be sent: leaves out the products that
+   * the server would reject anyway, recording their errors, and the products
+   * that have not changed since they were last sent.
+   *
+   * @param products The products
+   * @param fingerprints The map the fingerprints of the products to be sent
+   *   are put into, by product ID, or {@code null} if not in delta mode
+   * @return the products to be sent, possibly {@code products} itself
+   */
+  List<Product> selectProducts(List<Product> products, Map<String, Long> fingerprints) {
+    if (validator == null && deltaIndex == null) {
+      return products;
+    }
+    List<Product> selectedProducts = new ArrayList<Product>(products.size());
+    for (Product p : products) {
+      if (isSelected(p, fingerprints)) {
+        selectedProducts.add(p);
+      }
+    }
+    return selectedProducts;
+  }
+
+  /**
+   * Does the same as {@link #selectProducts} for the products of a columnar
+   * batch. The products are validated and fingerprinted on the columns of the
+   * batch, without creating {@link Product}s.
+   *
+   * @param batch The batch
+   * @param rows The array the rows of the products to be sent are written to,
+   *   with at least as many elements as the batch has products
+   * @param fingerprints The map the fingerprints of the products to be sent
+   *   are put into, by product ID, or {@code null} if not in delta mode
+   * @return the number of products to be sent
+   */
+  int selectRows(ColumnarProductBatch batch, int[] rows, Map<String, Long> fingerprints) {
+    int count = 0;
+    for (int row = 0; row < batch.size(); row++) {
+      if (validator == null && deltaIndex == null
+          || isSelected(batch, row, fingerprints)) {
+        rows[count++] = row;
+      }
+    }
+    return count;
+  }
+
+  private boolean isSelected(Product p, Map<String, Long> fingerprints) {
+    // leave out the products that the server would reject anyway
+    if (validator != null && isRejected(validator.check(p))) {
+      return false;
+    }
+    // leave out the products that have not changed since they were last sent
+    return deltaIndex == null || isChanged(p.externalId, ProductFingerprint.of(p), fingerprints);
+  }
+
+  private boolean isSelected(ColumnarProductBatch batch, int row,
+      Map<String, Long> fingerprints) {
+    if (validator != null && isRejected(validator.check(batch, row))) {
+      return false;
+    }
+    return deltaIndex == null || isChanged(batch.getString(Column.ID, row),
+        ProductFingerprint.of(batch, row), fingerprints);
+  }
+
+  /**
+   * Records the error of a product that has been rejected by the validator.
+   *
+   * @param error The error, or {@code null} if the product is valid
+   * @return whether the product has been rejected
+   */
+  private boolean isRejected(BatchError error) {
+    if (error != null && serviceErrorList != null) {
+      serviceErrorList.add(error);
+    }
+    return error != null;
+  }
+
+  /**
+   * Returns whether a product has changed since it was last sent, and if so,
+   * puts its fingerprint into the given map.
+   */
+  private boolean isChanged(String externalId, long fingerprint,
+      Map<String, Long> fingerprints) {
+    if (deltaIndex.contains(externalId, fingerprint)) {
+      return false;
+    }
+    fingerprints.put(externalId, fingerprint);
+    return true;
+  }
+
+  /**
+   * <p>Helper function for examining the status codes returned for the individual
+   * products by the Content API for Shopping Server. Products with an error status
+   * code will be reported in the list for service errors.
+   *
+   * @param results The results of the products returned by the Content API for
+   *   Shopping Server
+   * @param fingerprints The fingerprints of the products by product ID, to be
+   *   recorded in the delta index for the products inserted successfully, or
+   *   {@code null}
+   * @return {@code true} if the batch aborted with a {@code batch:interrupted}
+   *   error code, {@code false} otherwise
+   * @throws IOException if the delta index could not be updated
+   */
+  boolean processReturnedProducts(List<BatchResult> results,
+      Map<String, Long> fingerprints) throws IOException {
+    boolean batchWasInterrupted = false;
+    for (BatchResult result : results) {
+      if (result.interrupted) {
+        batchWasInterrupted = true;
+      } else {
+        if (!HttpResponse.isSuccessStatusCode(result.code)) {
+          if (serviceErrorList != null) {
+            serviceErrorList.add(new BatchError(result.batchId, result.code,
+                result.reason, result.errors));
+          }
+        } else if (fingerprints != null && fingerprints.containsKey(result.batchId)) {
+          deltaIndex.put(result.batchId, fingerprints.get(result.batchId));
+        }
+      }
+    }
+    return batchWasInterrupted;
+  }
+
+  /**
+   * Returns the positions of the products that the server has not processed
+   * because the batch was interrupted. The results are correlated with the
+   * batch IDs through a table counting the processed results per batch ID,
+   * so that products appearing more than once are matched once per result.
+   *
+   * @param batchIds The batch IDs of the products that were sent to the server
+   * @param results The results of the products returned by the server
+   * @return the positions in {@code batchIds} of the products not processed,
+   *   in ascending order
+   */
+  int[] getUnprocessed(List<String> batchIds, List<BatchResult> results) {
+    Map<String, Integer> processed = new HashMap<String, Integer>(results.size() * 2);
+    for (BatchResult result : results) {
+      if (!result.interrupted) {
+        Integer count = processed.get(result.batchId);
+        processed.put(result.batchId, count == null ? 1 : count + 1);
+      }
+    }
+
+    int[] positions = new int[batchIds.size()];
+    int count = 0;
+    for (int i = 0; i < batchIds.size(); i++) {
+      Integer remaining = processed.get(batchIds.get(i));
+      if (remaining == null) {
+        positions[count++] = i;
+      } else if (remaining == 1) {
+        processed.remove(batchIds.get(i));
+      } else {
+        processed.put(batchIds.get(i), remaining - 1);
+      }
+    }
+    return Arrays.copyOf(positions, count);
+  }
+
+  /**
+   * Helper function for reporting products that were not processed, because
+   * the batch was interrupted or failed, and will not be sent again.
+   *
+   * @param batchIds The batch IDs of the products that were sent to the server
+   * @param positions The positions in {@code batchIds} of the products not
+   *   processed
+   * @param code The HTTP status code to report
+   * @param reason Why the products were not processed
+   */
+  void reportUnprocessedProducts(List<String> batchIds, int[] positions, int code,
+      String reason) {
+    if (serviceErrorList == null) {
+      return;
+    }
+    for (int position : positions) {
+      serviceErrorList.add(new BatchError(batchIds.get(position), code, reason, null));
+    }
+  }
+
+  /**
+   * Reports a product that cannot be sent, since even a batch of it alone is
+   * too large for the server.
+   *
+   * @param batchIds The batch ID of the product
+   */
+  void reportTooLarge(List<String> batchIds) {
+    logger.log(Level.WARNING, "Product " + batchIds.get(0) + " is too large to be sent.");
+    if (serviceErrorList != null) {
+      serviceErrorList.add(new BatchError(batchIds.get(0), WorkerThread.REQUEST_TOO_LARGE,
+          "Too large to be sent, even alone in a batch", null));
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Chooses the number of products per batch for all worker threads, from
+ * how the server handles the batches sent: additive increase, multiplicative
+ * decrease (AIMD), as in TCP congestion control.
+ *
+ * <p>Each batch that the server processed completely within the target
+ * latency increases the batch size by a fixed step. A batch that took longer,
+ * was interrupted ({@code batch:interrupted}) or was rejected as too large
+ * halves it. The batch size always stays between the given minimum and
+ * maximum. Since several batches are in flight at the same time, only batches
+ * started after the last decrease can cause another one; the batches sent
+ * with the old size would otherwise halve it again and again.
+ *
+ * <p>The current batch size and the decisions taken are exposed through
+ * getters and {@link #getStatistics()}. Controllers are thread-safe.
+ */
+final class BatchSizeController {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger
+      = Logger.getLogger(MultiThreadingAndBatchingExample.class.getName());
+
+  /**
+   * The weight of the latest latency in the average latency.
+   */
+  private static final double LATENCY_WEIGHT = 0.2;
+
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final int increment;
+  private final long targetLatencyNanos;
+
+  private int batchSize;
+  private boolean decreased = false;
+  private long lastDecreaseNanos;
+  private double averageLatencyNanos = -1;
+
+  private long increases = 0;
+  private long decreasesForLatency = 0;
+  private long decreasesForInterruptions = 0;
+  private long decreasesForSize = 0;
+
+  /**
+   * Creates a controller.
+   *
+   * @param minBatchSize The minimum number of products per batch, at least 1
+   * @param maxBatchSize The maximum number of products per batch
+   * @param initialBatchSize The number of products per batch to start with
+   * @param targetLatencyMillis The longest time a batch may take to be
+   *   processed without being considered too slow, in milliseconds
+   */
+  BatchSizeController(int minBatchSize, int maxBatchSize, int initialBatchSize,
+      long targetLatencyMillis) {
+    if (minBatchSize < 1 || maxBatchSize < minBatchSize) {
+      throw new IllegalArgumentException("Invalid batch size range: " + minBatchSize + " to "
+          + maxBatchSize);
+    }
+    this.minBatchSize = minBatchSize;
+    this.maxBatchSize = maxBatchSize;
+    this.increment = Math.max(1, (maxBatchSize - minBatchSize) / 50);
+    this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+    this.batchSize = Math.max(minBatchSize, Math.min(maxBatchSize, initialBatchSize));
+  }
+
+  /**
+   * Returns the number of products the next batch should have.
+   */
+  synchronized int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Records the outcome of a batch the server has answered.
+   *
+   * @param products The number of products sent in the batch
+   * @param startNanos When sending the batch started, from
+   *   {@link System#nanoTime()}
+   * @param interrupted Whether the server has interrupted the batch
+   */
+  synchronized void recordProcessed(int products, long startNanos, boolean interrupted) {
+    long latencyNanos = System.nanoTime() - startNanos;
+    averageLatencyNanos = averageLatencyNanos < 0 ? latencyNanos
+        : LATENCY_WEIGHT * latencyNanos + (1 - LATENCY_WEIGHT) * averageLatencyNanos;
+    if (interrupted) {
+      if (decrease(startNanos, "the batch was interrupted")) {
+        decreasesForInterruptions++;
+      }
+    } else if (latencyNanos > targetLatencyNanos) {
+      if (decrease(startNanos, "the batch took "
+          + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + " ms")) {
+        decreasesForLatency++;
+      }
+    } else if (products * 2 >= batchSize && batchSize < maxBatchSize) {
+      // only batches of about the current size tell whether it can grow
+      batchSize = Math.min(maxBatchSize, batchSize + increment);
+      increases++;
+      if (logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE, "Increased the batch size to " + batchSize + ".");
+      }
+    }
+  }
+
+  /**
+   * Records that the server has rejected a batch as too large.
+   *
+   * @param startNanos When sending the batch started, from
+   *   {@link System#nanoTime()}
+   */
+  synchronized void recordTooLarge(long startNanos) {
+    if (decrease(startNanos, "a batch was too large")) {
+      decreasesForSize++;
+    }
+  }
+
+  /**
+   * Halves the batch size, unless the batch was started before the last
+   * decrease.
+   *
+   * @return whether the batch size has been decreased
+   */
+  private boolean decrease(long startNanos, String reason) {
+    if ((decreased && startNanos - lastDecreaseNanos < 0) || batchSize == minBatchSize) {
+      return false;
+    }
+    batchSize = Math.max(minBatchSize, batchSize / 2);
+    decreased = true;
+    lastDecreaseNanos = System.nanoTime();
+    logger.info("Decreased the batch size to " + batchSize + ", since " + reason + ".");
+    return true;
+  }
+
+  /**
+   * Returns how often the batch size has been increased.
+   */
+  synchronized long getIncreases() {
+    return increases;
+  }
+
+  /**
+   * Returns how often the batch size has been decreased.
+   */
+  synchronized long getDecreases() {
+    return decreasesForLatency + decreasesForInterruptions + decreasesForSize;
+  }
+
+  /**
+   * Returns the average time the server has taken to process a batch, in
+   * milliseconds, weighting recent batches most, or -1 if no batch has been
+   * processed yet.
+   */
+  synchronized long getAverageLatencyMillis() {
+    return averageLatencyNanos < 0 ? -1
+        : TimeUnit.NANOSECONDS.toMillis((long) averageLatencyNanos);
+  }
+
+  /**
+   * Returns a description of the current batch size and the decisions taken.
+   */
+  synchronized String getStatistics() {
+    return "batch size " + batchSize + " (" + minBatchSize + " to " + maxBatchSize + "), "
+        + increases + " increase(s), " + decreasesForLatency + " decrease(s) for latency, "
+        + decreasesForInterruptions + " for interruptions, " + decreasesForSize
+        + " for size, average latency " + getAverageLatencyMillis() + " ms";
+  }
+}
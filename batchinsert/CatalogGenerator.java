@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Writes a catalog of generated products as CSV in the format of
+ * {@code items.csv}, for measuring how the batch insert example behaves on
+ * large inputs, e.g. with {@link StringPoolBenchmark}.
+ *
+ * <p>The products look like those of a real catalog: IDs, titles,
+ * descriptions, GTINs and links are unique, while the content language,
+ * target country, condition, currency, weight unit, product type, brand and
+ * expiration date are drawn from small sets of values. The same seed always
+ * gives the same catalog.
+ *
+ * <p>Usage: {@code CatalogGenerator <file.csv> <number_of_products> [seed]}
+ */
+public final class CatalogGenerator {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger = Logger.getLogger(CatalogGenerator.class.getName());
+
+  private static final String SEPARATOR = ";";
+
+  private static final String HEADER = "[ID];[content language];[target country];[title];"
+      + "[description];[condition];[price];[currency];[weight];[unit];[quantity];"
+      + "[expiration date];[product type];[brand];[GTIN];[MPN];"
+      + "[product information homepage];[product image URL]";
+
+  /** The content language, target country and currency of each market. */
+  private static final String[][] MARKETS = {{"en", "US", "usd"}, {"en", "GB", "gbp"},
+      {"de", "DE", "eur"}, {"fr", "FR", "eur"}, {"it", "IT", "eur"}, {"es", "ES", "eur"}};
+
+  private static final String[] CONDITIONS = {"new", "new", "new", "used", "refurbished"};
+  private static final String[] UNITS = {"kg", "lb", "g", "oz"};
+  private static final String[] CATEGORIES = {"Clothing & Accessories", "Electronics",
+      "Home & Garden", "Toys & Games", "Sporting Goods", "Media", "Health & Beauty",
+      "Furniture"};
+  private static final String[] WORDS = {"soft", "durable", "lightweight", "classic",
+      "compact", "wireless", "organic", "stainless", "premium", "portable", "waterproof",
+      "ergonomic", "vintage", "modern", "handmade", "adjustable", "quiet", "fast", "warm",
+      "bright"};
+  private static final String[] NOUNS = {"sweater", "monitor", "laptop", "kettle", "chair",
+      "lamp", "backpack", "headphones", "blender", "jacket", "tent", "camera", "desk",
+      "novel", "puzzle", "watch"};
+
+  /** The number of distinct product types, brands and expiration dates. */
+  private static final int PRODUCT_TYPES = 200;
+  private static final int BRANDS = 1000;
+  private static final int EXPIRATION_DATES = 60;
+
+  private final Random random;
+
+  private CatalogGenerator(long seed) {
+    this.random = new Random(seed);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      logger.log(Level.SEVERE, "Wrong number of arguments."
+          + " Expected: <file.csv> <number_of_products> [seed]");
+      System.exit(-1);
+    }
+    File file = new File(args[0]);
+    long numberOfProducts = 0;
+    long seed = 1;
+    try {
+      numberOfProducts = Long.parseLong(args[1]);
+      if (args.length > 2) {
+        seed = Long.parseLong(args[2]);
+      }
+    } catch (NumberFormatException e) {
+      logger.log(Level.SEVERE, "Number of products or seed could not be parsed.");
+      System.exit(-1);
+    }
+
+    Writer output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),
+        StandardCharsets.UTF_8), 1 << 16);
+    try {
+      new CatalogGenerator(seed).write(output, numberOfProducts);
+    } finally {
+      output.close();
+    }
+    logger.info("Wrote " + numberOfProducts + " products to " + file + ".");
+  }
+
+  /**
+   * Writes the header and the given number of products.
+   */
+  private void write(Writer output, long numberOfProducts) throws IOException {
+    output.write(HEADER);
+    output.write('\n');
+    StringBuilder line = new StringBuilder(512);
+    for (long i = 1; i <= numberOfProducts; i++) {
+      line.setLength(0);
+      appendProduct(line, i);
+      line.append('\n');
+      output.append(line);
+    }
+  }
+
+  private void appendProduct(StringBuilder line, long id) {
+    String[] market = MARKETS[random.nextInt(MARKETS.length)];
+    String noun = NOUNS[random.nextInt(NOUNS.length)];
+    int brand = skewed(BRANDS);
+    int productType = skewed(PRODUCT_TYPES);
+
+    line.append(id).append(SEPARATOR);
+    line.append(market[0]).append(SEPARATOR).append(market[1]).append(SEPARATOR);
+    line.append("Brand").append(brand).append(' ').append(word()).append(' ').append(noun)
+        .append(' ').append(id).append(SEPARATOR);
+    int words = 15 + random.nextInt(30);
+    for (int i = 0; i < words; i++) {
+      line.append(i == 0 ? "A " : " ").append(word());
+    }
+    line.append(' ').append(noun).append(" (item ").append(id).append(").").append(SEPARATOR);
+    line.append(CONDITIONS[random.nextInt(CONDITIONS.length)]).append(SEPARATOR);
+    line.append(1 + random.nextInt(2000)).append('.').append(String.format(Locale.US, "%02d",
+        random.nextInt(100))).append(SEPARATOR);
+    line.append(market[2]).append(SEPARATOR);
+    if (random.nextInt(4) > 0) {
+      line.append(1 + random.nextInt(50)).append('.').append(random.nextInt(10))
+          .append(SEPARATOR).append(UNITS[random.nextInt(UNITS.length)]).append(SEPARATOR);
+    } else {
+      line.append(SEPARATOR).append(SEPARATOR);
+    }
+    line.append(random.nextInt(500)).append(SEPARATOR);
+    int date = random.nextInt(EXPIRATION_DATES);
+    line.append(String.format(Locale.US, "2027-%02d-%02d 23:59", 1 + date / 5,
+        1 + date % 5 * 6)).append(SEPARATOR);
+    line.append(CATEGORIES[productType % CATEGORIES.length]).append(" > Type ")
+        .append(productType).append(SEPARATOR);
+    line.append("Brand").append(brand).append(SEPARATOR);
+    line.append(String.format(Locale.US, "%013d", 4000000000000L + id)).append(SEPARATOR);
+    line.append("MPN-").append(Long.toString(id, 36).toUpperCase(Locale.US)).append(SEPARATOR);
+    line.append("item").append(id).append(".html").append(SEPARATOR);
+    line.append("http://my.supercool.com/homepage/images/item").append(id).append(".jpg");
+  }
+
+  private String word() {
+    return WORDS[random.nextInt(WORDS.length)];
+  }
+
+  /**
+   * Returns a number below the given one, small numbers being more likely,
+   * like the brands and product types of a real catalog.
+   */
+  private int skewed(int bound) {
+    double r = random.nextDouble();
+    return (int) (bound * r * r);
+  }
+}
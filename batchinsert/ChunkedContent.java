@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.http.HttpContent;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * <p>Wraps an {@link HttpContent} so that its length is reported as unknown,
+ * optionally compressing it with gzip.
+ *
+ * <p>{@code AtomContent} determines its length by serializing the whole feed
+ * once before it is sent, and the transport then sends it with a fixed length.
+ * With an unknown length, the transport sends the request with chunked
+ * transfer encoding instead, and the feed is serialized only once, straight
+ * to the connection.
+ *
+ * <p>If a {@link DeflaterPool} is given, the content is compressed while it is
+ * written, by the thread sending the request, and its encoding is reported as
+ * {@code gzip}. The number of bytes of the content and of the body actually
+ * sent are counted, see {@link #getContentBytes()} and {@link #getWireBytes()}.
+ */
+final class ChunkedContent implements HttpContent {
+  /** The size of the buffer of compressed data. */
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * The header of a gzip member: magic number, deflate, no flags, no
+   * modification time, no extra flags, unknown operating system.
+   */
+  private static final byte[] GZIP_HEADER = {
+      (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+  /**
+   * An output stream counting the bytes written through it.
+   */
+  private static final class ByteCountingOutputStream extends FilterOutputStream {
+    long count;
+
+    ByteCountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+
+  private final HttpContent content;
+  private final DeflaterPool deflaterPool;
+  private long contentBytes;
+  private long wireBytes;
+
+  /**
+   * Creates a wrapper for the given content, sending it uncompressed.
+   *
+   * @param content The content to be sent
+   */
+  ChunkedContent(HttpContent content) {
+    this(content, null);
+  }
+
+  /**
+   * Creates a wrapper for the given content.
+   *
+   * @param content The content to be sent
+   * @param deflaterPool The pool of deflaters to compress the content with,
+   *   or {@code null} for sending it uncompressed
+   */
+  ChunkedContent(HttpContent content, DeflaterPool deflaterPool) {
+    this.content = content;
+    this.deflaterPool = deflaterPool;
+  }
+
+  @Override
+  public long getLength() {
+    return -1;
+  }
+
+  @Override
+  public String getEncoding() {
+    return deflaterPool != null ? "gzip" : content.getEncoding();
+  }
+
+  @Override
+  public String getType() {
+    return content.getType();
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    ByteCountingOutputStream wire = new ByteCountingOutputStream(out);
+    if (deflaterPool == null) {
+      content.writeTo(wire);
+      contentBytes = wire.count;
+    } else {
+      Deflater deflater = deflaterPool.acquire();
+      try {
+        wire.write(GZIP_HEADER);
+        DeflaterOutputStream deflating = new DeflaterOutputStream(wire, deflater, BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        ByteCountingOutputStream uncompressed
+            = new ByteCountingOutputStream(new CheckedOutputStream(deflating, crc));
+        content.writeTo(uncompressed);
+        // finishing, not closing: the stream belongs to the caller
+        uncompressed.flush();
+        deflating.finish();
+        writeIntLittleEndian(wire, (int) crc.getValue());
+        writeIntLittleEndian(wire, (int) uncompressed.count);
+        contentBytes = uncompressed.count;
+      } finally {
+        deflaterPool.release(deflater);
+      }
+    }
+    wireBytes = wire.count;
+  }
+
+  @Override
+  public boolean retrySupported() {
+    return content.retrySupported();
+  }
+
+  /**
+   * Returns the number of bytes of the content, before compression, the last
+   * time it was written.
+   */
+  long getContentBytes() {
+    return contentBytes;
+  }
+
+  /**
+   * Returns the number of bytes of the request body, after compression, the
+   * last time it was written. Chunk headers are not included.
+   */
+  long getWireBytes() {
+    return wireBytes;
+  }
+
+  /**
+   * Returns the number of bytes the given content writes, uncompressed.
+   *
+   * @param content The content
+   * @return the number of bytes
+   * @throws IOException if writing the content failed
+   */
+  static long measure(HttpContent content) throws IOException {
+    ByteCountingOutputStream counter = new ByteCountingOutputStream(new OutputStream() {
+      @Override
+      public void write(int b) {
+        // discard
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        // discard
+      }
+    });
+    content.writeTo(counter);
+    return counter.count;
+  }
+
+  private static void writeIntLittleEndian(OutputStream out, int value) throws IOException {
+    out.write(value & 0xff);
+    out.write((value >>> 8) & 0xff);
+    out.write((value >>> 16) & 0xff);
+    out.write((value >>> 24) & 0xff);
+  }
+}
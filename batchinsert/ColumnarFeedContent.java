@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.http.HttpContent;
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvColumnPlan.Column;
+import com.google.api.client.sample.structuredcontent.model.Product;
+import com.google.api.client.sample.structuredcontent.utils.BatchUtils;
+import com.google.api.client.util.DateTime;
+import com.google.api.client.xml.atom.Atom;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>The content of a batch request inserting products of a
+ * {@link ColumnarProductBatch}: an Atom feed with one entry per product, like
+ * the one {@code AtomContent} creates for a
+ * {@link com.google.api.client.sample.structuredcontent.model.ProductFeed} of
+ * the same products prepared with {@link BatchUtils#configureForInsert}. The
+ * product ID is used as the batch ID.
+ *
+ * <p>The feed is written directly from the columns, without reflection and
+ * without creating a {@link Product} per product. Prices and weights are
+ * written from their unscaled values.
+ *
+ * <p>The feed is never held in memory as a whole: each entry is serialized on
+ * its own into UTF-8 bytes, and written to the output stream through a buffer
+ * of {@link #BUFFER_SIZE} bytes. As the length is not known in advance, it
+ * is reported as unknown, so that the transport sends the request with chunked
+ * transfer encoding and the first bytes leave before the last entry is
+ * serialized. The content can be written any number of times, e.g. for
+ * retries and bug reports.
+ *
+ * <p>If an {@link EntryFragmentCache} is given, the serialized entries are
+ * kept in it, and entries found in it are copied instead of being serialized
+ * again, so that retrying a request or sending the products again in smaller
+ * batches just concatenates bytes between the feed's start and end.
+ */
+final class ColumnarFeedContent implements HttpContent {
+  /** The attributes a {@link Product} has by default. */
+  private static final Product DEFAULTS = new Product();
+
+  /** The number of bytes buffered before they are written to the stream. */
+  static final int BUFFER_SIZE = 8192;
+
+  private static final String FEED_START = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+      + "<feed xmlns=\"" + Atom.ATOM_NAMESPACE + "\""
+      + " xmlns:batch=\"http://schemas.google.com/gdata/batch\""
+      + " xmlns:sc=\"http://schemas.google.com/structuredcontent/2009\""
+      + " xmlns:scp=\"http://schemas.google.com/structuredcontent/2009/products\">";
+
+  private static final byte[] FEED_START_BYTES = FEED_START.getBytes(StandardCharsets.UTF_8);
+  private static final byte[] FEED_END_BYTES = "</feed>".getBytes(StandardCharsets.UTF_8);
+
+  /** The number of bytes of a feed in addition to its entries. */
+  static final int FEED_OVERHEAD = FEED_START_BYTES.length + FEED_END_BYTES.length;
+
+  private final ColumnarProductBatch batch;
+  private final int[] rows;
+  private final int count;
+  private final EntryFragmentCache cache;
+
+  /** The entry being serialized. */
+  private final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream(1024);
+  private final Writer entryWriter
+      = new BufferedWriter(new OutputStreamWriter(entryBytes, StandardCharsets.UTF_8), 1024);
+
+  /**
+   * Digits of the number being written, from the end.
+   */
+  private final char[] digits = new char[32];
+
+  /**
+   * Creates the content for some products of a batch.
+   *
+   * @param batch The batch
+   * @param rows The rows of the products to be inserted
+   * @param count The number of rows
+   */
+  ColumnarFeedContent(ColumnarProductBatch batch, int[] rows, int count) {
+    this(batch, rows, count, null);
+  }
+
+  /**
+   * Creates the content for some products of a batch, reusing the serialized
+   * entries kept in the given cache.
+   *
+   * @param batch The batch
+   * @param rows The rows of the products to be inserted
+   * @param count The number of rows
+   * @param cache The cache of serialized entries, or {@code null}
+   */
+  ColumnarFeedContent(ColumnarProductBatch batch, int[] rows, int count,
+      EntryFragmentCache cache) {
+    this.batch = batch;
+    this.rows = rows;
+    this.count = count;
+    this.cache = cache;
+  }
+
+  @Override
+  public long getLength() {
+    return -1;
+  }
+
+  @Override
+  public String getEncoding() {
+    return null;
+  }
+
+  @Override
+  public String getType() {
+    return Atom.CONTENT_TYPE;
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    OutputStream buffered = new BufferedOutputStream(out, BUFFER_SIZE);
+    buffered.write(FEED_START_BYTES);
+    for (int i = 0; i < count; i++) {
+      byte[] fragment = cache != null ? cache.get(batch, rows[i]) : null;
+      if (fragment != null) {
+        buffered.write(fragment);
+      } else {
+        serializeEntry(rows[i]);
+        if (cache != null) {
+          fragment = entryBytes.toByteArray();
+          cache.put(batch, rows[i], fragment);
+          buffered.write(fragment);
+        } else {
+          entryBytes.writeTo(buffered);
+        }
+      }
+    }
+    buffered.write(FEED_END_BYTES);
+    // flushing, not closing: the stream belongs to the caller
+    buffered.flush();
+  }
+
+  @Override
+  public boolean retrySupported() {
+    return true;
+  }
+
+  /**
+   * Returns the number of bytes of the entry of the given row, as it will be
+   * written. The entry is serialized to measure it, and kept in the cache if
+   * there is one.
+   *
+   * @param row The row of the product
+   * @return the number of bytes
+   * @throws IOException if serializing failed
+   */
+  int getEntryLength(int row) throws IOException {
+    byte[] fragment = cache != null ? cache.get(batch, row) : null;
+    if (fragment != null) {
+      return fragment.length;
+    }
+    serializeEntry(row);
+    if (cache != null) {
+      cache.put(batch, row, entryBytes.toByteArray());
+    }
+    return entryBytes.size();
+  }
+
+  /**
+   * Splits the given rows of a batch into consecutive groups whose feeds have
+   * at most the given number of bytes, each with at least one row.
+   *
+   * @param batch The batch
+   * @param rows The rows of the products to be inserted
+   * @param count The number of rows
+   * @param cache The cache of serialized entries, or {@code null}. The
+   *   entries serialized for measuring them are kept in it.
+   * @param maxBytes The maximum number of bytes of a feed, or
+   *   {@link Long#MAX_VALUE} for putting all rows into one group
+   * @return the groups of rows
+   * @throws IOException if serializing failed
+   */
+  static List<int[]> splitRows(ColumnarProductBatch batch, int[] rows, int count,
+      EntryFragmentCache cache, long maxBytes) throws IOException {
+    List<int[]> groups = new ArrayList<int[]>();
+    if (maxBytes == Long.MAX_VALUE) {
+      groups.add(Arrays.copyOf(rows, count));
+      return groups;
+    }
+    ColumnarFeedContent measuredContent = new ColumnarFeedContent(batch, rows, count, cache);
+    int start = 0;
+    long bytes = FEED_OVERHEAD;
+    for (int i = 0; i < count; i++) {
+      int entryLength = measuredContent.getEntryLength(rows[i]);
+      if (i > start && bytes + entryLength > maxBytes) {
+        groups.add(Arrays.copyOfRange(rows, start, i));
+        start = i;
+        bytes = FEED_OVERHEAD;
+      }
+      bytes += entryLength;
+    }
+    groups.add(Arrays.copyOfRange(rows, start, count));
+    return groups;
+  }
+
+  /**
+   * Serializes the entry of the given row into {@link #entryBytes}.
+   */
+  private void serializeEntry(int row) throws IOException {
+    entryBytes.reset();
+    writeEntry(entryWriter, row);
+    entryWriter.flush();
+  }
+
+  private void writeEntry(Writer out, int row) throws IOException {
+    out.write("<entry><batch:operation type=\"insert\"/>");
+    writeString(out, "batch:id", Column.ID, row);
+    writeString(out, "title", Column.TITLE, row);
+    out.write("<content type=\"text\">");
+    String description = batch.getString(Column.DESCRIPTION, row);
+    if (description != null) {
+      writeEscaped(out, description);
+    }
+    out.write("</content>");
+    String link = batch.getString(Column.LINK, row);
+    if (link != null) {
+      out.write("<link rel=\"alternate\" type=\"text/html\" href=\"");
+      writeEscaped(out, batch.getLinkPrefix());
+      writeEscaped(out, link);
+      out.write("\"/>");
+    }
+
+    writeString(out, "sc:id", Column.ID, row);
+    writeString(out, "sc:content_language", Column.CONTENT_LANGUAGE, row, DEFAULTS.lang);
+    writeString(out, "sc:target_country", Column.TARGET_COUNTRY, row, DEFAULTS.country);
+    writeString(out, "sc:image_link", Column.IMAGE_LINK, row);
+    writeList(out, "sc:additional_image_link", Column.ADDITIONAL_IMAGE_LINKS, row);
+    DateTime expirationDate = batch.getDate(Column.EXPIRATION_DATE, row);
+    if (expirationDate != null) {
+      writeElement(out, "sc:expiration_date", expirationDate.toStringRfc3339());
+    }
+    writeElement(out, "sc:adult", String.valueOf(batch.getBoolean(Column.ADULT, row)));
+    writeString(out, "sc:channel", Column.CHANNEL, row);
+
+    writeString(out, "scp:adwords_grouping", Column.ADWORDS_GROUPING, row);
+    writeList(out, "scp:adwords_labels", Column.ADWORDS_LABELS, row);
+    writeString(out, "scp:adwords_redirect", Column.ADWORDS_REDIRECT, row);
+    writeString(out, "scp:age_group", Column.AGE_GROUP, row);
+    writeString(out, "scp:author", Column.AUTHOR, row);
+    writeString(out, "scp:availability", Column.AVAILABILITY, row);
+    writeString(out, "scp:brand", Column.BRAND, row);
+    writeString(out, "scp:color", Column.COLOR, row);
+    writeString(out, "scp:condition", Column.CONDITION, row);
+    writeString(out, "scp:edition", Column.EDITION, row);
+    writeElement(out, "scp:featured_product",
+        String.valueOf(batch.getBoolean(Column.FEATURED_PRODUCT, row)));
+    writeString(out, "scp:gender", Column.GENDER, row);
+    writeString(out, "scp:genre", Column.GENRE, row);
+    writeString(out, "scp:google_product_category", Column.GOOGLE_PRODUCT_CATEGORY, row);
+    writeString(out, "scp:gtin", Column.GTIN, row);
+    writeString(out, "scp:item_group_id", Column.ITEM_GROUP_ID, row);
+    writeString(out, "scp:manufacturer", Column.MANUFACTURER, row);
+    writeString(out, "scp:material", Column.MATERIAL, row);
+    writeString(out, "scp:mpn", Column.MPN, row);
+    writeString(out, "scp:pattern", Column.PATTERN, row);
+    writeDecimal(out, "scp:price", Column.PRICE, Column.CURRENCY, row);
+    writeString(out, "scp:product_review_average", Column.PRODUCT_REVIEW_AVERAGE, row);
+    writeString(out, "scp:product_review_count", Column.PRODUCT_REVIEW_COUNT, row);
+    writeString(out, "scp:product_type", Column.PRODUCT_TYPE, row);
+    if (batch.has(Column.QUANTITY, row)) {
+      out.write("<scp:quantity>");
+      writeNumber(out, batch.getInt(Column.QUANTITY, row), 0);
+      out.write("</scp:quantity>");
+    }
+    writeDecimal(out, "scp:shipping_weight", Column.WEIGHT, Column.WEIGHT_UNIT, row);
+    writeString(out, "scp:size", Column.SIZE, row);
+    writeString(out, "scp:year", Column.YEAR, row);
+    out.write("</entry>");
+  }
+
+  private void writeString(Writer out, String name, Column column, int row)
+      throws IOException {
+    writeString(out, name, column, row, null);
+  }
+
+  private void writeString(Writer out, String name, Column column, int row,
+      String defaultValue) throws IOException {
+    String value = batch.getString(column, row);
+    writeElement(out, name, value != null ? value : defaultValue);
+  }
+
+  private void writeList(Writer out, String name, Column column, int row) throws IOException {
+    int size = batch.getListSize(column, row);
+    for (int i = 0; i < size; i++) {
+      writeElement(out, name, batch.getListElement(column, row, i));
+    }
+  }
+
+  private static void writeElement(Writer out, String name, String value) throws IOException {
+    if (value == null) {
+      return;
+    }
+    out.write('<');
+    out.write(name);
+    out.write('>');
+    writeEscaped(out, value);
+    out.write("</");
+    out.write(name);
+    out.write('>');
+  }
+
+  /**
+   * Writes a decimal with its unit as an attribute, like a price or a weight.
+   */
+  private void writeDecimal(Writer out, String name, Column column, Column unitColumn,
+      int row) throws IOException {
+    if (!batch.hasDecimal(column, row)) {
+      return;
+    }
+    out.write('<');
+    out.write(name);
+    String unit = batch.getString(unitColumn, row);
+    if (unit != null) {
+      out.write(" unit=\"");
+      writeEscaped(out, unit);
+      out.write('"');
+    }
+    out.write('>');
+    if (batch.isLargeDecimal(column, row)
+        || !isPlain(batch.getUnscaledValue(column, row), batch.getScale(column, row))) {
+      // like BigDecimal.toString(), which is what a Product is serialized with
+      out.write(batch.getDecimal(column, row).toString());
+    } else {
+      writeNumber(out, batch.getUnscaledValue(column, row), batch.getScale(column, row));
+    }
+    out.write("</");
+    out.write(name);
+    out.write('>');
+  }
+
+  /**
+   * Returns whether {@link BigDecimal#toString()} writes the given number
+   * without an exponent, i.e. whether it is at least 10^-6.
+   */
+  private static boolean isPlain(long unscaledValue, int scale) {
+    int precision = 1;
+    for (long rest = Math.abs(unscaledValue / 10); rest > 0; rest /= 10) {
+      precision++;
+    }
+    return precision - 1 - scale >= -6;
+  }
+
+  /**
+   * Writes {@code unscaledValue / 10^scale} in plain notation.
+   */
+  private void writeNumber(Writer out, long unscaledValue, int scale) throws IOException {
+    int position = digits.length;
+    long rest = unscaledValue;
+    int written = 0;
+    do {
+      // works for Long.MIN_VALUE, too
+      digits[--position] = (char) ('0' + Math.abs(rest % 10));
+      rest /= 10;
+      if (++written == scale) {
+        digits[--position] = '.';
+      }
+    } while (rest != 0 || written <= scale);
+    if (unscaledValue < 0) {
+      out.write('-');
+    }
+    out.write(digits, position, digits.length - position);
+  }
+
+  /**
+   * Writes the given text, escaped for use in text and in attribute values.
+   * Tabs and line breaks are written as character references, so that they
+   * survive the normalization of attribute values; the other control
+   * characters below U+0020 are left out, since XML 1.0 does not allow them,
+   * not even as character references.
+   */
+  private static void writeEscaped(Writer out, String text) throws IOException {
+    int length = text.length();
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      String escaped;
+      if (c == '&') {
+        escaped = "&amp;";
+      } else if (c == '<') {
+        escaped = "&lt;";
+      } else if (c == '>') {
+        escaped = "&gt;";
+      } else if (c == '"') {
+        escaped = "&quot;";
+      } else if (c == '\t') {
+        escaped = "&#9;";
+      } else if (c == '\n') {
+        escaped = "&#10;";
+      } else if (c == '\r') {
+        escaped = "&#13;";
+      } else if (c < ' ') {
+        escaped = "";
+      } else {
+        continue;
+      }
+      out.write(text, start, i - start);
+      out.write(escaped);
+      start = i + 1;
+    }
+    out.write(text, start, length - start);
+  }
+}
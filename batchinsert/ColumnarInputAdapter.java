@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.io.IOException;
+
+/**
+ * <p>An {@link InputAdapter} that can also hand out its products as
+ * {@link ColumnarProductBatch}es, which the {@link WorkerThread}s prefer: they
+ * serialize them directly, without a {@link
+ * com.google.api.client.sample.structuredcontent.model.Product} per product.
+ */
+interface ColumnarInputAdapter extends InputAdapter {
+  /**
+   * Parses and returns the next up to {@code maxNumOfProducts} products as a
+   * batch. Once they have been sent, the batch has to be passed to
+   * {@link #acknowledge(ColumnarProductBatch)}.
+   *
+   * @param maxNumOfProducts The maximum number of products to return
+   * @return A batch of up to {@code maxNumOfProducts} products. It is empty if
+   *   no more products are available, or if {@link #stopIntake()} has been
+   *   called.
+   * @throws IOException if anything went wrong during reading the products
+   */
+  ColumnarProductBatch getNextBatch(int maxNumOfProducts) throws IOException;
+
+  /**
+   * Records that the products of the given batch, as returned by
+   * {@link #getNextBatch(int)}, have been sent to the server successfully.
+   *
+   * @param batch The batch
+   */
+  void acknowledge(ColumnarProductBatch batch);
+}
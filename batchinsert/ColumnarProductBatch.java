@@ -0,0 +1,738 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvColumnPlan.Column;
+import com.google.api.client.sample.structuredcontent.model.Content;
+import com.google.api.client.sample.structuredcontent.model.Link;
+import com.google.api.client.sample.structuredcontent.model.Price;
+import com.google.api.client.sample.structuredcontent.model.Product;
+import com.google.api.client.sample.structuredcontent.model.ShippingWeight;
+import com.google.api.client.util.DateTime;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A batch of products stored column by column instead of as one
+ * {@link Product} object graph per product. Each attribute of
+ * {@link CsvColumnPlan.Column} has its own array, allocated when the first
+ * product of the batch has a value for it:
+ * <ul>
+ *   <li>strings are stored as codes into a dictionary of the batch; values of
+ *       fields with few distinct values, like the brand or the condition, are
+ *       stored once per batch</li>
+ *   <li>prices and weights are stored as unscaled {@code long}s with their
+ *       scale, the quantity as an {@code int} and flags as bits</li>
+ *   <li>dates are stored as references, since the {@link CsvDateParser}
+ *       returns the same instance for the same date</li>
+ *   <li>lists are stored as the string codes of all products back to back,
+ *       with the end of each product's elements</li>
+ * </ul>
+ *
+ * <p>The {@link CsvInputAdapter} fills batches directly, one row per record,
+ * and {@link ColumnarFeedContent} serializes them directly, so that no
+ * objects are created per product in between. {@link #toProduct(int)} returns
+ * a product as a {@link Product}, for code that needs objects.
+ *
+ * <p>A row is filled by {@link #startRow()}, the setters, which all apply to
+ * the row being filled, and {@link #finishRow()}, or {@link #abandonRow()} if
+ * the record turns out to be invalid.
+ *
+ * <p>This class is not thread-safe. A batch is filled by one thread and then
+ * handed over to the thread that sends it.
+ */
+final class ColumnarProductBatch {
+  private static final Column[] COLUMNS = Column.values();
+
+  /** The code of absent strings. */
+  private static final int NO_STRING = -1;
+
+  /** The scale of absent decimals. */
+  private static final byte NO_DECIMAL = Byte.MIN_VALUE;
+
+  /**
+   * The scale of decimals that do not fit into a {@code long} and a
+   * {@code byte} scale, which are kept as {@link BigDecimal}s.
+   */
+  private static final byte LARGE_DECIMAL = Byte.MIN_VALUE + 1;
+
+  /** The source of the serial numbers of batches. */
+  private static final AtomicLong serials = new AtomicLong();
+
+  /**
+   * The prefix of the product links, i.e. the user's homepage.
+   */
+  private final String linkPrefix;
+
+  /**
+   * The range of records the products have been parsed from, or {@code null}
+   * if the adapter does not track a checkpoint.
+   */
+  CsvCheckpoint.Range range;
+
+  /**
+   * The serial number of the batch, unique within the program; it changes
+   * when the batch is cleared.
+   */
+  private long serial = serials.incrementAndGet();
+
+  private int size = 0;
+  private int capacity;
+
+  /** The strings of the batch, by code. */
+  private String[] dictionary;
+  private int dictionarySize = 0;
+
+  /** The codes of the strings stored once per batch. */
+  private final Map<String, Integer> sharedCodes = new HashMap<String, Integer>();
+
+  // the columns by ordinal; only those of the column's kind are used
+  private final int[][] stringCodes = new int[COLUMNS.length][];
+  private final long[][] unscaledValues = new long[COLUMNS.length][];
+  private final byte[][] scales = new byte[COLUMNS.length][];
+  private final BigDecimal[][] largeDecimals = new BigDecimal[COLUMNS.length][];
+  private final int[][] intValues = new int[COLUMNS.length][];
+  private final DateTime[][] dateValues = new DateTime[COLUMNS.length][];
+  private final BitSet[] present = new BitSet[COLUMNS.length];
+  private final BitSet[] flags = new BitSet[COLUMNS.length];
+  private final int[][] listEnds = new int[COLUMNS.length][];
+  private final int[][] listCodes = new int[COLUMNS.length][];
+  private final int[] listLengths = new int[COLUMNS.length];
+
+  /**
+   * Creates an empty batch.
+   *
+   * @param initialCapacity The number of products expected
+   * @param linkPrefix The prefix of the product links, i.e. the user's
+   *   homepage
+   */
+  ColumnarProductBatch(int initialCapacity, String linkPrefix) {
+    this.capacity = Math.max(initialCapacity, 1);
+    this.linkPrefix = linkPrefix == null ? "" : linkPrefix;
+    this.dictionary = new String[capacity * 4];
+  }
+
+  /**
+   * Returns the number of products in the batch.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the serial number of the batch. Together with a row, it
+   * identifies a product as long as it is not cleared.
+   */
+  long getSerial() {
+    return serial;
+  }
+
+  /**
+   * Returns the prefix of the product links.
+   */
+  String getLinkPrefix() {
+    return linkPrefix;
+  }
+
+  /**
+   * Starts filling the next row.
+   */
+  void startRow() {
+    if (size == capacity) {
+      grow();
+    }
+  }
+
+  /**
+   * Adds the row being filled to the batch.
+   */
+  void finishRow() {
+    for (int c = 0; c < COLUMNS.length; c++) {
+      if (listEnds[c] != null) {
+        listEnds[c][size] = listLengths[c];
+      }
+    }
+    size++;
+  }
+
+  /**
+   * Clears the row being filled, without adding it to the batch. Strings that
+   * have been added to the dictionary for it are kept.
+   */
+  void abandonRow() {
+    for (int c = 0; c < COLUMNS.length; c++) {
+      if (stringCodes[c] != null) {
+        stringCodes[c][size] = NO_STRING;
+      }
+      if (scales[c] != null) {
+        scales[c][size] = NO_DECIMAL;
+      }
+      if (largeDecimals[c] != null) {
+        largeDecimals[c][size] = null;
+      }
+      if (dateValues[c] != null) {
+        dateValues[c][size] = null;
+      }
+      if (present[c] != null) {
+        present[c].clear(size);
+      }
+      if (flags[c] != null) {
+        flags[c].clear(size);
+      }
+      if (listEnds[c] != null) {
+        listLengths[c] = size == 0 ? 0 : listEnds[c][size - 1];
+      }
+    }
+  }
+
+  /**
+   * Removes the row added last, e.g. because the product has been rejected
+   * after it was parsed. Strings that have been added to the dictionary for it
+   * are kept.
+   */
+  void removeLastRow() {
+    size--;
+    abandonRow();
+  }
+
+  /**
+   * Moves the rows from the given one on into a new batch, e.g. when a batch
+   * holds more products than a worker thread takes at once. Both batches keep
+   * the range of this one, since their products have been parsed from it.
+   *
+   * @param row The first row to move, which must be less than the size
+   * @return a new batch with the moved rows
+   */
+  ColumnarProductBatch splitAt(int row) {
+    ColumnarProductBatch rest = new ColumnarProductBatch(size - row, linkPrefix);
+    for (int r = row; r < size; r++) {
+      rest.copyRow(this, r);
+    }
+    while (size > row) {
+      removeLastRow();
+    }
+    rest.range = range;
+    return rest;
+  }
+
+  /**
+   * Adds a row of another batch as a new row. Strings the other batch stores
+   * once are stored once in this batch as well.
+   */
+  private void copyRow(ColumnarProductBatch source, int row) {
+    startRow();
+    for (int c = 0; c < COLUMNS.length; c++) {
+      Column column = COLUMNS[c];
+      int[] codes = source.stringCodes[c];
+      if (codes != null && codes[row] != NO_STRING) {
+        String value = source.dictionary[codes[row]];
+        if (Integer.valueOf(codes[row]).equals(source.sharedCodes.get(value))) {
+          setSharedString(column, value);
+        } else {
+          setString(column, value);
+        }
+      }
+      if (source.hasDecimal(column, row)) {
+        if (source.isLargeDecimal(column, row)) {
+          setDecimal(column, source.largeDecimals[c][row]);
+        } else {
+          setDecimal(column, source.getUnscaledValue(column, row), source.getScale(column, row));
+        }
+      }
+      if (source.has(column, row)) {
+        setInt(column, source.getInt(column, row));
+      }
+      setDate(column, source.getDate(column, row));
+      if (source.getBoolean(column, row)) {
+        setBoolean(column, true);
+      }
+      for (int i = 0; i < source.getListSize(column, row); i++) {
+        addListElement(column, source.getListElement(column, row, i));
+      }
+    }
+    finishRow();
+  }
+
+  /**
+   * Removes all products, keeping the allocated columns.
+   */
+  void clear() {
+    for (int c = 0; c < COLUMNS.length; c++) {
+      if (stringCodes[c] != null) {
+        Arrays.fill(stringCodes[c], NO_STRING);
+      }
+      if (scales[c] != null) {
+        Arrays.fill(scales[c], NO_DECIMAL);
+      }
+      if (largeDecimals[c] != null) {
+        Arrays.fill(largeDecimals[c], null);
+      }
+      if (dateValues[c] != null) {
+        Arrays.fill(dateValues[c], null);
+      }
+      if (present[c] != null) {
+        present[c].clear();
+      }
+      if (flags[c] != null) {
+        flags[c].clear();
+      }
+      listLengths[c] = 0;
+    }
+    Arrays.fill(dictionary, 0, dictionarySize, null);
+    dictionarySize = 0;
+    sharedCodes.clear();
+    size = 0;
+    range = null;
+    serial = serials.incrementAndGet();
+  }
+
+  private void grow() {
+    int newCapacity = capacity * 2;
+    for (int c = 0; c < COLUMNS.length; c++) {
+      if (stringCodes[c] != null) {
+        stringCodes[c] = Arrays.copyOf(stringCodes[c], newCapacity);
+        Arrays.fill(stringCodes[c], capacity, newCapacity, NO_STRING);
+      }
+      if (scales[c] != null) {
+        unscaledValues[c] = Arrays.copyOf(unscaledValues[c], newCapacity);
+        scales[c] = Arrays.copyOf(scales[c], newCapacity);
+        Arrays.fill(scales[c], capacity, newCapacity, NO_DECIMAL);
+      }
+      if (largeDecimals[c] != null) {
+        largeDecimals[c] = Arrays.copyOf(largeDecimals[c], newCapacity);
+      }
+      if (intValues[c] != null) {
+        intValues[c] = Arrays.copyOf(intValues[c], newCapacity);
+      }
+      if (dateValues[c] != null) {
+        dateValues[c] = Arrays.copyOf(dateValues[c], newCapacity);
+      }
+      if (listEnds[c] != null) {
+        listEnds[c] = Arrays.copyOf(listEnds[c], newCapacity);
+      }
+    }
+    capacity = newCapacity;
+  }
+
+  /**
+   * Adds a string to the dictionary.
+   *
+   * @return its code
+   */
+  private int encode(String value) {
+    if (dictionarySize == dictionary.length) {
+      dictionary = Arrays.copyOf(dictionary, dictionarySize * 2);
+    }
+    dictionary[dictionarySize] = value;
+    return dictionarySize++;
+  }
+
+  /**
+   * Returns the code of a string stored once per batch, adding it to the
+   * dictionary if necessary.
+   */
+  private int encodeShared(String value) {
+    Integer code = sharedCodes.get(value);
+    if (code == null) {
+      code = encode(value);
+      sharedCodes.put(value, code);
+    }
+    return code;
+  }
+
+  private int[] stringColumn(Column column) {
+    int c = column.ordinal();
+    if (stringCodes[c] == null) {
+      stringCodes[c] = new int[capacity];
+      Arrays.fill(stringCodes[c], NO_STRING);
+    }
+    return stringCodes[c];
+  }
+
+  private BitSet presentColumn(Column column) {
+    int c = column.ordinal();
+    if (present[c] == null) {
+      present[c] = new BitSet(capacity);
+    }
+    return present[c];
+  }
+
+  /**
+   * Sets a string attribute of the row being filled.
+   *
+   * @param column The column, which must hold strings
+   * @param value The value, or {@code null}
+   */
+  void setString(Column column, String value) {
+    if (value != null) {
+      stringColumn(column)[size] = encode(value);
+    }
+  }
+
+  /**
+   * Sets a string attribute of the row being filled to a value that many
+   * products are likely to share, so that it is stored once per batch.
+   *
+   * @param column The column, which must hold strings
+   * @param value The value, or {@code null}
+   */
+  void setSharedString(Column column, String value) {
+    if (value != null) {
+      stringColumn(column)[size] = encodeShared(value);
+    }
+  }
+
+  /**
+   * Sets a decimal attribute of the row being filled to
+   * {@code unscaledValue / 10^scale}.
+   *
+   * @param column The column, which must hold decimals
+   * @param unscaledValue The unscaled value
+   * @param scale The scale, which must be between 0 and 127
+   */
+  void setDecimal(Column column, long unscaledValue, int scale) {
+    int c = column.ordinal();
+    if (scales[c] == null) {
+      unscaledValues[c] = new long[capacity];
+      scales[c] = new byte[capacity];
+      Arrays.fill(scales[c], NO_DECIMAL);
+    }
+    unscaledValues[c][size] = unscaledValue;
+    scales[c][size] = (byte) scale;
+  }
+
+  /**
+   * Sets a decimal attribute of the row being filled.
+   *
+   * @param column The column, which must hold decimals
+   * @param value The value, or {@code null}
+   */
+  void setDecimal(Column column, BigDecimal value) {
+    if (value == null) {
+      return;
+    }
+    if (value.scale() >= 0 && value.scale() <= Byte.MAX_VALUE
+        && value.unscaledValue().bitLength() < Long.SIZE) {
+      setDecimal(column, value.unscaledValue().longValue(), value.scale());
+    } else {
+      setDecimal(column, 0, 0);
+      int c = column.ordinal();
+      if (largeDecimals[c] == null) {
+        largeDecimals[c] = new BigDecimal[capacity];
+      }
+      largeDecimals[c][size] = value;
+      scales[c][size] = LARGE_DECIMAL;
+    }
+  }
+
+  /**
+   * Sets an integer attribute of the row being filled.
+   *
+   * @param column The column, which must hold integers
+   * @param value The value
+   */
+  void setInt(Column column, int value) {
+    int c = column.ordinal();
+    if (intValues[c] == null) {
+      intValues[c] = new int[capacity];
+    }
+    intValues[c][size] = value;
+    presentColumn(column).set(size);
+  }
+
+  /**
+   * Sets a date attribute of the row being filled.
+   *
+   * @param column The column, which must hold dates
+   * @param value The value, or {@code null}
+   */
+  void setDate(Column column, DateTime value) {
+    if (value == null) {
+      return;
+    }
+    int c = column.ordinal();
+    if (dateValues[c] == null) {
+      dateValues[c] = new DateTime[capacity];
+    }
+    dateValues[c][size] = value;
+  }
+
+  /**
+   * Sets a flag of the row being filled.
+   *
+   * @param column The column, which must hold flags
+   * @param value The value
+   */
+  void setBoolean(Column column, boolean value) {
+    int c = column.ordinal();
+    if (flags[c] == null) {
+      flags[c] = new BitSet(capacity);
+    }
+    flags[c].set(size, value);
+  }
+
+  /**
+   * Adds an element to a list attribute of the row being filled.
+   *
+   * @param column The column, which must hold lists
+   * @param value The element
+   */
+  void addListElement(Column column, String value) {
+    int c = column.ordinal();
+    if (listEnds[c] == null) {
+      listEnds[c] = new int[capacity];
+      listCodes[c] = new int[capacity * 2];
+    }
+    if (listLengths[c] == listCodes[c].length) {
+      listCodes[c] = Arrays.copyOf(listCodes[c], listLengths[c] * 2);
+    }
+    listCodes[c][listLengths[c]++] = encode(value);
+  }
+
+  /**
+   * Returns a string attribute of a product, or {@code null} if it is absent.
+   * For {@link Column#LINK}, this is the link without the prefix.
+   */
+  String getString(Column column, int row) {
+    int[] codes = stringCodes[column.ordinal()];
+    return codes == null || codes[row] == NO_STRING ? null : dictionary[codes[row]];
+  }
+
+  /**
+   * Returns whether a product has a value for a decimal attribute.
+   */
+  boolean hasDecimal(Column column, int row) {
+    byte[] columnScales = scales[column.ordinal()];
+    return columnScales != null && columnScales[row] != NO_DECIMAL;
+  }
+
+  /**
+   * Returns whether a decimal attribute of a product is too large for
+   * {@link #getUnscaledValue} and {@link #getScale}, and is only available from
+   * {@link #getDecimal}.
+   */
+  boolean isLargeDecimal(Column column, int row) {
+    return scales[column.ordinal()][row] == LARGE_DECIMAL;
+  }
+
+  /**
+   * Returns the unscaled value of a decimal attribute of a product.
+   */
+  long getUnscaledValue(Column column, int row) {
+    return unscaledValues[column.ordinal()][row];
+  }
+
+  /**
+   * Returns the scale of a decimal attribute of a product.
+   */
+  int getScale(Column column, int row) {
+    return scales[column.ordinal()][row];
+  }
+
+  /**
+   * Returns a decimal attribute of a product, or {@code null} if it is absent.
+   */
+  BigDecimal getDecimal(Column column, int row) {
+    if (!hasDecimal(column, row)) {
+      return null;
+    } else if (isLargeDecimal(column, row)) {
+      return largeDecimals[column.ordinal()][row];
+    }
+    return BigDecimal.valueOf(getUnscaledValue(column, row), getScale(column, row));
+  }
+
+  /**
+   * Returns whether a product has a value for an integer attribute.
+   */
+  boolean has(Column column, int row) {
+    BitSet columnPresent = present[column.ordinal()];
+    return columnPresent != null && columnPresent.get(row);
+  }
+
+  /**
+   * Returns an integer attribute of a product, which must be present.
+   */
+  int getInt(Column column, int row) {
+    return intValues[column.ordinal()][row];
+  }
+
+  /**
+   * Returns a date attribute of a product, or {@code null} if it is absent.
+   */
+  DateTime getDate(Column column, int row) {
+    DateTime[] dates = dateValues[column.ordinal()];
+    return dates == null ? null : dates[row];
+  }
+
+  /**
+   * Returns a flag of a product, {@code false} if it is absent.
+   */
+  boolean getBoolean(Column column, int row) {
+    BitSet columnFlags = flags[column.ordinal()];
+    return columnFlags != null && columnFlags.get(row);
+  }
+
+  /**
+   * Returns the number of elements of a list attribute of a product.
+   */
+  int getListSize(Column column, int row) {
+    int[] ends = listEnds[column.ordinal()];
+    if (ends == null) {
+      return 0;
+    }
+    return ends[row] - (row == 0 ? 0 : ends[row - 1]);
+  }
+
+  /**
+   * Returns an element of a list attribute of a product.
+   */
+  String getListElement(Column column, int row, int index) {
+    int c = column.ordinal();
+    int start = row == 0 ? 0 : listEnds[c][row - 1];
+    return dictionary[listCodes[c][start + index]];
+  }
+
+  /**
+   * Returns the IDs of the given products.
+   *
+   * @param rows The rows of the products
+   * @param count The number of rows
+   */
+  List<String> getIds(int[] rows, int count) {
+    List<String> ids = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      ids.add(getString(Column.ID, rows[i]));
+    }
+    return ids;
+  }
+
+  /**
+   * Creates a {@link Product} from a row, exactly like the one the
+   * {@link CsvInputAdapter} would have parsed from the record.
+   *
+   * @param row The row
+   * @return a new product
+   */
+  Product toProduct(int row) {
+    Product product = new Product();
+    product.externalId = getString(Column.ID, row);
+    String lang = getString(Column.CONTENT_LANGUAGE, row);
+    if (lang != null) {
+      product.lang = lang;
+    }
+    String country = getString(Column.TARGET_COUNTRY, row);
+    if (country != null) {
+      product.country = country;
+    }
+    product.title = getString(Column.TITLE, row);
+    product.content = new Content("text", getString(Column.DESCRIPTION, row));
+    product.condition = getString(Column.CONDITION, row);
+    product.price = new Price(getString(Column.CURRENCY, row), getDecimal(Column.PRICE, row));
+    if (hasDecimal(Column.WEIGHT, row)) {
+      product.shippingWeight = new ShippingWeight(getString(Column.WEIGHT_UNIT, row),
+          getDecimal(Column.WEIGHT, row));
+    }
+    if (has(Column.QUANTITY, row)) {
+      product.quantity = getInt(Column.QUANTITY, row);
+    }
+    product.expirationDate = getDate(Column.EXPIRATION_DATE, row);
+    product.productType = getString(Column.PRODUCT_TYPE, row);
+    product.brand = getString(Column.BRAND, row);
+    product.gtin = getString(Column.GTIN, row);
+    product.mpn = getString(Column.MPN, row);
+
+    String link = getString(Column.LINK, row);
+    if (link != null) {
+      Link alternate = new Link();
+      alternate.rel = "alternate";
+      alternate.href = linkPrefix + link;
+      alternate.type = "text/html";
+      product.links.add(alternate);
+    }
+
+    String imageLink = getString(Column.IMAGE_LINK, row);
+    product.imageLinks = new ArrayList<String>();
+    if (imageLink != null) {
+      product.imageLinks.add(imageLink);
+    }
+
+    product.additionalImageLinks = getList(Column.ADDITIONAL_IMAGE_LINKS, row);
+    product.availability = getString(Column.AVAILABILITY, row);
+    String color = getString(Column.COLOR, row);
+    if (color != null) {
+      product.colors = new ArrayList<String>(1);
+      product.colors.add(color);
+    }
+    product.gender = getString(Column.GENDER, row);
+    product.ageGroup = getString(Column.AGE_GROUP, row);
+    product.size = getString(Column.SIZE, row);
+    product.material = getString(Column.MATERIAL, row);
+    product.pattern = getString(Column.PATTERN, row);
+    product.itemGroupId = getString(Column.ITEM_GROUP_ID, row);
+    product.googleProductCategory = getString(Column.GOOGLE_PRODUCT_CATEGORY, row);
+    product.manufacturer = getString(Column.MANUFACTURER, row);
+    product.author = getString(Column.AUTHOR, row);
+    product.edition = getString(Column.EDITION, row);
+    product.genre = getString(Column.GENRE, row);
+    product.year = getString(Column.YEAR, row);
+    product.channel = getString(Column.CHANNEL, row);
+    product.adult = getBoolean(Column.ADULT, row);
+    product.featuredProduct = getBoolean(Column.FEATURED_PRODUCT, row);
+    product.adwordsGrouping = getString(Column.ADWORDS_GROUPING, row);
+    product.adwordsLabels = getList(Column.ADWORDS_LABELS, row);
+    product.adwordsRedirect = getString(Column.ADWORDS_REDIRECT, row);
+    product.productReviewAverage = getString(Column.PRODUCT_REVIEW_AVERAGE, row);
+    product.productReviewCount = getString(Column.PRODUCT_REVIEW_COUNT, row);
+    return product;
+  }
+
+  /**
+   * Returns a list attribute of a product, or {@code null} if it is empty.
+   */
+  private List<String> getList(Column column, int row) {
+    int listSize = getListSize(column, row);
+    if (listSize == 0) {
+      return null;
+    }
+    List<String> list = new ArrayList<String>(listSize);
+    for (int i = 0; i < listSize; i++) {
+      list.add(getListElement(column, row, i));
+    }
+    return list;
+  }
+
+  /**
+   * Creates {@link Product}s from all rows.
+   *
+   * @return the products, with the range of the batch
+   */
+  ProductBatch toProducts() {
+    ProductBatch products = new ProductBatch(size);
+    for (int row = 0; row < size; row++) {
+      products.add(toProduct(row));
+    }
+    products.range = range;
+    return products;
+  }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Records which records of a CSV file have been sent to the server and
+ * acknowledged, so that an interrupted run can be resumed without sending
+ * everything again.
+ *
+ * <p>Every batch handed out by a {@link CsvInputAdapter} is parsed from a
+ * {@link Range} of consecutive records. Ranges are identified by the number of
+ * lines before their first record. A range is acknowledged once all of its
+ * products have been sent successfully; records that could not be parsed do
+ * not count. The checkpoint keeps the <i>committed</i> position, before which
+ * all ranges have been acknowledged, as a number of lines and a byte offset,
+ * plus the ranges after it that have been acknowledged out of order.
+ *
+ * <p>The checkpoint file is a properties file. It is rewritten at a fixed
+ * interval and on {@link #close()}: the new contents are written to a
+ * temporary file, synced to disk, and then renamed over the old file, so that
+ * the file is complete even if the program dies while writing it.
+ *
+ * <p>On resuming, the input adapter seeks to the committed offset (see
+ * {@link CsvInputAdapter#setCheckpoint}) and skips the records of the ranges
+ * acknowledged after it (see {@link #isAcknowledged}).
+ *
+ * <p>This class is thread-safe.
+ */
+final class CsvCheckpoint {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger = Logger.getLogger(CsvCheckpoint.class.getName());
+
+  private static final String INPUT = "input";
+  private static final String INPUT_LENGTH = "inputLength";
+  private static final String COMMITTED_LINES = "committedLines";
+  private static final String COMMITTED_OFFSET = "committedOffset";
+  private static final String ACKNOWLEDGED = "acknowledged";
+
+  private final File file;
+  private final File input;
+
+  /**
+   * The committed position of the run that wrote the checkpoint file, or 0 if
+   * the run is not resumed.
+   */
+  private final long resumedLines;
+  private final long resumedOffset;
+
+  /**
+   * The ranges acknowledged after the resumed position by the run that wrote
+   * the checkpoint file, from their start to their end. Not modified.
+   */
+  private final TreeMap<Long, Long> resumedRanges;
+
+  /**
+   * The committed position. The offset is -1 if it is not known.
+   */
+  private long committedLines;
+  private long committedOffset;
+
+  /**
+   * The ranges of this run that have not been committed yet, by their start.
+   */
+  private final TreeMap<Long, Range> ranges = new TreeMap<Long, Range>();
+
+  /**
+   * Whether anything changed since the file was written last.
+   */
+  private boolean dirty = true;
+
+  /**
+   * Serializes writing the file.
+   */
+  private final Object writeLock = new Object();
+
+  private ScheduledExecutorService writer;
+
+  /**
+   * A range of consecutive records from which a batch has been parsed.
+   */
+  static final class Range {
+    final long startLines;
+    final long endLines;
+    final long endOffset;
+
+    /**
+     * The number of products of the range that have not been acknowledged.
+     */
+    private final AtomicInteger unacknowledged;
+
+    private boolean acknowledged = false;
+
+    private Range(long startLines, long endLines, long endOffset, int products) {
+      this.startLines = startLines;
+      this.endLines = endLines;
+      this.endOffset = endOffset;
+      this.unacknowledged = new AtomicInteger(products);
+    }
+  }
+
+  private CsvCheckpoint(File file, File input, long resumedLines, long resumedOffset,
+      TreeMap<Long, Long> resumedRanges) {
+    this.file = file;
+    this.input = input;
+    this.resumedLines = resumedLines;
+    this.resumedOffset = resumedOffset;
+    this.resumedRanges = resumedRanges;
+    this.committedLines = resumedLines;
+    this.committedOffset = resumedOffset;
+  }
+
+  /**
+   * Creates a checkpoint for a new run, which will be written to the given
+   * file.
+   *
+   * @param file The checkpoint file
+   * @param input The CSV file being inserted
+   * @return the new checkpoint
+   */
+  static CsvCheckpoint create(File file, File input) {
+    return new CsvCheckpoint(file, input, 0, 0, new TreeMap<Long, Long>());
+  }
+
+  /**
+   * Reads the checkpoint written by an earlier run, to resume it. The
+   * checkpoint will be written back to the same file.
+   *
+   * @param file The checkpoint file
+   * @param input The CSV file being inserted
+   * @return the checkpoint
+   * @throws IOException if the file could not be read, is malformed, or has
+   *   been written for a different input file
+   */
+  static CsvCheckpoint load(File file, File input) throws IOException {
+    Properties properties = new Properties();
+    InputStream in = new FileInputStream(file);
+    try {
+      properties.load(in);
+    } finally {
+      in.close();
+    }
+    if (!input.getAbsolutePath().equals(properties.getProperty(INPUT))
+        || !String.valueOf(input.length()).equals(properties.getProperty(INPUT_LENGTH))) {
+      throw new IOException("The checkpoint " + file + " has been written for "
+          + properties.getProperty(INPUT) + " (" + properties.getProperty(INPUT_LENGTH)
+          + " bytes), not for " + input.getAbsolutePath() + " (" + input.length() + " bytes)");
+    }
+    try {
+      TreeMap<Long, Long> acknowledged = new TreeMap<Long, Long>();
+      String ranges = properties.getProperty(ACKNOWLEDGED, "").trim();
+      if (ranges.length() > 0) {
+        for (String range : ranges.split(",")) {
+          int dash = range.indexOf('-');
+          acknowledged.put(Long.parseLong(range.substring(0, dash).trim()),
+              Long.parseLong(range.substring(dash + 1).trim()));
+        }
+      }
+      return new CsvCheckpoint(file, input,
+          Long.parseLong(properties.getProperty(COMMITTED_LINES)),
+          Long.parseLong(properties.getProperty(COMMITTED_OFFSET)), acknowledged);
+    } catch (RuntimeException e) {
+      throw new IOException("Malformed checkpoint " + file, e);
+    }
+  }
+
+  /**
+   * Returns the number of lines before the first record that has not been
+   * acknowledged by the resumed run.
+   */
+  long getResumedLines() {
+    return resumedLines;
+  }
+
+  /**
+   * Returns the byte offset of the first record that has not been
+   * acknowledged by the resumed run, or -1 if it is not known.
+   */
+  long getResumedOffset() {
+    return resumedOffset;
+  }
+
+  /**
+   * Returns whether the record starting on the given line has already been
+   * acknowledged by the resumed run. Records before the resumed position are
+   * only seen if the input could not seek to it. This method does not lock.
+   *
+   * @param lineNumber The number of the line the record starts on, counting
+   *   from 1
+   */
+  boolean isAcknowledged(long lineNumber) {
+    long linesBefore = lineNumber - 1;
+    if (linesBefore < resumedLines) {
+      return true;
+    }
+    if (resumedRanges.isEmpty()) {
+      return false;
+    }
+    Map.Entry<Long, Long> range = resumedRanges.floorEntry(linesBefore);
+    // a last record without a line break has the same start and end
+    return range != null && linesBefore < Math.max(range.getValue(), range.getKey() + 1);
+  }
+
+  /**
+   * Sets the position from which the records are tracked. Called by the input
+   * adapter once it has skipped the header and, if possible, seeked to the
+   * resumed position.
+   *
+   * @param lines The number of lines before the next record
+   * @param offset The byte offset of the next record, or -1 if it is not known
+   */
+  synchronized void begin(long lines, long offset) {
+    committedLines = lines;
+    committedOffset = offset;
+    dirty = true;
+  }
+
+  /**
+   * Registers a range of records from which a batch has been parsed. Ranges
+   * may be registered in any order, but must not be empty, and together they
+   * have to cover all records after the position given to {@link #begin}.
+   *
+   * @param startLines The number of lines before the first record
+   * @param endLines The number of lines before the record after the range
+   * @param endOffset The byte offset of the record after the range, or -1 if
+   *   it is not known
+   * @param products The number of products in the batch. Ranges without
+   *   products, whose records could not be parsed or have been skipped, are
+   *   acknowledged right away.
+   * @return the range
+   */
+  synchronized Range register(long startLines, long endLines, long endOffset, int products) {
+    Range range = new Range(startLines, endLines, endOffset, products);
+    range.acknowledged = products == 0;
+    ranges.put(startLines, range);
+    commit();
+    return range;
+  }
+
+  /**
+   * Records that the given number of products of a range have been sent
+   * successfully.
+   *
+   * @param range The range, as returned by {@link #register}
+   * @param products The number of products
+   */
+  void acknowledge(Range range, int products) {
+    if (range.unacknowledged.addAndGet(-products) == 0) {
+      synchronized (this) {
+        range.acknowledged = true;
+        dirty = true;
+        commit();
+      }
+    }
+  }
+
+  /**
+   * Moves the committed position over all acknowledged ranges directly after
+   * it.
+   */
+  private void commit() {
+    Range range = ranges.get(committedLines);
+    while (range != null && range.acknowledged) {
+      ranges.remove(range.startLines);
+      committedLines = range.endLines;
+      committedOffset = range.endOffset;
+      dirty = true;
+      range = range.endLines == range.startLines ? null : ranges.get(committedLines);
+    }
+  }
+
+  /**
+   * Writes the checkpoint file if anything changed since it was written last.
+   *
+   * @throws IOException if writing the file failed
+   */
+  void write() throws IOException {
+    synchronized (writeLock) {
+      Properties properties = new Properties();
+      synchronized (this) {
+        if (!dirty) {
+          return;
+        }
+        properties.setProperty(INPUT, input.getAbsolutePath());
+        properties.setProperty(INPUT_LENGTH, String.valueOf(input.length()));
+        properties.setProperty(COMMITTED_LINES, String.valueOf(committedLines));
+        properties.setProperty(COMMITTED_OFFSET, String.valueOf(committedOffset));
+        TreeMap<Long, Long> acknowledged = new TreeMap<Long, Long>();
+        if (committedLines < resumedLines) {
+          // the input could not seek, and has not yet caught up
+          acknowledged.put(committedLines, resumedLines);
+        }
+        for (Map.Entry<Long, Long> range : resumedRanges.entrySet()) {
+          if (range.getValue() > committedLines) {
+            acknowledged.put(range.getKey(), range.getValue());
+          }
+        }
+        for (Range range : ranges.values()) {
+          if (range.acknowledged) {
+            acknowledged.put(range.startLines, range.endLines);
+          }
+        }
+        StringBuilder list = new StringBuilder();
+        for (Map.Entry<Long, Long> range : acknowledged.entrySet()) {
+          if (list.length() > 0) {
+            list.append(',');
+          }
+          list.append(range.getKey()).append('-').append(range.getValue());
+        }
+        properties.setProperty(ACKNOWLEDGED, list.toString());
+        dirty = false;
+      }
+      File temporary = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+      FileOutputStream out = new FileOutputStream(temporary);
+      try {
+        properties.store(out, "Checkpoint of inserting " + input.getName());
+        out.flush();
+        out.getFD().sync();
+      } finally {
+        out.close();
+      }
+      Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Starts writing the checkpoint file at the given interval, on a daemon
+   * thread.
+   *
+   * @param intervalMillis The interval in milliseconds
+   */
+  synchronized void startWriting(long intervalMillis) {
+    if (writer != null) {
+      return;
+    }
+    writer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    writer.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          write();
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Writing the checkpoint " + file + " failed.", e);
+        }
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops writing the checkpoint file periodically and writes it a last time.
+   *
+   * @throws IOException if writing the file failed
+   */
+  void close() throws IOException {
+    synchronized (this) {
+      if (writer != null) {
+        writer.shutdown();
+      }
+    }
+    write();
+  }
+
+  /**
+   * Returns a short human readable description of the committed position, for
+   * logging.
+   */
+  synchronized String getStatus() {
+    return "committed up to line " + committedLines + " (byte " + committedOffset + "), "
+        + ranges.size() + " range(s) in flight";
+  }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <p>Describes which CSV column holds which attribute of a product. A plan is
+ * compiled once from the header line with {@link #fromHeader}, so that parsing
+ * a product only has to look up the position of each attribute instead of
+ * comparing any names.
+ *
+ * <p>Header names are matched ignoring case and everything except letters and
+ * digits, so {@code "[product type]"}, {@code "product_type"} and
+ * {@code "Product Type"} all name the same column. Columns with unknown names
+ * are not mapped; the {@link CsvFieldTokenizer} does not even copy their
+ * contents (see {@link #getColumnMask()}).
+ *
+ * <p>Plans are immutable.
+ */
+final class CsvColumnPlan {
+  /**
+   * The attributes of a product that can be read from a CSV column, together
+   * with the header names they are recognized by.
+   */
+  enum Column {
+    ID(true, "id", "offerid"),
+    CONTENT_LANGUAGE(false, "contentlanguage", "language"),
+    TARGET_COUNTRY(false, "targetcountry", "country"),
+    TITLE(true, "title"),
+    DESCRIPTION(true, "description"),
+    CONDITION(true, "condition"),
+    PRICE(true, "price"),
+    CURRENCY(true, "currency", "pricecurrency"),
+    WEIGHT(false, "weight", "shippingweight"),
+    WEIGHT_UNIT(false, "unit", "weightunit", "shippingweightunit"),
+    QUANTITY(false, "quantity"),
+    EXPIRATION_DATE(false, "expirationdate"),
+    PRODUCT_TYPE(false, "producttype"),
+    BRAND(false, "brand"),
+    GTIN(false, "gtin"),
+    MPN(false, "mpn"),
+    LINK(false, "productinformationhomepage", "link", "homepage"),
+    IMAGE_LINK(false, "productimageurl", "imagelink"),
+    ADDITIONAL_IMAGE_LINKS(false, "additionalimagelink", "additionalimagelinks"),
+    AVAILABILITY(false, "availability"),
+    COLOR(false, "color", "colour"),
+    GENDER(false, "gender"),
+    AGE_GROUP(false, "agegroup"),
+    SIZE(false, "size"),
+    MATERIAL(false, "material"),
+    PATTERN(false, "pattern"),
+    ITEM_GROUP_ID(false, "itemgroupid"),
+    GOOGLE_PRODUCT_CATEGORY(false, "googleproductcategory"),
+    MANUFACTURER(false, "manufacturer"),
+    AUTHOR(false, "author"),
+    EDITION(false, "edition"),
+    GENRE(false, "genre"),
+    YEAR(false, "year"),
+    CHANNEL(false, "channel"),
+    ADULT(false, "adult"),
+    FEATURED_PRODUCT(false, "featuredproduct"),
+    ADWORDS_GROUPING(false, "adwordsgrouping"),
+    ADWORDS_LABELS(false, "adwordslabels"),
+    ADWORDS_REDIRECT(false, "adwordsredirect"),
+    PRODUCT_REVIEW_AVERAGE(false, "productreviewaverage"),
+    PRODUCT_REVIEW_COUNT(false, "productreviewcount");
+
+    /**
+     * Whether the header has to contain this column.
+     */
+    final boolean required;
+
+    private final String[] names;
+
+    private Column(boolean required, String... names) {
+      this.required = required;
+      this.names = names;
+    }
+  }
+
+  /**
+   * The plan for CSV files without a usable header: the 18 columns described
+   * in {@link CsvInputAdapter}, from {@link Column#ID} to
+   * {@link Column#IMAGE_LINK}, in this order.
+   */
+  static final CsvColumnPlan POSITIONAL;
+
+  /**
+   * Maps normalized header names to columns.
+   */
+  private static final Map<String, Column> columnsByName = new HashMap<String, Column>();
+
+  static {
+    for (Column column : Column.values()) {
+      for (String name : column.names) {
+        columnsByName.put(name, column);
+      }
+    }
+    int[] positions = new int[Column.values().length];
+    Arrays.fill(positions, -1);
+    for (int i = 0; i <= Column.IMAGE_LINK.ordinal(); i++) {
+      positions[i] = i;
+    }
+    POSITIONAL = new CsvColumnPlan(positions, Column.IMAGE_LINK.ordinal() + 1);
+  }
+
+  /**
+   * The position of each column, indexed by {@link Column#ordinal()}, or -1 if
+   * the column is not present.
+   */
+  private final int[] positions;
+
+  /**
+   * The number of fields each line must have.
+   */
+  private final int fieldCount;
+
+  /**
+   * Whether the column at each position is mapped.
+   */
+  private final boolean[] columnMask;
+
+  private CsvColumnPlan(int[] positions, int fieldCount) {
+    this.positions = positions;
+    this.fieldCount = fieldCount;
+    this.columnMask = new boolean[fieldCount];
+    for (int position : positions) {
+      if (position >= 0) {
+        columnMask[position] = true;
+      }
+    }
+  }
+
+  /**
+   * Compiles a plan from a header line that has been split into fields.
+   *
+   * @param header The tokenizer holding the fields of the header line
+   * @return The plan, or {@link #POSITIONAL} if none of the header names is
+   *   known
+   */
+  static CsvColumnPlan fromHeader(CsvFieldTokenizer header) {
+    int[] positions = new int[Column.values().length];
+    Arrays.fill(positions, -1);
+    boolean anyKnown = false;
+    for (int i = 0; i < header.getFieldCount(); i++) {
+      Column column = columnsByName.get(normalize(header.getTrimmedString(i)));
+      // if a column appears more than once, the first one is used
+      if (column != null && positions[column.ordinal()] < 0) {
+        positions[column.ordinal()] = i;
+        anyKnown = true;
+      }
+    }
+    return anyKnown ? new CsvColumnPlan(positions, header.getFieldCount()) : POSITIONAL;
+  }
+
+  /**
+   * Returns the column with the given name, which is matched like a header
+   * name. Other input formats use this for the names of their attributes, so
+   * that they are the same as in CSV headers.
+   *
+   * @param name The name
+   * @return the column, or {@code null} if the name is not known
+   */
+  static Column getColumn(String name) {
+    return columnsByName.get(normalize(name));
+  }
+
+  /**
+   * Removes everything but letters and digits from a header name, and
+   * converts it to lower case.
+   */
+  private static String normalize(String name) {
+    StringBuilder normalized = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (Character.isLetterOrDigit(c)) {
+        normalized.append(c);
+      }
+    }
+    return normalized.toString().toLowerCase(Locale.US);
+  }
+
+  /**
+   * Returns the position of the given column, or -1 if it is not present.
+   */
+  int getPosition(Column column) {
+    return positions[column.ordinal()];
+  }
+
+  /**
+   * Returns whether the given column is present.
+   */
+  boolean hasColumn(Column column) {
+    return positions[column.ordinal()] >= 0;
+  }
+
+  /**
+   * Returns the number of fields each line must have at least.
+   */
+  int getFieldCount() {
+    return fieldCount;
+  }
+
+  /**
+   * Returns an array telling for each position whether the column there is
+   * mapped. Must not be modified.
+   */
+  boolean[] getColumnMask() {
+    return columnMask;
+  }
+
+  /**
+   * Returns the required columns that are not present.
+   *
+   * @return the missing columns, or an empty list if all are present
+   */
+  List<Column> getMissingRequiredColumns() {
+    List<Column> missing = new ArrayList<Column>();
+    for (Column column : Column.values()) {
+      if (column.required && !hasColumn(column)) {
+        missing.add(column);
+      }
+    }
+    return missing;
+  }
+}
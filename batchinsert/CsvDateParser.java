@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.util.DateTime;
+
+import java.util.TimeZone;
+
+/**
+ * <p>Parses dates in the fixed format {@code "yyyy-MM-dd HH:mm"}, interpreted
+ * in a given time zone. Unlike {@code SimpleDateFormat}, the parser is strict:
+ * every part must have exactly the given number of digits and be in its valid
+ * range, so that for example {@code "2010-24-12 23:59"} is rejected instead of
+ * being rolled over into 2011.
+ *
+ * <p>The parser is thread-safe without any locking. Expiration dates tend to
+ * repeat a lot within a feed, so recently parsed dates are kept in a small
+ * cache. Since {@link DateTime} is immutable, the same instance is returned for
+ * the same input. Apart from creating the {@link DateTime} and its cache entry
+ * when a date is seen for the first time, parsing does not create any objects.
+ */
+final class CsvDateParser {
+  /** The length of a date in the format {@code "yyyy-MM-dd HH:mm"}. */
+  private static final int LENGTH = 16;
+
+  /** The number of cached dates. Must be a power of two. */
+  private static final int CACHE_SIZE = 256;
+
+  private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+  private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+  private final TimeZone zone;
+
+  /**
+   * The cache, indexed by a hash of the key. Entries are immutable, so they
+   * can be replaced and read by several threads without synchronization; a
+   * thread either sees a complete entry or none.
+   */
+  private final CacheEntry[] cache = new CacheEntry[CACHE_SIZE];
+
+  /**
+   * Creates a parser for dates in the given time zone.
+   *
+   * @param zone The time zone of the dates
+   */
+  CsvDateParser(TimeZone zone) {
+    this.zone = (TimeZone) zone.clone();
+  }
+
+  /**
+   * Parses the given bytes, which must be ASCII, as a date.
+   *
+   * @param input The buffer containing the date
+   * @param start The position of the first character
+   * @param end The position after the last character
+   * @return The parsed date, or {@code null} if it is not a valid date
+   */
+  DateTime parse(byte[] input, int start, int end) {
+    if (end - start != LENGTH) {
+      return null;
+    }
+    long key = 0;
+    for (int i = 0; i < LENGTH; i++) {
+      key = addCharacter(key, i, input[start + i]);
+      if (key < 0) {
+        return null;
+      }
+    }
+    return lookUp(key);
+  }
+
+  /**
+   * Parses the given string as a date.
+   *
+   * @param input The date
+   * @return The parsed date, or {@code null} if it is not a valid date
+   */
+  DateTime parse(String input) {
+    if (input.length() != LENGTH) {
+      return null;
+    }
+    long key = 0;
+    for (int i = 0; i < LENGTH; i++) {
+      key = addCharacter(key, i, input.charAt(i));
+      if (key < 0) {
+        return null;
+      }
+    }
+    return lookUp(key);
+  }
+
+  /**
+   * Checks the character at the given position of the format and, if it is a
+   * digit, appends it to the key. The key is the date with all separators
+   * removed, read as a decimal number ({@code yyyyMMddHHmm}).
+   *
+   * @return the new key, or -1 if the character is not allowed at this
+   *   position
+   */
+  private static long addCharacter(long key, int position, int c) {
+    switch (position) {
+      case 4:
+      case 7:
+        return c == '-' ? key : -1;
+      case 10:
+        return c == ' ' ? key : -1;
+      case 13:
+        return c == ':' ? key : -1;
+      default:
+        return c >= '0' && c <= '9' ? key * 10 + (c - '0') : -1;
+    }
+  }
+
+  private DateTime lookUp(long key) {
+    int index = (int) ((key ^ (key >>> 20)) * 0x9E3779B9L >>> 24) & (CACHE_SIZE - 1);
+    CacheEntry entry = cache[index];
+    if (entry != null && entry.key == key) {
+      return entry.value;
+    }
+    DateTime value = toDateTime(key);
+    if (value != null) {
+      cache[index] = new CacheEntry(key, value);
+    }
+    return value;
+  }
+
+  /**
+   * Validates the parts of the given key and converts it to a point in time.
+   *
+   * @return the date, or {@code null} if one of the parts is out of range
+   */
+  private DateTime toDateTime(long key) {
+    int minute = (int) (key % 100);
+    int hour = (int) (key / 100 % 100);
+    int day = (int) (key / 10000 % 100);
+    int month = (int) (key / 1000000 % 100);
+    int year = (int) (key / 100000000);
+    if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+        || hour > 23 || minute > 59) {
+      return null;
+    }
+    long localMillis = daysSinceEpoch(year, month, day) * MILLIS_PER_DAY
+        + (hour * 60 + minute) * MILLIS_PER_MINUTE;
+    // the offset depends on the point in time, which depends on the offset
+    int offset = zone.getOffset(localMillis - zone.getRawOffset());
+    offset = zone.getOffset(localMillis - offset);
+    // no time zone shift, like new DateTime(Date), so that the date is still sent in UTC
+    return new DateTime(localMillis - offset);
+  }
+
+  private static int daysInMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        boolean leapYear = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+        return leapYear ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /**
+   * Returns the number of days between 1970-01-01 and the given date of the
+   * proleptic Gregorian calendar.
+   */
+  private static long daysSinceEpoch(int year, int month, int day) {
+    // count years from March, so that the leap day is the last day of a year
+    long y = month <= 2 ? year - 1 : year;
+    long era = Math.floorDiv(y, 400);
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+
+  /**
+   * An immutable cache entry.
+   */
+  private static final class CacheEntry {
+    final long key;
+    final DateTime value;
+
+    CacheEntry(long key, DateTime value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,624 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.util.DateTime;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>Splits UTF-8 encoded CSV records into fields without creating any
+ * objects. The tokenizer is a state machine that is fed the raw bytes of the
+ * input with {@link #feed} and looks at every byte exactly once. It copies the
+ * contents of the fields, without separators and quotes, into a reusable record
+ * buffer, and strings or numbers are only created for the fields that are
+ * actually requested.
+ *
+ * <p>Quoting follows RFC 4180:
+ * <ul>
+ *   <li>A field that starts with {@code '"'} is quoted. It may contain the
+ *       separator, line breaks and quotes, which are escaped by doubling them
+ *       ({@code ""}). A quote that is not escaped, but is not followed by the
+ *       separator or a line break either, is kept as an ordinary character, so
+ *       that fields like {@code "15.6" display"} are accepted as well.</li>
+ *   <li>A {@code '"'} anywhere else is an ordinary character, so unquoted
+ *       fields like {@code 24" monitor} are accepted as well.</li>
+ *   <li>A record ends with a {@code "\n"} or {@code "\r\n"} outside of
+ *       quotes. A record may therefore span several physical lines; their
+ *       number is available from {@link #getLineBreaks()}.</li>
+ * </ul>
+ * For input without quotes, the fields are the same as those produced by
+ * {@code Pattern.split(line, -1)}. {@link #getTrimmedString} trims exactly like
+ * {@link String#trim()}. Since UTF-8 encodes all characters up to {@code ' '}
+ * as single bytes and never uses such bytes within other characters, this can
+ * be done on the bytes directly.
+ *
+ * <p>Instances are not thread-safe; every parsing thread needs its own one.
+ */
+final class CsvFieldTokenizer {
+  /**
+   * Maximum number of digits of a decimal number that is parsed without
+   * creating a string first. 18 digits always fit into a {@code long}.
+   */
+  private static final int MAX_FAST_DIGITS = 18;
+
+  /** At the beginning of a field. */
+  private static final int FIELD_START = 0;
+  /** Inside an unquoted field, or after the closing quote of a quoted one. */
+  private static final int UNQUOTED = 1;
+  /** Inside a quoted field. */
+  private static final int QUOTED = 2;
+  /** Inside a quoted field, directly after a quote that is not escaped yet. */
+  private static final int QUOTE_SEEN = 3;
+
+  private final byte[] separator;
+
+  /**
+   * Whether the contents of the fields are kept. A tokenizer that does not
+   * keep them only finds the ends of the records.
+   */
+  private final boolean keepContents;
+
+  /**
+   * Whether the contents of the field at each position are kept, or
+   * {@code null} if all are kept.
+   */
+  private boolean[] columnMask;
+
+  /**
+   * Whether the contents of the current field are kept.
+   */
+  private boolean keepField;
+
+  /**
+   * The buffer the tokenizer copies the contents of the fields to.
+   */
+  private byte[] ownBuffer = new byte[1024];
+
+  /**
+   * The buffer containing the contents of the current record: either
+   * {@code ownBuffer}, or a buffer given to {@link #setRecord}.
+   */
+  private byte[] record = ownBuffer;
+
+  /**
+   * Position of the first field of the current record in {@code record}.
+   */
+  private int recordStart;
+
+  /**
+   * The end of the contents written to {@code ownBuffer} so far.
+   */
+  private int length;
+
+  /**
+   * The end positions of the fields. Fields are stored back to back, so each
+   * field starts where the previous one ends.
+   */
+  private int[] ends = new int[32];
+  private int fieldCount;
+
+  private int state;
+  private int separatorMatched;
+  private boolean pendingCarriageReturn;
+  private boolean anythingFed;
+  private int lineBreaks;
+
+  /** The result of the last successful {@link #parsePlainDecimal(int)}. */
+  private long plainUnscaledValue;
+  private int plainScale;
+
+  /**
+   * Creates a tokenizer for the given separator.
+   *
+   * @param separator The string used as a separator in the CSV
+   * @throws IllegalArgumentException if the separator is empty
+   */
+  CsvFieldTokenizer(String separator) {
+    this(separator, true);
+  }
+
+  /**
+   * Creates a tokenizer for the given separator.
+   *
+   * @param separator The string used as a separator in the CSV
+   * @param keepContents Whether the contents of the fields should be kept.
+   *   If not, the tokenizer only finds the ends of the records.
+   * @throws IllegalArgumentException if the separator is empty or contains a
+   *   quote or a line break
+   */
+  CsvFieldTokenizer(String separator, boolean keepContents) {
+    this.separator = separator.getBytes(StandardCharsets.UTF_8);
+    if (this.separator.length == 0) {
+      throw new IllegalArgumentException("separator must not be empty");
+    }
+    for (byte b : this.separator) {
+      if (b == '"' || b == '\n' || b == '\r') {
+        throw new IllegalArgumentException("separator must not contain quotes or line breaks");
+      }
+    }
+    this.keepContents = keepContents;
+    reset();
+  }
+
+  /**
+   * Restricts the fields whose contents are kept. The other fields are still
+   * counted, but appear to be empty, so skipping them costs nothing but
+   * looking at their bytes.
+   *
+   * @param columnMask Whether the contents of the field at each position are
+   *   kept, or {@code null} to keep all of them. Fields after the end of the
+   *   array are not kept.
+   */
+  void setColumnMask(boolean[] columnMask) {
+    this.columnMask = columnMask;
+    reset();
+  }
+
+  private boolean isKept(int field) {
+    return keepContents
+        && (columnMask == null || (field < columnMask.length && columnMask[field]));
+  }
+
+  /**
+   * Prepares the tokenizer for the next record.
+   */
+  void reset() {
+    record = ownBuffer;
+    recordStart = 0;
+    length = 0;
+    fieldCount = 0;
+    state = FIELD_START;
+    separatorMatched = 0;
+    pendingCarriageReturn = false;
+    anythingFed = false;
+    lineBreaks = 0;
+    keepField = isKept(0);
+  }
+
+  /**
+   * Feeds bytes of the input to the tokenizer until the end of the current
+   * record has been reached.
+   *
+   * @param input The buffer containing the input
+   * @param position The position of the first byte to be fed
+   * @param limit The position after the last byte to be fed
+   * @return the position after the line break ending the record, or -1 if all
+   *   bytes have been fed without reaching the end of the record
+   */
+  int feed(byte[] input, int position, int limit) {
+    if (position < limit) {
+      anythingFed = true;
+    }
+    for (int i = position; i < limit; i++) {
+      byte b = input[i];
+      switch (state) {
+        case QUOTED:
+          if (b == '"') {
+            state = QUOTE_SEEN;
+          } else {
+            if (b == '\n') {
+              lineBreaks++;
+            }
+            append(b);
+          }
+          break;
+        case QUOTE_SEEN:
+          if (b == '"') {
+            // escaped quote
+            append(b);
+            state = QUOTED;
+            break;
+          }
+          if (b != separator[0] && b != '\n' && b != '\r') {
+            // a single quote that does not end the field is kept as it is
+            append((byte) '"');
+            append(b);
+            state = QUOTED;
+            break;
+          }
+          state = UNQUOTED;
+          if (unquotedByte(b)) {
+            return i + 1;
+          }
+          break;
+        case FIELD_START:
+          if (b == '"') {
+            state = QUOTED;
+            break;
+          }
+          state = UNQUOTED;
+          if (unquotedByte(b)) {
+            return i + 1;
+          }
+          break;
+        default:
+          if (unquotedByte(b)) {
+            return i + 1;
+          }
+          break;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Handles a byte outside of quotes.
+   *
+   * @return {@code true} if the byte ended the record
+   */
+  private boolean unquotedByte(byte b) {
+    if (b == '\n') {
+      if (pendingCarriageReturn && keepField) {
+        length--;
+      }
+      endField();
+      lineBreaks++;
+      return true;
+    }
+    pendingCarriageReturn = b == '\r';
+    if (b == separator[separatorMatched]) {
+      separatorMatched++;
+      if (separatorMatched == separator.length) {
+        // drop the part of the separator that has already been appended
+        if (keepField) {
+          length -= separator.length - 1;
+        }
+        separatorMatched = 0;
+        endField();
+        state = FIELD_START;
+        return false;
+      }
+    } else {
+      separatorMatched = b == separator[0] ? 1 : 0;
+    }
+    append(b);
+    return false;
+  }
+
+  private void append(byte b) {
+    if (!keepField) {
+      return;
+    }
+    if (length == ownBuffer.length) {
+      byte[] newBuffer = new byte[ownBuffer.length * 2];
+      System.arraycopy(ownBuffer, 0, newBuffer, 0, length);
+      ownBuffer = newBuffer;
+      record = ownBuffer;
+    }
+    ownBuffer[length++] = b;
+  }
+
+  private void endField() {
+    pendingCarriageReturn = false;
+    separatorMatched = 0;
+    if (!keepContents) {
+      fieldCount++;
+      return;
+    }
+    if (fieldCount == ends.length) {
+      int[] newEnds = new int[ends.length * 2];
+      System.arraycopy(ends, 0, newEnds, 0, fieldCount);
+      ends = newEnds;
+    }
+    ends[fieldCount++] = length;
+    keepField = isKept(fieldCount);
+  }
+
+  /**
+   * Splits a single line, without its line break, into fields. Quotes are
+   * handled, but the line is always treated as a complete record.
+   *
+   * @param line The buffer containing the line
+   * @param offset The position of the line in the buffer
+   * @param length The length of the line
+   */
+  void tokenize(byte[] line, int offset, int length) {
+    reset();
+    // even an empty line is a record with one empty field
+    anythingFed = true;
+    feed(line, offset, offset + length);
+    finish();
+  }
+
+  /**
+   * Ends the current record at the end of the input, if it has not been ended
+   * by a line break.
+   *
+   * @return {@code true} if there was a record, {@code false} if no bytes have
+   *   been fed since the last record
+   */
+  boolean finish() {
+    if (!anythingFed) {
+      return false;
+    }
+    if (state != QUOTED) {
+      // an unterminated quoted field is kept, see hasUnterminatedQuote()
+      state = UNQUOTED;
+    }
+    endField();
+    return true;
+  }
+
+  /**
+   * Returns whether the current record ended inside a quoted field, which
+   * can only happen at the end of the input.
+   */
+  boolean hasUnterminatedQuote() {
+    return state == QUOTED;
+  }
+
+  /**
+   * Returns the number of line breaks consumed by the current record,
+   * including the one ending it.
+   */
+  int getLineBreaks() {
+    return lineBreaks;
+  }
+
+  /**
+   * Makes the tokenizer read the fields of a record that has been tokenized
+   * before, and whose contents have been copied with {@link #copyTo}.
+   *
+   * @param data The buffer containing the contents of the fields
+   * @param start The position of the first field in {@code data}
+   * @param fieldEnds Array containing the end positions of the fields in
+   *   {@code data}
+   * @param firstField The index of the first field in {@code fieldEnds}
+   * @param count The number of fields
+   * @param unterminatedQuote Whether the record ended inside a quoted field
+   */
+  void setRecord(byte[] data, int start, int[] fieldEnds, int firstField, int count,
+      boolean unterminatedQuote) {
+    reset();
+    if (count > ends.length) {
+      ends = new int[Math.max(count, ends.length * 2)];
+    }
+    System.arraycopy(fieldEnds, firstField, ends, 0, count);
+    record = data;
+    recordStart = start;
+    fieldCount = count;
+    if (unterminatedQuote) {
+      state = QUOTED;
+    }
+  }
+
+  /**
+   * Returns the number of bytes of the contents of the current record.
+   */
+  int getContentLength() {
+    return fieldCount == 0 ? 0 : ends[fieldCount - 1] - recordStart;
+  }
+
+  /**
+   * Copies the contents of the current record to the given buffer, which must
+   * be large enough, and stores the end positions of its fields, relative to
+   * the buffer, in the given array.
+   *
+   * @param data The buffer to copy the contents to
+   * @param offset The position in {@code data} to copy the contents to
+   * @param fieldEnds The array to store the end positions of the fields in
+   * @param firstField The index in {@code fieldEnds} for the first field
+   */
+  void copyTo(byte[] data, int offset, int[] fieldEnds, int firstField) {
+    System.arraycopy(record, recordStart, data, offset, getContentLength());
+    for (int i = 0; i < fieldCount; i++) {
+      fieldEnds[firstField + i] = ends[i] - recordStart + offset;
+    }
+  }
+
+  /**
+   * Returns the number of fields of the current record.
+   */
+  int getFieldCount() {
+    return fieldCount;
+  }
+
+  private int start(int field) {
+    return field == 0 ? recordStart : ends[field - 1];
+  }
+
+  /**
+   * Returns the current record as a string, with the fields joined by the
+   * separator. Only meant for error reporting.
+   */
+  String getLineAsString() {
+    String separatorString = new String(separator, StandardCharsets.UTF_8);
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < fieldCount; i++) {
+      if (i > 0) {
+        line.append(separatorString);
+      }
+      line.append(getRawString(i));
+    }
+    return line.toString();
+  }
+
+  /**
+   * Returns whether the given field is empty (before trimming).
+   */
+  boolean isEmpty(int field) {
+    return start(field) == ends[field];
+  }
+
+  /**
+   * Returns the given field as it is, without trimming.
+   */
+  String getRawString(int field) {
+    int start = start(field);
+    return new String(record, start, ends[field] - start, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the given field with leading and trailing whitespace removed, like
+   * {@link String#trim()}.
+   */
+  String getTrimmedString(int field) {
+    int start = trimmedStart(field);
+    return new String(record, start, trimmedEnd(field, start) - start, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the given field, trimmed, as a canonical string from the given
+   * pool, or as a new string if the pool is {@code null}.
+   */
+  String getCanonicalString(int field, CsvStringPool pool, CsvColumnPlan.Column column) {
+    if (pool == null) {
+      return getTrimmedString(field);
+    }
+    int start = trimmedStart(field);
+    return pool.get(record, start, trimmedEnd(field, start), column);
+  }
+
+  private int trimmedStart(int field) {
+    int start = start(field);
+    int end = ends[field];
+    while (start < end && isWhitespace(record[start])) {
+      start++;
+    }
+    return start;
+  }
+
+  private int trimmedEnd(int field, int trimmedStart) {
+    int end = ends[field];
+    while (end > trimmedStart && isWhitespace(record[end - 1])) {
+      end--;
+    }
+    return end;
+  }
+
+  /**
+   * Returns whether the byte is one of the characters removed by
+   * {@link String#trim()}. Bytes of multi-byte characters are negative.
+   */
+  private static boolean isWhitespace(byte b) {
+    return b >= 0 && b <= ' ';
+  }
+
+  /**
+   * Parses the given field, trimmed, like {@code new BigDecimal(String)}.
+   * Plain decimal numbers of up to 18 digits are parsed without creating a
+   * string.
+   *
+   * @throws NumberFormatException if the field is not a valid decimal number
+   */
+  BigDecimal getDecimal(int field) {
+    if (parsePlainDecimal(field)) {
+      return BigDecimal.valueOf(plainUnscaledValue, plainScale);
+    }
+    // exponents, very long numbers and invalid input take the slow path
+    return new BigDecimal(getTrimmedString(field));
+  }
+
+  /**
+   * Parses the given field like {@link #getDecimal(int)} and stores it in the
+   * row being filled of the given batch. Plain decimal numbers of up to 18
+   * digits are stored without creating any objects.
+   *
+   * @throws NumberFormatException if the field is not a valid decimal number
+   */
+  void getDecimal(int field, ColumnarProductBatch batch, CsvColumnPlan.Column column) {
+    if (parsePlainDecimal(field)) {
+      batch.setDecimal(column, plainUnscaledValue, plainScale);
+    } else {
+      batch.setDecimal(column, new BigDecimal(getTrimmedString(field)));
+    }
+  }
+
+  /**
+   * Parses the given field, trimmed, if it is a plain decimal number of up
+   * to 18 digits, storing it in {@link #plainUnscaledValue} and
+   * {@link #plainScale}.
+   *
+   * @return whether the field is such a number
+   */
+  private boolean parsePlainDecimal(int field) {
+    int start = trimmedStart(field);
+    int end = trimmedEnd(field, start);
+    int i = start;
+    boolean negative = false;
+    if (i < end && (record[i] == '-' || record[i] == '+')) {
+      negative = record[i] == '-';
+      i++;
+    }
+    long unscaled = 0;
+    int digits = 0;
+    int scale = -1;
+    for (; i < end; i++) {
+      byte b = record[i];
+      if (b >= '0' && b <= '9') {
+        unscaled = unscaled * 10 + (b - '0');
+        digits++;
+        if (scale >= 0) {
+          scale++;
+        }
+      } else if (b == '.' && scale < 0) {
+        scale = 0;
+      } else {
+        break;
+      }
+    }
+    if (i < end || digits == 0 || digits > MAX_FAST_DIGITS) {
+      return false;
+    }
+    plainUnscaledValue = negative ? -unscaled : unscaled;
+    plainScale = scale < 0 ? 0 : scale;
+    return true;
+  }
+
+  /**
+   * Parses the given field, trimmed, with the given date parser.
+   *
+   * @return the date, or {@code null} if the field is not a valid date
+   */
+  DateTime getDate(int field, CsvDateParser parser) {
+    int start = trimmedStart(field);
+    return parser.parse(record, start, trimmedEnd(field, start));
+  }
+
+  /**
+   * Parses the given field, untrimmed, like
+   * {@code new BigInteger(String).intValue()}. Numbers of up to 18 digits are
+   * parsed without creating a string.
+   *
+   * @throws NumberFormatException if the field is not a valid integer
+   */
+  int getInt(int field) {
+    int end = ends[field];
+    int i = start(field);
+    boolean negative = false;
+    if (i < end && (record[i] == '-' || record[i] == '+')) {
+      negative = record[i] == '-';
+      i++;
+    }
+    int firstDigit = i;
+    long value = 0;
+    for (; i < end; i++) {
+      byte b = record[i];
+      if (b < '0' || b > '9') {
+        break;
+      }
+      value = value * 10 + (b - '0');
+    }
+    if (i < end || i == firstDigit || i - firstDigit > MAX_FAST_DIGITS) {
+      return new BigInteger(getRawString(field)).intValue();
+    }
+    return (int) (negative ? -value : value);
+  }
+}
@@ -16,30 +16,35 @@
 
 package com.google.api.client.sample.structuredcontent.batchinsert;
 
-import com.google.api.client.sample.structuredcontent.model.Content;
-import com.google.api.client.sample.structuredcontent.model.Link;
-import com.google.api.client.sample.structuredcontent.model.Price;
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvColumnPlan.Column;
+import com.google.api.client.sample.structuredcontent.batchinsert.MultiThreadingAndBatchingExample.BatchError;
 import com.google.api.client.sample.structuredcontent.model.Product;
-import com.google.api.client.sample.structuredcontent.model.ShippingWeight;
 import com.google.api.client.util.DateTime;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.BigInteger;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TimeZone;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- * <p>This class reads and parses product data stored as CSV in the
- * following format (newlines inserted for readability, ';' used as field
- * delimiter):<br/>
+ * <p>This class reads and parses product data stored as CSV. If the header
+ * line is read with {@link #readHeaderLine()} and names the columns, the
+ * columns are recognized by their names and may be in any order; see
+ * {@link CsvColumnPlan} for the supported attributes. Otherwise, the columns
+ * are expected in the following format (newlines inserted for readability,
+ * ';' used as field delimiter):<br/>
  * [ID];<br/>
  * [content language];[target country];<br/>
  * [title];<br/>
@@ -58,8 +63,10 @@ import java.util.regex.Pattern;
  *
  * <p>The field separator to be used is given to the constructor together
  * with the {@link BufferedReader} from which the CSV lines will be retrieved.
- * It may not appear within any of the fields. (For example, if ';' is used as
- * separator, the description must not contain any ';'.)
+ * Fields may be quoted as described in RFC 4180, so that they can contain the
+ * separator and quotes (see {@link CsvFieldTokenizer}). When reading from an
+ * {@link InputStream}, quoted fields may even contain line breaks; when
+ * reading from a {@link BufferedReader}, every line is one record.
  *
  * <p>Any optional fields will be omitted from the insert request if
  * they are empty.
@@ -69,11 +76,69 @@ import java.util.regex.Pattern;
  * once. (Unless the product appears more than once in the underlying CSV; In
  * that case, it will be returned as often as it appears there.) 
  *
+ * <p>Parsing errors are recorded together with the number of the line
+ * in which they occurred. Lines are counted from 1, including the header line
+ * if it has been read with {@link #readHeaderLine()}. For records spanning
+ * several lines, this is the line the record starts on. The errors are
+ * recorded in a {@link ParsingErrorSink}, which only keeps a sample of them in
+ * memory; if the sink reports that too many records could not be parsed, the
+ * intake is stopped as with {@link #stopIntake()}.
+ *
+ * <p>If a {@link ProductValidator} has been set, every product is checked
+ * right after it has been parsed, on the thread parsing it, and the products
+ * it rejects are left out like records that cannot be parsed.
+ *
+ * <p>Records are parsed straight into {@link ColumnarProductBatch}es, see
+ * {@link #getNextBatch(int)}; {@link Product}s are created from them only
+ * for the methods that return products.
+ *
  * @author Birgit Vera Schmidt
  */
-public class CsvInputAdapter {
+public class CsvInputAdapter implements ColumnarInputAdapter {
   private final BufferedReader input;
-  private final Pattern separator;
+
+  /**
+   * The reader for raw UTF-8 records, if the adapter reads from an
+   * {@link InputStream} instead of a {@link BufferedReader}.
+   */
+  private final CsvRecordReader recordReader;
+
+  /**
+   * The string used as a separator in the CSV.
+   */
+  private final String separatorString;
+
+  /**
+   * The tokenizer used by {@link #getNextProduct()} and
+   * {@link #getNextBatch(int)}.
+   */
+  private final CsvFieldTokenizer tokenizer;
+
+  /**
+   * The batch {@link #getNextProduct()} parses into, reused for every product.
+   */
+  private ColumnarProductBatch singleProductBatch;
+
+  /**
+   * Tells which column holds which attribute. It is compiled from the header
+   * line by {@link #readHeaderLine()}; without a header, the columns are
+   * expected in the order described above.
+   */
+  private volatile CsvColumnPlan columnPlan = CsvColumnPlan.POSITIONAL;
+
+  /**
+   * The pool of canonical strings for fields with few distinct values, or
+   * {@code null} if these strings are not shared across batches.
+   */
+  private volatile CsvStringPool stringPool
+      = new CsvStringPool(CsvStringPool.DEFAULT_CAPACITY);
+
+  /**
+   * The lock held while reading from the input. It is not the adapter's
+   * monitor, so that a virtual thread waiting for the input does not pin its
+   * carrier thread.
+   */
+  private final ReentrantLock inputLock = new ReentrantLock();
 
   /**
    * The user's homepage.
@@ -81,16 +146,42 @@ public class CsvInputAdapter {
   private final String homepage;
   
   /**
-   * The parser used for date formats.
+   * The parser used for dates. It is thread-safe.
+   */
+  private static final CsvDateParser dateParser = new CsvDateParser(TimeZone.getDefault());
+
+  /**
+   * The sink parsing errors are recorded in.
+   */
+  private volatile ParsingErrorSink errorSink = new ParsingErrorSink();
+
+  /**
+   * The validator products are checked with after they have been parsed, or
+   * {@code null} for not checking them.
+   */
+  private volatile ProductValidator validator;
+
+  /**
+   * The collection the errors of the products rejected by the validator are
+   * added to, or {@code null} for not recording them.
+   */
+  private volatile Collection<BatchError> rejectedProducts;
+
+  /**
+   * The number of lines read from {@code input} so far.
+   */
+  private long linesRead = 0;
+
+  /**
+   * The checkpoint tracking which records have been acknowledged, or
+   * {@code null}.
    */
-  private static final DateFormat dateFormat8601 =
-      new SimpleDateFormat("yyyy-MM-dd HH:mm", java.util.Locale.US);
+  private volatile CsvCheckpoint checkpoint;
 
   /**
-   * A list where parsing errors should be added to. If it is {@code null},
-   * these errors will not be recorded.
+   * Whether {@link #stopIntake()} has been called.
    */
-  private final Collection<CsvInputAdapter.ParsingError> parsingErrorList;
+  private volatile boolean intakeStopped = false;
 
   /**
    * Simple constructor for setting up the input reader and the separator string.
@@ -113,12 +204,46 @@ public class CsvInputAdapter {
    *   as a prefix for all homepage links.
    */
   public CsvInputAdapter(BufferedReader input, String separator, String homepage) {
+    this(input, null, separator, homepage);
+  }
+
+  /**
+   * Constructor for reading UTF-8 encoded CSV records from a stream. The records
+   * are split into fields on the raw bytes, which is faster and creates much
+   * less garbage than decoding them first. Fields may be quoted.
+   *
+   * @param input An input stream that will return UTF-8 encoded CSV records
+   *   containing exactly one product per record
+   * @param separator The string used as a separator in the CSV
+   * @param homepage The user's registered homepage. This homepage will be used
+   *   as a prefix for all homepage links.
+   */
+  public CsvInputAdapter(InputStream input, String separator, String homepage) {
+    this(null, new CsvRecordReader(input), separator, homepage);
+  }
+
+  private CsvInputAdapter(BufferedReader input, CsvRecordReader recordReader, String separator,
+      String homepage) {
     this.input = input;
-    this.separator = Pattern.compile(Pattern.quote(separator));
+    this.recordReader = recordReader;
+    this.separatorString = separator;
+    this.tokenizer = newTokenizer();
     
     this.homepage = (homepage == null ? "" : homepage);
-    this.parsingErrorList = Collections.synchronizedCollection(
-        new ArrayList<ParsingError>());
+    this.singleProductBatch = newBatch(1);
+  }
+
+  /**
+   * Constructor for subclasses that do not read their input through a
+   * {@link BufferedReader}. Such subclasses have to override
+   * {@link #getNextProduct()} and {@link #getNextProducts(int)}.
+   *
+   * @param separator The string used as a separator in the CSV
+   * @param homepage The user's registered homepage. This homepage will be used
+   *   as a prefix for all homepage links.
+   */
+  protected CsvInputAdapter(String separator, String homepage) {
+    this(null, null, separator, homepage);
   }
 
   /**
@@ -127,51 +252,511 @@ public class CsvInputAdapter {
    * @return A product, or {@code null} if no more products are available
    * @throws IOException if anything went wrong during reading the product
    */
-  public synchronized Product getNextProduct() throws IOException {
-    while (true) {
-      String line = input.readLine();
-      if (line != null) {
-        try {
-          return parseProduct(line);
-        } catch (ParsingError e) {
-          parsingErrorList.add(e);
+  public Product getNextProduct() throws IOException {
+    inputLock.lock();
+    try {
+      ColumnarProductBatch batch = singleProductBatch;
+      batch.clear();
+      while (batch.size() == 0) {
+        long lineNumber = readRecord();
+        if (lineNumber < 0) {
+          return null;
         }
-      } else {
-        return null;
+        parseRecordOrRecordError(tokenizer, lineNumber, batch);
       }
+      return batch.toProduct(0);
+    } finally {
+      inputLock.unlock();
+    }
+  }
+
+  /**
+   * Reads the next record into the tokenizer.
+   *
+   * @return the number of the line the record starts on, or -1 if the end of
+   *   the input has been reached
+   * @throws IOException if anything went wrong during reading the record
+   */
+  private long readRecord() throws IOException {
+    if (recordReader != null) {
+      return recordReader.readRecord(tokenizer) ? recordReader.getRecordLineNumber() : -1;
     }
+    String line = readLine();
+    if (line == null) {
+      return -1;
+    }
+    tokenize(tokenizer, line);
+    return linesRead;
   }
   
   /**
-   * Parses and returns the next up to {@code maxNumOfProducts} products.
+   * Parses and returns the next up to {@code maxNumOfProducts} products. If a
+   * checkpoint is tracked, the products have to be passed to
+   * {@link #acknowledge(List)} once they have been sent.
    *
    * @return A list of products, containing the next {@code maxNumOfProducts} if
    *   that many products were still available, or as many products as were
    *   available otherwise. In particular it returns an empty list if no more
-   *   products are available.
+   *   products are available, or if {@link #stopIntake()} has been called.
    * @throws IOException if anything went wrong during reading the products
    */
-  public synchronized List<Product> getNextProducts(int maxNumOfProducts) throws IOException {
-    List<Product> products = new ArrayList<Product>(maxNumOfProducts);
-    for (int i = 0; i < maxNumOfProducts; i++) {
-      Product nextProduct = getNextProduct();
-      if (nextProduct != null) {
-        products.add(nextProduct);
-      } else {
-        break; // no more products available
+  @Override
+  public List<Product> getNextProducts(int maxNumOfProducts) throws IOException {
+    if (intakeStopped) {
+      return Collections.emptyList();
+    }
+    return getNextBatch(maxNumOfProducts).toProducts();
+  }
+
+  /**
+   * Parses the next up to {@code maxNumOfProducts} records straight into a
+   * batch. If a checkpoint is tracked, the batch has to be passed to
+   * {@link #acknowledge(ColumnarProductBatch)} once it has been sent.
+   *
+   * @return A batch, containing the next {@code maxNumOfProducts} products if
+   *   that many products were still available, or as many products as were
+   *   available otherwise. In particular it is empty if no more products are
+   *   available, or if {@link #stopIntake()} has been called.
+   * @throws IOException if anything went wrong during reading the products
+   */
+  @Override
+  public ColumnarProductBatch getNextBatch(int maxNumOfProducts) throws IOException {
+    ColumnarProductBatch batch = newBatch(maxNumOfProducts);
+    if (intakeStopped) {
+      return batch;
+    }
+    inputLock.lock();
+    try {
+      long startLines = getNumberOfLinesRead();
+      long startOffset = getOffset();
+      while (batch.size() < maxNumOfProducts) {
+        long lineNumber = readRecord();
+        if (lineNumber < 0) {
+          break; // no more products available
+        }
+        parseRecordOrRecordError(tokenizer, lineNumber, batch);
+      }
+      CsvCheckpoint currentCheckpoint = checkpoint;
+      if (currentCheckpoint != null
+          && (getNumberOfLinesRead() > startLines || getOffset() > startOffset)) {
+        batch.range = currentCheckpoint.register(startLines, getNumberOfLinesRead(),
+            getOffset(), batch.size());
+      }
+      return batch;
+    } finally {
+      inputLock.unlock();
+    }
+  }
+
+  /**
+   * Records that the given products, as returned by
+   * {@link #getNextProducts(int)}, have been sent to the server successfully.
+   * Does nothing if no checkpoint is tracked.
+   *
+   * @param products The products
+   */
+  @Override
+  public void acknowledge(List<Product> products) {
+    if (products instanceof ProductBatch) {
+      ProductBatch batch = (ProductBatch) products;
+      if (batch.range != null) {
+        checkpoint.acknowledge(batch.range, batch.size());
+      }
+    }
+  }
+
+  /**
+   * Records that the products of the given batch, as returned by
+   * {@link #getNextBatch(int)}, have been sent to the server successfully.
+   * Does nothing if no checkpoint is tracked.
+   *
+   * @param batch The batch
+   */
+  @Override
+  public void acknowledge(ColumnarProductBatch batch) {
+    if (batch.range != null) {
+      checkpoint.acknowledge(batch.range, batch.size());
+    }
+  }
+
+  /**
+   * Makes {@link #getNextProducts(int)} return no more products, so that the
+   * worker threads finish the batches they are sending and then stop, e.g.
+   * when the program is shutting down.
+   */
+  @Override
+  public void stopIntake() {
+    intakeStopped = true;
+  }
+
+  /**
+   * Returns whether {@link #stopIntake()} has been called.
+   */
+  protected boolean isIntakeStopped() {
+    return intakeStopped;
+  }
+
+  /**
+   * Tracks the acknowledged records in the given checkpoint from now on. If
+   * the checkpoint has been loaded for resuming a run, the records it has
+   * committed are skipped, by seeking over them if the adapter reads from an
+   * {@link InputStream}, and the records it has acknowledged after that are
+   * not parsed again. Must be called after {@link #readHeaderLine()} and
+   * before any products are retrieved.
+   *
+   * @param checkpoint The checkpoint
+   * @throws IOException if seeking failed
+   */
+  void setCheckpoint(CsvCheckpoint checkpoint) throws IOException {
+    inputLock.lock();
+    try {
+      if (recordReader != null && checkpoint.getResumedOffset() > recordReader.getOffset()) {
+        recordReader.skipTo(checkpoint.getResumedOffset(), checkpoint.getResumedLines());
       }
+      startTracking(checkpoint, getNumberOfLinesRead(), getOffset());
+    } finally {
+      inputLock.unlock();
     }
-    return products;
+  }
+
+  /**
+   * Tracks the acknowledged records in the given checkpoint, starting at the
+   * given position.
+   *
+   * @param checkpoint The checkpoint
+   * @param lines The number of lines before the next record
+   * @param offset The byte offset of the next record, or -1 if it is not known
+   */
+  void startTracking(CsvCheckpoint checkpoint, long lines, long offset) {
+    checkpoint.begin(lines, offset);
+    this.checkpoint = checkpoint;
+  }
+
+  /**
+   * Returns the checkpoint tracking the acknowledged records, or {@code null}.
+   */
+  CsvCheckpoint getCheckpoint() {
+    return checkpoint;
   }
   
   /**
-   * Returns a list of parsing errors that occurred during the processing of
-   * the input file.
+   * Reads the next raw CSV line from the underlying reader. When reading from
+   * an {@link InputStream}, this is the next record, with quotes removed and
+   * the fields joined by the separator. This method does not lock the input;
+   * callers are responsible for making sure that only one thread reads at a
+   * time.
+   *
+   * @return The next line, or {@code null} if the end of the input has been
+   *   reached
+   * @throws IOException if anything went wrong during reading the line
+   */
+  protected String readLine() throws IOException {
+    if (recordReader != null) {
+      return recordReader.readRecord(tokenizer) ? tokenizer.getLineAsString() : null;
+    }
+    String line = input.readLine();
+    if (line != null) {
+      linesRead++;
+    }
+    return line;
+  }
+
+  /**
+   * Returns the reader for raw UTF-8 records, or {@code null} if this adapter
+   * reads from a {@link BufferedReader}. Like {@link #readLine()}, the reader
+   * must not be used by more than one thread at a time.
+   */
+  CsvRecordReader getRecordReader() {
+    return recordReader;
+  }
+
+  /**
+   * Creates a new tokenizer for splitting raw records of this adapter's input.
+   * It only keeps the contents of the columns used by the current column
+   * plan. Every thread parsing raw records needs its own tokenizer.
+   */
+  CsvFieldTokenizer newTokenizer() {
+    CsvFieldTokenizer newTokenizer = new CsvFieldTokenizer(separatorString);
+    newTokenizer.setColumnMask(columnPlan.getColumnMask());
+    return newTokenizer;
+  }
+
+  /**
+   * Creates an empty batch for the products of this adapter's input, with the
+   * user's homepage as the link prefix.
    *
-   * @return a list of parsing errors that occurred.
+   * @param initialCapacity The number of products expected
    */
+  ColumnarProductBatch newBatch(int initialCapacity) {
+    return new ColumnarProductBatch(initialCapacity, homepage);
+  }
+
+  /**
+   * Splits a line read from the {@link BufferedReader} into fields.
+   */
+  private static void tokenize(CsvFieldTokenizer tokenizer, String line) {
+    byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+    tokenizer.tokenize(bytes, 0, bytes.length);
+  }
+
+  /**
+   * Reads the first line of the input, which contains the column headers, so
+   * that it will not be parsed as a product, and compiles the column plan from
+   * it. Columns are recognized by their names, in any order; columns with
+   * unknown names are skipped. If none of the names is known, the columns are
+   * expected in the order described above. Must be called before any products
+   * are retrieved.
+   *
+   * @return The header line, or {@code null} if the input is empty
+   * @throws IOException if anything went wrong during reading the line, or if
+   *   the header lacks a required column
+   */
+  public String readHeaderLine() throws IOException {
+    inputLock.lock();
+    try {
+      // the header needs all columns, not only those of the current plan
+      tokenizer.setColumnMask(null);
+      String line = readLine();
+      if (line != null) {
+        if (recordReader == null) {
+          tokenize(tokenizer, line);
+        }
+        setColumnPlan(CsvColumnPlan.fromHeader(tokenizer));
+      }
+      tokenizer.setColumnMask(columnPlan.getColumnMask());
+      return line;
+    } finally {
+      inputLock.unlock();
+    }
+  }
+
+  /**
+   * Sets the column plan used for all products parsed from now on.
+   *
+   * @param plan The column plan
+   * @throws IOException if the plan lacks a required column
+   */
+  void setColumnPlan(CsvColumnPlan plan) throws IOException {
+    List<CsvColumnPlan.Column> missing = plan.getMissingRequiredColumns();
+    if (!missing.isEmpty()) {
+      throw new IOException("The header line lacks the required columns " + missing);
+    }
+    columnPlan = plan;
+  }
+
+  /**
+   * Returns the number of lines read from the underlying reader so far,
+   * including the header line.
+   *
+   * @return the number of lines read
+   */
+  protected long getNumberOfLinesRead() {
+    return recordReader != null ? recordReader.getLinesRead() : linesRead;
+  }
+
+  /**
+   * Returns the byte offset of the next record in the underlying stream.
+   *
+   * @return the offset, or -1 if the adapter reads from a
+   *   {@link BufferedReader}
+   */
+  protected long getOffset() {
+    return recordReader != null ? recordReader.getOffset() : -1;
+  }
+
+  /**
+   * Parses the given CSV line. If it cannot be parsed, the error is recorded
+   * in the parsing error sink instead. This method may be called by several
+   * threads at the same time.
+   *
+   * @param line A CSV line describing exactly one product
+   * @param lineNumber The number of the line in the input, for error reporting
+   * @return The parsed product, or {@code null} if the line could not be parsed
+   *   or has already been acknowledged in the checkpoint being resumed
+   */
+  protected Product parseProductOrRecordError(String line, long lineNumber) {
+    if (isAcknowledged(lineNumber)) {
+      return null;
+    }
+    errorSink.countRecord();
+    Product product;
+    try {
+      product = parseProduct(line, lineNumber);
+    } catch (ParsingError e) {
+      recordParsingError(e);
+      return null;
+    }
+    ProductValidator currentValidator = validator;
+    return currentValidator != null && isRejected(currentValidator.check(product))
+        ? null : product;
+  }
+
+  /**
+   * Parses the raw UTF-8 encoded CSV record held by the given tokenizer and
+   * adds the product to the given batch. If it cannot be parsed, the error is
+   * recorded in the parsing error sink instead. This method may be called by
+   * several threads at the same time, as long as each of them uses its own
+   * tokenizer and batch.
+   *
+   * @param tokenizer The tokenizer holding the fields of the record
+   * @param lineNumber The number of the line in the input the record starts on,
+   *   for error reporting
+   * @param batch The batch the product is added to
+   * @return {@code true} if the product has been added, {@code false} if the
+   *   record could not be parsed, the product has been rejected by the
+   *   validator or the record has already been acknowledged in the checkpoint
+   *   being resumed
+   */
+  boolean parseRecordOrRecordError(CsvFieldTokenizer tokenizer, long lineNumber,
+      ColumnarProductBatch batch) {
+    if (isAcknowledged(lineNumber)) {
+      return false;
+    }
+    errorSink.countRecord();
+    try {
+      parseRecord(tokenizer, lineNumber, batch);
+    } catch (ParsingError e) {
+      recordParsingError(e);
+      return false;
+    }
+    ProductValidator currentValidator = validator;
+    if (currentValidator != null
+        && isRejected(currentValidator.check(batch, batch.size() - 1))) {
+      batch.removeLastRow();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Records the error of a product that has been rejected by the validator.
+   *
+   * @param error The error, or {@code null} if the product is valid
+   * @return whether the product has been rejected
+   */
+  private boolean isRejected(BatchError error) {
+    if (error == null) {
+      return false;
+    }
+    Collection<BatchError> currentRejectedProducts = rejectedProducts;
+    if (currentRejectedProducts != null) {
+      currentRejectedProducts.add(error);
+    }
+    return true;
+  }
+
+  /**
+   * Records a parsing error in the sink, and stops the intake if the sink
+   * reports that too many records could not be parsed.
+   */
+  private void recordParsingError(ParsingError e) {
+    if (errorSink.add(e)) {
+      stopIntake();
+    }
+  }
+
+  /**
+   * Returns whether the record starting on the given line has already been
+   * acknowledged in the checkpoint being resumed.
+   */
+  private boolean isAcknowledged(long lineNumber) {
+    CsvCheckpoint currentCheckpoint = checkpoint;
+    return currentCheckpoint != null && currentCheckpoint.isAcknowledged(lineNumber);
+  }
+
+  /**
+   * Returns a stream of all remaining products. Products that cannot be parsed
+   * are skipped and recorded as parsing errors. The stream is sequential; see
+   * {@link MappedCsvInputAdapter} for a parallel one.
+   *
+   * @return a stream of the remaining products
+   */
+  public Stream<Product> stream() {
+    Iterator<Product> iterator = new Iterator<Product>() {
+      private Product next;
+
+      @Override
+      public boolean hasNext() {
+        if (next == null) {
+          try {
+            next = getNextProduct();
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+        return next != null;
+      }
+
+      @Override
+      public Product next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Product product = next;
+        next = null;
+        return product;
+      }
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+        Spliterator.ORDERED | Spliterator.NONNULL), false);
+  }
+
+  /**
+   * Returns how often the values of fields with few distinct values, like the
+   * brand or the condition, could share a string with an earlier product, for
+   * monitoring.
+   *
+   * @return the statistics of the string pool, one line per column
+   */
+  public String getStringPoolStatistics() {
+    CsvStringPool pool = stringPool;
+    return pool != null ? pool.getStatistics() : "";
+  }
+
+  /**
+   * Sets whether the values of fields with few distinct values share strings
+   * across batches, see {@link CsvStringPool}. Within a batch, they are always
+   * stored once. Pooling is on by default; turning it off is only useful for
+   * measuring what it saves (see {@link StringPoolBenchmark}). Must be called
+   * before any products are retrieved.
+   *
+   * @param pooling Whether to share strings across batches
+   */
+  void setStringPooling(boolean pooling) {
+    stringPool = pooling ? new CsvStringPool(CsvStringPool.DEFAULT_CAPACITY) : null;
+  }
+
+  /**
+   * Returns a sample of the parsing errors that occurred during the processing
+   * of the input file. See {@link ParsingErrorSink} for all of them.
+   *
+   * @return the first parsing errors that occurred
+   */
+  @Override
   public Collection<ParsingError> getParsingErrors() {
-    return parsingErrorList;
+    return errorSink.getSample();
+  }
+
+  @Override
+  public void setParsingErrorSink(ParsingErrorSink sink) {
+    errorSink = sink;
+  }
+
+  /**
+   * Sets the validator every product is checked with right after it has been
+   * parsed, so that the products the server would reject anyway are checked
+   * by the threads parsing the records rather than by the threads sending
+   * them. Rejected products are left out; their errors are added to the given
+   * collection, like the errors returned by the server. Must be called before
+   * any products are retrieved.
+   *
+   * @param validator The validator, or {@code null} for not checking products
+   * @param rejectedProducts The thread-safe collection the errors of rejected
+   *   products are added to, or {@code null} for not recording them
+   */
+  void setValidator(ProductValidator validator, Collection<BatchError> rejectedProducts) {
+    this.rejectedProducts = rejectedProducts;
+    this.validator = validator;
   }
   
   /**
@@ -182,190 +767,397 @@ public class CsvInputAdapter {
    * 
    * @param line A CSV line describing exactly one product in the format given
    *   above
+   * @param lineNumber The number of the line in the input, for error reporting
    * @return A product representing the information of the given CSV product
    *   description
    * @throws ParsingError if the product could not be parsed
    */
-  protected Product parseProduct(String line) throws ParsingError {
-    String[] parts = separator.split(line, -1);
+  protected Product parseProduct(String line, long lineNumber) throws ParsingError {
+    CsvFieldTokenizer fields = newTokenizer();
+    tokenize(fields, line);
+    return parseProduct(fields, lineNumber);
+  }
+
+  /**
+   * Does the same as {@link #parseProduct(String, long)}, but for a record that
+   * has already been split by a {@link CsvFieldTokenizer}.
+   *
+   * @param fields The tokenizer holding the fields of the record
+   * @param lineNumber The number of the line in the input the record starts on,
+   *   for error reporting
+   * @return A product representing the information of the given CSV product
+   *   description
+   * @throws ParsingError if the product could not be parsed
+   */
+  Product parseProduct(CsvFieldTokenizer fields, long lineNumber) throws ParsingError {
+    ColumnarProductBatch batch = newBatch(1);
+    parseRecord(fields, lineNumber, batch);
+    return batch.toProduct(0);
+  }
+
+  /**
+   * Parses a record that has already been split by a {@link CsvFieldTokenizer}
+   * and adds the product to the given batch, as described for
+   * {@link #parseProduct(String, long)}. The columns are looked up in the
+   * current column plan. Strings are only created for the fields that are
+   * stored in the product, and numbers are stored without creating objects.
+   *
+   * @param fields The tokenizer holding the fields of the record
+   * @param lineNumber The number of the line in the input the record starts on,
+   *   for error reporting
+   * @param batch The batch the product is added to. It is left unchanged if
+   *   the record cannot be parsed.
+   * @throws ParsingError if the product could not be parsed
+   */
+  void parseRecord(CsvFieldTokenizer fields, long lineNumber, ColumnarProductBatch batch)
+      throws ParsingError {
+    CsvColumnPlan plan = columnPlan;
+    int idField = plan.getPosition(Column.ID);
+    if (fields.hasUnterminatedQuote()) {
+      throw new ParsingError(getProductId(fields, idField), fields.getLineAsString(),
+          "Quoted field not terminated before the end of the input", lineNumber);
+    }
+    if (fields.getFieldCount() < plan.getFieldCount()) {
+      throw new ParsingError(getProductId(fields, idField), fields.getLineAsString(),
+          "Expected " + plan.getFieldCount() + " fields, but found "
+          + fields.getFieldCount(), lineNumber);
+    }
+    batch.startRow();
     try {
-      Product product = new Product();
-      product.externalId = parseString(parts[0], "ID", true);
-      product.lang = parseString(parts[1], "Content language", true);
-      product.country = parseString(parts[2], "Target country", true);
-      product.title = parseString(parts[3], "Title", true);
-      product.content = new Content("text", parseString(parts[4], "Description", true));
-      product.condition = parseString(parts[5], "Condition", true);
-      product.price = new Price(parseString(parts[7], "Currency", true),
-          parseDecimal(parts[6], "Price", true));
-      product.shippingWeight = parseWeight(parts[9], parts[8]);
-      product.quantity = parseInteger(parts[10], "Quantity", false).intValue();
-      product.expirationDate = parseDate(parts[11], "Expiration date", false);
-      product.productType = parseString(parts[12], "Product type", false);
-      product.brand = parseString(parts[13], "Brand", false);
-      product.gtin = parseString(parts[14], "GTIN", false);
-      product.mpn = parseString(parts[15], "MPN", false);
-
-      Link link = new Link();
-      link.rel = "alternate";
-      link.href = homepage + parts[16];
-      link.type = "text/html";
-      product.links.add(link);
-
-      String imageLink = parseString(parts[17], "Image link", false);
-      product.imageLinks = new ArrayList<String>();
-      if (imageLink != null) {
-        product.imageLinks.add(imageLink);
+      batch.setString(Column.ID, parseString(fields, idField, "ID", true));
+      if (plan.hasColumn(Column.CONTENT_LANGUAGE)) {
+        batch.setSharedString(Column.CONTENT_LANGUAGE, parseCanonicalString(fields, plan,
+            Column.CONTENT_LANGUAGE, "Content language", true));
       }
+      if (plan.hasColumn(Column.TARGET_COUNTRY)) {
+        batch.setSharedString(Column.TARGET_COUNTRY, parseCanonicalString(fields, plan,
+            Column.TARGET_COUNTRY, "Target country", true));
+      }
+      batch.setString(Column.TITLE,
+          parseString(fields, plan.getPosition(Column.TITLE), "Title", true));
+      batch.setString(Column.DESCRIPTION,
+          parseString(fields, plan.getPosition(Column.DESCRIPTION), "Description", true));
+      parseSharedString(fields, plan, Column.CONDITION, "Condition", true, batch);
+      parseSharedString(fields, plan, Column.CURRENCY, "Currency", true, batch);
+      parseDecimal(fields, plan.getPosition(Column.PRICE), "Price", true, batch, Column.PRICE);
+      parseWeight(fields, plan.getPosition(Column.WEIGHT_UNIT),
+          plan.getPosition(Column.WEIGHT), batch);
+      Integer quantity = parseInteger(fields, plan.getPosition(Column.QUANTITY), "Quantity",
+          false);
+      if (quantity != null) {
+        batch.setInt(Column.QUANTITY, quantity);
+      }
+      batch.setDate(Column.EXPIRATION_DATE, parseDate(fields,
+          plan.getPosition(Column.EXPIRATION_DATE), "Expiration date", false));
+      parseSharedString(fields, plan, Column.PRODUCT_TYPE, "Product type", false, batch);
+      parseSharedString(fields, plan, Column.BRAND, "Brand", false, batch);
+      batch.setString(Column.GTIN,
+          parseString(fields, plan.getPosition(Column.GTIN), "GTIN", false));
+      batch.setString(Column.MPN,
+          parseString(fields, plan.getPosition(Column.MPN), "MPN", false));
 
-      return product;
+      if (plan.hasColumn(Column.LINK)) {
+        // relative to the homepage, which is the link prefix of the batch
+        batch.setString(Column.LINK, fields.getRawString(plan.getPosition(Column.LINK)));
+      }
+      batch.setString(Column.IMAGE_LINK, parseString(fields,
+          plan.getPosition(Column.IMAGE_LINK), "Image link", false));
+
+      // attributes that are only read if the header names them
+      parseList(fields, plan.getPosition(Column.ADDITIONAL_IMAGE_LINKS), batch,
+          Column.ADDITIONAL_IMAGE_LINKS);
+      parseSharedString(fields, plan, Column.AVAILABILITY, "Availability", false, batch);
+      parseSharedString(fields, plan, Column.COLOR, "Color", false, batch);
+      parseSharedString(fields, plan, Column.GENDER, "Gender", false, batch);
+      parseSharedString(fields, plan, Column.AGE_GROUP, "Age group", false, batch);
+      parseSharedString(fields, plan, Column.SIZE, "Size", false, batch);
+      parseSharedString(fields, plan, Column.MATERIAL, "Material", false, batch);
+      parseSharedString(fields, plan, Column.PATTERN, "Pattern", false, batch);
+      batch.setString(Column.ITEM_GROUP_ID, parseString(fields,
+          plan.getPosition(Column.ITEM_GROUP_ID), "Item group ID", false));
+      parseSharedString(fields, plan, Column.GOOGLE_PRODUCT_CATEGORY,
+          "Google product category", false, batch);
+      parseSharedString(fields, plan, Column.MANUFACTURER, "Manufacturer", false, batch);
+      batch.setString(Column.AUTHOR,
+          parseString(fields, plan.getPosition(Column.AUTHOR), "Author", false));
+      batch.setString(Column.EDITION,
+          parseString(fields, plan.getPosition(Column.EDITION), "Edition", false));
+      batch.setString(Column.GENRE,
+          parseString(fields, plan.getPosition(Column.GENRE), "Genre", false));
+      batch.setString(Column.YEAR,
+          parseString(fields, plan.getPosition(Column.YEAR), "Year", false));
+      parseSharedString(fields, plan, Column.CHANNEL, "Channel", false, batch);
+      batch.setBoolean(Column.ADULT,
+          parseBoolean(fields, plan.getPosition(Column.ADULT), "Adult"));
+      batch.setBoolean(Column.FEATURED_PRODUCT, parseBoolean(fields,
+          plan.getPosition(Column.FEATURED_PRODUCT), "Featured product"));
+      parseSharedString(fields, plan, Column.ADWORDS_GROUPING, "AdWords grouping", false,
+          batch);
+      parseList(fields, plan.getPosition(Column.ADWORDS_LABELS), batch, Column.ADWORDS_LABELS);
+      batch.setString(Column.ADWORDS_REDIRECT, parseString(fields,
+          plan.getPosition(Column.ADWORDS_REDIRECT), "AdWords redirect", false));
+      batch.setString(Column.PRODUCT_REVIEW_AVERAGE, parseString(fields,
+          plan.getPosition(Column.PRODUCT_REVIEW_AVERAGE), "Product review average", false));
+      batch.setString(Column.PRODUCT_REVIEW_COUNT, parseString(fields,
+          plan.getPosition(Column.PRODUCT_REVIEW_COUNT), "Product review count", false));
     } catch (ParsingError e) {
-      throw new ParsingError(parts[0], line, e.errorMessage);
+      batch.abandonRow();
+      throw e.inRecord(getProductId(fields, idField), fields.getLineAsString(), lineNumber);
     }
+    batch.finishRow();
   }
-  
+
+  /**
+   * Returns the product ID for error reporting, or {@code null} if the record
+   * is too short to contain it.
+   */
+  private static String getProductId(CsvFieldTokenizer fields, int idField) {
+    return idField < fields.getFieldCount() ? fields.getRawString(idField) : null;
+  }
+
   /**
    * Parses a string argument.
    *
-   * @param input The string to be parsed
+   * @param fields The tokenizer holding the fields of the record
+   * @param field The position of the field, or -1 if the column is not present
    * @param attributeName The name of the attribute. This is only used for error
    *   reporting and may be {@code null}.
    * @param required Whether the attribute is required or not
-   * @return The trimmed input string if it is not empty. Otherwise a
+   * @return The trimmed field if it is not empty. Otherwise a
    *   {@code ParsingError} if the attribute is required, or {@code null} if
    *   it is optional.
    * @throws ParsingError if a required attribute is missing
    */
-  private String parseString(String input, String attributeName, boolean required)
-      throws ParsingError {
-    if ("".equals(input)) {
+  private String parseString(CsvFieldTokenizer fields, int field, String attributeName,
+      boolean required) throws ParsingError {
+    if (field < 0 || fields.isEmpty(field)) {
       if (required) {
-        throw new ParsingError(null, null, "Required argument missing: " + attributeName);
+        throw ParsingError.forAttribute(attributeName,
+            "Required argument missing: " + attributeName);
       } else {
         return null;
       }
     } else {
-      return input.trim();
+      return fields.getTrimmedString(field);
+    }
+  }
+
+  /**
+   * Does the same as {@link #parseString(CsvFieldTokenizer, int, String, boolean)},
+   * but returns a canonical string from the string pool, so that products with
+   * the same value share one string.
+   */
+  private String parseCanonicalString(CsvFieldTokenizer fields, CsvColumnPlan plan,
+      Column column, String attributeName, boolean required) throws ParsingError {
+    int field = plan.getPosition(column);
+    if (field < 0 || fields.isEmpty(field)) {
+      return parseString(fields, field, attributeName, required);
     }
+    return fields.getCanonicalString(field, stringPool, column);
+  }
+
+  /**
+   * Parses a string argument with
+   * {@link #parseCanonicalString(CsvFieldTokenizer, CsvColumnPlan, Column, String, boolean)}
+   * and stores it in the row being filled of the given batch, once per batch.
+   */
+  private void parseSharedString(CsvFieldTokenizer fields, CsvColumnPlan plan, Column column,
+      String attributeName, boolean required, ColumnarProductBatch batch) throws ParsingError {
+    batch.setSharedString(column,
+        parseCanonicalString(fields, plan, column, attributeName, required));
   }
 
   /**
    * Parses an integer argument.
    *
-   * @param input The integer to be parsed
+   * @param fields The tokenizer holding the fields of the record
+   * @param field The position of the field, or -1 if the column is not present
    * @param attributeName The name of the attribute. This is only used for error
    *   reporting and may be {@code null}.
    * @param required Whether the attribute is required or not
    * @return The parsed integer if it is not empty. Otherwise a
    *   {@code ParsingError} if the attribute is required, or {@code null} if
    *   it is optional.
-   * @throws ParsingError if a required attribute is missing
+   * @throws ParsingError if a required attribute is missing or the field is
+   *   not an integer
    */
-  private BigInteger parseInteger(String input, String attributeName, boolean required)
-      throws ParsingError {
-    String parsedInput = parseString(input, attributeName, required);
-    if (parsedInput == null) {
-      return null;
-    } else {
-      try {
-        return new BigInteger(input);
-      } catch (NumberFormatException e) {
-        throw new ParsingError(null, null, "Could not parse \"" + input
-            + "\" as " + attributeName);
+  private Integer parseInteger(CsvFieldTokenizer fields, int field, String attributeName,
+      boolean required) throws ParsingError {
+    if (field < 0 || fields.isEmpty(field)) {
+      if (required) {
+        throw ParsingError.forAttribute(attributeName,
+            "Required argument missing: " + attributeName);
       }
+      return null;
+    }
+    try {
+      return fields.getInt(field);
+    } catch (NumberFormatException e) {
+      throw ParsingError.forAttribute(attributeName, "Could not parse \""
+          + fields.getRawString(field) + "\" as " + attributeName);
     }
   }
-  
+
   /**
-   * Parses a decimal number argument.
+   * Parses a decimal number argument and stores it in the row being filled of
+   * the given batch.
    *
-   * @param input The decimal number to be parsed
+   * @param fields The tokenizer holding the fields of the record
+   * @param field The position of the field, or -1 if the column is not present
    * @param attributeName The name of the attribute. This is only used for error
    *   reporting and may be {@code null}.
    * @param required Whether the attribute is required or not
-   * @return The parsed decimal if it is not empty. Otherwise a
-   *   {@code ParsingError} if the attribute is required, or {@code null} if
-   *   it is optional.
-   * @throws ParsingError if a required attribute is missing
+   * @param batch The batch
+   * @param column The column the decimal is stored in
+   * @return {@code true} if the field is not empty, {@code false} if it is
+   *   optional and empty
+   * @throws ParsingError if a required attribute is missing or the field is
+   *   not a decimal number
    */
-  private BigDecimal parseDecimal(String input, String attributeName, boolean required)
-      throws ParsingError {
-    String parsedInput = parseString(input, attributeName, required);
-    if (parsedInput == null) {
-      return null;
-    } else {
-      try {
-        return new BigDecimal(parsedInput);
-      } catch (NumberFormatException e) {
-        throw new ParsingError(null, null, "Could not parse \"" + input
-            + "\" as " + attributeName);
+  private boolean parseDecimal(CsvFieldTokenizer fields, int field, String attributeName,
+      boolean required, ColumnarProductBatch batch, Column column) throws ParsingError {
+    if (field < 0 || fields.isEmpty(field)) {
+      if (required) {
+        throw ParsingError.forAttribute(attributeName,
+            "Required argument missing: " + attributeName);
       }
+      return false;
+    }
+    try {
+      fields.getDecimal(field, batch, column);
+      return true;
+    } catch (NumberFormatException e) {
+      throw ParsingError.forAttribute(attributeName, "Could not parse \""
+          + fields.getRawString(field) + "\" as " + attributeName);
     }
   }
-  
+
   /**
    * Parses a date argument.
    *
-   * @param input The date to be parsed
+   * @param fields The tokenizer holding the fields of the record
+   * @param field The position of the field, or -1 if the column is not present
    * @param attributeName The name of the attribute. This is only used for error
    *   reporting and may be {@code null}.
    * @param required Whether the attribute is required or not
    * @return The parsed date if it is not empty. Otherwise a
    *   {@code ParsingError} if the attribute is required, or {@code null} if
    *   it is optional.
-   * @throws ParsingError if a required attribute is missing
+   * @throws ParsingError if a required attribute is missing or the field is
+   *   not a date
    */
-  private DateTime parseDate(String input, String attributeName, boolean required)
-      throws ParsingError {
-    String parsedInput = parseString(input, attributeName, required);
-    if (parsedInput == null) {
+  private DateTime parseDate(CsvFieldTokenizer fields, int field, String attributeName,
+      boolean required) throws ParsingError {
+    if (field < 0 || fields.isEmpty(field)) {
+      if (required) {
+        throw ParsingError.forAttribute(attributeName,
+            "Required argument missing: " + attributeName);
+      }
       return null;
+    }
+    DateTime date = fields.getDate(field, dateParser);
+    if (date == null) {
+      throw ParsingError.forAttribute(attributeName, "Date (" + fields.getRawString(field)
+          + ") could not be parsed");
+    }
+    return date;
+  }
+
+  /**
+   * Parses an optional boolean argument. {@code "true"} and {@code "yes"} are
+   * accepted as true, {@code "false"} and {@code "no"} as false, ignoring case.
+   *
+   * @param fields The tokenizer holding the fields of the record
+   * @param field The position of the field, or -1 if the column is not present
+   * @param attributeName The name of the attribute. This is only used for error
+   *   reporting.
+   * @return The parsed value, or {@code false} if the field is empty
+   * @throws ParsingError if the field is not a boolean
+   */
+  private boolean parseBoolean(CsvFieldTokenizer fields, int field, String attributeName)
+      throws ParsingError {
+    String value = parseString(fields, field, attributeName, false);
+    if (value == null || "false".equalsIgnoreCase(value) || "no".equalsIgnoreCase(value)) {
+      return false;
+    } else if ("true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value)) {
+      return true;
     } else {
-      try {
-        return new DateTime(dateFormat8601.parse(input));
-      } catch (ParseException e) {
-        throw new ParsingError(null, null, "Date (" + input + ") could not be parsed");
+      throw ParsingError.forAttribute(attributeName, "Could not parse \"" + value + "\" as "
+          + attributeName);
+    }
+  }
+
+  /**
+   * Parses an optional list of comma-separated strings and stores its
+   * trimmed, non-empty elements in the row being filled of the given batch.
+   *
+   * @param fields The tokenizer holding the fields of the record
+   * @param field The position of the field, or -1 if the column is not present
+   * @param batch The batch
+   * @param column The column the list is stored in
+   */
+  private void parseList(CsvFieldTokenizer fields, int field, ColumnarProductBatch batch,
+      Column column) throws ParsingError {
+    String value = parseString(fields, field, null, false);
+    if (value == null) {
+      return;
+    }
+    for (String element : value.split(",")) {
+      String trimmed = element.trim();
+      if (trimmed.length() > 0) {
+        batch.addListElement(column, trimmed);
       }
     }
   }
-  
+
   /**
-   * Parses the weight of the product.
+   * Parses the weight of the product and stores it in the row being filled of
+   * the given batch.
    *
-   * @param unit The given weight unit
-   * @param weight The given weight
-   * @return The parsed weight if it is a valid weight, {@code null} if it is
-   *   empty. In case of an invalid weight, a {@code ParsingError} will
-   *   be thrown.
-   * @throws ParsingError if the weight is given without a weight
+   * @param fields The tokenizer holding the fields of the record
+   * @param unitField The position of the weight unit, or -1 if the column is
+   *   not present
+   * @param weightField The position of the weight, or -1 if the column is not
+   *   present
+   * @param batch The batch
+   * @throws ParsingError if the weight is invalid, or given without a weight
    *   unit
    */
-  private ShippingWeight parseWeight(String unit, String weight) throws ParsingError {
-    String parsedUnit = parseString(unit, "weight unit", false);
-    BigDecimal parsedWeight = parseDecimal(weight, "weight", false);
-    if (parsedWeight == null) {
-      return null;
-    } else {
-      if (parsedUnit == null) {
-        throw new ParsingError(null, null, "Weight given without unit");
-      } else {
-        return new ShippingWeight(parsedUnit, parsedWeight);
+  private void parseWeight(CsvFieldTokenizer fields, int unitField, int weightField,
+      ColumnarProductBatch batch) throws ParsingError {
+    if (parseDecimal(fields, weightField, "weight", false, batch, Column.WEIGHT)) {
+      if (unitField < 0 || fields.isEmpty(unitField)) {
+        throw ParsingError.forAttribute("Weight unit", "Weight given without unit");
       }
+      batch.setSharedString(Column.WEIGHT_UNIT,
+          fields.getCanonicalString(unitField, stringPool, Column.WEIGHT_UNIT));
     }
   }
-  
+
   /**
    * Convenience class for representing a parsing error. It contains the product
-   * ID, the complete CSV description that could not be parsed, and the error
-   * message itself.
+   * ID, the complete CSV description that could not be parsed, the number of the
+   * line containing it, the attribute concerned, and the error message itself.
+   *
+   * <p>Parsing errors are thrown for every bad record, which can be millions,
+   * and are never thrown out of the adapter, so they do not capture a stack
+   * trace.
    */
   static class ParsingError extends Exception {
     public final String productId;
     public final String completeProductDescription;
     public final String errorMessage;
+    public final long lineNumber;
+
+    /**
+     * The name of the attribute that could not be parsed, or {@code null} if
+     * the error concerns the whole record.
+     */
+    public final String attributeName;
     
     /**
-     * Simple constructor for setting the fields.
+     * Simple constructor for setting the fields, for errors whose line is not
+     * known (yet).
      *
      * @param productId The product ID
      * @param completeProductDescription The complete CSV line that should have
@@ -373,9 +1165,72 @@ public class CsvInputAdapter {
      * @param errorMessage The error message that occured
      */
     public ParsingError(String productId, String completeProductDescription, String errorMessage) {
+      this(productId, completeProductDescription, errorMessage, 0);
+    }
+
+    /**
+     * Simple constructor for setting the fields.
+     *
+     * @param productId The product ID
+     * @param completeProductDescription The complete CSV line that should have
+     *   been parsed
+     * @param errorMessage The error message that occured
+     * @param lineNumber The number of the line in the input, counted from 1, or 0
+     *   if it is not known
+     */
+    public ParsingError(String productId, String completeProductDescription, String errorMessage,
+        long lineNumber) {
+      this(productId, completeProductDescription, errorMessage, lineNumber, null);
+    }
+
+    /**
+     * Simple constructor for setting the fields, for errors concerning one
+     * attribute.
+     *
+     * @param productId The product ID
+     * @param completeProductDescription The complete CSV line that should have
+     *   been parsed
+     * @param errorMessage The error message that occured
+     * @param lineNumber The number of the line in the input, counted from 1, or 0
+     *   if it is not known
+     * @param attributeName The name of the attribute that could not be parsed,
+     *   or {@code null} if the error concerns the whole record
+     */
+    public ParsingError(String productId, String completeProductDescription, String errorMessage,
+        long lineNumber, String attributeName) {
+      super(errorMessage, null, false, false);
       this.productId = productId;
       this.completeProductDescription = completeProductDescription;
       this.errorMessage = errorMessage;
+      this.lineNumber = lineNumber;
+      this.attributeName = attributeName;
+    }
+
+    /**
+     * Creates an error concerning one attribute, whose record is not known
+     * yet.
+     *
+     * @param attributeName The name of the attribute that could not be parsed
+     * @param errorMessage The error message
+     * @return the error
+     */
+    static ParsingError forAttribute(String attributeName, String errorMessage) {
+      return new ParsingError(null, null, errorMessage, 0, attributeName);
+    }
+
+    /**
+     * Returns a copy of this error for the given record.
+     *
+     * @param productId The product ID
+     * @param completeProductDescription The complete record that should have
+     *   been parsed
+     * @param lineNumber The number of the line in the input, counted from 1, or 0
+     *   if it is not known
+     * @return the error
+     */
+    ParsingError inRecord(String productId, String completeProductDescription, long lineNumber) {
+      return new ParsingError(productId, completeProductDescription, errorMessage, lineNumber,
+          attributeName);
     }
   }
 }
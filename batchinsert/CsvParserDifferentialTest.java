@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvInputAdapter.ParsingError;
+import com.google.api.client.sample.structuredcontent.model.Link;
+import com.google.api.client.sample.structuredcontent.model.Product;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Checks that {@link CsvInputAdapter} parses CSV input exactly like the
+ * String-based parser it replaced, kept as {@link ReferenceCsvParser}: every
+ * line must either give the same product, or fail with the same message.
+ * Both ways of reading input are checked, from a {@link BufferedReader} and
+ * from the raw bytes of an {@code InputStream}.
+ *
+ * <p>The inputs are a CSV file, {@code items.csv} by default, and randomly
+ * generated lines, about a quarter of which are invalid. No generated field
+ * starts with {@code '"'}, since the reference parser does not support
+ * quoting. One difference is intended: the reference parser uses a lenient
+ * {@link SimpleDateFormat}, which rolls dates like {@code 2010-24-12 23:59}
+ * over and ignores trailing characters, while the adapter rejects every date
+ * that is not exactly in the format {@code "yyyy-MM-dd HH:mm"} (see
+ * {@link CsvDateParser}). Whether a date is valid is decided by checking the
+ * range of each of its fields; for invalid dates, the adapter's error is
+ * expected. Numbers are compared by value, so that {@code 13.90} equals
+ * {@code 13.9}, and dates by the point in time they stand for.
+ *
+ * <p>Usage: {@code CsvParserDifferentialTest [file.csv [number_of_lines
+ * [seed]]]}. The process exits with status 1 if any line is parsed
+ * differently.
+ */
+public final class CsvParserDifferentialTest {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger
+      = Logger.getLogger(CsvParserDifferentialTest.class.getName());
+
+  private static final String SEPARATOR = ";";
+  private static final int EXPIRATION_DATE_FIELD = 11;
+  private static final String HOMEPAGE = "http://my.supercool.com/homepage/";
+
+  /** The strict format of expiration dates, which checks the range of every field. */
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+      .ofPattern("uuuu-MM-dd HH:mm", Locale.US).withResolverStyle(ResolverStyle.STRICT);
+
+  /**
+   * The header line of the generated input, which names no known columns, so
+   * that the columns are expected in the fixed order.
+   */
+  private static final String HEADER = "[ID];[content language];[target country];[title];"
+      + "[description];[condition];[price];[currency];[weight];[unit];[quantity];"
+      + "[expiration date];[product type];[brand];[GTIN];[MPN];"
+      + "[product information homepage];[product image URL]";
+
+  private static final String[] WORDS = {"Red", "wool", "sweater", "24\"", "monitor",
+      "\u00e9", "Gr\u00f6\u00dfe", "\u20ac", "\u65e5\u672c", "a\"b", "  ", "x", "\t", "&",
+      "<b>", "100%", "'quoted'"};
+
+  private CsvParserDifferentialTest() {
+  }
+
+  public static void main(String[] args) throws IOException {
+    File file = new File(args.length > 0 ? args[0] : "batchinsert/items.csv");
+    int numberOfLines = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+    List<String> fileLines = readLines(file);
+    List<String> generatedLines = generate(new Random(seed), numberOfLines);
+    int differences = compare(file.getName(), fileLines)
+        + compare("generated input (seed " + seed + ")", generatedLines);
+    if (differences > 0) {
+      logger.log(Level.SEVERE, differences + " difference(s) found.");
+      System.exit(1);
+    }
+    logger.info("No differences found.");
+  }
+
+  private static List<String> readLines(File file) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return lines;
+  }
+
+  /**
+   * Compares both ways of reading the given lines, the first of which is the
+   * header, with the reference parser.
+   *
+   * @return the number of differences
+   */
+  private static int compare(String label, List<String> lines) throws IOException {
+    ReferenceCsvParser reference = new ReferenceCsvParser(SEPARATOR, HOMEPAGE);
+    Pattern separator = Pattern.compile(Pattern.quote(SEPARATOR));
+    List<String> expected = new ArrayList<String>(lines.size());
+    int failures = 0;
+    for (int i = 1; i < lines.size(); i++) {
+      try {
+        Product product = reference.parseProduct(lines.get(i), i + 1);
+        String[] fields = separator.split(lines.get(i), -1);
+        String date = fields[EXPIRATION_DATE_FIELD];
+        if (product.expirationDate != null && !isValidDate(date.trim())) {
+          // the reference parser has rolled an invalid date over, see above
+          expected.add("error " + fields[0] + ": Date (" + date + ") could not be parsed");
+          failures++;
+        } else {
+          expected.add(describe(product));
+        }
+      } catch (ParsingError e) {
+        expected.add(describe(e));
+        failures++;
+      }
+    }
+
+    StringBuilder input = new StringBuilder();
+    for (String line : lines) {
+      input.append(line).append('\n');
+    }
+    byte[] bytes = input.toString().getBytes(StandardCharsets.UTF_8);
+    int differences = compare(label + " from a reader", expected, new CsvInputAdapter(
+        new BufferedReader(new StringReader(input.toString())), SEPARATOR, HOMEPAGE));
+    differences += compare(label + " from a stream", expected,
+        new CsvInputAdapter(new ByteArrayInputStream(bytes), SEPARATOR, HOMEPAGE));
+    logger.info(label + ": " + expected.size() + " line(s), " + failures
+        + " of them invalid, " + differences + " difference(s).");
+    return differences;
+  }
+
+  /**
+   * Compares the products and parsing errors of the given adapter with the
+   * descriptions of those expected, one per line after the header.
+   *
+   * @return the number of differences
+   */
+  private static int compare(String label, List<String> expected, CsvInputAdapter adapter)
+      throws IOException {
+    ParsingErrorSink sink = new ParsingErrorSink(Integer.MAX_VALUE, null,
+        ParsingErrorSink.NO_LIMIT);
+    adapter.setParsingErrorSink(sink);
+    adapter.readHeaderLine();
+    List<String> products = new ArrayList<String>();
+    Product product;
+    while ((product = adapter.getNextProduct()) != null) {
+      products.add(describe(product));
+    }
+    Map<Long, String> errors = new HashMap<Long, String>();
+    for (ParsingError e : sink.getSample()) {
+      errors.put(e.lineNumber, describe(e));
+    }
+
+    int differences = 0;
+    int nextProduct = 0;
+    for (int i = 0; i < expected.size(); i++) {
+      long lineNumber = i + 2;
+      String actual = errors.remove(lineNumber);
+      if (actual == null && !expected.get(i).startsWith("error")
+          && nextProduct < products.size()) {
+        actual = products.get(nextProduct++);
+      }
+      if (!expected.get(i).equals(actual)) {
+        differences++;
+        if (differences <= 10) {
+          logger.log(Level.WARNING, label + ", line " + lineNumber + ":\n  expected "
+              + expected.get(i) + "\n  but got  " + actual);
+        }
+      }
+    }
+    differences += errors.size() + products.size() - nextProduct;
+    return differences;
+  }
+
+  /**
+   * Returns whether the given string is a date in the format
+   * {@code "yyyy-MM-dd HH:mm"} whose fields are all in range. Unlike formatting
+   * the parsed date back, this does not depend on the time zone, so that times
+   * skipped by a daylight saving time change are still valid.
+   */
+  private static boolean isValidDate(String date) {
+    if (date.length() != 16) {
+      return false;
+    }
+    try {
+      LocalDateTime.parse(date, DATE_FORMAT);
+      return true;
+    } catch (DateTimeParseException e) {
+      return false;
+    }
+  }
+
+  private static String describe(ParsingError e) {
+    return "error " + e.productId + ": " + e.errorMessage;
+  }
+
+  private static String describe(Product p) {
+    StringBuilder description = new StringBuilder();
+    description.append(p.externalId).append('|').append(p.lang).append('|').append(p.country)
+        .append('|').append(p.title).append('|').append(p.content.type).append(':')
+        .append(p.content.value).append('|').append(p.condition).append('|')
+        .append(p.price.unit).append(' ').append(describe(p.price.value)).append('|');
+    if (p.shippingWeight != null) {
+      description.append(describe(p.shippingWeight.value)).append(' ')
+          .append(p.shippingWeight.unit);
+    }
+    description.append('|').append(p.quantity).append('|')
+        .append(p.expirationDate == null ? null : p.expirationDate.getValue())
+        .append('|').append(p.productType).append('|').append(p.brand).append('|')
+        .append(p.gtin).append('|').append(p.mpn).append('|');
+    for (Link link : p.links) {
+      description.append(link.rel).append(' ').append(link.type).append(' ')
+          .append(link.href).append(',');
+    }
+    description.append('|').append(p.imageLinks);
+    return description.toString();
+  }
+
+  private static String describe(BigDecimal value) {
+    return value.signum() == 0 ? "0" : value.stripTrailingZeros().toPlainString();
+  }
+
+  /**
+   * Generates the given number of lines, after a header line. Each field that
+   * can make a line invalid is missing or malformed in one case out of 50.
+   */
+  private static List<String> generate(Random random, int numberOfLines) {
+    List<String> lines = new ArrayList<String>(numberOfLines + 1);
+    lines.add(HEADER);
+    for (int i = 0; i < numberOfLines; i++) {
+      String[] fields = {
+          rarely(random, pick(random, "item" + i, " item" + i + " "), ""),
+          rarely(random, pick(random, "en", "de", " fr"), ""),
+          rarely(random, pick(random, "US", "DE", "GB "), ""),
+          rarely(random, text(random, 1, 6), ""),
+          rarely(random, text(random, 1, 20), ""),
+          rarely(random, pick(random, "new", "used", "refurbished"), ""),
+          rarely(random, decimal(random), "", "12,50", "abc", "1.2.3"),
+          rarely(random, pick(random, "usd", "EUR", " GBP"), ""),
+          pick(random, "", decimal(random), rarely(random, decimal(random), "x")),
+          rarely(random, pick(random, "kg", "lb", " g"), ""),
+          pick(random, "", "4", "0", "-1", "+7", " 4", "2147483647", "99999999999",
+              rarely(random, "300", "4x", "1.5", "")),
+          pick(random, "", date(random), rarely(random, date(random), "soon",
+              "2010-24-12 23:59", "2010-1-5 3:04", "2010-10-29 22:00x", "2010-02-30 10:00")),
+          pick(random, "", "Clothing > Outerwear", text(random, 0, 4)),
+          pick(random, "", "Dell", text(random, 0, 2)),
+          pick(random, "", "834721479305", "12 34"),
+          pick(random, "", "HSC0424PP"),
+          pick(random, "", "item" + i + ".html", " page.html "),
+          pick(random, "", "http://my.supercool.com/homepage/item" + i + ".jpg")};
+      StringBuilder line = new StringBuilder(fields[0]);
+      for (int j = 1; j < fields.length; j++) {
+        line.append(SEPARATOR).append(fields[j]);
+      }
+      lines.add(line.toString());
+    }
+    return lines;
+  }
+
+  private static String pick(Random random, String... choices) {
+    return choices[random.nextInt(choices.length)];
+  }
+
+  /**
+   * Returns the given value, or in one case out of 50 one of the given bad
+   * ones.
+   */
+  private static String rarely(Random random, String value, String... badValues) {
+    return random.nextInt(50) == 0 ? pick(random, badValues) : value;
+  }
+
+  /**
+   * Returns between the given numbers of words. None of the words starts with
+   * a quote.
+   */
+  private static String text(Random random, int minWords, int maxWords) {
+    StringBuilder text = new StringBuilder();
+    int words = minWords + random.nextInt(maxWords - minWords + 1);
+    for (int i = 0; i < words; i++) {
+      if (i > 0) {
+        text.append(' ');
+      }
+      text.append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return text.toString();
+  }
+
+  private static String decimal(Random random) {
+    switch (random.nextInt(8)) {
+      case 0:
+        return " " + random.nextInt(1000) + ".5 ";
+      case 1:
+        return "123456789012345678901234.5";
+      case 2:
+        return "-" + random.nextInt(100);
+      case 3:
+        return "0.000";
+      default:
+        return random.nextInt(100000) + "." + random.nextInt(100);
+    }
+  }
+
+  private static String date(Random random) {
+    return String.format(Locale.US, "%04d-%02d-%02d %02d:%02d", 1990 + random.nextInt(40),
+        1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24),
+        random.nextInt(60));
+  }
+}
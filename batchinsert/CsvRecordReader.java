@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>Reads CSV records of raw bytes from an input stream, without decoding
+ * them, and splits them into fields with a {@link CsvFieldTokenizer}. A record
+ * may span several physical lines if it contains quoted line breaks.
+ *
+ * <p>The input is read in large blocks and every byte is passed to the
+ * tokenizer exactly once, so reading records does not create any objects.
+ *
+ * <p>Instances are not thread-safe.
+ */
+final class CsvRecordReader {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InputStream input;
+
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private int position = 0;
+  private int limit = 0;
+
+  /**
+   * The number of bytes read from or skipped in the stream so far.
+   */
+  private long bytesRead = 0;
+
+  private long linesRead = 0;
+  private long recordLineNumber = 0;
+
+  /**
+   * Creates a reader for the given stream.
+   *
+   * @param input The stream to read from
+   */
+  CsvRecordReader(InputStream input) {
+    this.input = input;
+  }
+
+  /**
+   * Reads the next record and splits it into fields.
+   *
+   * @param tokenizer The tokenizer that receives the record
+   * @return {@code true} if a record has been read, {@code false} if the end
+   *   of the stream has been reached
+   * @throws IOException if reading from the stream failed
+   */
+  boolean readRecord(CsvFieldTokenizer tokenizer) throws IOException {
+    tokenizer.reset();
+    while (true) {
+      if (position == limit) {
+        limit = input.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit > 0) {
+          bytesRead += limit;
+        } else {
+          limit = 0;
+          if (!tokenizer.finish()) {
+            return false;
+          }
+          break;
+        }
+      }
+      int end = tokenizer.feed(buffer, position, limit);
+      if (end >= 0) {
+        position = end;
+        break;
+      }
+      position = limit;
+    }
+    recordLineNumber = linesRead + 1;
+    linesRead += tokenizer.getLineBreaks();
+    return true;
+  }
+
+  /**
+   * Returns the number of the physical line the current record starts on,
+   * counting from 1.
+   */
+  long getRecordLineNumber() {
+    return recordLineNumber;
+  }
+
+  /**
+   * Returns the number of line breaks read so far.
+   */
+  long getLinesRead() {
+    return linesRead;
+  }
+
+  /**
+   * Returns the offset in the stream of the next record.
+   */
+  long getOffset() {
+    return bytesRead - (limit - position);
+  }
+
+  /**
+   * Skips forward to the record at the given offset in the stream, without
+   * reading the records before it if the stream supports skipping, as e.g.
+   * a {@link java.io.FileInputStream} does.
+   *
+   * @param offset The offset of the record, which must not be before
+   *   {@link #getOffset()}
+   * @param linesBefore The number of line breaks before the record
+   * @throws IOException if the stream ends before the offset, or if reading
+   *   from it failed
+   */
+  void skipTo(long offset, long linesBefore) throws IOException {
+    long remaining = offset - getOffset();
+    if (remaining < 0) {
+      throw new IllegalArgumentException("Cannot skip backwards to offset " + offset);
+    }
+    if (remaining <= limit - position) {
+      position += (int) remaining;
+    } else {
+      remaining -= limit - position;
+      position = limit;
+      while (remaining > 0) {
+        long skipped = input.skip(remaining);
+        if (skipped <= 0) {
+          // the stream may not be able to tell whether it has ended
+          if (input.read() < 0) {
+            throw new EOFException("The input ends before offset " + offset);
+          }
+          skipped = 1;
+        }
+        remaining -= skipped;
+        bytesRead += skipped;
+      }
+    }
+    linesRead = linesBefore;
+  }
+}
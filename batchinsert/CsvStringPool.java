@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvColumnPlan.Column;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>A bounded pool of canonical strings for fields that have few distinct
+ * values, like the content language, the condition or the brand. Products
+ * that have the same value share one string instead of each holding its own
+ * copy, which matters when many products are kept in memory at once, e.g.
+ * in queued batches.
+ *
+ * <p>Values are looked up by their raw UTF-8 bytes, so a value that is already
+ * in the pool is returned without creating any objects. The pool is a hash
+ * table with a fixed number of slots; a new value replaces whatever was in its
+ * slot before. This keeps its size bounded even for fields that turn out to
+ * have many distinct values, at the cost of some missed hits.
+ *
+ * <p>The pool is thread-safe without any locking: the entries are immutable,
+ * so a thread either sees a complete entry or none. Hits and misses are
+ * counted per column.
+ */
+final class CsvStringPool {
+  /** The default number of slots. */
+  static final int DEFAULT_CAPACITY = 4096;
+
+  /** Values longer than this many bytes are not pooled. */
+  private static final int MAX_LENGTH = 128;
+
+  private final Entry[] table;
+
+  private final LongAdder[] hits = new LongAdder[Column.values().length];
+  private final LongAdder[] misses = new LongAdder[Column.values().length];
+
+  /**
+   * Creates an empty pool.
+   *
+   * @param capacity The number of slots, which is rounded up to a power of two
+   */
+  CsvStringPool(int capacity) {
+    table = new Entry[Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1];
+    for (int i = 0; i < hits.length; i++) {
+      hits[i] = new LongAdder();
+      misses[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * Returns the canonical string for the given UTF-8 encoded bytes.
+   *
+   * @param bytes The buffer containing the value
+   * @param start The position of the first byte of the value
+   * @param end The position after the last byte of the value
+   * @param column The column the value has been read from, for the statistics
+   * @return a string equal to the decoded value
+   */
+  String get(byte[] bytes, int start, int end, Column column) {
+    int length = end - start;
+    if (length > MAX_LENGTH) {
+      misses[column.ordinal()].increment();
+      return new String(bytes, start, length, StandardCharsets.UTF_8);
+    }
+    int hash = 1;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + bytes[i];
+    }
+    int index = (hash ^ (hash >>> 16)) & (table.length - 1);
+    Entry entry = table[index];
+    if (entry != null && entry.hash == hash && entry.matches(bytes, start, length)) {
+      hits[column.ordinal()].increment();
+      return entry.value;
+    }
+    misses[column.ordinal()].increment();
+    String value = new String(bytes, start, length, StandardCharsets.UTF_8);
+    table[index] = new Entry(hash, Arrays.copyOfRange(bytes, start, end), value);
+    return value;
+  }
+
+  /**
+   * Returns the statistics of all columns that have been looked up so far,
+   * one line per column, for monitoring.
+   *
+   * @return the hits and misses per column
+   */
+  String getStatistics() {
+    StringBuilder statistics = new StringBuilder();
+    for (Column column : Column.values()) {
+      long columnHits = hits[column.ordinal()].sum();
+      long lookUps = columnHits + misses[column.ordinal()].sum();
+      if (lookUps > 0) {
+        statistics.append(String.format("%s: %d of %d values shared (%.1f%%)%n",
+            column, columnHits, lookUps, 100.0 * columnHits / lookUps));
+      }
+    }
+    return statistics.toString();
+  }
+
+  /**
+   * An immutable entry of the pool.
+   */
+  private static final class Entry {
+    final int hash;
+    final byte[] bytes;
+    final String value;
+
+    Entry(int hash, byte[] bytes, String value) {
+      this.hash = hash;
+      this.bytes = bytes;
+      this.value = value;
+    }
+
+    boolean matches(byte[] other, int start, int length) {
+      if (bytes.length != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (bytes[i] != other[start + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
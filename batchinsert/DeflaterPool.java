@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
+
+/**
+ * <p>A pool of {@link Deflater}s producing raw deflate data, as used inside
+ * gzip members, so that compressing a request does not allocate a new
+ * deflater and its native buffers every time.
+ *
+ * <p>The pool holds at most as many deflaters as have been in use at the same
+ * time, i.e. about one per worker thread. Pools are thread-safe.
+ */
+final class DeflaterPool {
+  private final int level;
+  private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<Deflater>();
+
+  /**
+   * Creates an empty pool.
+   *
+   * @param level The compression level of the deflaters, from
+   *   {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or
+   *   {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  DeflaterPool(int level) {
+    this.level = level;
+  }
+
+  /**
+   * Takes a deflater from the pool, or creates one if the pool is empty. It
+   * has to be returned with {@link #release(Deflater)}.
+   *
+   * @return A deflater ready for new input
+   */
+  Deflater acquire() {
+    Deflater deflater = deflaters.poll();
+    return deflater != null ? deflater : new Deflater(level, true);
+  }
+
+  /**
+   * Resets the given deflater and returns it to the pool.
+   *
+   * @param deflater A deflater taken from this pool
+   */
+  void release(Deflater deflater) {
+    deflater.reset();
+    deflaters.add(deflater);
+  }
+}
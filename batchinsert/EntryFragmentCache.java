@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * <p>Keeps the serialized Atom entries of the products being sent, as UTF-8
+ * bytes, so that a product is serialized only once even if its batch is sent
+ * again, e.g. when the request is retried or the batch is split. The entries
+ * are identified by the serial number of their {@link ColumnarProductBatch}
+ * and their row.
+ *
+ * <p>The total size of the fragments kept is limited; when it is exceeded, the
+ * least recently used fragments are dropped and serialized again if they are
+ * needed once more. The fragments of a batch are dropped as soon as it has
+ * been sent, see {@link #removeBatch(ColumnarProductBatch)}.
+ *
+ * <p>This class is thread-safe.
+ */
+final class EntryFragmentCache {
+  /**
+   * The bytes accounted for each fragment in addition to its content, for the
+   * key, the array header and the entry of the map.
+   */
+  private static final int OVERHEAD = 96;
+
+  /**
+   * The key of a fragment: a batch and a row.
+   */
+  private static final class Key {
+    final long serial;
+    final int row;
+
+    Key(long serial, int row) {
+      this.serial = serial;
+      this.row = row;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return serial == other.serial && row == other.row;
+    }
+
+    @Override
+    public int hashCode() {
+      return (int) (serial ^ (serial >>> 32)) * 31 + row;
+    }
+  }
+
+  private final long maxBytes;
+
+  /** The fragments, from the least to the most recently used. */
+  private final LinkedHashMap<Key, byte[]> fragments
+      = new LinkedHashMap<Key, byte[]>(1024, 0.75f, true);
+
+  private long bytes = 0;
+  private long hits = 0;
+  private long misses = 0;
+  private long evictions = 0;
+
+  /**
+   * Creates an empty cache.
+   *
+   * @param maxBytes The maximum number of bytes of the fragments kept
+   */
+  EntryFragmentCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the fragment of the given product, or {@code null} if it has not
+   * been serialized yet or has been dropped.
+   *
+   * @param batch The batch of the product
+   * @param row The row of the product
+   * @return the serialized entry, which must not be modified, or {@code null}
+   */
+  synchronized byte[] get(ColumnarProductBatch batch, int row) {
+    byte[] fragment = fragments.get(new Key(batch.getSerial(), row));
+    if (fragment != null) {
+      hits++;
+    } else {
+      misses++;
+    }
+    return fragment;
+  }
+
+  /**
+   * Keeps the fragment of the given product, dropping the least recently used
+   * fragments if the cache is full.
+   *
+   * @param batch The batch of the product
+   * @param row The row of the product
+   * @param fragment The serialized entry, which must not be modified any more
+   */
+  synchronized void put(ColumnarProductBatch batch, int row, byte[] fragment) {
+    if (fragment.length + OVERHEAD > maxBytes) {
+      return;
+    }
+    byte[] previous = fragments.put(new Key(batch.getSerial(), row), fragment);
+    if (previous != null) {
+      bytes -= previous.length + OVERHEAD;
+    }
+    bytes += fragment.length + OVERHEAD;
+    Iterator<byte[]> leastRecentlyUsed = fragments.values().iterator();
+    while (bytes > maxBytes) {
+      bytes -= leastRecentlyUsed.next().length + OVERHEAD;
+      leastRecentlyUsed.remove();
+      evictions++;
+    }
+  }
+
+  /**
+   * Drops all fragments of the given batch, once it will not be sent again.
+   *
+   * @param batch The batch
+   */
+  synchronized void removeBatch(ColumnarProductBatch batch) {
+    long serial = batch.getSerial();
+    for (int row = 0; row < batch.size(); row++) {
+      byte[] fragment = fragments.remove(new Key(serial, row));
+      if (fragment != null) {
+        bytes -= fragment.length + OVERHEAD;
+      }
+    }
+  }
+
+  /**
+   * Returns a description of how many fragments have been found, missed and
+   * dropped for lack of space so far.
+   */
+  synchronized String getStatistics() {
+    return hits + " hit(s), " + misses + " miss(es), " + evictions + " eviction(s), "
+        + fragments.size() + " fragment(s) of " + bytes + " byte(s) kept";
+  }
+}
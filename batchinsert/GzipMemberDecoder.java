@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * <p>Decompresses consecutive gzip members (RFC 1952) from a range of a file.
+ * The members must start exactly at the beginning of the range and end exactly
+ * at its end; anything else is reported as an {@link IOException}. This is what
+ * makes it possible to decompress a range speculatively: if the range did not
+ * really start at the beginning of a member, decompressing it fails.
+ *
+ * <p>The decoder reads the file with positional reads, so several decoders can
+ * share one {@link FileChannel}. Instances are not thread-safe.
+ */
+final class GzipMemberDecoder {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final int FLAG_HEADER_CRC = 2;
+  private static final int FLAG_EXTRA = 4;
+  private static final int FLAG_NAME = 8;
+  private static final int FLAG_COMMENT = 16;
+  private static final int RESERVED_FLAGS = 0xe0;
+
+  private final FileChannel channel;
+  private final long limit;
+
+  private final Inflater inflater = new Inflater(true);
+  private final CRC32 crc = new CRC32();
+  private final ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+
+  /**
+   * The position of the first byte of the current member, or of the next
+   * member if {@code inMember} is false.
+   */
+  private long memberStart;
+
+  /**
+   * The position of the next compressed byte to be read from the channel.
+   */
+  private long readPosition;
+
+  private boolean inMember = false;
+
+  /**
+   * The position at which {@link #read} stops at the next member boundary.
+   */
+  private long stopPosition;
+
+  /**
+   * Creates a decoder for the given range of a file.
+   *
+   * @param channel The channel to read from
+   * @param start The position of the first member
+   * @param limit The position after the last member
+   */
+  GzipMemberDecoder(FileChannel channel, long start, long limit) {
+    this.channel = channel;
+    this.memberStart = start;
+    this.limit = limit;
+    this.stopPosition = limit;
+  }
+
+  /**
+   * Makes {@link #read} return -1 at the first member boundary at or after the
+   * given position, instead of only at the end of the range.
+   *
+   * @param stopPosition The position to stop at
+   */
+  void setStopPosition(long stopPosition) {
+    this.stopPosition = Math.min(stopPosition, limit);
+  }
+
+  /**
+   * Returns the position of the next member. Only meaningful after
+   * {@link #read} returned -1.
+   */
+  long getPosition() {
+    return memberStart;
+  }
+
+  /**
+   * Decompresses data into the given buffer.
+   *
+   * @return the number of bytes decompressed, or -1 if a member boundary at or
+   *   after the stop position has been reached
+   * @throws IOException if the range does not consist of valid gzip members,
+   *   or if reading the file failed
+   */
+  int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    while (true) {
+      if (!inMember) {
+        if (memberStart >= stopPosition) {
+          return -1;
+        }
+        startMember();
+      }
+      try {
+        int count = inflater.inflate(buffer, offset, length);
+        if (count > 0) {
+          crc.update(buffer, offset, count);
+          return count;
+        }
+      } catch (DataFormatException e) {
+        throw new ZipException("Invalid compressed data at " + memberStart + ": "
+            + e.getMessage());
+      }
+      if (inflater.finished()) {
+        finishMember();
+      } else if (inflater.needsInput()) {
+        fillInput();
+      } else if (inflater.needsDictionary()) {
+        throw new ZipException("Invalid compressed data at " + memberStart);
+      }
+    }
+  }
+
+  private void fillInput() throws IOException {
+    if (readPosition >= limit) {
+      throw new EOFException("Member starting at " + memberStart + " does not end before "
+          + limit);
+    }
+    input.clear();
+    input.limit((int) Math.min(input.capacity(), limit - readPosition));
+    int count = channel.read(input, readPosition);
+    if (count <= 0) {
+      throw new EOFException("Unexpected end of file at " + readPosition);
+    }
+    readPosition += count;
+    inflater.setInput(input.array(), 0, count);
+  }
+
+  /**
+   * Reads the header of the member starting at {@code memberStart}.
+   */
+  private void startMember() throws IOException {
+    long position = memberStart;
+    ByteBuffer header = readExactly(position, 10);
+    if ((header.get(0) & 0xff) != 0x1f || (header.get(1) & 0xff) != 0x8b
+        || header.get(2) != 8) {
+      throw new ZipException("No gzip member at " + position);
+    }
+    int flags = header.get(3) & 0xff;
+    if ((flags & RESERVED_FLAGS) != 0) {
+      throw new ZipException("Invalid gzip header at " + position);
+    }
+    position += 10;
+    if ((flags & FLAG_EXTRA) != 0) {
+      ByteBuffer extraLength = readExactly(position, 2);
+      position += 2 + ((extraLength.get(0) & 0xff) | (extraLength.get(1) & 0xff) << 8);
+    }
+    if ((flags & FLAG_NAME) != 0) {
+      position = skipZeroTerminated(position);
+    }
+    if ((flags & FLAG_COMMENT) != 0) {
+      position = skipZeroTerminated(position);
+    }
+    if ((flags & FLAG_HEADER_CRC) != 0) {
+      position += 2;
+    }
+    if (position > limit) {
+      throw new EOFException("Gzip header at " + memberStart + " does not end before " + limit);
+    }
+    inflater.reset();
+    crc.reset();
+    readPosition = position;
+    inMember = true;
+  }
+
+  /**
+   * Checks the trailer of the current member and moves to the next one.
+   */
+  private void finishMember() throws IOException {
+    long trailerStart = readPosition - inflater.getRemaining();
+    ByteBuffer trailer = readExactly(trailerStart, 8);
+    long expectedCrc = trailer.getInt(0) & 0xffffffffL;
+    long expectedSize = trailer.getInt(4) & 0xffffffffL;
+    long size = inflater.getBytesWritten() & 0xffffffffL;
+    if (expectedCrc != crc.getValue() || expectedSize != size) {
+      throw new ZipException("Corrupt gzip trailer at " + trailerStart);
+    }
+    memberStart = trailerStart + 8;
+    inMember = false;
+  }
+
+  private long skipZeroTerminated(long position) throws IOException {
+    while (true) {
+      ByteBuffer bytes = readExactly(position, 1);
+      position++;
+      if (bytes.get(0) == 0) {
+        return position;
+      }
+    }
+  }
+
+  /**
+   * Reads the given number of bytes at the given position, which must lie
+   * within the range. The result is in little-endian order.
+   */
+  private ByteBuffer readExactly(long position, int count) throws IOException {
+    if (position + count > limit) {
+      throw new EOFException("Gzip member at " + memberStart + " does not end before " + limit);
+    }
+    ByteBuffer bytes = ByteBuffer.allocate(count).order(ByteOrder.LITTLE_ENDIAN);
+    while (bytes.hasRemaining()) {
+      if (channel.read(bytes, position + bytes.position()) < 0) {
+        throw new EOFException("Unexpected end of file at " + position);
+      }
+    }
+    return bytes;
+  }
+
+  /**
+   * Releases the native resources of the decoder.
+   */
+  void close() {
+    inflater.end();
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.model.Product;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>A source of products for the {@link WorkerThread}s, which pull them in
+ * batches with {@link #getNextProducts(int)}. Implementations read their input
+ * as a stream, so that only the products handed out and those being parsed
+ * are held in memory, never the whole input.
+ *
+ * <p>The implementations are {@link CsvInputAdapter} and its subclasses for
+ * CSV, {@link JsonLinesInputAdapter} for JSON objects, one per line, and
+ * {@link XmlFeedInputAdapter} for Atom feeds of products.
+ *
+ * <p>Implementations must be thread-safe, i.e. multiple threads can retrieve
+ * products at the same time, and each product is returned exactly once.
+ */
+public interface InputAdapter {
+  /**
+   * Parses and returns the next up to {@code maxNumOfProducts} products. Once
+   * they have been sent, they have to be passed to {@link #acknowledge(List)}.
+   *
+   * @param maxNumOfProducts The maximum number of products to return
+   * @return A list of products, containing the next {@code maxNumOfProducts} if
+   *   that many products were still available, or as many products as were
+   *   available otherwise. In particular it returns an empty list if no more
+   *   products are available, or if {@link #stopIntake()} has been called.
+   * @throws IOException if anything went wrong during reading the products
+   */
+  List<Product> getNextProducts(int maxNumOfProducts) throws IOException;
+
+  /**
+   * Records that the given products, as returned by
+   * {@link #getNextProducts(int)}, have been sent to the server successfully.
+   *
+   * @param products The products
+   */
+  void acknowledge(List<Product> products);
+
+  /**
+   * Makes {@link #getNextProducts(int)} return no more products, so that the
+   * worker threads finish the batches they are sending and then stop, e.g.
+   * when the program is shutting down.
+   */
+  void stopIntake();
+
+  /**
+   * Returns a sample of the parsing errors that occurred so far. Products that
+   * cannot be parsed are skipped and recorded in the parsing error sink.
+   *
+   * @return the first parsing errors
+   */
+  Collection<CsvInputAdapter.ParsingError> getParsingErrors();
+
+  /**
+   * Records the parsing errors in the given sink from now on. If the sink
+   * reports that too many records could not be parsed, the intake is stopped
+   * as with {@link #stopIntake()}. Must be called before any products are
+   * retrieved.
+   *
+   * @param sink The sink
+   */
+  void setParsingErrorSink(ParsingErrorSink sink);
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvColumnPlan.Column;
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvInputAdapter.ParsingError;
+import com.google.api.client.sample.structuredcontent.model.Content;
+import com.google.api.client.sample.structuredcontent.model.Link;
+import com.google.api.client.sample.structuredcontent.model.Price;
+import com.google.api.client.sample.structuredcontent.model.Product;
+import com.google.api.client.sample.structuredcontent.model.ShippingWeight;
+import com.google.api.client.util.DateTime;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>This class reads and parses product data stored as JSON lines, i.e. one
+ * JSON object per line, like
+ * {@code {"id": "1234", "title": "Red shoes", "price": 49.99, ...}}.
+ *
+ * <p>The names of the attributes are the same as the column names of a CSV
+ * header, see {@link CsvColumnPlan}, and are matched the same way, ignoring
+ * case and everything except letters and digits. Attributes with unknown
+ * names are skipped. Values may be strings, numbers or booleans; attributes
+ * with several values, like "additional image link" or "color", may also be
+ * given as arrays. Empty strings and {@code null} count as missing. Dates have
+ * the format {@code "yyyy-MM-dd HH:mm"}, like in CSV.
+ *
+ * <p>The input is read line by line, and every line is parsed on its own with
+ * the streaming {@link JsonReader} of Gson, so neither the input nor a tree of
+ * its objects is ever held in memory. A line that cannot be parsed is recorded
+ * as a parsing error and does not affect the following lines. Empty lines are
+ * skipped.
+ *
+ * <p>This class is thread-safe. The lines are read under a lock, but parsed by
+ * the threads calling {@link #getNextProducts(int)} in parallel.
+ */
+public class JsonLinesInputAdapter implements InputAdapter {
+  /**
+   * The parser used for dates. It is thread-safe.
+   */
+  private static final CsvDateParser dateParser = new CsvDateParser(TimeZone.getDefault());
+
+  private final BufferedReader input;
+
+  /**
+   * The user's homepage.
+   */
+  private final String homepage;
+
+  /**
+   * The sink parsing errors are recorded in.
+   */
+  private volatile ParsingErrorSink errorSink = new ParsingErrorSink();
+
+  /**
+   * The number of lines read from {@code input} so far.
+   */
+  private long linesRead = 0;
+
+  /**
+   * Whether the end of the input has been reached.
+   */
+  private boolean endOfInput = false;
+
+  /**
+   * The lock held while reading lines, instead of the adapter's monitor, so
+   * that a virtual thread waiting for the input does not pin its carrier
+   * thread.
+   */
+  private final ReentrantLock inputLock = new ReentrantLock();
+
+  /**
+   * Whether {@link #stopIntake()} has been called.
+   */
+  private volatile boolean intakeStopped = false;
+
+  /**
+   * Constructor for reading UTF-8 encoded JSON lines from a stream.
+   *
+   * @param input An input stream that will return one JSON object per line
+   * @param homepage The user's registered homepage. This homepage will be used
+   *   as a prefix for all homepage links.
+   */
+  public JsonLinesInputAdapter(InputStream input, String homepage) {
+    this(new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8)), homepage);
+  }
+
+  /**
+   * Constructor for reading JSON lines from a reader.
+   *
+   * @param input An input reader that will return one JSON object per line
+   * @param homepage The user's registered homepage. This homepage will be used
+   *   as a prefix for all homepage links.
+   */
+  public JsonLinesInputAdapter(BufferedReader input, String homepage) {
+    this.input = input;
+    this.homepage = (homepage == null ? "" : homepage);
+  }
+
+  /**
+   * Parses and returns the next up to {@code maxNumOfProducts} products.
+   *
+   * @return A list of up to {@code maxNumOfProducts} products. It is empty if
+   *   and only if no more products are available, or if {@link #stopIntake()}
+   *   has been called.
+   * @throws IOException if anything went wrong during reading the products
+   */
+  @Override
+  public List<Product> getNextProducts(int maxNumOfProducts) throws IOException {
+    List<Product> products = new ArrayList<Product>(maxNumOfProducts);
+    String[] lines = new String[maxNumOfProducts];
+    // lines that cannot be parsed yield no product, so read on until there
+    // are enough products or the input is exhausted
+    while (products.size() < maxNumOfProducts && !intakeStopped) {
+      int count = 0;
+      long firstLineNumber;
+      inputLock.lock();
+      try {
+        firstLineNumber = linesRead + 1;
+        while (count < maxNumOfProducts - products.size() && !endOfInput) {
+          String line = input.readLine();
+          if (line == null) {
+            endOfInput = true;
+          } else {
+            lines[count++] = line;
+          }
+        }
+        linesRead += count;
+      } finally {
+        inputLock.unlock();
+      }
+      if (count == 0) {
+        break; // no more products available
+      }
+      for (int i = 0; i < count; i++) {
+        if (!lines[i].trim().isEmpty()) {
+          errorSink.countRecord();
+          try {
+            products.add(parseProduct(lines[i], firstLineNumber + i));
+          } catch (ParsingError e) {
+            recordParsingError(e);
+          }
+        }
+      }
+    }
+    return products;
+  }
+
+  /**
+   * Does nothing, since this adapter does not track a checkpoint.
+   */
+  @Override
+  public void acknowledge(List<Product> products) {
+  }
+
+  @Override
+  public void stopIntake() {
+    intakeStopped = true;
+  }
+
+  @Override
+  public Collection<ParsingError> getParsingErrors() {
+    return errorSink.getSample();
+  }
+
+  @Override
+  public void setParsingErrorSink(ParsingErrorSink sink) {
+    errorSink = sink;
+  }
+
+  /**
+   * Records a parsing error in the sink, and stops the intake if the sink
+   * reports that too many records could not be parsed.
+   */
+  private void recordParsingError(ParsingError e) {
+    if (errorSink.add(e)) {
+      stopIntake();
+    }
+  }
+
+  /**
+   * Parses one JSON line and creates a new product from it. Also checks that
+   * all required attributes are given.
+   *
+   * @param line A JSON object describing exactly one product
+   * @param lineNumber The number of the line in the input, for error reporting
+   * @return A product representing the information of the given JSON object
+   * @throws ParsingError if the product could not be parsed
+   */
+  Product parseProduct(String line, long lineNumber) throws ParsingError {
+    Map<Column, Object> values = new EnumMap<Column, Object>(Column.class);
+    try {
+      JsonReader reader = new JsonReader(new StringReader(line));
+      reader.beginObject();
+      while (reader.hasNext()) {
+        Column column = CsvColumnPlan.getColumn(reader.nextName());
+        // if an attribute appears more than once, the first one is used
+        if (column == null || values.containsKey(column)) {
+          reader.skipValue();
+        } else {
+          Object value = readValue(reader);
+          if (value != null) {
+            values.put(column, value);
+          }
+        }
+      }
+      reader.endObject();
+      if (reader.peek() != JsonToken.END_DOCUMENT) {
+        throw new ParsingError(null, null, "Expected exactly one JSON object");
+      }
+    } catch (IOException e) {
+      throw new ParsingError(getProductId(values), line, "Invalid JSON: " + e.getMessage(),
+          lineNumber);
+    } catch (IllegalStateException e) {
+      // the reader found a different kind of value than expected
+      throw new ParsingError(getProductId(values), line, "Invalid JSON: " + e.getMessage(),
+          lineNumber);
+    } catch (ParsingError e) {
+      throw e.inRecord(getProductId(values), line, lineNumber);
+    }
+
+    try {
+      Product product = new Product();
+      product.externalId = getString(values, Column.ID, "ID", true);
+      String lang = getString(values, Column.CONTENT_LANGUAGE, "Content language", false);
+      if (lang != null) {
+        product.lang = lang;
+      }
+      String country = getString(values, Column.TARGET_COUNTRY, "Target country", false);
+      if (country != null) {
+        product.country = country;
+      }
+      product.title = getString(values, Column.TITLE, "Title", true);
+      product.content = new Content("text",
+          getString(values, Column.DESCRIPTION, "Description", true));
+      product.condition = getString(values, Column.CONDITION, "Condition", true);
+      product.price = new Price(getString(values, Column.CURRENCY, "Currency", true),
+          getDecimal(values, Column.PRICE, "Price", true));
+      BigDecimal weight = getDecimal(values, Column.WEIGHT, "weight", false);
+      if (weight != null) {
+        String unit = getString(values, Column.WEIGHT_UNIT, "Weight unit", false);
+        if (unit == null) {
+          throw ParsingError.forAttribute("Weight unit", "Weight given without unit");
+        }
+        product.shippingWeight = new ShippingWeight(unit, weight);
+      }
+      product.quantity = getInteger(values, Column.QUANTITY, "Quantity");
+      product.expirationDate = getDate(values, Column.EXPIRATION_DATE, "Expiration date");
+      product.productType = getString(values, Column.PRODUCT_TYPE, "Product type", false);
+      product.brand = getString(values, Column.BRAND, "Brand", false);
+      product.gtin = getString(values, Column.GTIN, "GTIN", false);
+      product.mpn = getString(values, Column.MPN, "MPN", false);
+
+      String linkPath = getString(values, Column.LINK, "Link", false);
+      if (linkPath != null) {
+        Link link = new Link();
+        link.rel = "alternate";
+        link.href = homepage + linkPath;
+        link.type = "text/html";
+        product.links.add(link);
+      }
+
+      String imageLink = getString(values, Column.IMAGE_LINK, "Image link", false);
+      product.imageLinks = new ArrayList<String>();
+      if (imageLink != null) {
+        product.imageLinks.add(imageLink);
+      }
+
+      product.additionalImageLinks = getList(values, Column.ADDITIONAL_IMAGE_LINKS);
+      product.availability = getString(values, Column.AVAILABILITY, "Availability", false);
+      product.colors = getList(values, Column.COLOR);
+      product.gender = getString(values, Column.GENDER, "Gender", false);
+      product.ageGroup = getString(values, Column.AGE_GROUP, "Age group", false);
+      product.size = getString(values, Column.SIZE, "Size", false);
+      product.material = getString(values, Column.MATERIAL, "Material", false);
+      product.pattern = getString(values, Column.PATTERN, "Pattern", false);
+      product.itemGroupId = getString(values, Column.ITEM_GROUP_ID, "Item group ID", false);
+      product.googleProductCategory = getString(values, Column.GOOGLE_PRODUCT_CATEGORY,
+          "Google product category", false);
+      product.manufacturer = getString(values, Column.MANUFACTURER, "Manufacturer", false);
+      product.author = getString(values, Column.AUTHOR, "Author", false);
+      product.edition = getString(values, Column.EDITION, "Edition", false);
+      product.genre = getString(values, Column.GENRE, "Genre", false);
+      product.year = getString(values, Column.YEAR, "Year", false);
+      product.channel = getString(values, Column.CHANNEL, "Channel", false);
+      product.adult = getBoolean(values, Column.ADULT, "Adult");
+      product.featuredProduct = getBoolean(values, Column.FEATURED_PRODUCT, "Featured product");
+      product.adwordsGrouping = getString(values, Column.ADWORDS_GROUPING, "AdWords grouping",
+          false);
+      product.adwordsLabels = getList(values, Column.ADWORDS_LABELS);
+      product.adwordsRedirect = getString(values, Column.ADWORDS_REDIRECT, "AdWords redirect",
+          false);
+      product.productReviewAverage = getString(values, Column.PRODUCT_REVIEW_AVERAGE,
+          "Product review average", false);
+      product.productReviewCount = getString(values, Column.PRODUCT_REVIEW_COUNT,
+          "Product review count", false);
+
+      return product;
+    } catch (ParsingError e) {
+      throw e.inRecord(getProductId(values), line, lineNumber);
+    }
+  }
+
+  /**
+   * Reads the value of an attribute.
+   *
+   * @return The trimmed value as a string, a list of such strings for an
+   *   array, or {@code null} if the value is {@code null} or empty
+   * @throws ParsingError if the value is an object, or an array containing
+   *   anything but strings, numbers and booleans
+   */
+  private static Object readValue(JsonReader reader) throws IOException, ParsingError {
+    if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+      List<String> list = new ArrayList<String>();
+      reader.beginArray();
+      while (reader.hasNext()) {
+        String element = readScalar(reader);
+        if (element != null) {
+          list.add(element);
+        }
+      }
+      reader.endArray();
+      return list.isEmpty() ? null : list;
+    }
+    return readScalar(reader);
+  }
+
+  /**
+   * Reads a string, number, boolean or {@code null} value.
+   *
+   * @return The trimmed value as a string, or {@code null} if the value is
+   *   {@code null} or empty
+   * @throws ParsingError if the value is an object or an array
+   */
+  private static String readScalar(JsonReader reader) throws IOException, ParsingError {
+    String value;
+    switch (reader.peek()) {
+      case STRING:
+      case NUMBER:
+        value = reader.nextString().trim();
+        break;
+      case BOOLEAN:
+        value = Boolean.toString(reader.nextBoolean());
+        break;
+      case NULL:
+        reader.nextNull();
+        value = null;
+        break;
+      default:
+        throw new ParsingError(null, null, "Expected a string, number or boolean, but found "
+            + reader.peek());
+    }
+    return value == null || value.length() == 0 ? null : value;
+  }
+
+  /**
+   * Returns the product ID for error reporting, or {@code null} if it has not
+   * been read (yet).
+   */
+  private static String getProductId(Map<Column, Object> values) {
+    Object id = values.get(Column.ID);
+    return id instanceof String ? (String) id : null;
+  }
+
+  /**
+   * Returns a string attribute.
+   *
+   * @param values The values of the product
+   * @param column The attribute
+   * @param attributeName The name of the attribute, for error reporting
+   * @param required Whether the attribute is required or not
+   * @return The value, or {@code null} if the attribute is optional and
+   *   missing
+   * @throws ParsingError if a required attribute is missing, or the attribute
+   *   has several values
+   */
+  private static String getString(Map<Column, Object> values, Column column,
+      String attributeName, boolean required) throws ParsingError {
+    Object value = values.get(column);
+    if (value == null) {
+      if (required) {
+        throw ParsingError.forAttribute(attributeName,
+            "Required argument missing: " + attributeName);
+      }
+      return null;
+    }
+    if (!(value instanceof String)) {
+      throw ParsingError.forAttribute(attributeName, "Expected a single value for "
+          + attributeName + ", but found " + value);
+    }
+    return (String) value;
+  }
+
+  /**
+   * Returns an optional integer attribute.
+   *
+   * @throws ParsingError if the attribute is not an integer
+   */
+  private static Integer getInteger(Map<Column, Object> values, Column column,
+      String attributeName) throws ParsingError {
+    String value = getString(values, column, attributeName, false);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Integer.valueOf(value);
+    } catch (NumberFormatException e) {
+      throw ParsingError.forAttribute(attributeName, "Could not parse \"" + value + "\" as "
+          + attributeName);
+    }
+  }
+
+  /**
+   * Returns a decimal number attribute.
+   *
+   * @throws ParsingError if a required attribute is missing or the attribute
+   *   is not a decimal number
+   */
+  private static BigDecimal getDecimal(Map<Column, Object> values, Column column,
+      String attributeName, boolean required) throws ParsingError {
+    String value = getString(values, column, attributeName, required);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return new BigDecimal(value);
+    } catch (NumberFormatException e) {
+      throw ParsingError.forAttribute(attributeName, "Could not parse \"" + value + "\" as "
+          + attributeName);
+    }
+  }
+
+  /**
+   * Returns an optional date attribute.
+   *
+   * @throws ParsingError if the attribute is not a date
+   */
+  private static DateTime getDate(Map<Column, Object> values, Column column,
+      String attributeName) throws ParsingError {
+    String value = getString(values, column, attributeName, false);
+    if (value == null) {
+      return null;
+    }
+    DateTime date = dateParser.parse(value);
+    if (date == null) {
+      throw ParsingError.forAttribute(attributeName, "Date (" + value + ") could not be parsed");
+    }
+    return date;
+  }
+
+  /**
+   * Returns an optional boolean attribute. Like in CSV, {@code "yes"} and
+   * {@code "no"} are accepted as well.
+   *
+   * @return The value, or {@code false} if the attribute is missing
+   * @throws ParsingError if the attribute is not a boolean
+   */
+  private static boolean getBoolean(Map<Column, Object> values, Column column,
+      String attributeName) throws ParsingError {
+    String value = getString(values, column, attributeName, false);
+    if (value == null || "false".equalsIgnoreCase(value) || "no".equalsIgnoreCase(value)) {
+      return false;
+    } else if ("true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value)) {
+      return true;
+    } else {
+      throw ParsingError.forAttribute(attributeName, "Could not parse \"" + value + "\" as "
+          + attributeName);
+    }
+  }
+
+  /**
+   * Returns an optional attribute with several values, given as an array or,
+   * like in CSV, as a comma-separated string.
+   *
+   * @return The non-empty values, or {@code null} if there are none
+   */
+  @SuppressWarnings("unchecked")
+  private static List<String> getList(Map<Column, Object> values, Column column) {
+    Object value = values.get(column);
+    if (value == null || value instanceof List) {
+      return (List<String>) value;
+    }
+    List<String> list = new ArrayList<String>();
+    for (String element : ((String) value).split(",")) {
+      String trimmed = element.trim();
+      if (trimmed.length() > 0) {
+        list.add(trimmed);
+      }
+    }
+    return list.isEmpty() ? null : list;
+  }
+}
@@ -0,0 +1,627 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.model.Product;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>A {@link CsvInputAdapter} that memory-maps a UTF-8 encoded CSV file and
+ * parses it on several cores at once.
+ *
+ * <p>The file is split into segments of roughly equal size whose boundaries are
+ * aligned to the beginnings of records, so that every record belongs to exactly
+ * one segment, even if it contains quoted line breaks. The segments are
+ * mapped with {@link FileChannel#map} and parsed in the background on a
+ * {@link ForkJoinPool}, straight into {@link ColumnarProductBatch}es, which
+ * are handed out by {@link #getNextBatch(int)}. {@link #getNextProducts(int)}
+ * and the parallel stream returned by {@link #stream()} turn them into
+ * {@link Product}s.
+ *
+ * <p>The first line of the file contains the column headers. It is used for
+ * compiling the column plan, as in {@link CsvInputAdapter#readHeaderLine()}.
+ * Parsing errors are recorded with the number of the line in the file, as in
+ * {@link CsvInputAdapter}. Whether a line break ends a record depends on all
+ * quotes before it, so the segment boundaries and their line numbers are
+ * determined up front by a single sequential scan of the file. The scan only
+ * tracks the quoting state and does not copy anything, so it is much cheaper
+ * than the parsing that follows.
+ *
+ * <p>When resuming from a {@link CsvCheckpoint}, which has to be given to the
+ * constructor, the file is only scanned and mapped from the committed offset
+ * on.
+ */
+public class MappedCsvInputAdapter extends CsvInputAdapter {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger
+      = Logger.getLogger(MappedCsvInputAdapter.class.getName());
+
+  /**
+   * Default size of the segments in bytes.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  /**
+   * Number of bytes read at once while looking for record boundaries.
+   */
+  private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+
+  /**
+   * Number of bytes copied at once from a segment for tokenizing.
+   */
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  /**
+   * The pool on which the segments are parsed.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * The mapped segments of the file, without the header line.
+   */
+  private final MappedByteBuffer[] segments;
+
+  /**
+   * The number of the first line of each segment.
+   */
+  private final long[] segmentFirstLine;
+
+  /**
+   * The offset of each segment in the file, followed by the end of the last
+   * segment.
+   */
+  private final long[] segmentOffsets;
+
+  /**
+   * The maximum number of products in the batches handed out by
+   * {@link #getNextBatch(int)}.
+   */
+  private final int batchSize;
+
+  /**
+   * Queue of batches parsed in the background for {@link #getNextBatch(int)}.
+   */
+  private final ProductBatchQueue batchQueue;
+
+  /**
+   * Whether the background parsing for {@link #getNextBatch(int)} has been
+   * started already.
+   */
+  private final AtomicBoolean started = new AtomicBoolean(false);
+
+  /**
+   * Maps the given file and prepares its segments.
+   *
+   * @param file The UTF-8 encoded CSV file. Its first line contains the
+   *   column headers.
+   * @param separator The string used as a separator in the CSV
+   * @param homepage The user's registered homepage. This homepage will be used
+   *   as a prefix for all homepage links.
+   * @param pool The pool on which the segments are parsed
+   * @param segmentSize The approximate size of the segments in bytes
+   * @param batchSize The maximum number of products in one batch
+   * @param queueCapacity The maximum number of parsed batches waiting to be
+   *   taken by {@link #getNextBatch(int)}
+   * @throws IOException if the file could not be read or mapped, if a
+   *   record is too long to fit into one segment, or if the header lacks a
+   *   required column
+   */
+  public MappedCsvInputAdapter(File file, String separator, String homepage,
+      ForkJoinPool pool, int segmentSize, int batchSize, int queueCapacity) throws IOException {
+    this(file, separator, homepage, pool, segmentSize, batchSize, queueCapacity, null);
+  }
+
+  /**
+   * Maps the given file and prepares its segments, tracking the acknowledged
+   * records in the given checkpoint. If the checkpoint has been loaded for
+   * resuming a run, only the part of the file after its committed offset is
+   * mapped.
+   *
+   * @param file The UTF-8 encoded CSV file. Its first line contains the
+   *   column headers.
+   * @param separator The string used as a separator in the CSV
+   * @param homepage The user's registered homepage. This homepage will be used
+   *   as a prefix for all homepage links.
+   * @param pool The pool on which the segments are parsed
+   * @param segmentSize The approximate size of the segments in bytes
+   * @param batchSize The maximum number of products in one batch
+   * @param queueCapacity The maximum number of parsed batches waiting to be
+   *   taken by {@link #getNextBatch(int)}
+   * @param checkpoint The checkpoint, or {@code null}
+   * @throws IOException if the file could not be read or mapped, if a
+   *   record is too long to fit into one segment, or if the header lacks a
+   *   required column
+   */
+  MappedCsvInputAdapter(File file, String separator, String homepage, ForkJoinPool pool,
+      int segmentSize, int batchSize, int queueCapacity, CsvCheckpoint checkpoint)
+      throws IOException {
+    super(separator, homepage);
+    if (segmentSize <= 0) {
+      throw new IllegalArgumentException("segmentSize must be positive");
+    }
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive");
+    }
+    this.pool = pool;
+    this.batchSize = batchSize;
+    this.batchQueue = new ProductBatchQueue(queueCapacity);
+
+    long startOffset;
+    long startLines;
+    InputStream headerInput = new FileInputStream(file);
+    try {
+      CsvFieldTokenizer header = new CsvFieldTokenizer(separator);
+      CsvRecordReader headerReader = new CsvRecordReader(headerInput);
+      if (headerReader.readRecord(header)) {
+        setColumnPlan(CsvColumnPlan.fromHeader(header));
+      }
+      startOffset = headerReader.getOffset();
+      startLines = headerReader.getLinesRead();
+    } finally {
+      headerInput.close();
+    }
+    if (checkpoint != null && checkpoint.getResumedOffset() > startOffset) {
+      startOffset = checkpoint.getResumedOffset();
+      startLines = checkpoint.getResumedLines();
+    }
+
+    List<Long> boundaries = new ArrayList<Long>();
+    List<Long> firstLines = new ArrayList<Long>();
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      long size = channel.size();
+      findSegments(channel, size, new CsvFieldTokenizer(separator, false), segmentSize,
+          startOffset, startLines, boundaries, firstLines);
+      segments = new MappedByteBuffer[boundaries.size() - 1];
+      for (int i = 0; i < segments.length; i++) {
+        long start = boundaries.get(i);
+        long length = boundaries.get(i + 1) - start;
+        if (length > Integer.MAX_VALUE) {
+          throw new IOException("Record too long in " + file);
+        }
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+      }
+    } finally {
+      // the mappings stay valid after the channel has been closed
+      randomAccessFile.close();
+    }
+    segmentFirstLine = new long[segments.length];
+    segmentOffsets = new long[segments.length + 1];
+    for (int i = 0; i < segments.length; i++) {
+      segmentFirstLine[i] = firstLines.get(i);
+      segmentOffsets[i] = boundaries.get(i);
+    }
+    segmentOffsets[segments.length] = boundaries.get(segments.length);
+    if (checkpoint != null) {
+      startTracking(checkpoint, startLines, startOffset);
+    }
+  }
+
+  /**
+   * Scans the file from the given record on for the ends of records and
+   * chooses the segment boundaries. A segment ends at the first record end at
+   * least {@code segmentSize} bytes after its start.
+   *
+   * @param startOffset The offset of the first record, after the header
+   * @param startLines The number of lines before the first record
+   * @param boundaries Receives the start of each segment, followed by the end
+   *   of the last one
+   * @param firstLines Receives the number of the line each segment starts on
+   */
+  private static void findSegments(FileChannel channel, long size, CsvFieldTokenizer scanner,
+      int segmentSize, long startOffset, long startLines, List<Long> boundaries,
+      List<Long> firstLines) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+    byte[] bytes = buffer.array();
+    long offset = startOffset;
+    long lineBreaks = startLines;
+    if (startOffset < size) {
+      boundaries.add(startOffset);
+      firstLines.add(startLines + 1);
+    }
+    long nextBoundary = startOffset + segmentSize;
+    while (offset < size) {
+      buffer.clear();
+      int read = channel.read(buffer, offset);
+      if (read <= 0) {
+        break;
+      }
+      int position = 0;
+      while (position < read) {
+        int end = scanner.feed(bytes, position, read);
+        if (end < 0) {
+          break;
+        }
+        lineBreaks += scanner.getLineBreaks();
+        scanner.reset();
+        long recordEnd = offset + end;
+        if (recordEnd >= nextBoundary && recordEnd < size) {
+          boundaries.add(recordEnd);
+          firstLines.add(lineBreaks + 1);
+          nextBoundary = recordEnd + segmentSize;
+        }
+        position = end;
+      }
+      offset += read;
+    }
+    // if there are no records after the start, this is the only boundary and
+    // there are no segments
+    boundaries.add(Math.max(size, startOffset));
+  }
+
+  /**
+   * Returns a parallel stream of all products that have not been handed out
+   * yet. The products are parsed on the pool given to the constructor, like
+   * those returned by {@link #getNextBatch(int)}, and are not necessarily in
+   * the order in which they appear in the file; the stream splits by handing
+   * over whole batches. Products that cannot be parsed are skipped and
+   * recorded as parsing errors.
+   *
+   * @return a parallel stream of the remaining products
+   */
+  @Override
+  public Stream<Product> stream() {
+    return StreamSupport.stream(new BatchSpliterator(), true);
+  }
+
+  /**
+   * Returns the next product. Prefer {@link #getNextProducts(int)}, which
+   * avoids splitting the batches prepared in the background.
+   *
+   * @return A product, or {@code null} if no more products are available
+   * @throws IOException if anything went wrong during reading the product
+   */
+  @Override
+  public Product getNextProduct() throws IOException {
+    List<Product> products = getNextProducts(1);
+    return products.isEmpty() ? null : products.get(0);
+  }
+
+  /**
+   * Returns the next batch of products, like {@link #getNextBatch(int)}, as a
+   * list of {@link Product}s.
+   *
+   * @return A list of up to {@code maxNumOfProducts} products. It is empty if
+   *   and only if no more products are available.
+   * @throws IOException if anything went wrong during reading the products
+   */
+  @Override
+  public List<Product> getNextProducts(int maxNumOfProducts) throws IOException {
+    return getNextBatch(maxNumOfProducts).toProducts();
+  }
+
+  /**
+   * Returns the next batch of products. The first call starts parsing all
+   * segments in the background on the pool; the products are then returned in
+   * batches as they become available, not necessarily in the order in which
+   * they appear in the file.
+   *
+   * @return A batch of up to {@code maxNumOfProducts} products. It is empty if
+   *   and only if no more products are available.
+   * @throws IOException if anything went wrong during reading the products
+   */
+  @Override
+  public ColumnarProductBatch getNextBatch(int maxNumOfProducts) throws IOException {
+    if (isIntakeStopped()) {
+      return newBatch(0);
+    }
+    if (started.compareAndSet(false, true)) {
+      startParsing();
+    }
+    return batchQueue.take(maxNumOfProducts);
+  }
+
+  /**
+   * Not supported, since the file is mapped by the constructor: the checkpoint
+   * has to be given to the constructor instead.
+   *
+   * @throws IllegalStateException always
+   */
+  @Override
+  void setCheckpoint(CsvCheckpoint checkpoint) {
+    throw new IllegalStateException("The checkpoint has to be given to the constructor");
+  }
+
+  /**
+   * Returns the pool on which the segments are parsed.
+   *
+   * @return the pool given to the constructor
+   */
+  public ForkJoinPool getPool() {
+    return pool;
+  }
+
+  /**
+   * Returns the number of parsed batches that have not yet been taken by
+   * {@link #getNextBatch(int)}.
+   *
+   * @return the depth of the batch queue
+   */
+  public int getBatchQueueDepth() {
+    return batchQueue.size();
+  }
+
+  /**
+   * Submits one task per segment to the pool. Each task parses its segment
+   * into batches and puts them into the batch queue; the last task to finish
+   * marks the end of the queue.
+   */
+  private void startParsing() {
+    final AtomicInteger remainingSegments = new AtomicInteger(segments.length);
+    if (segments.length == 0) {
+      batchQueue.finish(null);
+      return;
+    }
+    for (int i = 0; i < segments.length; i++) {
+      final int index = i;
+      final SegmentParser segment = new SegmentParser(i, i + 1);
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            BatchCollector collector = new BatchCollector(segmentFirstLine[index] - 1,
+                segmentOffsets[index]);
+            while (segment.parseNext(collector.batch)) {
+              if (collector.batch.size() == batchSize) {
+                collector.putBatch(segment);
+              }
+            }
+            collector.putBatch(segment);
+          } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Parsing a segment was interrupted.");
+            Thread.currentThread().interrupt();
+          } finally {
+            if (remainingSegments.decrementAndGet() == 0) {
+              batchQueue.finish(null);
+            }
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Collects the products of a segment into batches.
+   */
+  private final class BatchCollector {
+    /**
+     * The batch the products of the segment are parsed into.
+     */
+    ColumnarProductBatch batch = newBatch(batchSize);
+
+    /**
+     * The number of lines before and the offset of the first record of the
+     * batch.
+     */
+    private long startLines;
+    private long startOffset;
+
+    BatchCollector(long startLines, long startOffset) {
+      this.startLines = startLines;
+      this.startOffset = startOffset;
+    }
+
+    /**
+     * Puts the batch into the batch queue, registering the records it has
+     * been parsed from with the checkpoint, and starts a new batch.
+     *
+     * @param segment The parser that has parsed the batch
+     */
+    void putBatch(SegmentParser segment) throws InterruptedException {
+      CsvCheckpoint checkpoint = getCheckpoint();
+      long endOffset = segment.getOffset();
+      if (checkpoint != null && endOffset > startOffset) {
+        long endLines = segment.getLinesRead();
+        batch.range = checkpoint.register(startLines, endLines, endOffset, batch.size());
+        startLines = endLines;
+        startOffset = endOffset;
+      }
+      batchQueue.put(batch);
+      batch = newBatch(batchSize);
+    }
+  }
+
+  /**
+   * A spliterator over the products of the batches parsed in the background.
+   * It splits by handing over the next batch.
+   */
+  private final class BatchSpliterator implements Spliterator<Product> {
+    /**
+     * The batch currently being handed out, and the index of its next product.
+     */
+    private List<Product> products = Collections.emptyList();
+    private int next = 0;
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Product> action) {
+      if (next == products.size()) {
+        products = takeProducts();
+        next = 0;
+        if (products.isEmpty()) {
+          return false;
+        }
+      }
+      action.accept(products.get(next++));
+      return true;
+    }
+
+    @Override
+    public Spliterator<Product> trySplit() {
+      List<Product> batch = takeProducts();
+      return batch.isEmpty() ? null : batch.spliterator();
+    }
+
+    private List<Product> takeProducts() {
+      try {
+        return getNextProducts(batchSize);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public long estimateSize() {
+      return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+      return NONNULL | IMMUTABLE;
+    }
+  }
+
+  /**
+   * A parser of the records of a range of segments.
+   */
+  private final class SegmentParser {
+    /**
+     * The segment currently being parsed.
+     */
+    private int segment;
+
+    /**
+     * The segment after the last one covered by this spliterator.
+     */
+    private int endSegment;
+
+    /**
+     * A view of the current segment, or {@code null} if parsing it has not
+     * started yet.
+     */
+    private ByteBuffer view;
+
+    /**
+     * The number of the line the next record starts on.
+     */
+    private long lineNumber;
+
+    /**
+     * Buffer the bytes of the current segment are copied to, chunk by chunk,
+     * before tokenizing them.
+     */
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private int chunkPosition = 0;
+    private int chunkLimit = 0;
+
+    /**
+     * The tokenizer used for splitting the records into fields.
+     */
+    private final CsvFieldTokenizer tokenizer = newTokenizer();
+
+    SegmentParser(int segment, int endSegment) {
+      this.segment = segment;
+      this.endSegment = endSegment;
+    }
+
+    /**
+     * Returns the number of lines before the next record. Only meaningful
+     * after {@link #parseNext} has been called.
+     */
+    long getLinesRead() {
+      return lineNumber - 1;
+    }
+
+    /**
+     * Returns the offset in the file of the next record.
+     */
+    long getOffset() {
+      if (view == null) {
+        return segmentOffsets[segment];
+      }
+      return segmentOffsets[segment] + view.position() - (chunkLimit - chunkPosition);
+    }
+
+    /**
+     * Parses records until one of them has been added to the given batch as a
+     * new row, or the end of the last segment has been reached.
+     *
+     * @param batch The batch
+     * @return {@code false} if there are no more records
+     */
+    boolean parseNext(ColumnarProductBatch batch) {
+      while (segment < endSegment) {
+        if (view == null) {
+          view = segments[segment].duplicate();
+          lineNumber = segmentFirstLine[segment];
+        }
+        if (!readRecord()) {
+          segment++;
+          view = null;
+          continue;
+        }
+        long recordLineNumber = lineNumber;
+        lineNumber += tokenizer.getLineBreaks();
+        if (parseRecordOrRecordError(tokenizer, recordLineNumber, batch)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Feeds the tokenizer until it has read the next record of the current
+     * segment.
+     *
+     * @return {@code false} if the end of the segment has been reached
+     */
+    private boolean readRecord() {
+      tokenizer.reset();
+      while (true) {
+        if (chunkPosition == chunkLimit) {
+          int length = Math.min(chunk.length, view.remaining());
+          if (length == 0) {
+            // only the last record of the file may end without a line break
+            return tokenizer.finish();
+          }
+          view.get(chunk, 0, length);
+          chunkPosition = 0;
+          chunkLimit = length;
+        }
+        int end = tokenizer.feed(chunk, chunkPosition, chunkLimit);
+        if (end >= 0) {
+          chunkPosition = end;
+          return true;
+        }
+        chunkPosition = chunkLimit;
+      }
+    }
+  }
+}
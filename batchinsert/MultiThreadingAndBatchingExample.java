@@ -17,22 +17,28 @@
 package com.google.api.client.sample.structuredcontent.batchinsert;
 
 import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpTransport;
 import com.google.api.client.sample.structuredcontent.batchinsert.CsvInputAdapter.ParsingError;
 import com.google.api.client.sample.structuredcontent.model.ServiceError;
 import com.google.api.client.sample.structuredcontent.model.ServiceErrors;
 import com.google.api.client.sample.structuredcontent.utils.ClientLibraryUtils;
+import com.google.api.client.sample.structuredcontent.utils.PooledHttpTransport;
+import com.google.api.client.sample.structuredcontent.utils.RateLimiter;
 import com.google.api.client.sample.structuredcontent.utils.UserInformation;
 import com.google.api.client.xml.XmlNamespaceDictionary;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,11 +54,23 @@ import java.util.logging.Logger;
  * interpreted as a field delimiter, expecting the format described in
  * {@link CsvInputAdapter}.
  *
- * <p>The first line of the .csv file may be used for headers or left empty;
- * it will be ignored during the parsing. This is just for making the .csv file
- * human readable when opened in a spreadsheet program.
+ * <p>The first line of the .csv file contains the column headers. If it
+ * names the columns (e.g. "title" or "[product type]"), the columns may be in
+ * any order, further product attributes like "availability" or "color" may be
+ * given, and columns with unknown names are skipped. Otherwise, it is ignored
+ * and the columns are expected in the order described in
+ * {@link CsvInputAdapter}.
+ *
+ * <p>Instead of a .csv file, the products may also be given as JSON lines
+ * (.jsonl), one JSON object per line with the same attribute names as the
+ * CSV header (see {@link JsonLinesInputAdapter}), or as an Atom feed (.xml)
+ * like the feeds of the Content API for Shopping (see
+ * {@link XmlFeedInputAdapter}). All formats are read as a stream.
  *
- * <p>The .csv file should be encoded in UTF-8.
+ * <p>The input file should be encoded in UTF-8. It may also be compressed with
+ * gzip; files consisting of several gzip members, as written by
+ * {@code bgzip} or {@code pigz --independent}, are decompressed on several
+ * cores in parallel (see {@link ParallelGzipInputStream}).
  *
  * <p>This example can be used "out of the box" for just submitting your data
  * using a spreadsheet. All you need to do is put the data into a spreadsheet
@@ -64,6 +82,21 @@ import java.util.logging.Logger;
  * will accumulate products from the input file up to a certain number, and then
  * send all of these products as one batch.
  *
+ * <p>Optionally, the program records in a checkpoint file which records have
+ * been acknowledged by the server, so that an interrupted run can be resumed
+ * where it stopped (see {@link CsvCheckpoint}). When the program is terminated,
+ * e.g. by SIGTERM, it stops taking products from the input, waits for the
+ * batches being sent, and writes the checkpoint a last time.
+ *
+ * <p>Parsing errors are counted per attribute and per message, and only the
+ * first of them are kept for the report; optionally, all of them are written
+ * to an error file. If too many records cannot be parsed, the run is aborted
+ * early (see {@link ParsingErrorSink}).
+ *
+ * <p>In delta mode, the program only sends products that are new or have
+ * changed since they were last inserted successfully, according to the
+ * fingerprints kept in an index file (see {@link ProductFingerprintIndex}).
+ *
  * @author Birgit Vera Schmidt
  */
 public class MultiThreadingAndBatchingExample {
@@ -99,6 +132,165 @@ public class MultiThreadingAndBatchingExample {
    */
   private final String homepage;
 
+  /**
+   * Number of threads parsing the input in parallel to the worker threads, or
+   * 0 if the worker threads should parse the input themselves.
+   */
+  private int numberOfParserThreads = 0;
+
+  /**
+   * Maximum number of chunks waiting in each queue of the parsing pipeline.
+   */
+  private int pipelineQueueCapacity = DEFAULT_PIPELINE_QUEUE_CAPACITY;
+
+  /**
+   * Whether the input file should be memory-mapped and parsed in parallel
+   * segments, see {@link MappedCsvInputAdapter}.
+   */
+  private boolean memoryMapping = false;
+
+  /**
+   * The file the checkpoint is written to, or {@code null} for not writing a
+   * checkpoint.
+   */
+  private File checkpointFile = null;
+
+  /**
+   * Interval in milliseconds in which the checkpoint is written.
+   */
+  private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+  /**
+   * Whether the run recorded in the checkpoint file should be resumed.
+   */
+  private boolean resume = false;
+
+  /**
+   * The file holding the fingerprints of the products sent before, or
+   * {@code null} for sending all products.
+   */
+  private File deltaIndexFile = null;
+
+  /**
+   * The file all parsing errors are written to, or {@code null}.
+   */
+  private File errorFile = null;
+
+  /**
+   * The share of records that may fail to parse before the run is aborted.
+   */
+  private double maxErrorRatio = ParsingErrorSink.NO_LIMIT;
+
+  /**
+   * Whether products are checked before they are sent, see
+   * {@link ProductValidator}.
+   */
+  private boolean validation = true;
+
+  /**
+   * Whether request bodies are compressed with gzip.
+   */
+  private boolean compression = false;
+
+  /**
+   * The maximum number of bytes of serialized entries kept for sending them
+   * again, or 0 for not keeping them.
+   */
+  private long fragmentCacheSize = DEFAULT_FRAGMENT_CACHE_SIZE;
+
+  /**
+   * The maximum number of bytes of the feed sent in one batch.
+   */
+  private long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+
+  /**
+   * The minimum number of products per batch when adapting the batch size, or
+   * 0 for always sending the maximum number of products per batch.
+   */
+  private int minAdaptiveBatchSize = 0;
+
+  /**
+   * The maximum number of products per batch when adapting the batch size.
+   */
+  private int maxAdaptiveBatchSize = 0;
+
+  /**
+   * The time in milliseconds a batch may take before the batch size is
+   * decreased, when adapting the batch size.
+   */
+  private long targetBatchLatency = DEFAULT_TARGET_BATCH_LATENCY;
+
+  /**
+   * The connection pool of the transport used, whose state is logged while
+   * waiting for the worker threads, or {@code null}.
+   */
+  private PooledHttpTransport connectionPool = null;
+
+  /**
+   * The maximum number of batches in flight when sending asynchronously, or 0
+   * for sending with worker threads.
+   */
+  private int asyncWindow = 0;
+
+  /**
+   * Whether the worker threads are run as virtual threads, if the Java
+   * version supports them.
+   */
+  private boolean virtualThreads = false;
+
+  /**
+   * The maximum number of attempts per product, see {@link RetryPolicy}.
+   */
+  private int maxAttempts = RetryPolicy.DEFAULT_MAX_ATTEMPTS;
+
+  /**
+   * The maximum numbers of requests and of entries sent per second for the
+   * account, see {@link RateLimiter}; 0 for no limit.
+   */
+  private double maxRequestsPerSecond = 0;
+  private double maxEntriesPerSecond = 0;
+
+  /**
+   * Default for the maximum number of chunks waiting in each queue of the
+   * parsing pipeline.
+   */
+  private static final int DEFAULT_PIPELINE_QUEUE_CAPACITY = 16;
+
+  /**
+   * Default for the maximum number of bytes of serialized entries kept for
+   * sending them again.
+   */
+  private static final long DEFAULT_FRAGMENT_CACHE_SIZE = 32L << 20;
+
+  /**
+   * Default for the maximum number of bytes of the feed sent in one batch.
+   */
+  private static final long DEFAULT_MAX_BATCH_BYTES = 4L << 20;
+
+  /**
+   * Default for the time in milliseconds a batch may take before the batch
+   * size is decreased.
+   */
+  private static final long DEFAULT_TARGET_BATCH_LATENCY = 20000;
+
+  /**
+   * Interval in milliseconds in which the state of the parsing pipeline and
+   * of the connection pool is logged while waiting for the worker threads.
+   */
+  private static final long STATUS_INTERVAL = 10000;
+
+  /**
+   * Default for the interval in milliseconds in which the checkpoint is
+   * written.
+   */
+  private static final long DEFAULT_CHECKPOINT_INTERVAL = 10000;
+
+  /**
+   * Maximum time in milliseconds to wait for the batches being sent when the
+   * program is terminated.
+   */
+  private static final long SHUTDOWN_DRAIN_TIMEOUT = 60000;
+
   /**
    * This function will create a number of worker threads as specified by the
    * arguments, then start all of them, wait for them to finish and report errors
@@ -106,23 +298,92 @@ public class MultiThreadingAndBatchingExample {
    * instance of the (thread-safe) class {@link CsvInputAdapter} for accessing
    * it and parsing the products therein.
    *
-   * @param args Exactly 4 arguments are expected in this order:
+   * @param args At least 4 arguments are expected in this order:
    *   <ol>
-   *     <li>The file name of the .csv file to be parsed</li>
-   *     <li>The string used as a separator in the .csv file</li>
+   *     <li>The file name of the .csv file to be parsed, which may be gzip
+   *         compressed. Files ending in .jsonl or .xml (or .jsonl.gz or
+   *         .xml.gz) are read as JSON lines or as an Atom feed instead.</li>
+   *     <li>The string used as a separator in the .csv file. It is ignored
+   *         for the other formats.</li>
    *     <li>The number of worker threads to be used</li>
    *     <li>The maximum number of products that can be sent in one batch
    *         request</li>
    *   </ol>
+   *   They may be followed by these options:
+   *   <ul>
+   *     <li>{@code --parser-threads=<n>}: read and parse the input in a
+   *         pipeline with {@code n} parser threads, see
+   *         {@link PipelinedCsvInputAdapter}</li>
+   *     <li>{@code --queue-capacity=<n>}: the maximum number of chunks waiting
+   *         in each queue of the pipeline</li>
+   *     <li>{@code --mmap}: memory-map the input file and parse it in parallel
+   *         segments, see {@link MappedCsvInputAdapter}. The segments are parsed
+   *         by {@code --parser-threads} threads, or by one thread per core if
+   *         that option is not given. Ignored for gzip compressed files.</li>
+   *     <li>{@code --checkpoint=<file>}: record the acknowledged records in
+   *         the given checkpoint file</li>
+   *     <li>{@code --checkpoint-interval=<seconds>}: how often the checkpoint
+   *         file is written</li>
+   *     <li>{@code --resume}: resume the run recorded in the checkpoint file,
+   *         skipping all records acknowledged in it</li>
+   *     <li>{@code --delta-index=<file>}: only send products that are new or
+   *         have changed since they were last sent, according to the given
+   *         index file, which is created if it does not exist</li>
+   *     <li>{@code --error-file=<file>}: write all parsing errors to the
+   *         given file, one per line</li>
+   *     <li>{@code --max-error-ratio=<ratio>}: abort the run once more than
+   *         this share of the records, between 0 and 1, could not be
+   *         parsed</li>
+   *     <li>{@code --no-validation}: send all products, without checking
+   *         them locally first</li>
+   *     <li>{@code --compress-requests}: compress the request bodies with gzip
+   *         and ask for compressed responses</li>
+   *     <li>{@code --max-batch-size=<kilobytes>}: the maximum size of the
+   *         feed sent in one batch, before compression; 4096 by default</li>
+   *     <li>{@code --fragment-cache=<megabytes>}: how much memory the
+   *         serialized entries kept for sending them again may take, 0 for
+   *         none; 32 by default</li>
+   *     <li>{@code --batch-size-range=<min>:<max>}: adapt the number of
+   *         products per batch between {@code min} and {@code max} to how
+   *         fast the server processes the batches, starting with
+   *         {@code max_products_in_batch}</li>
+   *     <li>{@code --target-latency=<seconds>}: how long a batch may take
+   *         before the batch size is decreased; 20 by default</li>
+   *     <li>{@code --pooled-connections}: send the requests through a pool of
+   *         persistent connections with one connection per worker thread,
+   *         see {@link PooledHttpTransport}</li>
+   *     <li>{@code --async-window=<n>}: send the batches of CSV files
+   *         asynchronously, with up to {@code n} batches in flight, instead of
+   *         by the worker threads; requires Java 11</li>
+   *     <li>{@code --max-attempts=<n>}: how often products the server has not
+   *         processed, since their batch failed with a transient error or was
+   *         interrupted, are sent at most, with growing delays in between;
+   *         1 for never sending them again; 5 by default</li>
+   *     <li>{@code --max-requests-per-second=<rate>}: the maximum number of
+   *         batches sent per second for the account, lowered automatically
+   *         while the server throttles the account; no limit by default</li>
+   *     <li>{@code --max-entries-per-second=<rate>}: the maximum number of
+   *         products sent per second for the account, likewise</li>
+   *     <li>{@code --virtual-threads}: run the worker threads as virtual
+   *         threads, so that there can be hundreds of them; requires Java 21,
+   *         otherwise platform threads are used</li>
+   *   </ul>
    * @throws IOException if anything went seriously wrong during input or output
    * @throws InterruptedException if anything went wrong with the multi-threading
    */
   public static void main(String[] args) throws IOException, InterruptedException {
     // parse commandline arguments
-    if (args.length != 4) {
+    if (args.length < 4) {
       logger.log(Level.SEVERE, "Wrong number of arguments."
-          + " Expected: file.csv <separator string> <number_of_worker_threads>"
-          + " <max_products_in_batch>");
+          + " Expected: file.csv|file.jsonl|file.xml <separator string> <number_of_worker_threads>"
+          + " <max_products_in_batch> [--parser-threads=<n>] [--queue-capacity=<n>]"
+          + " [--mmap] [--checkpoint=<file>] [--checkpoint-interval=<seconds>] [--resume]"
+          + " [--delta-index=<file>] [--error-file=<file>] [--max-error-ratio=<ratio>]"
+          + " [--no-validation] [--compress-requests] [--max-batch-size=<kilobytes>]"
+          + " [--fragment-cache=<megabytes>] [--batch-size-range=<min>:<max>]"
+          + " [--target-latency=<seconds>] [--pooled-connections] [--async-window=<n>]"
+          + " [--virtual-threads] [--max-attempts=<n>] [--max-requests-per-second=<rate>]"
+          + " [--max-entries-per-second=<rate>]");
       System.exit(-1);
     }
 
@@ -148,17 +409,193 @@ public class MultiThreadingAndBatchingExample {
     }
     logger.info("Sending up to " + maxProductsInBatch + " in one batch.");
 
+    int numberOfParserThreads = 0;
+    int queueCapacity = DEFAULT_PIPELINE_QUEUE_CAPACITY;
+    boolean memoryMapping = false;
+    File checkpointFile = null;
+    long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+    boolean resume = false;
+    File deltaIndexFile = null;
+    File errorFile = null;
+    double maxErrorRatio = ParsingErrorSink.NO_LIMIT;
+    boolean validation = true;
+    boolean compression = false;
+    long fragmentCacheSize = DEFAULT_FRAGMENT_CACHE_SIZE;
+    long maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    int minBatchSize = 0;
+    int maxBatchSize = 0;
+    long targetLatency = DEFAULT_TARGET_BATCH_LATENCY;
+    boolean pooledConnections = false;
+    int asyncWindow = 0;
+    boolean virtualThreads = false;
+    int maxAttempts = RetryPolicy.DEFAULT_MAX_ATTEMPTS;
+    double maxRequestsPerSecond = 0;
+    double maxEntriesPerSecond = 0;
+    for (int i = 4; i < args.length; i++) {
+      try {
+        if (args[i].equals("--mmap")) {
+          memoryMapping = true;
+        } else if (args[i].startsWith("--checkpoint=")) {
+          checkpointFile = new File(optionValue(args[i]));
+        } else if (args[i].startsWith("--checkpoint-interval=")) {
+          long seconds = Long.parseLong(optionValue(args[i]));
+          if (seconds < 1 || seconds > Long.MAX_VALUE / 1000) {
+            throw new NumberFormatException();
+          }
+          checkpointInterval = seconds * 1000;
+        } else if (args[i].equals("--resume")) {
+          resume = true;
+        } else if (args[i].startsWith("--delta-index=")) {
+          deltaIndexFile = new File(optionValue(args[i]));
+        } else if (args[i].startsWith("--error-file=")) {
+          errorFile = new File(optionValue(args[i]));
+        } else if (args[i].startsWith("--max-error-ratio=")) {
+          maxErrorRatio = Double.parseDouble(optionValue(args[i]));
+          if (maxErrorRatio < 0 || maxErrorRatio > 1) {
+            throw new NumberFormatException();
+          }
+        } else if (args[i].equals("--no-validation")) {
+          validation = false;
+        } else if (args[i].equals("--compress-requests")) {
+          compression = true;
+        } else if (args[i].equals("--pooled-connections")) {
+          pooledConnections = true;
+        } else if (args[i].equals("--virtual-threads")) {
+          virtualThreads = true;
+        } else if (args[i].startsWith("--async-window=")) {
+          asyncWindow = Integer.parseInt(optionValue(args[i]));
+          if (asyncWindow < 1) {
+            throw new NumberFormatException();
+          }
+        } else if (args[i].startsWith("--max-attempts=")) {
+          maxAttempts = Integer.parseInt(optionValue(args[i]));
+          if (maxAttempts < 1) {
+            throw new NumberFormatException();
+          }
+        } else if (args[i].startsWith("--max-requests-per-second=")) {
+          maxRequestsPerSecond = Double.parseDouble(optionValue(args[i]));
+          if (!(maxRequestsPerSecond > 0)) {
+            throw new NumberFormatException();
+          }
+        } else if (args[i].startsWith("--max-entries-per-second=")) {
+          maxEntriesPerSecond = Double.parseDouble(optionValue(args[i]));
+          if (!(maxEntriesPerSecond > 0)) {
+            throw new NumberFormatException();
+          }
+        } else if (args[i].startsWith("--max-batch-size=")) {
+          maxBatchBytes = Long.parseLong(optionValue(args[i])) << 10;
+          if (maxBatchBytes <= 0) {
+            throw new NumberFormatException();
+          }
+        } else if (args[i].startsWith("--fragment-cache=")) {
+          fragmentCacheSize = Long.parseLong(optionValue(args[i])) << 20;
+          if (fragmentCacheSize < 0) {
+            throw new NumberFormatException();
+          }
+        } else if (args[i].startsWith("--batch-size-range=")) {
+          String range = optionValue(args[i]);
+          int colon = range.indexOf(':');
+          if (colon < 0) {
+            throw new NumberFormatException();
+          }
+          minBatchSize = Integer.parseInt(range.substring(0, colon));
+          maxBatchSize = Integer.parseInt(range.substring(colon + 1));
+          if (minBatchSize < 1 || maxBatchSize < minBatchSize) {
+            throw new NumberFormatException();
+          }
+        } else if (args[i].startsWith("--target-latency=")) {
+          targetLatency = Long.parseLong(optionValue(args[i])) * 1000;
+          if (targetLatency <= 0) {
+            throw new NumberFormatException();
+          }
+        } else if (args[i].startsWith("--parser-threads=")) {
+          numberOfParserThreads = Integer.parseInt(optionValue(args[i]));
+          if (numberOfParserThreads < 0) {
+            throw new NumberFormatException();
+          }
+        } else if (args[i].startsWith("--queue-capacity=")) {
+          queueCapacity = Integer.parseInt(optionValue(args[i]));
+          if (queueCapacity < 1) {
+            throw new NumberFormatException();
+          }
+        } else {
+          logger.log(Level.SEVERE, "Unknown option: " + args[i]);
+          System.exit(-1);
+        }
+      } catch (NumberFormatException e) {
+        logger.log(Level.SEVERE, "Option could not be parsed: " + args[i]);
+        System.exit(-1);
+      }
+    }
+    if (resume && checkpointFile == null) {
+      logger.log(Level.SEVERE, "--resume requires --checkpoint=<file>.");
+      System.exit(-1);
+    }
+
     // start the actual program
     UserInformation userInformation = new UserInformation("1234567",
         "http://my.supercool.com/homepage/",
         "your.username@gmail.com", "yourPassword");
+    // one connection per worker thread, and one for logging in
+    PooledHttpTransport connectionPool = pooledConnections
+        ? new PooledHttpTransport(numberOfWorkerThreads, numberOfWorkerThreads + 1) : null;
     MultiThreadingAndBatchingExample sample
         = new MultiThreadingAndBatchingExample(
             userInformation.getUid(),
             userInformation.getHomepage(),
             "https://content.googleapis.com/content/v1/",
-            createAuthorizedTransport(userInformation));
-    sample.insertAllProductsFromFile(file, separator, numberOfWorkerThreads, maxProductsInBatch);
+            connectionPool != null
+                ? createAuthorizedTransport(userInformation, connectionPool.getTransport())
+                : createAuthorizedTransport(userInformation));
+    if (connectionPool != null) {
+      logger.info("Sending through a pool of up to " + numberOfWorkerThreads
+          + " persistent connections.");
+      sample.setConnectionPool(connectionPool);
+    }
+    if (memoryMapping) {
+      logger.info("Parsing memory-mapped segments in parallel.");
+      sample.setMemoryMapping(true);
+      sample.setPipelining(numberOfParserThreads, queueCapacity);
+    } else if (numberOfParserThreads > 0) {
+      logger.info("Parsing in a pipeline with " + numberOfParserThreads + " parser threads.");
+      sample.setPipelining(numberOfParserThreads, queueCapacity);
+    }
+    if (checkpointFile != null) {
+      sample.setCheckpointing(checkpointFile, checkpointInterval, resume);
+    }
+    sample.setDeltaIndex(deltaIndexFile);
+    sample.setParsingErrorHandling(errorFile, maxErrorRatio);
+    sample.setValidation(validation);
+    sample.setCompression(compression);
+    sample.setFragmentCacheSize(fragmentCacheSize);
+    sample.setMaxBatchBytes(maxBatchBytes);
+    if (minBatchSize > 0) {
+      logger.info("Adapting the batch size between " + minBatchSize + " and " + maxBatchSize
+          + " products.");
+      sample.setAdaptiveBatchSize(minBatchSize, maxBatchSize, targetLatency);
+    }
+    sample.setAsyncWindow(asyncWindow);
+    sample.setVirtualThreads(virtualThreads);
+    sample.setMaxAttempts(maxAttempts);
+    sample.setRateLimits(maxRequestsPerSecond, maxEntriesPerSecond);
+    try {
+      sample.insertAllProductsFromFile(file, separator, numberOfWorkerThreads,
+          maxProductsInBatch);
+    } finally {
+      if (connectionPool != null) {
+        connectionPool.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Returns the value of a command line option of the form {@code --name=value}.
+   *
+   * @param option The complete option
+   * @return the part after the first '='
+   */
+  private static String optionValue(String option) {
+    return option.substring(option.indexOf('=') + 1);
   }
 
   /**
@@ -180,6 +617,27 @@ public class MultiThreadingAndBatchingExample {
     return requestFactory;
   }
 
+  /**
+   * Creates an authorized HTTP request factory that is ready
+   * for sending requests to the Content API for Shopping Server through the
+   * given transport.
+   *
+   * @param userInformation Information about the user
+   * @param transport The transport to be used for all requests
+   * @return A new authenticated HTTP request factory instance
+   * @throws IOException if something went wrong during authentication
+   */
+  private static HttpRequestFactory createAuthorizedTransport(UserInformation userInformation,
+      HttpTransport transport) throws IOException {
+    logger.info("== Starting login and setup ==");
+    HttpRequestFactory requestFactory = ClientLibraryUtils
+        .createBatchingRequestFactory(transport, "google-structuredcontentbatchingsample-1.0",
+            userInformation.getClientLoginCredentials().getUsername(),
+            userInformation.getClientLoginCredentials().getPassword());
+    logger.info("== Login and setup done ==");
+    return requestFactory;
+  }
+
   /**
    * Constructor for the class. Will initialize necessary internal variables,
    * and will set the class up to use the given HTTP request factory for all
@@ -213,41 +671,337 @@ public class MultiThreadingAndBatchingExample {
     this(userInformation.getUid(), userInformation.getHomepage(), rootUrl, requestFactory);
   }
 
+  /**
+   * Makes {@link #insertAllProductsFromFile} read and parse the input in a
+   * pipeline that runs in parallel to the worker threads, instead of letting
+   * the worker threads parse the input themselves. See
+   * {@link PipelinedCsvInputAdapter}.
+   *
+   * @param numberOfParserThreads The number of threads parsing the input, or 0
+   *   for not using a pipeline
+   * @param queueCapacity The maximum number of chunks waiting in each queue of
+   *   the pipeline, at least 1
+   */
+  public void setPipelining(int numberOfParserThreads, int queueCapacity) {
+    if (numberOfParserThreads < 0) {
+      throw new IllegalArgumentException("numberOfParserThreads must not be negative");
+    }
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException("queueCapacity must be at least 1");
+    }
+    this.numberOfParserThreads = numberOfParserThreads;
+    this.pipelineQueueCapacity = queueCapacity;
+  }
+
+  /**
+   * Makes {@link #insertAllProductsFromFile} memory-map the input file and
+   * parse it in parallel segments, see {@link MappedCsvInputAdapter}. The
+   * number of threads and the queue capacity set with {@link #setPipelining}
+   * are used for this as well; if no number of threads has been set, one
+   * thread per core is used.
+   *
+   * @param memoryMapping Whether the input file should be memory-mapped
+   */
+  public void setMemoryMapping(boolean memoryMapping) {
+    this.memoryMapping = memoryMapping;
+  }
+
+  /**
+   * Makes {@link #insertAllProductsFromFile} record the acknowledged records
+   * in a checkpoint file, see {@link CsvCheckpoint}.
+   *
+   * @param checkpointFile The checkpoint file, or {@code null} for not writing
+   *   a checkpoint
+   * @param intervalMillis The interval in milliseconds in which the checkpoint
+   *   file is written
+   * @param resume Whether to resume the run recorded in the checkpoint file,
+   *   if it exists, skipping all records acknowledged in it
+   */
+  public void setCheckpointing(File checkpointFile, long intervalMillis, boolean resume) {
+    if (intervalMillis <= 0) {
+      throw new IllegalArgumentException("intervalMillis must be positive");
+    }
+    this.checkpointFile = checkpointFile;
+    this.checkpointInterval = intervalMillis;
+    this.resume = resume;
+  }
+
+  /**
+   * Makes {@link #insertAllProductsFromFile} only send products that are new or
+   * have changed since they were last sent successfully, see
+   * {@link ProductFingerprintIndex}.
+   *
+   * @param deltaIndexFile The file holding the fingerprints of the products
+   *   sent before, which is created if it does not exist, or {@code null} for
+   *   sending all products
+   */
+  public void setDeltaIndex(File deltaIndexFile) {
+    this.deltaIndexFile = deltaIndexFile;
+  }
+
+  /**
+   * Makes {@link #insertAllProductsFromFile} write all parsing errors to a
+   * file, and abort the run if too many records cannot be parsed, see
+   * {@link ParsingErrorSink}.
+   *
+   * @param errorFile The file all parsing errors are written to, or
+   *   {@code null} for only keeping a sample of them
+   * @param maxErrorRatio The share of records, between 0 and 1, that may fail
+   *   to parse before the run is aborted, or {@link ParsingErrorSink#NO_LIMIT}
+   */
+  public void setParsingErrorHandling(File errorFile, double maxErrorRatio) {
+    if (maxErrorRatio < 0 || maxErrorRatio > 1) {
+      throw new IllegalArgumentException("maxErrorRatio must be between 0 and 1");
+    }
+    this.errorFile = errorFile;
+    this.maxErrorRatio = maxErrorRatio;
+  }
+
+  /**
+   * Sets whether products are checked before they are sent, so that products
+   * the server would reject anyway do not cost a round trip, see
+   * {@link ProductValidator}. The rejected products are reported like the
+   * products rejected by the server. CSV records are checked by the threads
+   * parsing them, other products by the threads sending them. On by default.
+   *
+   * @param validation Whether products are checked before they are sent
+   */
+  public void setValidation(boolean validation) {
+    this.validation = validation;
+  }
+
+  /**
+   * Sets whether request bodies are compressed with gzip, and compressed
+   * responses are requested. The feeds are very repetitive, so this saves most
+   * of the upload, at the cost of some CPU time on the worker threads. The
+   * bytes sent are reported at the end. Off by default.
+   *
+   * @param compression Whether request bodies are compressed
+   */
+  public void setCompression(boolean compression) {
+    this.compression = compression;
+  }
+
+  /**
+   * Sets how many bytes the serialized entries of the products being sent may
+   * take, see {@link EntryFragmentCache}. They are kept so that products sent
+   * again, e.g. when a request is retried, are not serialized again. Only
+   * products read from CSV files are kept. 32 MB by default.
+   *
+   * @param fragmentCacheSize The maximum number of bytes, or 0 for not keeping
+   *   serialized entries
+   */
+  public void setFragmentCacheSize(long fragmentCacheSize) {
+    this.fragmentCacheSize = fragmentCacheSize;
+  }
+
+  /**
+   * Sets how many bytes the feed sent in one batch may have, in addition to
+   * the maximum number of products. The size is measured from the serialized
+   * entries, before compression. Batches the server rejects as too large are
+   * split in half and sent again regardless. 4 MB by default.
+   *
+   * @param maxBatchBytes The maximum number of bytes of a batch
+   */
+  public void setMaxBatchBytes(long maxBatchBytes) {
+    this.maxBatchBytes = maxBatchBytes;
+  }
+
+  /**
+   * Sets the connection pool of the transport the requests are sent through,
+   * so that its state is logged while the products are being sent. The pool
+   * itself is not changed.
+   *
+   * @param connectionPool The pool, or {@code null}
+   */
+  public void setConnectionPool(PooledHttpTransport connectionPool) {
+    this.connectionPool = connectionPool;
+  }
+
+  /**
+   * Sets the products to be sent asynchronously instead of by worker threads,
+   * see {@link AsyncBatchSubmitter}: one thread reads and serializes the
+   * batches, and up to the given number of them are in flight at the same
+   * time, without a thread waiting for each. Only products read from CSV
+   * files are sent asynchronously; the number of worker threads is then
+   * ignored. Requires Java 11. Off by default.
+   *
+   * @param asyncWindow The maximum number of batches in flight, or 0 for
+   *   sending with worker threads
+   */
+  public void setAsyncWindow(int asyncWindow) {
+    this.asyncWindow = asyncWindow;
+  }
+
+  /**
+   * Sets the worker threads to be run as virtual threads, see
+   * {@link VirtualThreads}, so that hundreds of them can wait for responses
+   * without a stack of their own each. They are joined like platform threads;
+   * if one of them fails, the others stop taking products. Falls back to
+   * platform threads before Java 21. Off by default.
+   *
+   * @param virtualThreads Whether to use virtual threads
+   */
+  public void setVirtualThreads(boolean virtualThreads) {
+    this.virtualThreads = virtualThreads;
+  }
+
+  /**
+   * Sets how often products the server has not processed are sent at most,
+   * see {@link RetryPolicy}: those of batches that failed with a transient
+   * HTTP error or could not be sent, and those left over by interrupted
+   * batches. Products still not processed after that are reported as errors.
+   * 5 by default.
+   *
+   * @param maxAttempts The maximum number of attempts per product; 1 for
+   *   never sending products again
+   */
+  public void setMaxAttempts(int maxAttempts) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("maxAttempts must be at least 1");
+    }
+    this.maxAttempts = maxAttempts;
+  }
+
+  /**
+   * Limits how fast batches are sent for the account, see
+   * {@link RateLimiter}: all worker threads, or the asynchronous submitter,
+   * wait for the account's limiter before sending a batch, and the limiter
+   * lowers its rates while the server throttles the account. The limiter is
+   * shared by everything sending for the account in this process. No limits
+   * by default.
+   *
+   * @param maxRequestsPerSecond The maximum number of batches sent per second,
+   *   or 0 for no limit
+   * @param maxEntriesPerSecond The maximum number of products sent per
+   *   second, or 0 for no limit
+   */
+  public void setRateLimits(double maxRequestsPerSecond, double maxEntriesPerSecond) {
+    if (maxRequestsPerSecond < 0 || maxEntriesPerSecond < 0) {
+      throw new IllegalArgumentException("Rates must not be negative");
+    }
+    this.maxRequestsPerSecond = maxRequestsPerSecond;
+    this.maxEntriesPerSecond = maxEntriesPerSecond;
+  }
+
+  /**
+   * Lets the number of products per batch adapt to how the server handles
+   * the batches, see {@link BatchSizeController}: it grows while batches are
+   * processed within the target latency, and is halved when a batch takes
+   * longer, is interrupted or is rejected as too large. The maximum number of
+   * products per batch given when inserting is the batch size to start with.
+   * Off by default.
+   *
+   * @param minBatchSize The minimum number of products per batch, at least 1
+   * @param maxBatchSize The maximum number of products per batch
+   * @param targetLatency The time in milliseconds a batch may take before
+   *   the batch size is decreased
+   */
+  public void setAdaptiveBatchSize(int minBatchSize, int maxBatchSize, long targetLatency) {
+    if (minBatchSize < 1 || maxBatchSize < minBatchSize) {
+      throw new IllegalArgumentException("Invalid batch size range: " + minBatchSize + " to "
+          + maxBatchSize);
+    }
+    this.minAdaptiveBatchSize = minBatchSize;
+    this.maxAdaptiveBatchSize = maxBatchSize;
+    this.targetBatchLatency = targetLatency;
+  }
+
   /**
    * Reads all products from the given file and send them in batches to the
    * Content API for Shopping Server, using the specified number of parallel worker threads.
-   * Errors are reported using a {@link Logger}.
+   * Errors are reported using a {@link Logger}. Pipelining, memory mapping
+   * and checkpoints are only supported for CSV files.
    *
-   * @param file The .csv file containing the product information
+   * @param file The .csv, .jsonl or .xml file containing the product
+   *   information
    * @param separator The string used as a separator in the .csv file
    * @param numberOfWorkerThreads The number of worker threads to be used
    * @param maxProductsInBatch The maximum number of products that can be sent in one thread
-   * @throws IOException if anything went seriously wrong during input or output
+   * @throws IOException if anything went seriously wrong during input or output,
+   *   or if the run has been aborted because too many records could not be
+   *   parsed
    * @throws InterruptedException if anything went wrong with the multi-threading
    */
   public void insertAllProductsFromFile(File file, String separator,
       int numberOfWorkerThreads, int maxProductsInBatch) throws IOException, InterruptedException {
     logger.info("== Preparing file reading and error reporting ==");
 
+    InputFormat format = InputFormat.of(file);
+    CsvCheckpoint checkpoint = null;
+    if (checkpointFile != null && format != InputFormat.CSV) {
+      logger.info("Not writing a checkpoint, since " + file + " is not a .csv file.");
+    } else if (checkpointFile != null) {
+      if (resume && checkpointFile.exists()) {
+        checkpoint = CsvCheckpoint.load(checkpointFile, file);
+        logger.info("Resuming after line " + checkpoint.getResumedLines() + ".");
+      } else {
+        checkpoint = CsvCheckpoint.create(checkpointFile, file);
+      }
+    }
+
     // creating an InputAdapter that will read and translate our input file
-    CsvInputAdapter inputAdapter = createCsvInputAdapter(file, separator, true);
+    InputAdapter inputAdapter;
+    if (format == InputFormat.CSV) {
+      inputAdapter = createCsvInputAdapter(file, separator, maxProductsInBatch, checkpoint);
+    } else {
+      InputStream fileInput = openInputStream(file);
+      inputAdapter = format == InputFormat.JSON_LINES
+          ? new JsonLinesInputAdapter(fileInput, homepage)
+          : new XmlFeedInputAdapter(fileInput);
+    }
+    ParsingErrorSink errorSink = new ParsingErrorSink(ParsingErrorSink.DEFAULT_SAMPLE_SIZE,
+        errorFile, maxErrorRatio);
+    inputAdapter.setParsingErrorSink(errorSink);
 
     logger.info("== File reading and error reporting ready ==");
 
     // insert products using the created InputAdapter
-    Collection<BatchError> serviceErrorList
-        = insertAllProducts(inputAdapter, maxProductsInBatch, numberOfWorkerThreads);
+    if (checkpoint != null) {
+      checkpoint.startWriting(checkpointInterval);
+    }
+    ProductFingerprintIndex deltaIndex = null;
+    if (deltaIndexFile != null) {
+      deltaIndex = new ProductFingerprintIndex(deltaIndexFile);
+      logger.info("Sending only new and changed products; " + deltaIndex.size()
+          + " product(s) have been sent before.");
+    }
+    Collection<BatchError> serviceErrorList = insertAllProducts(inputAdapter,
+        maxProductsInBatch, numberOfWorkerThreads, checkpoint, deltaIndex);
+    if (inputAdapter instanceof MappedCsvInputAdapter) {
+      // the pool has been created for this adapter, see createCsvInputAdapter
+      ((MappedCsvInputAdapter) inputAdapter).getPool().shutdown();
+    }
+    if (checkpoint != null) {
+      checkpoint.close();
+      logger.info("Checkpoint: " + checkpoint.getStatus());
+    }
+    if (deltaIndex != null) {
+      deltaIndex.force();
+      logger.info("The delta index now holds " + deltaIndex.size() + " product(s).");
+    }
+
+    errorSink.close();
 
     // output errors if applicable
-    reportParsingErrors(inputAdapter.getParsingErrors());
+    reportParsingErrors(errorSink);
     reportServiceErrors(serviceErrorList);
+    if (inputAdapter instanceof CsvInputAdapter) {
+      logger.info("Shared field values:\n"
+          + ((CsvInputAdapter) inputAdapter).getStringPoolStatistics());
+    }
+    if (errorSink.isAborted()) {
+      throw new IOException("Aborted, since more than " + errorSink.getMaxErrorRatio() * 100
+          + "% of the records could not be parsed.");
+    }
   }
 
   /**
-   * Retrieves all products from the given {@link CsvInputAdapter} and sends them
+   * Retrieves all products from the given {@link InputAdapter} and sends them
    * in batches to the Content API for Shopping Server, using the specified number
    * of parallel worker threads. Errors are reported to the given error collecting
-   * lists.
+   * lists. If the program is terminated meanwhile, the worker threads stop taking
+   * products and finish the batches they are sending.
    *
    * @param inputAdapter The input adapter from which the products to be inserted
    *   are retrieved
@@ -255,32 +1009,186 @@ public class MultiThreadingAndBatchingExample {
    * @param maxProductsInBatch The maximum number of products that can be sent in one thread
    * @throws InterruptedException if anything went wrong with the multi-threading
    */
-  public Collection<BatchError> insertAllProducts(CsvInputAdapter inputAdapter,
+  public Collection<BatchError> insertAllProducts(InputAdapter inputAdapter,
       int maxProductsInBatch,
       int numberOfWorkerThreads) throws InterruptedException {
+    return insertAllProducts(inputAdapter, maxProductsInBatch, numberOfWorkerThreads, null,
+        null);
+  }
+
+  /**
+   * Retrieves all products from the given {@link InputAdapter} and sends
+   * those that are new or have changed according to the given index in batches
+   * to the Content API for Shopping Server, see
+   * {@link #insertAllProducts(InputAdapter, int, int)}. If the program is
+   * terminated meanwhile, the given checkpoint is written as well.
+   *
+   * @param inputAdapter The input adapter from which the products to be inserted
+   *   are retrieved
+   * @param numberOfWorkerThreads The number of worker threads to be used
+   * @param maxProductsInBatch The maximum number of products that can be sent in one thread
+   * @param checkpoint The checkpoint tracking the acknowledged records of the
+   *   input adapter, or {@code null}
+   * @param deltaIndex The fingerprints of the products sent before, or
+   *   {@code null} for sending all products
+   * @throws InterruptedException if anything went wrong with the multi-threading
+   */
+  Collection<BatchError> insertAllProducts(final InputAdapter inputAdapter,
+      int maxProductsInBatch, int numberOfWorkerThreads, final CsvCheckpoint checkpoint,
+      final ProductFingerprintIndex deltaIndex) throws InterruptedException {
     // creating empty error lists where service errors and parsing errors
     // will be added to
     Collection<BatchError> serviceErrorList
         = Collections.synchronizedCollection(new ArrayList<BatchError>());
 
-    // create worker threads
+    // create worker threads, sharing one validator, one pool of deflaters,
+    // one cache of serialized entries, one batch size controller, one retry
+    // policy and the account's rate limiter
     logger.info("== Create worker threads ==");
-    List<Thread> workerThreads = new ArrayList<Thread>();
-    for (int i = 0; i < numberOfWorkerThreads; i++) {
-      workerThreads.add(new WorkerThread(requestFactory, namespaceDictionary, inputAdapter,
-          maxProductsInBatch, serviceErrorList, userId, rootUrl));
+    SenderOptions senderOptions = new SenderOptions();
+    senderOptions.setMaxBatchBytes(maxBatchBytes);
+    senderOptions.setDeltaIndex(deltaIndex);
+    if (validation && inputAdapter instanceof CsvInputAdapter) {
+      // CSV records are checked as soon as they have been parsed, so that the
+      // senders do not have to
+      ((CsvInputAdapter) inputAdapter).setValidator(new ProductValidator(), serviceErrorList);
+    } else if (validation) {
+      senderOptions.setValidator(new ProductValidator());
+    }
+    if (compression) {
+      senderOptions.setDeflaterPool(new DeflaterPool(Deflater.DEFAULT_COMPRESSION));
+    }
+    if (fragmentCacheSize > 0) {
+      senderOptions.setFragmentCache(new EntryFragmentCache(fragmentCacheSize));
+    }
+    if (minAdaptiveBatchSize > 0) {
+      senderOptions.setBatchSizeController(new BatchSizeController(minAdaptiveBatchSize,
+          maxAdaptiveBatchSize, maxProductsInBatch, targetBatchLatency));
+    }
+    senderOptions.setRetryPolicy(new RetryPolicy(maxAttempts,
+        RetryPolicy.DEFAULT_BASE_DELAY_MILLIS, RetryPolicy.DEFAULT_MAX_DELAY_MILLIS));
+    if (maxRequestsPerSecond > 0 || maxEntriesPerSecond > 0) {
+      senderOptions.setRateLimiter(
+          RateLimiter.forAccount(userId, maxRequestsPerSecond, maxEntriesPerSecond));
+    }
+    List<WorkerThread> workerThreads = new ArrayList<WorkerThread>();
+    AsyncBatchSubmitter submitter = null;
+    if (asyncWindow > 0 && inputAdapter instanceof ColumnarInputAdapter) {
+      logger.info("Sending asynchronously with up to " + asyncWindow + " batches in flight.");
+      submitter = new AsyncBatchSubmitter(requestFactory, (ColumnarInputAdapter) inputAdapter,
+          maxProductsInBatch, serviceErrorList, userId, rootUrl, asyncWindow, senderOptions);
+    } else {
+      if (asyncWindow > 0) {
+        logger.info("Asynchronous sending requires CSV input; using worker threads.");
+      }
+      for (int i = 0; i < numberOfWorkerThreads; i++) {
+        workerThreads.add(new WorkerThread(requestFactory, namespaceDictionary, inputAdapter,
+            maxProductsInBatch, serviceErrorList, userId, rootUrl, senderOptions));
+      }
+    }
+    final List<Thread> senderThreads = new ArrayList<Thread>();
+    final AtomicReference<RuntimeException> workerFailure
+        = new AtomicReference<RuntimeException>();
+    if (submitter != null) {
+      senderThreads.add(submitter);
+    } else {
+      boolean virtual = virtualThreads && VirtualThreads.isAvailable();
+      if (virtual) {
+        logger.info("Running the worker threads as virtual threads.");
+      } else if (virtualThreads) {
+        logger.info("Virtual threads require Java 21; using platform threads.");
+      }
+      // the workers are all joined below; if one fails, the others stop
+      // taking products and finish their batches
+      for (int i = 0; i < workerThreads.size(); i++) {
+        final WorkerThread worker = workerThreads.get(i);
+        Runnable task = new Runnable() {
+          @Override
+          public void run() {
+            try {
+              worker.run();
+            } catch (RuntimeException e) {
+              workerFailure.compareAndSet(null, e);
+              inputAdapter.stopIntake();
+            }
+          }
+        };
+        senderThreads.add(virtual ? VirtualThreads.newThread("virtual-worker-" + i, task)
+            : new Thread(task, "worker-" + i));
+      }
     }
 
+    // on termination, let the worker threads finish the batches they are
+    // sending and write the checkpoint, instead of losing them
+    Thread shutdownHook = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        inputAdapter.stopIntake();
+        long deadline = System.currentTimeMillis() + SHUTDOWN_DRAIN_TIMEOUT;
+        try {
+          for (Thread t : senderThreads) {
+            t.join(Math.max(1, deadline - System.currentTimeMillis()));
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        if (checkpoint != null) {
+          try {
+            checkpoint.close();
+          } catch (IOException e) {
+            logger.log(Level.SEVERE, "Writing the checkpoint failed.", e);
+          }
+        }
+        if (deltaIndex != null) {
+          deltaIndex.force();
+        }
+      }
+    }, "shutdown-drain");
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+
     // start all worker threads
     logger.info("== Start worker threads ==");
-    for (Thread t : workerThreads) {
+    for (Thread t : senderThreads) {
       t.start();
     }
 
     // wait for all worker threads to finish
     logger.info("== Wait for worker threads to finish ==");
-    for (Thread t : workerThreads) {
-      t.join();
+    for (Thread t : senderThreads) {
+      if (inputAdapter instanceof PipelinedCsvInputAdapter || connectionPool != null) {
+        while (t.isAlive()) {
+          t.join(STATUS_INTERVAL);
+          if (inputAdapter instanceof PipelinedCsvInputAdapter) {
+            logger.info("Pipeline status: "
+                + ((PipelinedCsvInputAdapter) inputAdapter).getStatus());
+          }
+          if (connectionPool != null) {
+            logger.info("Connection pool: " + connectionPool.getStatistics());
+          }
+        }
+      } else {
+        t.join();
+      }
+    }
+    if (workerFailure.get() != null) {
+      logger.log(Level.SEVERE, "A worker thread failed; the others stopped taking products.",
+          workerFailure.get());
+    }
+    try {
+      Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    } catch (IllegalStateException e) {
+      // the program is shutting down; the hook is draining already
+    }
+    reportTransfer(workerThreads, submitter);
+    if (senderOptions.getFragmentCache() != null) {
+      logger.info("Serialized entries: " + senderOptions.getFragmentCache().getStatistics());
+    }
+    if (senderOptions.getBatchSizeController() != null) {
+      logger.info("Batch size: " + senderOptions.getBatchSizeController().getStatistics());
+    }
+    logger.info("Retries: " + senderOptions.getRetryPolicy().getStatistics());
+    if (senderOptions.getRateLimiter() != null) {
+      logger.info("Rate limiter: " + senderOptions.getRateLimiter().getStatistics());
     }
 
     return serviceErrorList;
@@ -288,36 +1196,113 @@ public class MultiThreadingAndBatchingExample {
 
   /**
    * Uses the given file for creating a {@link CsvInputAdapter} that will read
-   * from that file. Will use UTF-8 encoding, and will drop the first line
-   * (which contains the headers that make the file human readable if opened
-   * in a normal spreadsheet editor).
+   * from that file. Will use UTF-8 encoding, and will read the columns of the
+   * products from the first line, which contains the headers. A gzip
+   * compressed file is decompressed while being read, using one thread per
+   * core. If memory mapping has been configured with {@link #setMemoryMapping}
+   * and the file is not compressed, the adapter will be a
+   * {@link MappedCsvInputAdapter}; otherwise, if pipelining has been configured
+   * with {@link #setPipelining}, the adapter will be a
+   * {@link PipelinedCsvInputAdapter}.
    *
    * @param file The file containing the product data
    * @param separator The string used as a separator in the .csv file
+   * @param maxProductsInBatch The maximum number of products that can be sent
+   *   in one batch
+   * @param checkpoint The checkpoint tracking the acknowledged records, or
+   *   {@code null}
    * @return a new CsvInputAdapter that will read from the given file
    * @throws IOException if anything went wrong during creation of the
    *   {@code CsvInputAdapter}
    */
   private CsvInputAdapter createCsvInputAdapter(File file, String separator,
-      boolean recordParsingErrors)
+      int maxProductsInBatch, CsvCheckpoint checkpoint)
       throws IOException {
-    BufferedReader fileInput = new BufferedReader(new InputStreamReader(
-        new FileInputStream(file), "UTF8"));
-    fileInput.readLine(); // first line of .csv file is ignored
-    return new CsvInputAdapter(fileInput, separator, homepage);
+    boolean compressed = ParallelGzipInputStream.isGzip(file);
+    if (memoryMapping && compressed) {
+      logger.info("Not memory-mapping " + file + ", since it is gzip compressed.");
+    } else if (memoryMapping) {
+      ForkJoinPool pool = numberOfParserThreads > 0
+          ? new ForkJoinPool(numberOfParserThreads) : new ForkJoinPool();
+      return new MappedCsvInputAdapter(file, separator, homepage, pool,
+          MappedCsvInputAdapter.DEFAULT_SEGMENT_SIZE, maxProductsInBatch, pipelineQueueCapacity,
+          checkpoint);
+    }
+    InputStream fileInput = openInputStream(file);
+    CsvInputAdapter inputAdapter;
+    if (numberOfParserThreads > 0) {
+      inputAdapter = new PipelinedCsvInputAdapter(fileInput, separator, homepage,
+          numberOfParserThreads, maxProductsInBatch, pipelineQueueCapacity);
+    } else {
+      inputAdapter = new CsvInputAdapter(fileInput, separator, homepage);
+    }
+    inputAdapter.readHeaderLine(); // compiles the column plan
+    if (checkpoint != null) {
+      inputAdapter.setCheckpoint(checkpoint);
+    }
+    return inputAdapter;
+  }
+
+  /**
+   * Opens the given file for reading. A gzip compressed file is decompressed
+   * while being read, using one thread per core.
+   *
+   * @param file The file
+   * @return a stream of the (decompressed) contents of the file
+   * @throws IOException if the file could not be opened
+   */
+  private static InputStream openInputStream(File file) throws IOException {
+    return ParallelGzipInputStream.isGzip(file)
+        ? new ParallelGzipInputStream(file, Runtime.getRuntime().availableProcessors())
+        : new FileInputStream(file);
+  }
+
+  /**
+   * The supported formats of input files.
+   */
+  private enum InputFormat {
+    CSV, JSON_LINES, XML_FEED;
+
+    /**
+     * Returns the format of the given file, according to the extension of its
+     * name, ignoring a trailing ".gz". Files with unknown extensions are
+     * expected to be CSV.
+     */
+    static InputFormat of(File file) {
+      String name = file.getName().toLowerCase(Locale.US);
+      if (name.endsWith(".gz")) {
+        name = name.substring(0, name.length() - 3);
+      }
+      if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+        return JSON_LINES;
+      } else if (name.endsWith(".xml") || name.endsWith(".atom")) {
+        return XML_FEED;
+      } else {
+        return CSV;
+      }
+    }
   }
 
   /**
    * Reports parsing errors that occurred to the logger.
    *
-   * @param parsingErrorList The list of parsing errors
+   * @param errorSink The sink the parsing errors have been recorded in
    */
-  private static void reportParsingErrors(Collection<ParsingError> parsingErrorList) {
+  private static void reportParsingErrors(ParsingErrorSink errorSink) {
     logger.info("== Status report ==");
-    if (parsingErrorList.size() > 0) {
-      logger.info("There were " + parsingErrorList.size() + " parsing error(s):");
-      for (CsvInputAdapter.ParsingError e : parsingErrorList) {
-        logger.info("  Product: " + e.productId + "  \tError: " + e.errorMessage
+    if (errorSink.getErrorCount() > 0) {
+      logger.info("There were " + errorSink.getErrorCount() + " parsing error(s) in "
+          + errorSink.getRecordCount() + " record(s).");
+      logger.info("  By attribute: " + errorSink.getCountsByAttribute());
+      logger.info("  By message: " + errorSink.getCountsByMessage());
+      if (errorSink.getSpillFile() != null) {
+        logger.info("  All of them have been written to " + errorSink.getSpillFile() + ".");
+      }
+      Collection<ParsingError> sample = errorSink.getSample();
+      logger.info("The first " + sample.size() + " parsing error(s):");
+      for (CsvInputAdapter.ParsingError e : sample) {
+        logger.info("  Line: " + e.lineNumber + "  \tProduct: " + e.productId
+            + "  \tError: " + e.errorMessage
             + "\n      Complete product description: " + e.completeProductDescription);
       }
     } else {
@@ -362,6 +1347,29 @@ public class MultiThreadingAndBatchingExample {
     }
   }
 
+  /**
+   * Reports how many bytes the worker threads have sent to the logger.
+   *
+   * @param workerThreads The finished worker threads
+   * @param submitter The finished asynchronous submitter, or {@code null}
+   */
+  private static void reportTransfer(List<WorkerThread> workerThreads,
+      AsyncBatchSubmitter submitter) {
+    long contentBytes = submitter != null ? submitter.getContentBytes() : 0;
+    long wireBytes = submitter != null ? submitter.getWireBytes() : 0;
+    for (WorkerThread t : workerThreads) {
+      contentBytes += t.getContentBytes();
+      wireBytes += t.getWireBytes();
+    }
+    if (wireBytes < contentBytes) {
+      logger.info("Sent " + contentBytes + " byte(s) of feeds as " + wireBytes
+          + " compressed byte(s) (" + (contentBytes - wireBytes) * 100 / contentBytes
+          + "% saved).");
+    } else {
+      logger.info("Sent " + wireBytes + " byte(s) of feeds.");
+    }
+  }
+
   /**
    * Simple immutable class for representing a server error during processing
    * of the batch.
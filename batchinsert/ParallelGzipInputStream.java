@@ -0,0 +1,396 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>An input stream that decompresses a gzip file, decompressing its members
+ * on several threads at once if it has more than one. Files written by
+ * {@code bgzip}, {@code pigz --independent} or by simply concatenating gzip
+ * files consist of many members, each of which can be decompressed on its
+ * own. The data is returned in the original order.
+ *
+ * <p>A gzip file has no index of its members, so the file is first scanned for
+ * byte sequences that look like member headers. These are only candidates: the
+ * same bytes may also occur within compressed data. The file is cut at
+ * candidates into units of about {@link #UNIT_SIZE} compressed bytes, and each
+ * unit is decompressed speculatively on the thread pool. A unit is only used if
+ * it consists of complete, valid members whose checksums match, and if the unit
+ * before it ended exactly where it starts; since the first unit starts at the
+ * beginning of the file, this proves that each used unit really starts at a
+ * member. If a unit fails, e.g. because it started at a false candidate or
+ * decompresses to more than {@link #MAX_UNIT_OUTPUT} bytes, it is decompressed
+ * sequentially on the reading thread instead, until the stream is back at the
+ * start of a unit that succeeded.
+ *
+ * <p>Files with a single member, which is what {@code gzip} writes, are simply
+ * decompressed sequentially while being read.
+ */
+public class ParallelGzipInputStream extends InputStream {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger
+      = Logger.getLogger(ParallelGzipInputStream.class.getName());
+
+  /**
+   * Approximate number of compressed bytes decompressed by one task.
+   */
+  static final int UNIT_SIZE = 1024 * 1024;
+
+  /**
+   * Maximum number of bytes a unit may decompress to. Larger units are
+   * decompressed sequentially, so that the memory used stays bounded.
+   */
+  static final int MAX_UNIT_OUTPUT = 64 * 1024 * 1024;
+
+  private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+
+  /**
+   * The start of each unit, followed by the size of the file.
+   */
+  private final long[] unitStarts;
+
+  /**
+   * The pool decompressing the units, or {@code null} if there is only one.
+   */
+  private final ExecutorService executor;
+
+  /**
+   * The maximum number of units decompressed ahead of the reader.
+   */
+  private final int window;
+
+  /**
+   * The results of the submitted units, in order. The first one belongs to the
+   * unit {@code nextUnit}.
+   */
+  private final Deque<Future<byte[][]>> pending = new ArrayDeque<Future<byte[][]>>();
+
+  /**
+   * The index of the next unit to be submitted.
+   */
+  private int nextUnitToSubmit = 0;
+
+  /**
+   * The index of the unit at the head of {@code pending}.
+   */
+  private int nextUnit = 0;
+
+  /**
+   * The decompressed chunks of the current unit and the read position in them.
+   */
+  private byte[][] chunks = new byte[0][];
+  private int chunkIndex = 0;
+  private int chunkPosition = 0;
+
+  /**
+   * The decoder used while decompressing sequentially, or {@code null}.
+   */
+  private GzipMemberDecoder sequential;
+
+  /**
+   * Returns whether the given file starts with the gzip magic bytes.
+   *
+   * @param file The file to check
+   * @return {@code true} if the file is gzip compressed
+   * @throws IOException if the file could not be read
+   */
+  public static boolean isGzip(File file) throws IOException {
+    InputStream input = new FileInputStream(file);
+    try {
+      return input.read() == 0x1f && input.read() == 0x8b;
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Opens the given gzip file.
+   *
+   * @param gzipFile The file to decompress
+   * @param numberOfThreads The number of threads decompressing members in
+   *   parallel
+   * @throws IOException if the file could not be opened or scanned
+   */
+  public ParallelGzipInputStream(File gzipFile, int numberOfThreads) throws IOException {
+    if (numberOfThreads <= 0) {
+      throw new IllegalArgumentException("numberOfThreads must be positive");
+    }
+    this.file = new RandomAccessFile(gzipFile, "r");
+    this.channel = file.getChannel();
+    this.unitStarts = findUnits(channel);
+    int numberOfUnits = unitStarts.length - 1;
+    if (numberOfUnits > 1 && numberOfThreads > 1) {
+      this.executor = Executors.newFixedThreadPool(numberOfThreads, new ThreadFactory() {
+        private int count = 0;
+
+        @Override
+        public synchronized Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "gzip-" + count++);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      this.window = numberOfThreads + 1;
+      logger.info("Decompressing " + gzipFile + " in " + numberOfUnits + " units on "
+          + numberOfThreads + " threads.");
+    } else {
+      this.executor = null;
+      this.window = 0;
+      this.sequential = new GzipMemberDecoder(channel, 0, channel.size());
+      this.nextUnit = numberOfUnits;
+    }
+  }
+
+  /**
+   * Scans the file for candidate member headers and cuts it into units.
+   *
+   * @return the start of each unit, followed by the size of the file
+   */
+  private static long[] findUnits(FileChannel channel) throws IOException {
+    long size = channel.size();
+    List<Long> starts = new ArrayList<Long>();
+    starts.add(0L);
+    ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+    byte[] bytes = buffer.array();
+    long offset = 0;
+    long nextUnit = UNIT_SIZE;
+    while (offset < size) {
+      buffer.clear();
+      int read = channel.read(buffer, offset);
+      if (read <= 0) {
+        break;
+      }
+      // the last 3 bytes are looked at again with the next block
+      int end = offset + read < size ? read - 3 : read;
+      for (int i = 0; i < end; i++) {
+        if (offset + i >= nextUnit && isCandidate(bytes, i, read)) {
+          starts.add(offset + i);
+          nextUnit = offset + i + UNIT_SIZE;
+        }
+      }
+      offset += Math.max(end, 1);
+    }
+    long[] units = new long[starts.size() + 1];
+    for (int i = 0; i < starts.size(); i++) {
+      units[i] = starts.get(i);
+    }
+    units[starts.size()] = size;
+    return units;
+  }
+
+  /**
+   * Returns whether the bytes at the given position look like a gzip header:
+   * the magic bytes, the deflate method and no reserved flags.
+   */
+  private static boolean isCandidate(byte[] bytes, int position, int limit) {
+    return position + 3 < limit
+        && (bytes[position] & 0xff) == 0x1f
+        && (bytes[position + 1] & 0xff) == 0x8b
+        && bytes[position + 2] == 8
+        && (bytes[position + 3] & 0xe0) == 0;
+  }
+
+  /**
+   * Submits units until the window is full.
+   */
+  private void submitUnits() {
+    while (nextUnitToSubmit < unitStarts.length - 1
+        && nextUnitToSubmit < nextUnit + window) {
+      final long start = unitStarts[nextUnitToSubmit];
+      final long end = unitStarts[nextUnitToSubmit + 1];
+      pending.addLast(executor.submit(new Callable<byte[][]>() {
+        @Override
+        public byte[][] call() throws IOException {
+          return decompressUnit(start, end);
+        }
+      }));
+      nextUnitToSubmit++;
+    }
+  }
+
+  /**
+   * Decompresses a whole unit.
+   *
+   * @return the decompressed data, in chunks
+   * @throws IOException if the unit does not consist of valid members, or
+   *   decompresses to more than {@link #MAX_UNIT_OUTPUT} bytes
+   */
+  private byte[][] decompressUnit(long start, long end) throws IOException {
+    GzipMemberDecoder decoder = new GzipMemberDecoder(channel, start, end);
+    try {
+      List<byte[]> chunkList = new ArrayList<byte[]>();
+      long total = 0;
+      while (true) {
+        byte[] chunk = new byte[(int) Math.min(4 * (end - start) + 4096, 1024 * 1024)];
+        int length = 0;
+        int count;
+        while (length < chunk.length && (count = decoder.read(chunk, length,
+            chunk.length - length)) >= 0) {
+          length += count;
+        }
+        total += length;
+        if (total > MAX_UNIT_OUTPUT) {
+          throw new IOException("Unit at " + start + " decompresses to too much data");
+        }
+        if (length > 0) {
+          chunkList.add(length == chunk.length ? chunk : Arrays.copyOf(chunk, length));
+        }
+        if (length < chunk.length) {
+          return chunkList.toArray(new byte[chunkList.size()][]);
+        }
+      }
+    } finally {
+      decoder.close();
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] single = new byte[1];
+    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    while (true) {
+      if (chunkIndex < chunks.length) {
+        byte[] chunk = chunks[chunkIndex];
+        int count = Math.min(length, chunk.length - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, buffer, offset, count);
+        chunkPosition += count;
+        if (chunkPosition == chunk.length) {
+          chunks[chunkIndex++] = null;
+          chunkPosition = 0;
+        }
+        return count;
+      }
+      if (sequential != null) {
+        int count = sequential.read(buffer, offset, length);
+        if (count >= 0) {
+          return count;
+        }
+        if (!resumeUnits(sequential.getPosition())) {
+          return -1;
+        }
+        continue;
+      }
+      if (nextUnit >= unitStarts.length - 1) {
+        return -1;
+      }
+      submitUnits();
+      Future<byte[][]> result = pending.removeFirst();
+      try {
+        chunks = result.get();
+        chunkIndex = 0;
+        chunkPosition = 0;
+        nextUnit++;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while decompressing");
+      } catch (ExecutionException e) {
+        // not a real unit boundary, or too large: continue sequentially from
+        // the start of the unit, which is known to be a member boundary
+        logger.log(Level.FINE, "Decompressing unit " + nextUnit + " sequentially.",
+            e.getCause());
+        long start = unitStarts[nextUnit++];
+        sequential = new GzipMemberDecoder(channel, start, channel.size());
+        skipUnitsBefore(start);
+      }
+    }
+  }
+
+  /**
+   * Called when the sequential decoder has reached its stop position. Switches
+   * back to the decompressed units if the decoder stopped exactly at the start
+   * of one.
+   *
+   * @return {@code false} if the end of the file has been reached
+   */
+  private boolean resumeUnits(long position) throws IOException {
+    if (position >= channel.size()) {
+      return false;
+    }
+    if (nextUnit < unitStarts.length - 1 && unitStarts[nextUnit] == position) {
+      sequential.close();
+      sequential = null;
+    } else {
+      skipUnitsBefore(position);
+    }
+    return true;
+  }
+
+  /**
+   * Drops all units starting before the given position, which the sequential
+   * decoder has already decompressed, and makes the decoder stop at the start
+   * of the next unit.
+   */
+  private void skipUnitsBefore(long position) {
+    while (nextUnit < unitStarts.length - 1 && unitStarts[nextUnit] < position) {
+      if (nextUnit < nextUnitToSubmit) {
+        // not interrupting, which would close the shared channel
+        pending.removeFirst().cancel(false);
+      } else {
+        nextUnitToSubmit++;
+      }
+      nextUnit++;
+    }
+    sequential.setStopPosition(nextUnit < unitStarts.length - 1
+        ? unitStarts[nextUnit] : Long.MAX_VALUE);
+    // keep the pool busy with the units after the stop position
+    submitUnits();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+    if (sequential != null) {
+      sequential.close();
+    }
+    file.close();
+  }
+}
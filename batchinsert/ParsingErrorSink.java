@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvInputAdapter.ParsingError;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Collects the parsing errors of an {@link InputAdapter} without holding
+ * all of them in memory, so that even an input with millions of bad records
+ * can be processed.
+ *
+ * <p>Only the first errors are kept as a sample. All errors are counted per
+ * attribute and per kind of message, where the values quoted in a message
+ * are left out, so that e.g. all prices that could not be parsed count as
+ * the same message. Optionally, every error is also written to a spill file,
+ * one line per error with tab-separated fields: the line number, the product
+ * ID, the attribute, the message and the complete record, with tabs, line
+ * breaks and backslashes escaped.
+ *
+ * <p>If a maximum error ratio is given, the sink reports when more than that
+ * share of the records could not be parsed, so that the run can be aborted
+ * instead of sending a broken export. The ratio is only judged once
+ * {@link #MIN_RECORDS_FOR_RATIO} records have been seen; before, the errors
+ * are compared to that number instead.
+ *
+ * <p>This class is thread-safe. The sample and the spill file are guarded by
+ * a {@link ReentrantLock} rather than the sink's monitor, since writing the
+ * spill file blocks on file I/O while a worker thread may be parsing its
+ * records under the input adapter's lock.
+ */
+public final class ParsingErrorSink {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger
+      = Logger.getLogger(MultiThreadingAndBatchingExample.class.getName());
+
+  /** The default number of errors kept in memory. */
+  public static final int DEFAULT_SAMPLE_SIZE = 100;
+
+  /** The maximum error ratio for never aborting. */
+  public static final double NO_LIMIT = 1.0;
+
+  /** The number of records the error ratio is judged on at least. */
+  public static final long MIN_RECORDS_FOR_RATIO = 1000;
+
+  /**
+   * The maximum number of distinct messages counted; further ones are
+   * counted as {@link #OTHER_MESSAGES}.
+   */
+  private static final int MAX_MESSAGES = 1000;
+
+  private static final String OTHER_MESSAGES = "(other messages)";
+
+  /** The key under which errors concerning the whole record are counted. */
+  private static final String WHOLE_RECORD = "(record)";
+
+  private final int sampleSize;
+  private final List<ParsingError> sample;
+  private final double maxErrorRatio;
+
+  private final LongAdder records = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final ConcurrentMap<String, LongAdder> countsByAttribute
+      = new ConcurrentHashMap<String, LongAdder>();
+  private final ConcurrentMap<String, LongAdder> countsByMessage
+      = new ConcurrentHashMap<String, LongAdder>();
+
+  private final File spillFile;
+
+  /**
+   * The lock held while the sample or the spill file is accessed.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * The writer for the spill file, or {@code null} if there is none, or
+   * writing it failed.
+   */
+  private Writer spill;
+
+  private volatile boolean aborted = false;
+
+  /**
+   * Creates a sink that keeps a sample of {@link #DEFAULT_SAMPLE_SIZE} errors,
+   * without a spill file and without a maximum error ratio.
+   */
+  public ParsingErrorSink() {
+    this.sampleSize = DEFAULT_SAMPLE_SIZE;
+    this.sample = new ArrayList<ParsingError>();
+    this.maxErrorRatio = NO_LIMIT;
+    this.spillFile = null;
+  }
+
+  /**
+   * Creates a sink.
+   *
+   * @param sampleSize The number of errors kept in memory
+   * @param spillFile The file all errors are written to, or {@code null}. An
+   *   existing file is overwritten.
+   * @param maxErrorRatio The share of records, between 0 and 1, that may fail
+   *   to parse before the run should be aborted, or {@link #NO_LIMIT}
+   * @throws IOException if the spill file could not be created
+   */
+  public ParsingErrorSink(int sampleSize, File spillFile, double maxErrorRatio)
+      throws IOException {
+    if (maxErrorRatio < 0 || maxErrorRatio > 1) {
+      throw new IllegalArgumentException("maxErrorRatio must be between 0 and 1");
+    }
+    this.sampleSize = sampleSize;
+    this.sample = new ArrayList<ParsingError>(Math.min(sampleSize, DEFAULT_SAMPLE_SIZE));
+    this.maxErrorRatio = maxErrorRatio;
+    this.spillFile = spillFile;
+    if (spillFile != null) {
+      spill = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile),
+          StandardCharsets.UTF_8));
+      spill.write("line\tid\tattribute\tmessage\trecord\n");
+    }
+  }
+
+  /**
+   * Counts a record that has been parsed, successfully or not.
+   */
+  void countRecord() {
+    records.increment();
+  }
+
+  /**
+   * Records a parsing error.
+   *
+   * @param error The error
+   * @return {@code true} if the maximum error ratio has just been exceeded,
+   *   i.e. the run should be aborted, {@code false} otherwise, in particular
+   *   if it has been exceeded before
+   */
+  boolean add(ParsingError error) {
+    errors.increment();
+    count(countsByAttribute,
+        error.attributeName != null ? error.attributeName : WHOLE_RECORD);
+    String message = getMessageKind(error.errorMessage);
+    if (countsByMessage.size() >= MAX_MESSAGES && !countsByMessage.containsKey(message)) {
+      message = OTHER_MESSAGES;
+    }
+    count(countsByMessage, message);
+
+    lock.lock();
+    try {
+      if (sample.size() < sampleSize) {
+        sample.add(error);
+      }
+      if (spill != null) {
+        try {
+          spill.write(Long.toString(error.lineNumber));
+          writeField(error.productId);
+          writeField(error.attributeName);
+          writeField(error.errorMessage);
+          writeField(error.completeProductDescription);
+          spill.write('\n');
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Writing parsing errors to " + spillFile + " failed.", e);
+          closeSpill();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+
+    if (!aborted && maxErrorRatio < NO_LIMIT
+        && errors.sum() > maxErrorRatio * Math.max(records.sum(), MIN_RECORDS_FOR_RATIO)) {
+      lock.lock();
+      try {
+        if (!aborted) {
+          aborted = true;
+          return true;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+    return false;
+  }
+
+  private static void count(ConcurrentMap<String, LongAdder> counts, String key) {
+    LongAdder counter = counts.get(key);
+    if (counter == null) {
+      LongAdder newCounter = new LongAdder();
+      counter = counts.putIfAbsent(key, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    counter.increment();
+  }
+
+  /**
+   * Returns the kind of a message: the message with quoted and parenthesized
+   * values replaced by "..." and numbers replaced by "#".
+   */
+  static String getMessageKind(String message) {
+    if (message == null) {
+      return "";
+    }
+    StringBuilder kind = new StringBuilder(message.length());
+    for (int i = 0; i < message.length(); i++) {
+      char c = message.charAt(i);
+      char close = c == '"' ? '"' : c == '(' ? ')' : 0;
+      int end = close != 0 ? message.indexOf(close, i + 1) : -1;
+      if (end >= 0) {
+        kind.append(c).append("...").append(close);
+        i = end;
+      } else if (c >= '0' && c <= '9') {
+        kind.append('#');
+        while (i + 1 < message.length() && message.charAt(i + 1) >= '0'
+            && message.charAt(i + 1) <= '9') {
+          i++;
+        }
+      } else {
+        kind.append(c);
+      }
+    }
+    return kind.toString();
+  }
+
+  /**
+   * Writes a tab and the given value, escaped.
+   */
+  private void writeField(String value) throws IOException {
+    spill.write('\t');
+    if (value == null) {
+      return;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '\t':
+          spill.write("\\t");
+          break;
+        case '\n':
+          spill.write("\\n");
+          break;
+        case '\r':
+          spill.write("\\r");
+          break;
+        case '\\':
+          spill.write("\\\\");
+          break;
+        default:
+          spill.write(c);
+      }
+    }
+  }
+
+  /**
+   * Returns the first errors, up to the sample size.
+   *
+   * @return a copy of the sample
+   */
+  public Collection<ParsingError> getSample() {
+    lock.lock();
+    try {
+      return new ArrayList<ParsingError>(sample);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of errors recorded so far.
+   */
+  public long getErrorCount() {
+    return errors.sum();
+  }
+
+  /**
+   * Returns the number of records parsed so far, successfully or not.
+   */
+  public long getRecordCount() {
+    return records.sum();
+  }
+
+  /**
+   * Returns the number of errors per attribute, the most frequent first.
+   * Errors concerning the whole record, like a wrong number of fields, are
+   * counted as "(record)".
+   */
+  public Map<String, Long> getCountsByAttribute() {
+    return sortByCount(countsByAttribute);
+  }
+
+  /**
+   * Returns the number of errors per kind of message, the most frequent first.
+   */
+  public Map<String, Long> getCountsByMessage() {
+    return sortByCount(countsByMessage);
+  }
+
+  private static Map<String, Long> sortByCount(Map<String, LongAdder> counts) {
+    List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>();
+    for (Map.Entry<String, LongAdder> entry : counts.entrySet()) {
+      entries.add(new SimpleImmutableEntry<String, Long>(
+          entry.getKey(), entry.getValue().sum()));
+    }
+    Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+      @Override
+      public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+        return b.getValue().compareTo(a.getValue());
+      }
+    });
+    Map<String, Long> sorted = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, Long> entry : entries) {
+      sorted.put(entry.getKey(), entry.getValue());
+    }
+    return sorted;
+  }
+
+  /**
+   * Returns whether the maximum error ratio has been exceeded.
+   */
+  public boolean isAborted() {
+    return aborted;
+  }
+
+  /**
+   * Returns the maximum error ratio, or {@link #NO_LIMIT}.
+   */
+  public double getMaxErrorRatio() {
+    return maxErrorRatio;
+  }
+
+  /**
+   * Returns the spill file, or {@code null} if there is none.
+   */
+  public File getSpillFile() {
+    return spillFile;
+  }
+
+  /**
+   * Writes all buffered errors to the spill file and closes it. Errors
+   * recorded afterwards are only counted and sampled.
+   *
+   * @throws IOException if writing failed
+   */
+  public void close() throws IOException {
+    lock.lock();
+    try {
+      if (spill != null) {
+        Writer closing = spill;
+        spill = null;
+        closing.close();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void closeSpill() {
+    try {
+      close();
+    } catch (IOException e) {
+      // already reported
+    }
+  }
+}
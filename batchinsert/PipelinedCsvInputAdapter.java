@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.model.Product;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>A {@link CsvInputAdapter} that reads and parses the CSV input in a
+ * pipeline of stages instead of doing all the work while holding the lock of
+ * the adapter:
+ * <ol>
+ *   <li>One reader thread reads raw UTF-8 records, splits them into fields and
+ *       puts them, in chunks, into a bounded line queue. The fields are not
+ *       decoded; each chunk stores the fields of its records in a single byte
+ *       array. Since the reader finds the ends of the records, records with
+ *       quoted line breaks are never split between chunks.</li>
+ *   <li>A configurable number of parser threads take the chunks, parse them
+ *       straight into {@link ColumnarProductBatch}es and put those into a
+ *       bounded batch queue.</li>
+ *   <li>The worker threads calling {@link #getNextBatch(int)} take finished
+ *       batches from the batch queue. {@link #getNextProducts(int)} turns them
+ *       into {@link Product}s.</li>
+ * </ol>
+ *
+ * <p>This way parsing and sending to the server overlap instead of taking
+ * turns. Both queues are bounded, so a slow stage will make the stages before it
+ * wait instead of filling up the memory.
+ *
+ * <p>Products are not necessarily returned in the order in which they appear in
+ * the CSV. As for the {@link CsvInputAdapter}, each product is returned exactly
+ * once.
+ */
+public class PipelinedCsvInputAdapter extends CsvInputAdapter {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger
+      = Logger.getLogger(PipelinedCsvInputAdapter.class.getName());
+
+  /**
+   * Marker put into the line queue after the last chunk of lines. It is
+   * compared by identity.
+   */
+  private static final RecordChunk END_OF_LINES = new RecordChunk(0);
+
+  /**
+   * Number of records read into one chunk, which is also the maximum size of the
+   * batches put into the batch queue.
+   */
+  private final int batchSize;
+
+  /**
+   * Queue of chunks of raw records that still have to be parsed.
+   */
+  private final BlockingQueue<RecordChunk> lineQueue;
+
+  /**
+   * Queue of parsed batches that are waiting to be sent.
+   */
+  private final ProductBatchQueue batchQueue;
+
+  /**
+   * The reader stage.
+   */
+  private final Thread readerThread;
+
+  /**
+   * The parser stage.
+   */
+  private final List<Thread> parserThreads;
+
+  /**
+   * Number of parser threads that have not seen the end of the input yet.
+   */
+  private final AtomicInteger activeParsers;
+
+  /**
+   * Whether the stages have been started already.
+   */
+  private final AtomicBoolean started = new AtomicBoolean(false);
+
+  /**
+   * The exception that stopped the reader stage, if any.
+   */
+  private volatile IOException readFailure;
+
+  /**
+   * Sets up the pipeline. The stages will be started by the first call to
+   * {@link #start()} or {@link #getNextBatch(int)}.
+   *
+   * @param input An input stream that will return UTF-8 encoded CSV records
+   *   containing exactly one product per record
+   * @param separator The string used as a separator in the CSV
+   * @param homepage The user's registered homepage. This homepage will be used
+   *   as a prefix for all homepage links.
+   * @param numberOfParserThreads The number of threads parsing records in
+   *   parallel
+   * @param batchSize The maximum number of products in one batch
+   * @param queueCapacity The maximum number of chunks waiting in each of the
+   *   queues
+   * @throws IllegalArgumentException if one of the numbers is not positive
+   */
+  public PipelinedCsvInputAdapter(InputStream input, String separator, String homepage,
+      int numberOfParserThreads, int batchSize, int queueCapacity) {
+    super(input, separator, homepage);
+    if (numberOfParserThreads <= 0) {
+      throw new IllegalArgumentException("numberOfParserThreads must be positive");
+    }
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive");
+    }
+    if (queueCapacity <= 0) {
+      throw new IllegalArgumentException("queueCapacity must be positive");
+    }
+    this.batchSize = batchSize;
+    this.lineQueue = new ArrayBlockingQueue<RecordChunk>(queueCapacity);
+    this.batchQueue = new ProductBatchQueue(queueCapacity);
+
+    this.readerThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        readLines();
+      }
+    }, "csv-reader");
+    this.readerThread.setDaemon(true);
+
+    this.activeParsers = new AtomicInteger(numberOfParserThreads);
+    this.parserThreads = new ArrayList<Thread>(numberOfParserThreads);
+    for (int i = 0; i < numberOfParserThreads; i++) {
+      Thread parserThread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          parseLines();
+        }
+      }, "csv-parser-" + i);
+      parserThread.setDaemon(true);
+      parserThreads.add(parserThread);
+    }
+  }
+
+  /**
+   * Starts the reader and parser stages. Calling this method more than once
+   * has no effect.
+   */
+  public void start() {
+    if (started.compareAndSet(false, true)) {
+      readerThread.start();
+      for (Thread t : parserThreads) {
+        t.start();
+      }
+    }
+  }
+
+  /**
+   * Returns the next product. Prefer {@link #getNextProducts(int)}, which
+   * avoids splitting the batches prepared by the parser stage.
+   *
+   * @return A product, or {@code null} if no more products are available
+   * @throws IOException if anything went wrong during reading the product
+   */
+  @Override
+  public Product getNextProduct() throws IOException {
+    List<Product> products = getNextProducts(1);
+    return products.isEmpty() ? null : products.get(0);
+  }
+
+  /**
+   * Returns the next batch prepared by the parser stage, like
+   * {@link #getNextBatch(int)}, as a list of {@link Product}s.
+   *
+   * @return A list of up to {@code maxNumOfProducts} products. It is empty if
+   *   and only if no more products are available.
+   * @throws IOException if anything went wrong during reading the products
+   */
+  @Override
+  public List<Product> getNextProducts(int maxNumOfProducts) throws IOException {
+    return getNextBatch(maxNumOfProducts).toProducts();
+  }
+
+  /**
+   * Returns the next batch prepared by the parser stage, waiting for one if
+   * necessary. If the batch contains more than {@code maxNumOfProducts}
+   * products, the rest is put back for the next caller.
+   *
+   * @return A batch of up to {@code maxNumOfProducts} products. It is empty if
+   *   and only if no more products are available.
+   * @throws IOException if anything went wrong during reading the products
+   */
+  @Override
+  public ColumnarProductBatch getNextBatch(int maxNumOfProducts) throws IOException {
+    if (isIntakeStopped()) {
+      return newBatch(0);
+    }
+    start();
+    return batchQueue.take(maxNumOfProducts);
+  }
+
+  /**
+   * Returns the number of chunks of records that have been read but not yet
+   * parsed.
+   *
+   * @return the depth of the line queue
+   */
+  public int getLineQueueDepth() {
+    return lineQueue.size();
+  }
+
+  /**
+   * Returns the number of parsed batches that have not yet been taken by a
+   * worker thread.
+   *
+   * @return the depth of the batch queue
+   */
+  public int getBatchQueueDepth() {
+    return batchQueue.size();
+  }
+
+  /**
+   * Returns a short human readable description of the state of the pipeline,
+   * for monitoring.
+   *
+   * @return the current queue depths and the number of active parser threads
+   */
+  public String getStatus() {
+    return "line queue: " + getLineQueueDepth() + " chunk(s), batch queue: "
+        + getBatchQueueDepth() + " batch(es), active parsers: " + activeParsers.get()
+        + "/" + parserThreads.size();
+  }
+
+  /**
+   * The reader stage: reads chunks of records until the end of the input, then
+   * puts one end marker per parser thread into the line queue.
+   */
+  private void readLines() {
+    try {
+      try {
+        CsvRecordReader recordReader = getRecordReader();
+        CsvFieldTokenizer tokenizer = newTokenizer();
+        RecordChunk chunk = new RecordChunk(batchSize);
+        chunk.startLines = recordReader.getLinesRead();
+        while (recordReader.readRecord(tokenizer)) {
+          chunk.add(tokenizer, recordReader.getRecordLineNumber());
+          if (chunk.recordCount == batchSize) {
+            chunk.end(recordReader);
+            lineQueue.put(chunk);
+            chunk = new RecordChunk(batchSize);
+            chunk.startLines = recordReader.getLinesRead();
+          }
+        }
+        if (chunk.recordCount > 0) {
+          chunk.end(recordReader);
+          lineQueue.put(chunk);
+        }
+      } catch (IOException e) {
+        logger.log(Level.SEVERE, "Reading the CSV input failed.", e);
+        readFailure = e;
+      }
+      for (int i = 0; i < parserThreads.size(); i++) {
+        lineQueue.put(END_OF_LINES);
+      }
+    } catch (InterruptedException e) {
+      readFailure = new InterruptedIOException("CSV reader was interrupted");
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * The parser stage: parses chunks of records until the end marker is
+   * reached. The last parser thread to finish marks the end of the batch queue.
+   */
+  private void parseLines() {
+    CsvFieldTokenizer tokenizer = newTokenizer();
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        RecordChunk chunk = lineQueue.take();
+        if (chunk == END_OF_LINES) {
+          break;
+        }
+        ColumnarProductBatch parsed = newBatch(chunk.recordCount);
+        for (int i = 0; i < chunk.recordCount; i++) {
+          int firstField = chunk.firstFields[i];
+          tokenizer.setRecord(chunk.data, i == 0 ? 0 : chunk.fieldEnds[firstField - 1],
+              chunk.fieldEnds, firstField, chunk.firstFields[i + 1] - firstField,
+              chunk.unterminatedQuote && i == chunk.recordCount - 1);
+          parseRecordOrRecordError(tokenizer, chunk.lineNumbers[i], parsed);
+        }
+        CsvCheckpoint checkpoint = getCheckpoint();
+        if (checkpoint != null) {
+          parsed.range = checkpoint.register(chunk.startLines, chunk.endLines,
+              chunk.endOffset, parsed.size());
+        }
+        batchQueue.put(parsed);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (activeParsers.decrementAndGet() == 0) {
+        batchQueue.finish(readFailure);
+      }
+    }
+  }
+
+  /**
+   * A chunk of consecutive records that have been split into fields. The
+   * contents of all fields are stored back to back in one byte array.
+   */
+  private static class RecordChunk {
+    /** The line numbers the records start on. */
+    final long[] lineNumbers;
+    /**
+     * The index in {@code fieldEnds} of the first field of each record, plus
+     * the total number of fields at index {@code recordCount}.
+     */
+    final int[] firstFields;
+    /** The end positions of all fields in {@code data}. */
+    int[] fieldEnds;
+    byte[] data;
+    int length = 0;
+    int recordCount = 0;
+    /** Whether the last record ended inside a quoted field. */
+    boolean unterminatedQuote = false;
+    /** The number of lines before the first and after the last record. */
+    long startLines;
+    long endLines;
+    /** The byte offset after the last record. */
+    long endOffset;
+
+    RecordChunk(int capacity) {
+      this.lineNumbers = new long[capacity];
+      this.firstFields = new int[capacity + 1];
+      this.fieldEnds = new int[capacity * 20];
+      this.data = new byte[capacity * 128];
+    }
+
+    void add(CsvFieldTokenizer tokenizer, long lineNumber) {
+      int contentLength = tokenizer.getContentLength();
+      if (length + contentLength > data.length) {
+        byte[] newData = new byte[Math.max(length + contentLength, data.length * 2)];
+        System.arraycopy(data, 0, newData, 0, length);
+        data = newData;
+      }
+      int firstField = firstFields[recordCount];
+      int fieldCount = tokenizer.getFieldCount();
+      if (firstField + fieldCount > fieldEnds.length) {
+        int[] newFieldEnds = new int[Math.max(firstField + fieldCount, fieldEnds.length * 2)];
+        System.arraycopy(fieldEnds, 0, newFieldEnds, 0, firstField);
+        fieldEnds = newFieldEnds;
+      }
+      tokenizer.copyTo(data, length, fieldEnds, firstField);
+      length += contentLength;
+      lineNumbers[recordCount] = lineNumber;
+      unterminatedQuote = tokenizer.hasUnterminatedQuote();
+      firstFields[++recordCount] = firstField + fieldCount;
+    }
+
+    void end(CsvRecordReader recordReader) {
+      endLines = recordReader.getLinesRead();
+      endOffset = recordReader.getOffset();
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.model.Product;
+
+import java.util.ArrayList;
+
+/**
+ * <p>A list of products handed out by a {@link CsvInputAdapter}, together with
+ * the {@link CsvCheckpoint.Range} of records they have been parsed from. The
+ * range is {@code null} if the adapter does not track a checkpoint.
+ */
+final class ProductBatch extends ArrayList<Product> {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The range of records the products have been parsed from, or {@code null}.
+   */
+  CsvCheckpoint.Range range;
+
+  /**
+   * Creates an empty batch.
+   *
+   * @param initialCapacity The number of products expected
+   */
+  ProductBatch(int initialCapacity) {
+    super(initialCapacity);
+  }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * <p>A bounded queue of parsed batches of products, handing them over from the
+ * threads that parse the input to the worker threads that send them. The
+ * batches are kept as {@link ColumnarProductBatch}es, so that products are
+ * only turned into objects if a consumer asks for them.
+ *
+ * <p>Producers call {@link #put} for each batch and {@link #finish} once all
+ * batches have been put. Consumers call {@link #take}, which returns an empty
+ * batch to every consumer once the queue has been finished and is empty.
+ */
+class ProductBatchQueue {
+  /**
+   * Marker put into the queue after the last batch. It is compared by identity.
+   */
+  private static final ColumnarProductBatch END_OF_BATCHES = new ColumnarProductBatch(0, "");
+
+  /**
+   * The batches. The queue itself is unbounded; its size is limited by the
+   * permits, so that the end marker and the rest of split batches can always be
+   * put back without blocking.
+   */
+  private final BlockingDeque<ColumnarProductBatch> batches
+      = new LinkedBlockingDeque<ColumnarProductBatch>();
+
+  /**
+   * Limits the number of batches the producers may put into the queue.
+   */
+  private final Semaphore permits;
+
+  /**
+   * The exception that stopped the producers, if any.
+   */
+  private volatile IOException failure;
+
+  /**
+   * Creates a new queue.
+   *
+   * @param capacity The maximum number of batches waiting in the queue
+   * @throws IllegalArgumentException if the capacity is not positive
+   */
+  ProductBatchQueue(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.permits = new Semaphore(capacity);
+  }
+
+  /**
+   * Puts a batch into the queue, waiting for free space if necessary. Empty
+   * batches are ignored.
+   *
+   * @param batch The batch of products
+   * @throws InterruptedException if interrupted while waiting
+   */
+  void put(ColumnarProductBatch batch) throws InterruptedException {
+    if (batch.size() > 0) {
+      permits.acquire();
+      batches.addLast(batch);
+    }
+  }
+
+  /**
+   * Marks the end of the batches. Must be called exactly once, after the last
+   * call to {@link #put}.
+   *
+   * @param failure The exception that stopped the producers, or {@code null}
+   *   if all batches have been put. It will be thrown to the consumers after
+   *   they have taken the last batch.
+   */
+  void finish(IOException failure) {
+    this.failure = failure;
+    batches.addLast(END_OF_BATCHES);
+  }
+
+  /**
+   * Takes the next batch, waiting for one if necessary. If the batch contains
+   * more than {@code maxNumOfProducts} products, the rest is put back for the
+   * next caller.
+   *
+   * @param maxNumOfProducts The maximum number of products to return
+   * @return A batch of up to {@code maxNumOfProducts} products. It is empty if
+   *   and only if no more products are available.
+   * @throws IOException if the producers failed, or if interrupted while
+   *   waiting
+   */
+  ColumnarProductBatch take(int maxNumOfProducts) throws IOException {
+    try {
+      ColumnarProductBatch batch = batches.takeFirst();
+      if (batch == END_OF_BATCHES) {
+        // put the marker back so that all other consumers see it as well
+        batches.addFirst(END_OF_BATCHES);
+        if (failure != null) {
+          throw failure;
+        }
+        return new ColumnarProductBatch(0, "");
+      }
+      if (batch.size() > maxNumOfProducts) {
+        // the rest keeps the permit of the batch it was split from
+        // both parts belong to the same range of records
+        batches.addFirst(batch.splitAt(maxNumOfProducts));
+      } else {
+        permits.release();
+      }
+      return batch;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for products");
+    }
+  }
+
+  /**
+   * Returns the number of batches that have not yet been taken.
+   *
+   * @return the depth of the queue
+   */
+  int size() {
+    int size = batches.size();
+    return batches.peekLast() == END_OF_BATCHES ? size - 1 : size;
+  }
+}
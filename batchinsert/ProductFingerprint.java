@@ -0,0 +1,497 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvColumnPlan.Column;
+import com.google.api.client.sample.structuredcontent.model.Content;
+import com.google.api.client.sample.structuredcontent.model.Link;
+import com.google.api.client.sample.structuredcontent.model.Price;
+import com.google.api.client.sample.structuredcontent.model.Product;
+import com.google.api.client.sample.structuredcontent.model.ShippingWeight;
+import com.google.api.client.util.DateTime;
+import com.google.api.client.util.Key;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Computes 64 bit fingerprints of products, for telling whether a product
+ * has changed since it was last sent.
+ *
+ * <p>The fingerprint covers all fields that are sent to the server, i.e. all
+ * fields annotated with {@link Key}, recursively, in the order of their XML
+ * names. The batch information added by
+ * {@link com.google.api.client.sample.structuredcontent.utils.BatchUtils} is
+ * left out, since it does not describe the product. The fingerprint only
+ * depends on the values of the fields, so it is the same in every run.
+ *
+ * <p>The products of a {@link ColumnarProductBatch} are fingerprinted directly
+ * from its columns, without creating {@link Product}s, by a
+ * {@link ColumnValue} per field; the result is the same as for the product
+ * {@link ColumnarProductBatch#toProduct(int)} would create.
+ */
+final class ProductFingerprint {
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  /**
+   * Separates values, so that e.g. {@code ["ab", "c"]} and {@code ["a", "bc"]}
+   * have different fingerprints.
+   */
+  private static final char SEPARATOR = '\u0000';
+
+  /**
+   * Marks {@code null} values.
+   */
+  private static final char NULL = '\u0001';
+
+  /**
+   * The fields to fingerprint for each class, sorted by their XML names.
+   */
+  private static final ConcurrentMap<Class<?>, Field[]> fieldsByClass
+      = new ConcurrentHashMap<Class<?>, Field[]>();
+
+  /**
+   * Adds the value of a field of a product to a fingerprint, reading it from
+   * the columns of a {@link ColumnarProductBatch}.
+   */
+  private abstract static class ColumnValue {
+    abstract long add(long hash, ColumnarProductBatch batch, int row);
+  }
+
+  /**
+   * The value of the fields that have no column, which are always
+   * {@code null}.
+   */
+  private static final ColumnValue ABSENT = new ColumnValue() {
+    @Override
+    long add(long hash, ColumnarProductBatch batch, int row) {
+      return addChar(hash, NULL);
+    }
+  };
+
+  /**
+   * The value of a whole product.
+   */
+  private static final ColumnValue PRODUCT = createProductValue();
+
+  private ProductFingerprint() {
+  }
+
+  /**
+   * Returns the fingerprint of the given product.
+   *
+   * @param product The product
+   * @return the fingerprint
+   */
+  static long of(Product product) {
+    return mix(add(FNV_OFFSET_BASIS, product));
+  }
+
+  /**
+   * Returns the fingerprint of a product of a columnar batch, which is the
+   * same as the fingerprint of the product {@link ColumnarProductBatch#toProduct}
+   * would create.
+   *
+   * @param batch The batch
+   * @param row The row of the product
+   * @return the fingerprint
+   */
+  static long of(ColumnarProductBatch batch, int row) {
+    return mix(PRODUCT.add(FNV_OFFSET_BASIS, batch, row));
+  }
+
+  /**
+   * Returns a 64 bit hash of the given product ID, for looking it up in a
+   * {@link ProductFingerprintIndex}. The hash is never 0.
+   *
+   * @param externalId The product ID
+   * @return the hash
+   */
+  static long ofId(String externalId) {
+    long hash = mix(addString(FNV_OFFSET_BASIS, externalId));
+    return hash == 0 ? 1 : hash;
+  }
+
+  private static long add(long hash, Object value) {
+    if (value == null) {
+      return addChar(hash, NULL);
+    }
+    if (value instanceof String || value instanceof Number || value instanceof Boolean
+        || value instanceof Character || value instanceof Enum) {
+      return addString(hash, value.toString());
+    }
+    if (value instanceof DateTime) {
+      return addString(hash, ((DateTime) value).toStringRfc3339());
+    }
+    if (value instanceof Collection) {
+      hash = addChar(hash, '[');
+      for (Object element : (Collection<?>) value) {
+        hash = add(hash, element);
+      }
+      return addChar(hash, ']');
+    }
+    hash = addChar(hash, '{');
+    for (Field field : getFields(value.getClass())) {
+      try {
+        hash = addString(hash, getName(field));
+        hash = add(hash, field.get(value));
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException("Cannot read " + field, e);
+      }
+    }
+    return addChar(hash, '}');
+  }
+
+  private static long addString(long hash, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      hash = addChar(hash, value.charAt(i));
+    }
+    return addChar(hash, SEPARATOR);
+  }
+
+  /**
+   * Adds the characters of a string without a separator, for values that
+   * are made of several strings.
+   */
+  private static long addChars(long hash, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      hash = addChar(hash, value.charAt(i));
+    }
+    return hash;
+  }
+
+  /**
+   * Adds a decimal like {@link #addString} would add the result of
+   * {@link BigDecimal#toString()}, without creating the {@link BigDecimal}
+   * unless it has to be written in exponential notation.
+   */
+  private static long addDecimal(long hash, long unscaledValue, int scale) {
+    long magnitude = Math.abs(unscaledValue);
+    int digits = 1;
+    for (long rest = magnitude / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    if (scale < 0 || unscaledValue == Long.MIN_VALUE || digits - 1 - scale < -6) {
+      return addString(hash, BigDecimal.valueOf(unscaledValue, scale).toString());
+    }
+    if (unscaledValue < 0) {
+      hash = addChar(hash, '-');
+    }
+    int integerDigits = digits - scale;
+    if (integerDigits <= 0) {
+      hash = addChar(addChar(hash, '0'), '.');
+      for (int i = integerDigits; i < 0; i++) {
+        hash = addChar(hash, '0');
+      }
+    }
+    long divisor = 1;
+    for (int i = 1; i < digits; i++) {
+      divisor *= 10;
+    }
+    for (int i = 0; i < digits; i++) {
+      if (i == integerDigits && i > 0) {
+        hash = addChar(hash, '.');
+      }
+      hash = addChar(hash, (char) ('0' + magnitude / divisor % 10));
+      divisor /= 10;
+    }
+    return addChar(hash, SEPARATOR);
+  }
+
+  private static long addChar(long hash, char c) {
+    hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+    return (hash ^ (c >>> 8)) * FNV_PRIME;
+  }
+
+  /**
+   * Spreads the bits of an FNV-1a hash, whose low bits are weak.
+   */
+  private static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    return hash ^ (hash >>> 33);
+  }
+
+  /**
+   * Returns the fields of the given class and its superclasses that are sent
+   * to the server, except for the batch information, sorted by their XML names.
+   */
+  private static Field[] getFields(Class<?> type) {
+    Field[] fields = fieldsByClass.get(type);
+    if (fields == null) {
+      List<Field> fieldList = new ArrayList<Field>();
+      for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (field.isAnnotationPresent(Key.class) && !Modifier.isStatic(field.getModifiers())
+              && !getName(field).startsWith("batch:")) {
+            field.setAccessible(true);
+            fieldList.add(field);
+          }
+        }
+      }
+      Collections.sort(fieldList, new Comparator<Field>() {
+        @Override
+        public int compare(Field a, Field b) {
+          return getName(a).compareTo(getName(b));
+        }
+      });
+      fields = fieldList.toArray(new Field[fieldList.size()]);
+      fieldsByClass.putIfAbsent(type, fields);
+    }
+    return fields;
+  }
+
+  /**
+   * Creates the value of a whole product. The fields follow the columns like
+   * {@link ColumnarProductBatch#toProduct} does; the fields without a column
+   * are {@code null}, apart from the defaults of the language and the
+   * country.
+   */
+  private static ColumnValue createProductValue() {
+    Map<String, ColumnValue> values = new HashMap<String, ColumnValue>();
+    values.put("sc:id", string(Column.ID));
+    values.put("sc:content_language", string(Column.CONTENT_LANGUAGE, "en"));
+    values.put("sc:target_country", string(Column.TARGET_COUNTRY, "US"));
+    values.put("title", string(Column.TITLE));
+    Map<String, ColumnValue> contentValues = new HashMap<String, ColumnValue>();
+    contentValues.put("@type", constant("text"));
+    contentValues.put("text()", string(Column.DESCRIPTION));
+    values.put("content", object(Content.class, contentValues));
+    values.put("scp:condition", string(Column.CONDITION));
+    Map<String, ColumnValue> priceValues = new HashMap<String, ColumnValue>();
+    priceValues.put("@unit", string(Column.CURRENCY));
+    priceValues.put("text()", decimal(Column.PRICE));
+    values.put("scp:price", object(Price.class, priceValues));
+    Map<String, ColumnValue> weightValues = new HashMap<String, ColumnValue>();
+    weightValues.put("@unit", string(Column.WEIGHT_UNIT));
+    weightValues.put("text()", decimal(Column.WEIGHT));
+    final ColumnValue weight = object(ShippingWeight.class, weightValues);
+    values.put("scp:shipping_weight", new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        return batch.hasDecimal(Column.WEIGHT, row) ? weight.add(hash, batch, row)
+            : addChar(hash, NULL);
+      }
+    });
+    values.put("scp:quantity", new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        return batch.has(Column.QUANTITY, row)
+            ? addDecimal(hash, batch.getInt(Column.QUANTITY, row), 0) : addChar(hash, NULL);
+      }
+    });
+    values.put("sc:expiration_date", new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        DateTime date = batch.getDate(Column.EXPIRATION_DATE, row);
+        return date == null ? addChar(hash, NULL) : addString(hash, date.toStringRfc3339());
+      }
+    });
+    values.put("scp:product_type", string(Column.PRODUCT_TYPE));
+    values.put("scp:brand", string(Column.BRAND));
+    values.put("scp:gtin", string(Column.GTIN));
+    values.put("scp:mpn", string(Column.MPN));
+
+    // the links always include the alternate link, if there is one
+    Map<String, ColumnValue> linkValues = new HashMap<String, ColumnValue>();
+    linkValues.put("@href", new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        hash = addChars(hash, batch.getLinkPrefix());
+        return addString(hash, batch.getString(Column.LINK, row));
+      }
+    });
+    linkValues.put("@rel", constant("alternate"));
+    linkValues.put("@type", constant("text/html"));
+    final ColumnValue link = object(Link.class, linkValues);
+    values.put("link", new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        hash = addChar(hash, '[');
+        if (batch.getString(Column.LINK, row) != null) {
+          hash = link.add(hash, batch, row);
+        }
+        return addChar(hash, ']');
+      }
+    });
+    // the image links are an empty list rather than null
+    values.put("sc:image_link", new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        hash = addChar(hash, '[');
+        String imageLink = batch.getString(Column.IMAGE_LINK, row);
+        if (imageLink != null) {
+          hash = addString(hash, imageLink);
+        }
+        return addChar(hash, ']');
+      }
+    });
+    values.put("scp:color", new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        String color = batch.getString(Column.COLOR, row);
+        return color == null ? addChar(hash, NULL)
+            : addChar(addString(addChar(hash, '['), color), ']');
+      }
+    });
+
+    values.put("sc:additional_image_link", list(Column.ADDITIONAL_IMAGE_LINKS));
+    values.put("scp:availability", string(Column.AVAILABILITY));
+    values.put("scp:gender", string(Column.GENDER));
+    values.put("scp:age_group", string(Column.AGE_GROUP));
+    values.put("scp:size", string(Column.SIZE));
+    values.put("scp:material", string(Column.MATERIAL));
+    values.put("scp:pattern", string(Column.PATTERN));
+    values.put("scp:item_group_id", string(Column.ITEM_GROUP_ID));
+    values.put("scp:google_product_category", string(Column.GOOGLE_PRODUCT_CATEGORY));
+    values.put("scp:manufacturer", string(Column.MANUFACTURER));
+    values.put("scp:author", string(Column.AUTHOR));
+    values.put("scp:edition", string(Column.EDITION));
+    values.put("scp:genre", string(Column.GENRE));
+    values.put("scp:year", string(Column.YEAR));
+    values.put("sc:channel", string(Column.CHANNEL));
+    values.put("sc:adult", flag(Column.ADULT));
+    values.put("scp:featured_product", flag(Column.FEATURED_PRODUCT));
+    values.put("scp:adwords_grouping", string(Column.ADWORDS_GROUPING));
+    values.put("scp:adwords_labels", list(Column.ADWORDS_LABELS));
+    values.put("scp:adwords_redirect", string(Column.ADWORDS_REDIRECT));
+    values.put("scp:product_review_average", string(Column.PRODUCT_REVIEW_AVERAGE));
+    values.put("scp:product_review_count", string(Column.PRODUCT_REVIEW_COUNT));
+    return object(Product.class, values);
+  }
+
+  /**
+   * Returns the value of an object with the given fields, by XML name, in the
+   * order of {@link #getFields}; the fields not given are {@code null}.
+   */
+  private static ColumnValue object(Class<?> type, Map<String, ColumnValue> values) {
+    Field[] fields = getFields(type);
+    final String[] names = new String[fields.length];
+    final ColumnValue[] fieldValues = new ColumnValue[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      names[i] = getName(fields[i]);
+      fieldValues[i] = values.containsKey(names[i]) ? values.get(names[i]) : ABSENT;
+    }
+    return new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        hash = addChar(hash, '{');
+        for (int i = 0; i < names.length; i++) {
+          hash = addString(hash, names[i]);
+          hash = fieldValues[i].add(hash, batch, row);
+        }
+        return addChar(hash, '}');
+      }
+    };
+  }
+
+  private static ColumnValue constant(final String value) {
+    return new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        return addString(hash, value);
+      }
+    };
+  }
+
+  private static ColumnValue string(Column column) {
+    return string(column, null);
+  }
+
+  /**
+   * Returns the value of a string column, which is the given default value
+   * if the product has none.
+   */
+  private static ColumnValue string(final Column column, final String defaultValue) {
+    return new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        String value = batch.getString(column, row);
+        if (value == null) {
+          value = defaultValue;
+        }
+        return value == null ? addChar(hash, NULL) : addString(hash, value);
+      }
+    };
+  }
+
+  private static ColumnValue decimal(final Column column) {
+    return new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        if (!batch.hasDecimal(column, row)) {
+          return addChar(hash, NULL);
+        } else if (batch.isLargeDecimal(column, row)) {
+          return addString(hash, batch.getDecimal(column, row).toString());
+        }
+        return addDecimal(hash, batch.getUnscaledValue(column, row),
+            batch.getScale(column, row));
+      }
+    };
+  }
+
+  private static ColumnValue flag(final Column column) {
+    return new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        return addString(hash, batch.getBoolean(column, row) ? "true" : "false");
+      }
+    };
+  }
+
+  /**
+   * Returns the value of a list column, which is {@code null} if the list is
+   * empty.
+   */
+  private static ColumnValue list(final Column column) {
+    return new ColumnValue() {
+      @Override
+      long add(long hash, ColumnarProductBatch batch, int row) {
+        int size = batch.getListSize(column, row);
+        if (size == 0) {
+          return addChar(hash, NULL);
+        }
+        hash = addChar(hash, '[');
+        for (int i = 0; i < size; i++) {
+          hash = addString(hash, batch.getListElement(column, row, i));
+        }
+        return addChar(hash, ']');
+      }
+    };
+  }
+
+  /**
+   * Returns the XML name of a field.
+   */
+  private static String getName(Field field) {
+    String name = field.getAnnotation(Key.class).value();
+    return "##default".equals(name) ? field.getName() : name;
+  }
+}
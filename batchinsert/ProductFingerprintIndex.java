@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>An index of the fingerprints of all products that have been sent to the
+ * server successfully, by product ID, for sending only new and changed
+ * products (see {@link ProductFingerprint}).
+ *
+ * <p>The index is a hash table with open addressing and linear probing that
+ * lives in a memory-mapped file, so it hardly uses any heap even for tens of
+ * millions of products, and the operating system writes changes back to the
+ * file on its own. Each slot holds a 64 bit hash of the product ID and the
+ * fingerprint, 16 bytes in all. The IDs themselves are not stored; with 64 bit
+ * hashes, two IDs of a catalog are very unlikely to collide. When the table is
+ * three quarters full, it is rehashed into a new file of twice the size, which
+ * then replaces the old one.
+ *
+ * <p>This class is thread-safe. All operations hold a {@link ReentrantLock}
+ * rather than the index's monitor, since growing the index and writing it to
+ * the disk block on file I/O, and a virtual thread blocking while it holds a
+ * monitor pins its carrier thread.
+ */
+final class ProductFingerprintIndex {
+  /** Identifies index files, and their format version. */
+  private static final long MAGIC = 0x5046494458303031L; // "PFIDX001"
+
+  private static final int HEADER_SIZE = 32;
+  private static final int SLOT_SIZE = 16;
+
+  /** The initial number of slots. Must be a power of two. */
+  private static final long INITIAL_CAPACITY = 1 << 20;
+
+  /**
+   * The number of slots per mapping, so that no mapping exceeds the 2 GB
+   * limit of a {@link MappedByteBuffer}. Must be a power of two.
+   */
+  private static final int SLOTS_PER_MAPPING = 1 << 26;
+
+  private final File file;
+
+  /**
+   * The lock held while the index is read or changed.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private MappedByteBuffer header;
+
+  /**
+   * The mapped slots, {@link #SLOTS_PER_MAPPING} per buffer.
+   */
+  private MappedByteBuffer[] slots;
+
+  private long capacity;
+  private long size;
+
+  /**
+   * Opens the index in the given file, creating an empty one if the file does
+   * not exist.
+   *
+   * @param file The index file
+   * @throws IOException if the file could not be mapped, or is not an index
+   */
+  ProductFingerprintIndex(File file) throws IOException {
+    this.file = file;
+    if (!file.exists() || file.length() == 0) {
+      create(file, INITIAL_CAPACITY);
+    }
+    map();
+  }
+
+  /**
+   * Creates an empty index file.
+   */
+  private static void create(File file, long capacity) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      randomAccessFile.setLength(0);
+      randomAccessFile.setLength(HEADER_SIZE + capacity * SLOT_SIZE);
+      randomAccessFile.writeLong(MAGIC);
+      randomAccessFile.writeLong(capacity);
+      randomAccessFile.writeLong(0);
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Maps the index file and checks its header.
+   */
+  private void map() throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      if (channel.size() < HEADER_SIZE) {
+        throw new IOException(file + " is not a product fingerprint index");
+      }
+      header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+      if (header.getLong(0) != MAGIC) {
+        throw new IOException(file + " is not a product fingerprint index");
+      }
+      capacity = header.getLong(8);
+      size = header.getLong(16);
+      if (Long.bitCount(capacity) != 1
+          || channel.size() != HEADER_SIZE + capacity * SLOT_SIZE) {
+        throw new IOException(file + " is corrupt");
+      }
+      int mappings = (int) ((capacity + SLOTS_PER_MAPPING - 1) / SLOTS_PER_MAPPING);
+      slots = new MappedByteBuffer[mappings];
+      for (int i = 0; i < mappings; i++) {
+        long first = (long) i * SLOTS_PER_MAPPING;
+        long count = Math.min(SLOTS_PER_MAPPING, capacity - first);
+        slots[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+            HEADER_SIZE + first * SLOT_SIZE, count * SLOT_SIZE);
+      }
+    } finally {
+      // the mappings stay valid after the channel has been closed
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Returns whether the given fingerprint is recorded for the given product.
+   *
+   * @param externalId The product ID
+   * @param fingerprint The fingerprint of the product
+   * @return {@code true} if the product has been sent before and not changed
+   *   since
+   */
+  boolean contains(String externalId, long fingerprint) {
+    long key = ProductFingerprint.ofId(externalId);
+    lock.lock();
+    try {
+      long slot = find(key);
+      return keyAt(slot) == key && fingerprintAt(slot) == fingerprint;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Records the fingerprint of a product that has been sent successfully.
+   *
+   * @param externalId The product ID
+   * @param fingerprint The fingerprint of the product
+   * @throws IOException if the index had to grow and this failed
+   */
+  void put(String externalId, long fingerprint) throws IOException {
+    long key = ProductFingerprint.ofId(externalId);
+    lock.lock();
+    try {
+      long slot = find(key);
+      if (keyAt(slot) == 0) {
+        if ((size + 1) * 4 > capacity * 3) {
+          grow();
+          slot = find(key);
+        }
+        size++;
+        header.putLong(16, size);
+      }
+      set(slot, key, fingerprint);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of products in the index.
+   */
+  long size() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Writes all changes to the disk.
+   */
+  void force() {
+    lock.lock();
+    try {
+      for (MappedByteBuffer buffer : slots) {
+        buffer.force();
+      }
+      header.force();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the slot holding the given key, or the empty slot where it would
+   * be inserted.
+   */
+  private long find(long key) {
+    long mask = capacity - 1;
+    long slot = (key ^ (key >>> 32)) & mask;
+    while (true) {
+      long slotKey = keyAt(slot);
+      if (slotKey == key || slotKey == 0) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private long keyAt(long slot) {
+    return slots[(int) (slot / SLOTS_PER_MAPPING)]
+        .getLong((int) (slot % SLOTS_PER_MAPPING) * SLOT_SIZE);
+  }
+
+  private long fingerprintAt(long slot) {
+    return slots[(int) (slot / SLOTS_PER_MAPPING)]
+        .getLong((int) (slot % SLOTS_PER_MAPPING) * SLOT_SIZE + 8);
+  }
+
+  private void set(long slot, long key, long fingerprint) {
+    MappedByteBuffer buffer = slots[(int) (slot / SLOTS_PER_MAPPING)];
+    int position = (int) (slot % SLOTS_PER_MAPPING) * SLOT_SIZE;
+    buffer.putLong(position + 8, fingerprint);
+    buffer.putLong(position, key);
+  }
+
+  /**
+   * Rehashes the table into a new file of twice the capacity, which then
+   * replaces the current file.
+   */
+  private void grow() throws IOException {
+    File grown = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+    create(grown, capacity * 2);
+    ProductFingerprintIndex target = new ProductFingerprintIndex(grown);
+    for (long slot = 0; slot < capacity; slot++) {
+      long key = keyAt(slot);
+      if (key != 0) {
+        long targetSlot = target.find(key);
+        target.set(targetSlot, key, fingerprintAt(slot));
+        target.size++;
+      }
+    }
+    target.header.putLong(16, target.size);
+    target.force();
+    Files.move(grown.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    header = target.header;
+    slots = target.slots;
+    capacity = target.capacity;
+  }
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvColumnPlan.Column;
+import com.google.api.client.sample.structuredcontent.batchinsert.MultiThreadingAndBatchingExample.BatchError;
+import com.google.api.client.sample.structuredcontent.model.Link;
+import com.google.api.client.sample.structuredcontent.model.Product;
+import com.google.api.client.sample.structuredcontent.model.ServiceError;
+import com.google.api.client.sample.structuredcontent.model.ServiceErrors;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * <p>Checks products before they are sent, so that products the server would
+ * reject anyway do not cost a round trip. The rules cover:
+ * <ul>
+ *   <li>the required attributes, and attributes that require others: an MPN
+ *       requires a brand, and a variant (an item group ID) requires a color,
+ *       size, pattern or material</li>
+ *   <li>the check digits of GTINs, i.e. of EAN-8, UPC-A, EAN-13 and
+ *       GTIN-14 numbers</li>
+ *   <li>ISO 4217 currency codes, ISO 3166 country codes and ISO 639 language
+ *       codes, in any case, since feeds commonly use {@code usd} or
+ *       {@code EN}</li>
+ *   <li>the syntax of the product, image and redirect URLs, which must be
+ *       absolute HTTP or HTTPS URLs</li>
+ *   <li>the maximum lengths of the title and the description</li>
+ * </ul>
+ *
+ * <p>The rules are compiled once into an array and access the fields of the
+ * product directly, without reflection. The products of a
+ * {@link ColumnarProductBatch} are checked on its columns, without creating
+ * {@link Product}s, with the same results. A rejected product is described by a
+ * {@link BatchError} like the ones returned by the server, with code 400 and
+ * one {@link ServiceError} per violated rule.
+ *
+ * <p>Validators are immutable and thread-safe.
+ */
+final class ProductValidator {
+  /** The maximum number of characters of a title. */
+  static final int MAX_TITLE_LENGTH = 150;
+
+  /** The maximum number of characters of a description. */
+  static final int MAX_DESCRIPTION_LENGTH = 5000;
+
+  /** The status code reported for rejected products. */
+  static final int REJECTED_CODE = 400;
+
+  /** The domain of the service errors of rejected products. */
+  static final String DOMAIN = "local";
+
+  /** The code of the service errors of rejected products. */
+  static final String CODE = "validation";
+
+  private static final Set<String> currencies = new HashSet<String>();
+  private static final Set<String> countries
+      = new HashSet<String>(Arrays.asList(Locale.getISOCountries()));
+  private static final Set<String> languages
+      = new HashSet<String>(Arrays.asList(Locale.getISOLanguages()));
+
+  static {
+    for (Currency currency : Currency.getAvailableCurrencies()) {
+      currencies.add(currency.getCurrencyCode());
+    }
+  }
+
+  /**
+   * A rule a product has to satisfy.
+   */
+  private abstract static class Rule {
+    /**
+     * The XML name of the attribute the rule is about.
+     */
+    final String attribute;
+
+    Rule(String attribute) {
+      this.attribute = attribute;
+    }
+
+    /**
+     * Checks the given product.
+     *
+     * @return a description of the violation, or {@code null} if the product
+     *   satisfies the rule
+     */
+    abstract String check(Product product);
+
+    /**
+     * Checks a product of a columnar batch, like {@link #check(Product)}
+     * checks the product {@link ColumnarProductBatch#toProduct} would create.
+     *
+     * @return a description of the violation, or {@code null} if the product
+     *   satisfies the rule
+     */
+    abstract String check(ColumnarProductBatch batch, int row);
+  }
+
+  private final Rule[] rules;
+
+  /**
+   * Creates a validator with all rules.
+   */
+  ProductValidator() {
+    List<Rule> ruleList = new ArrayList<Rule>();
+    ruleList.add(new Rule("sc:id") {
+      @Override
+      String check(Product product) {
+        return isEmpty(product.externalId) ? "missing" : null;
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        return isEmpty(batch.getString(Column.ID, row)) ? "missing" : null;
+      }
+    });
+    ruleList.add(new Rule("title") {
+      @Override
+      String check(Product product) {
+        return isEmpty(product.title) ? "missing"
+            : tooLong(product.title, MAX_TITLE_LENGTH);
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        String title = batch.getString(Column.TITLE, row);
+        return isEmpty(title) ? "missing" : tooLong(title, MAX_TITLE_LENGTH);
+      }
+    });
+    ruleList.add(new Rule("content") {
+      @Override
+      String check(Product product) {
+        return product.content == null || isEmpty(product.content.value) ? "missing"
+            : tooLong(product.content.value, MAX_DESCRIPTION_LENGTH);
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        String description = batch.getString(Column.DESCRIPTION, row);
+        return isEmpty(description) ? "missing"
+            : tooLong(description, MAX_DESCRIPTION_LENGTH);
+      }
+    });
+    ruleList.add(new Rule("scp:condition") {
+      @Override
+      String check(Product product) {
+        return isEmpty(product.condition) ? "missing" : null;
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        return isEmpty(batch.getString(Column.CONDITION, row)) ? "missing" : null;
+      }
+    });
+    ruleList.add(new Rule("scp:price") {
+      @Override
+      String check(Product product) {
+        if (product.price == null || product.price.value == null) {
+          return "missing";
+        } else if (product.price.value.signum() < 0) {
+          return "negative";
+        }
+        return null;
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        if (!batch.hasDecimal(Column.PRICE, row)) {
+          return "missing";
+        } else if (batch.isLargeDecimal(Column.PRICE, row)
+            ? batch.getDecimal(Column.PRICE, row).signum() < 0
+            : batch.getUnscaledValue(Column.PRICE, row) < 0) {
+          return "negative";
+        }
+        return null;
+      }
+    });
+    ruleList.add(new Rule("scp:price/@unit") {
+      @Override
+      String check(Product product) {
+        if (product.price == null || isEmpty(product.price.unit)) {
+          return "missing";
+        }
+        return currencies.contains(product.price.unit.toUpperCase(Locale.US)) ? null
+            : "unknown currency \"" + product.price.unit + "\"";
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        String currency = batch.getString(Column.CURRENCY, row);
+        if (isEmpty(currency)) {
+          return "missing";
+        }
+        return currencies.contains(currency.toUpperCase(Locale.US)) ? null
+            : "unknown currency \"" + currency + "\"";
+      }
+    });
+    ruleList.add(new Rule("sc:target_country") {
+      @Override
+      String check(Product product) {
+        return product.country == null
+            || countries.contains(product.country.toUpperCase(Locale.US)) ? null
+            : "unknown country \"" + product.country + "\"";
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        String country = batch.getString(Column.TARGET_COUNTRY, row);
+        return country == null || countries.contains(country.toUpperCase(Locale.US)) ? null
+            : "unknown country \"" + country + "\"";
+      }
+    });
+    ruleList.add(new Rule("sc:content_language") {
+      @Override
+      String check(Product product) {
+        return product.lang == null
+            || languages.contains(product.lang.toLowerCase(Locale.US)) ? null
+            : "unknown language \"" + product.lang + "\"";
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        String lang = batch.getString(Column.CONTENT_LANGUAGE, row);
+        return lang == null || languages.contains(lang.toLowerCase(Locale.US)) ? null
+            : "unknown language \"" + lang + "\"";
+      }
+    });
+    ruleList.add(new Rule("scp:gtin") {
+      @Override
+      String check(Product product) {
+        return product.gtin == null ? null : checkGtin(product.gtin);
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        String gtin = batch.getString(Column.GTIN, row);
+        return gtin == null ? null : checkGtin(gtin);
+      }
+    });
+    ruleList.add(new Rule("scp:brand") {
+      @Override
+      String check(Product product) {
+        return product.mpn != null && isEmpty(product.brand) ? "required with an MPN" : null;
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        return batch.getString(Column.MPN, row) != null
+            && isEmpty(batch.getString(Column.BRAND, row)) ? "required with an MPN" : null;
+      }
+    });
+    ruleList.add(new Rule("scp:item_group_id") {
+      @Override
+      String check(Product product) {
+        if (product.itemGroupId == null || (product.colors != null && !product.colors.isEmpty())
+            || product.size != null || product.pattern != null || product.material != null) {
+          return null;
+        }
+        return "variants require a color, size, pattern or material";
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        if (batch.getString(Column.ITEM_GROUP_ID, row) == null
+            || batch.getString(Column.COLOR, row) != null
+            || batch.getString(Column.SIZE, row) != null
+            || batch.getString(Column.PATTERN, row) != null
+            || batch.getString(Column.MATERIAL, row) != null) {
+          return null;
+        }
+        return "variants require a color, size, pattern or material";
+      }
+    });
+    ruleList.add(new Rule("link") {
+      @Override
+      String check(Product product) {
+        if (product.links != null) {
+          for (Link link : product.links) {
+            if ("alternate".equals(link.rel) && !isHttpUrl(link.href)) {
+              return "invalid URL \"" + link.href + "\"";
+            }
+          }
+        }
+        return null;
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        String link = batch.getString(Column.LINK, row);
+        if (link == null) {
+          return null;
+        }
+        String href = batch.getLinkPrefix() + link;
+        return isHttpUrl(href) ? null : "invalid URL \"" + href + "\"";
+      }
+    });
+    ruleList.add(new Rule("sc:image_link") {
+      @Override
+      String check(Product product) {
+        return checkUrls(product.imageLinks);
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        String imageLink = batch.getString(Column.IMAGE_LINK, row);
+        return imageLink == null || isHttpUrl(imageLink) ? null
+            : "invalid URL \"" + imageLink + "\"";
+      }
+    });
+    ruleList.add(new Rule("sc:additional_image_link") {
+      @Override
+      String check(Product product) {
+        return checkUrls(product.additionalImageLinks);
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        for (int i = 0; i < batch.getListSize(Column.ADDITIONAL_IMAGE_LINKS, row); i++) {
+          String url = batch.getListElement(Column.ADDITIONAL_IMAGE_LINKS, row, i);
+          if (!isHttpUrl(url)) {
+            return "invalid URL \"" + url + "\"";
+          }
+        }
+        return null;
+      }
+    });
+    ruleList.add(new Rule("scp:adwords_redirect") {
+      @Override
+      String check(Product product) {
+        return product.adwordsRedirect == null || isHttpUrl(product.adwordsRedirect) ? null
+            : "invalid URL \"" + product.adwordsRedirect + "\"";
+      }
+
+      @Override
+      String check(ColumnarProductBatch batch, int row) {
+        String redirect = batch.getString(Column.ADWORDS_REDIRECT, row);
+        return redirect == null || isHttpUrl(redirect) ? null
+            : "invalid URL \"" + redirect + "\"";
+      }
+    });
+    rules = ruleList.toArray(new Rule[ruleList.size()]);
+  }
+
+  /**
+   * Checks the given product against all rules.
+   *
+   * @param product The product
+   * @return the error describing all violations, or {@code null} if the
+   *   product is valid
+   */
+  BatchError check(Product product) {
+    List<ServiceError> errors = null;
+    for (Rule rule : rules) {
+      errors = addViolation(errors, rule, rule.check(product));
+    }
+    return errors == null ? null : toBatchError(product.externalId, errors);
+  }
+
+  /**
+   * Checks a product of a columnar batch against all rules, with the same
+   * result as {@link #check(Product)} for the product
+   * {@link ColumnarProductBatch#toProduct} would create.
+   *
+   * @param batch The batch
+   * @param row The row of the product
+   * @return the error describing all violations, or {@code null} if the
+   *   product is valid
+   */
+  BatchError check(ColumnarProductBatch batch, int row) {
+    List<ServiceError> errors = null;
+    for (Rule rule : rules) {
+      errors = addViolation(errors, rule, rule.check(batch, row));
+    }
+    return errors == null ? null : toBatchError(batch.getString(Column.ID, row), errors);
+  }
+
+  /**
+   * Adds a violation of a rule, if there is one, to the given errors.
+   *
+   * @return the errors, a new list if {@code errors} is {@code null}
+   */
+  private static List<ServiceError> addViolation(List<ServiceError> errors, Rule rule,
+      String violation) {
+    if (violation == null) {
+      return errors;
+    }
+    if (errors == null) {
+      errors = new ArrayList<ServiceError>(2);
+    }
+    ServiceError error = new ServiceError();
+    error.domain = DOMAIN;
+    error.code = CODE;
+    error.internalReason = rule.attribute + ": " + violation;
+    errors.add(error);
+    return errors;
+  }
+
+  private static BatchError toBatchError(String externalId, List<ServiceError> errors) {
+    ServiceErrors serviceErrors = new ServiceErrors();
+    serviceErrors.errors = errors;
+    return new BatchError(externalId, REJECTED_CODE,
+        "Rejected before sending: " + errors.get(0).internalReason
+        + (errors.size() > 1 ? " (and " + (errors.size() - 1) + " more)" : ""),
+        serviceErrors);
+  }
+
+  /**
+   * Checks the syntax and the check digit of a GTIN.
+   *
+   * @return a description of the problem, or {@code null} if the GTIN is valid
+   */
+  static String checkGtin(String gtin) {
+    int length = gtin.length();
+    if (length != 8 && length != 12 && length != 13 && length != 14) {
+      return "\"" + gtin + "\" has " + length + " characters instead of 8, 12, 13 or 14";
+    }
+    int sum = 0;
+    for (int i = 0; i < length; i++) {
+      char c = gtin.charAt(i);
+      if (c < '0' || c > '9') {
+        return "\"" + gtin + "\" contains a non-digit";
+      }
+      // from the right, the check digit has weight 1, then 3, 1, 3, ...
+      sum += (c - '0') * ((length - i) % 2 == 0 ? 3 : 1);
+    }
+    return sum % 10 == 0 ? null : "\"" + gtin + "\" has a wrong check digit";
+  }
+
+  private static String checkUrls(List<String> urls) {
+    if (urls != null) {
+      for (String url : urls) {
+        if (!isHttpUrl(url)) {
+          return "invalid URL \"" + url + "\"";
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns whether the given string is an absolute HTTP or HTTPS URL with a
+   * host.
+   */
+  static boolean isHttpUrl(String url) {
+    if (url == null) {
+      return false;
+    }
+    try {
+      URI uri = new URI(url);
+      return ("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme()))
+          && uri.getHost() != null;
+    } catch (URISyntaxException e) {
+      return false;
+    }
+  }
+
+  private static boolean isEmpty(String value) {
+    return value == null || value.trim().length() == 0;
+  }
+
+  private static String tooLong(String value, int maxLength) {
+    return value.length() > maxLength
+        ? value.length() + " characters, more than " + maxLength : null;
+  }
+}
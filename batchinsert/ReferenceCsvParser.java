@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvInputAdapter.ParsingError;
+import com.google.api.client.sample.structuredcontent.model.Content;
+import com.google.api.client.sample.structuredcontent.model.Link;
+import com.google.api.client.sample.structuredcontent.model.Price;
+import com.google.api.client.sample.structuredcontent.model.Product;
+import com.google.api.client.sample.structuredcontent.model.ShippingWeight;
+import com.google.api.client.util.DateTime;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * <p>The String-based parser that {@link CsvInputAdapter} used before it
+ * split records with a {@link CsvFieldTokenizer}: every line is split with
+ * {@link Pattern#split(CharSequence, int)} and the fields are converted with
+ * the JDK's parsers. It only supports the fixed column order described in
+ * {@link CsvInputAdapter} and no quoting.
+ *
+ * <p>It is kept unchanged, apart from the quantity of {@code null} that the
+ * original turned into a {@link NullPointerException}, as the reference for
+ * {@link CsvParserDifferentialTest}. It is not used for sending products.
+ *
+ * <p>This class is thread-safe.
+ */
+final class ReferenceCsvParser {
+  /**
+   * The number of fields of a CSV line.
+   */
+  static final int NUMBER_OF_FIELDS = 18;
+
+  private final Pattern separator;
+
+  /**
+   * The user's homepage.
+   */
+  private final String homepage;
+
+  /**
+   * The parser used for date formats.
+   */
+  private final DateFormat dateFormat8601 = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.US);
+
+  /**
+   * Creates a parser.
+   *
+   * @param separator The string used as a separator in the CSV
+   * @param homepage The user's registered homepage, used as a prefix for all
+   *   homepage links, or {@code null}
+   */
+  ReferenceCsvParser(String separator, String homepage) {
+    this.separator = Pattern.compile(Pattern.quote(separator));
+    this.homepage = (homepage == null ? "" : homepage);
+  }
+
+  /**
+   * Parses the values of one CSV line and creates a new product from them.
+   *
+   * @param line A CSV line with {@link #NUMBER_OF_FIELDS} fields describing
+   *   exactly one product
+   * @param lineNumber The number of the line in the input, for error reporting
+   * @return A product representing the information of the given line
+   * @throws ParsingError if the product could not be parsed
+   */
+  Product parseProduct(String line, long lineNumber) throws ParsingError {
+    String[] parts = separator.split(line, -1);
+    try {
+      Product product = new Product();
+      product.externalId = parseString(parts[0], "ID", true);
+      product.lang = parseString(parts[1], "Content language", true);
+      product.country = parseString(parts[2], "Target country", true);
+      product.title = parseString(parts[3], "Title", true);
+      product.content = new Content("text", parseString(parts[4], "Description", true));
+      product.condition = parseString(parts[5], "Condition", true);
+      product.price = new Price(parseString(parts[7], "Currency", true),
+          parseDecimal(parts[6], "Price", true));
+      product.shippingWeight = parseWeight(parts[9], parts[8]);
+      BigInteger quantity = parseInteger(parts[10], "Quantity", false);
+      product.quantity = quantity == null ? null : quantity.intValue();
+      product.expirationDate = parseDate(parts[11], "Expiration date", false);
+      product.productType = parseString(parts[12], "Product type", false);
+      product.brand = parseString(parts[13], "Brand", false);
+      product.gtin = parseString(parts[14], "GTIN", false);
+      product.mpn = parseString(parts[15], "MPN", false);
+
+      Link link = new Link();
+      link.rel = "alternate";
+      link.href = homepage + parts[16];
+      link.type = "text/html";
+      product.links.add(link);
+
+      String imageLink = parseString(parts[17], "Image link", false);
+      product.imageLinks = new ArrayList<String>();
+      if (imageLink != null) {
+        product.imageLinks.add(imageLink);
+      }
+
+      return product;
+    } catch (ParsingError e) {
+      throw e.inRecord(parts[0], line, lineNumber);
+    }
+  }
+
+  private String parseString(String input, String attributeName, boolean required)
+      throws ParsingError {
+    if ("".equals(input)) {
+      if (required) {
+        throw ParsingError.forAttribute(attributeName,
+            "Required argument missing: " + attributeName);
+      } else {
+        return null;
+      }
+    } else {
+      return input.trim();
+    }
+  }
+
+  private BigInteger parseInteger(String input, String attributeName, boolean required)
+      throws ParsingError {
+    String parsedInput = parseString(input, attributeName, required);
+    if (parsedInput == null) {
+      return null;
+    } else {
+      try {
+        return new BigInteger(input);
+      } catch (NumberFormatException e) {
+        throw ParsingError.forAttribute(attributeName, "Could not parse \"" + input
+            + "\" as " + attributeName);
+      }
+    }
+  }
+
+  private BigDecimal parseDecimal(String input, String attributeName, boolean required)
+      throws ParsingError {
+    String parsedInput = parseString(input, attributeName, required);
+    if (parsedInput == null) {
+      return null;
+    } else {
+      try {
+        return new BigDecimal(parsedInput);
+      } catch (NumberFormatException e) {
+        throw ParsingError.forAttribute(attributeName, "Could not parse \"" + input
+            + "\" as " + attributeName);
+      }
+    }
+  }
+
+  private DateTime parseDate(String input, String attributeName, boolean required)
+      throws ParsingError {
+    String parsedInput = parseString(input, attributeName, required);
+    if (parsedInput == null) {
+      return null;
+    } else {
+      try {
+        // SimpleDateFormat is not thread-safe
+        synchronized (dateFormat8601) {
+          return new DateTime(dateFormat8601.parse(input));
+        }
+      } catch (ParseException e) {
+        throw ParsingError.forAttribute(attributeName,
+            "Date (" + input + ") could not be parsed");
+      }
+    }
+  }
+
+  private ShippingWeight parseWeight(String unit, String weight) throws ParsingError {
+    String parsedUnit = parseString(unit, "weight unit", false);
+    BigDecimal parsedWeight = parseDecimal(weight, "weight", false);
+    if (parsedWeight == null) {
+      return null;
+    } else {
+      if (parsedUnit == null) {
+        throw ParsingError.forAttribute("Weight unit", "Weight given without unit");
+      } else {
+        return new ShippingWeight(parsedUnit, parsedWeight);
+      }
+    }
+  }
+}
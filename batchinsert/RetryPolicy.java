@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Decides whether and when products that the server has not processed are
+ * sent again: those of a batch that failed with a transient HTTP error or
+ * could not be sent at all, and those left over by a
+ * {@code batch:interrupted} batch.
+ *
+ * <p>Each product may be sent up to a maximum number of attempts; products
+ * that are still not processed after that are reported as errors. Before
+ * attempt {@code n + 1}, the sender waits between half and all of
+ * {@code baseDelay * 2^(n - 1)}, capped at {@code maxDelay}, chosen at random,
+ * so that threads that failed at the same time do not all retry at the same
+ * time.
+ *
+ * <p>The policy counts the retries of all threads that share it, for the
+ * final report. This class is thread-safe.
+ */
+final class RetryPolicy {
+  /**
+   * The default maximum number of attempts per product.
+   */
+  static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+  /**
+   * The default delay before the first retry, in milliseconds.
+   */
+  static final long DEFAULT_BASE_DELAY_MILLIS = 500;
+
+  /**
+   * The default maximum delay before a retry, in milliseconds.
+   */
+  static final long DEFAULT_MAX_DELAY_MILLIS = 30000;
+
+  private final int maxAttempts;
+  private final long baseDelayMillis;
+  private final long maxDelayMillis;
+
+  /**
+   * The number of times products have been queued for sending again.
+   */
+  private final AtomicLong retries = new AtomicLong();
+
+  /**
+   * The number of products queued for sending again, counted once per retry.
+   */
+  private final AtomicLong retriedProducts = new AtomicLong();
+
+  /**
+   * The number of products given up after the maximum number of attempts.
+   */
+  private final AtomicLong exhaustedProducts = new AtomicLong();
+
+  /**
+   * Creates a policy.
+   *
+   * @param maxAttempts The maximum number of attempts per product, at least
+   *   1; 1 means that products are never sent again
+   * @param baseDelayMillis The delay before the first retry, in milliseconds
+   * @param maxDelayMillis The maximum delay before a retry, in milliseconds
+   */
+  RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("maxAttempts must be at least 1");
+    }
+    if (baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+      throw new IllegalArgumentException("invalid retry delays " + baseDelayMillis + ":"
+          + maxDelayMillis);
+    }
+    this.maxAttempts = maxAttempts;
+    this.baseDelayMillis = baseDelayMillis;
+    this.maxDelayMillis = maxDelayMillis;
+  }
+
+  /**
+   * Returns whether a batch that failed with the given HTTP status code may
+   * succeed if it is sent again unchanged: on timeouts, throttling and
+   * temporary server errors.
+   *
+   * @param statusCode The HTTP status code
+   */
+  static boolean isTransient(int statusCode) {
+    switch (statusCode) {
+      case 408: // Request Timeout
+      case 429: // Too Many Requests
+      case 500: // Internal Server Error
+      case 502: // Bad Gateway
+      case 503: // Service Unavailable
+      case 504: // Gateway Timeout
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns whether products that have been sent the given number of times
+   * may be sent again.
+   *
+   * @param attempt The number of attempts made so far, starting at 1
+   */
+  boolean canRetry(int attempt) {
+    return attempt < maxAttempts;
+  }
+
+  /**
+   * Returns how long to wait before sending products again that have been
+   * sent the given number of times, and counts the retry.
+   *
+   * @param attempt The number of attempts made so far, starting at 1
+   * @param products The number of products to be sent again
+   * @return the delay in milliseconds
+   */
+  long recordRetry(int attempt, int products) {
+    retries.incrementAndGet();
+    retriedProducts.addAndGet(products);
+    long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+    return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling - ceiling / 2 + 1);
+  }
+
+  /**
+   * Counts products that are given up since they have used up their attempts.
+   *
+   * @param products The number of products
+   */
+  void recordExhausted(int products) {
+    exhaustedProducts.addAndGet(products);
+  }
+
+  /**
+   * Returns the maximum number of attempts per product.
+   */
+  int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Returns the number of times products have been queued for sending again.
+   */
+  long getRetries() {
+    return retries.get();
+  }
+
+  /**
+   * Returns the number of products queued for sending again, counted once per
+   * retry.
+   */
+  long getRetriedProducts() {
+    return retriedProducts.get();
+  }
+
+  /**
+   * Returns the number of products given up after the maximum number of
+   * attempts.
+   */
+  long getExhaustedProducts() {
+    return exhaustedProducts.get();
+  }
+
+  /**
+   * Returns a description of the retries so far.
+   */
+  String getStatistics() {
+    return retries.get() + " retries of " + retriedProducts.get() + " product(s), "
+        + exhaustedProducts.get() + " product(s) given up after " + maxAttempts
+        + " attempt(s)";
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.utils.RateLimiter;
+
+/**
+ * <p>The optional settings of the senders of batches, the {@link WorkerThread}s
+ * and the {@link AsyncBatchSubmitter}: the maximum size of a batch in bytes,
+ * and the helpers the senders share. Each helper may be left out; without
+ * any of them, a sender sends all products it is given, uncompressed, up to
+ * the maximum number of products per batch and as fast as it can, and reports
+ * the products the server has not processed as errors.
+ *
+ * <p>The options are read when a sender is created, so one instance can be
+ * set up once and given to all senders. This class is not thread-safe.
+ */
+final class SenderOptions {
+  private long maxBatchBytes = Long.MAX_VALUE;
+  private ProductFingerprintIndex deltaIndex;
+  private ProductValidator validator;
+  private DeflaterPool deflaterPool;
+  private EntryFragmentCache fragmentCache;
+  private BatchSizeController batchSizeController;
+  private RetryPolicy retryPolicy;
+  private RateLimiter rateLimiter;
+
+  /**
+   * Sets the maximum number of bytes of the feed sent in one batch, before
+   * compression. A single product is sent even if it is larger. By default,
+   * batches are only limited by their number of products.
+   *
+   * @param maxBatchBytes The maximum number of bytes of a batch
+   */
+  void setMaxBatchBytes(long maxBatchBytes) {
+    if (maxBatchBytes <= 0) {
+      throw new IllegalArgumentException("maxBatchBytes must be positive");
+    }
+    this.maxBatchBytes = maxBatchBytes;
+  }
+
+  /**
+   * Returns the maximum number of bytes of the feed sent in one batch.
+   */
+  long getMaxBatchBytes() {
+    return maxBatchBytes;
+  }
+
+  /**
+   * Makes the senders send only new and changed products, and record the
+   * fingerprints of those the server has processed.
+   *
+   * @param deltaIndex The fingerprints of the products sent before, or
+   *   {@code null} for sending all products
+   */
+  void setDeltaIndex(ProductFingerprintIndex deltaIndex) {
+    this.deltaIndex = deltaIndex;
+  }
+
+  /**
+   * Returns the fingerprints of the products sent before, or {@code null}.
+   */
+  ProductFingerprintIndex getDeltaIndex() {
+    return deltaIndex;
+  }
+
+  /**
+   * Makes the senders check the products before they are sent, and report
+   * those that are invalid instead of sending them.
+   *
+   * @param validator The validator, or {@code null} for sending all products
+   */
+  void setValidator(ProductValidator validator) {
+    this.validator = validator;
+  }
+
+  /**
+   * Returns the validator the products are checked with, or {@code null}.
+   */
+  ProductValidator getValidator() {
+    return validator;
+  }
+
+  /**
+   * Makes the senders compress the request bodies.
+   *
+   * @param deflaterPool The pool of deflaters request bodies are compressed
+   *   with, or {@code null} for sending them uncompressed
+   */
+  void setDeflaterPool(DeflaterPool deflaterPool) {
+    this.deflaterPool = deflaterPool;
+  }
+
+  /**
+   * Returns the pool of deflaters request bodies are compressed with, or
+   * {@code null}.
+   */
+  DeflaterPool getDeflaterPool() {
+    return deflaterPool;
+  }
+
+  /**
+   * Makes the senders cache the serialized entries of columnar batches, so
+   * that products sent again are copied instead of serialized again.
+   *
+   * @param fragmentCache The cache, or {@code null} for serializing the
+   *   entries every time they are sent
+   */
+  void setFragmentCache(EntryFragmentCache fragmentCache) {
+    this.fragmentCache = fragmentCache;
+  }
+
+  /**
+   * Returns the cache of serialized entries, or {@code null}.
+   */
+  EntryFragmentCache getFragmentCache() {
+    return fragmentCache;
+  }
+
+  /**
+   * Makes the senders adapt the number of products per batch.
+   *
+   * @param batchSizeController The controller choosing the number of
+   *   products per batch, or {@code null} for always sending up to the
+   *   maximum number of products per batch
+   */
+  void setBatchSizeController(BatchSizeController batchSizeController) {
+    this.batchSizeController = batchSizeController;
+  }
+
+  /**
+   * Returns the controller choosing the number of products per batch, or
+   * {@code null}.
+   */
+  BatchSizeController getBatchSizeController() {
+    return batchSizeController;
+  }
+
+  /**
+   * Makes the senders send the products again that the server has not
+   * processed.
+   *
+   * @param retryPolicy The policy deciding whether and when they are sent
+   *   again, or {@code null} for reporting them as errors right away
+   */
+  void setRetryPolicy(RetryPolicy retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  /**
+   * Returns the policy for sending products again, or {@code null}.
+   */
+  RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  /**
+   * Makes the senders limit the requests they send for the account.
+   *
+   * @param rateLimiter The limiter of the requests sent for the account, or
+   *   {@code null} for sending as fast as possible
+   */
+  void setRateLimiter(RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  /**
+   * Returns the limiter of the requests sent for the account, or
+   * {@code null}.
+   */
+  RateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+}
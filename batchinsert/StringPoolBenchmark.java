@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.model.Product;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Measures how much heap the products of a CSV file retain when they are
+ * all kept in memory, with and without sharing the values of fields with few
+ * distinct values through a {@link CsvStringPool}. The products are kept
+ * either as {@link Product}s, as returned by
+ * {@link CsvInputAdapter#getNextProducts(int)}, or as the
+ * {@link ColumnarProductBatch}es the worker threads send.
+ *
+ * <p>The retained heap is the used heap after garbage collection while the
+ * products are held, minus the used heap before reading them. Each
+ * configuration is measured in a JVM of its own, started with the same
+ * options as the benchmark. For stable results, run with a fixed heap and a
+ * simple collector, e.g. {@code -Xms4g -Xmx4g -XX:+UseSerialGC}. Inputs can be
+ * generated with {@link CatalogGenerator}.
+ *
+ * <p>Usage: {@code StringPoolBenchmark <file.csv> [--batches]
+ * [--batch-size=<n>]}
+ */
+public final class StringPoolBenchmark {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger = Logger.getLogger(StringPoolBenchmark.class.getName());
+
+  private static final String SEPARATOR = ";";
+  private static final String HOMEPAGE = "http://my.supercool.com/homepage/";
+
+  /**
+   * The option that makes the process measure one configuration, given to the
+   * processes started by {@link #measureInNewProcess}.
+   */
+  private static final String POOLING_OPTION = "--string-pooling=";
+
+  /**
+   * The products of the current run, kept reachable until the heap has been
+   * measured.
+   */
+  private static List<Object> retained;
+
+  private StringPoolBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 1) {
+      logger.log(Level.SEVERE, "Wrong number of arguments."
+          + " Expected: <file.csv> [--batches] [--batch-size=<n>]");
+      System.exit(-1);
+    }
+    File file = new File(args[0]);
+    boolean batches = false;
+    int batchSize = 1000;
+    String pooling = null;
+    for (int i = 1; i < args.length; i++) {
+      try {
+        if (args[i].equals("--batches")) {
+          batches = true;
+        } else if (args[i].startsWith("--batch-size=")) {
+          batchSize = Integer.parseInt(args[i].substring(args[i].indexOf('=') + 1));
+          if (batchSize < 1) {
+            throw new NumberFormatException();
+          }
+        } else if (args[i].startsWith(POOLING_OPTION)) {
+          pooling = args[i].substring(POOLING_OPTION.length());
+        } else {
+          logger.log(Level.SEVERE, "Unknown option: " + args[i]);
+          System.exit(-1);
+        }
+      } catch (NumberFormatException e) {
+        logger.log(Level.SEVERE, "Option could not be parsed: " + args[i]);
+        System.exit(-1);
+      }
+    }
+
+    if (pooling != null) {
+      // measure one configuration and report it to the parent process
+      System.out.println(measure(file, Boolean.parseBoolean(pooling), batches, batchSize));
+      return;
+    }
+    long withoutPool = measureInNewProcess(args, false);
+    long withPool = measureInNewProcess(args, true);
+    String kept = batches ? "batches of " + batchSize : "products";
+    logger.info(String.format(Locale.US, "Kept as %s: %.1f MB without the string pool,"
+        + " %.1f MB with it (%.1f%% less).", kept, withoutPool / 1e6, withPool / 1e6,
+        100.0 * (withoutPool - withPool) / withoutPool));
+  }
+
+  /**
+   * Measures one configuration in a new JVM with the same options as this
+   * one, so that neither configuration sees garbage or compiled code left
+   * over by the other.
+   *
+   * @return the retained heap in bytes
+   */
+  private static long measureInNewProcess(String[] args, boolean pooling)
+      throws IOException, InterruptedException {
+    List<String> command = new ArrayList<String>();
+    command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+    command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(StringPoolBenchmark.class.getName());
+    command.addAll(Arrays.asList(args));
+    command.add(POOLING_OPTION + pooling);
+    Process process = new ProcessBuilder(command)
+        .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    BufferedReader output = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    String result;
+    try {
+      result = output.readLine();
+    } finally {
+      output.close();
+    }
+    if (process.waitFor() != 0 || result == null) {
+      throw new IOException("The measurement " + (pooling ? "with" : "without")
+          + " the string pool failed");
+    }
+    return Long.parseLong(result.trim());
+  }
+
+  /**
+   * Reads all products of the file and keeps them until the heap has been
+   * measured.
+   *
+   * @return the retained heap in bytes
+   */
+  private static long measure(File file, boolean pooling, boolean batches, int batchSize)
+      throws IOException, InterruptedException {
+    long before = usedHeap();
+    retained = new ArrayList<Object>();
+    String statistics = read(file, pooling, batches, batchSize);
+    long retainedBytes = usedHeap() - before;
+    int products = 0;
+    for (Object product : retained) {
+      products += batches ? ((ColumnarProductBatch) product).size() : 1;
+    }
+    retained = null;
+    logger.info(String.format(Locale.US, "%s string pool: %d products retain %.1f MB"
+        + " (%d bytes per product).", pooling ? "With the" : "Without the", products,
+        retainedBytes / 1e6, products > 0 ? retainedBytes / products : 0));
+    if (pooling) {
+      logger.info("Shared field values:\n" + statistics);
+    }
+    return retainedBytes;
+  }
+
+  /**
+   * Reads all products of the file into {@link #retained}. The adapter is not
+   * reachable any more when this method returns, so that its buffers and its
+   * string pool are not counted.
+   *
+   * @return the statistics of the string pool
+   */
+  private static String read(File file, boolean pooling, boolean batches, int batchSize)
+      throws IOException {
+    InputStream input = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+    try {
+      CsvInputAdapter adapter = new CsvInputAdapter(input, SEPARATOR, HOMEPAGE);
+      adapter.setStringPooling(pooling);
+      adapter.readHeaderLine();
+      while (true) {
+        if (batches) {
+          ColumnarProductBatch batch = adapter.getNextBatch(batchSize);
+          if (batch.size() == 0) {
+            break;
+          }
+          retained.add(batch);
+        } else {
+          List<Product> batch = adapter.getNextProducts(batchSize);
+          if (batch.isEmpty()) {
+            break;
+          }
+          retained.addAll(batch);
+        }
+      }
+      return adapter.getStringPoolStatistics();
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Returns the used heap after collecting garbage until it does not shrink
+   * any more.
+   */
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 10; i++) {
+      System.gc();
+      Thread.sleep(100);
+      long current = runtime.totalMemory() - runtime.freeMemory();
+      if (current >= used) {
+        break;
+      }
+      used = current;
+    }
+    return used;
+  }
+}
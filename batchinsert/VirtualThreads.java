@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * <p>Creates virtual threads, which are cheap enough to have hundreds of
+ * worker threads waiting for responses at the same time: they do not
+ * reserve a stack of their own while they wait.
+ *
+ * <p>Virtual threads require Java 21. Since this example also runs on older
+ * versions, they are created via reflection; {@link #isAvailable()} tells
+ * whether the running Java version supports them.
+ */
+final class VirtualThreads {
+  /**
+   * {@code Thread.ofVirtual()}, or {@code null} if not available.
+   */
+  private static final Method OF_VIRTUAL;
+
+  /**
+   * {@code Thread.Builder.name(String)}.
+   */
+  private static final Method NAME;
+
+  /**
+   * {@code Thread.Builder.unstarted(Runnable)}.
+   */
+  private static final Method UNSTARTED;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method unstarted = null;
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      name = builderClass.getMethod("name", String.class);
+      unstarted = builderClass.getMethod("unstarted", Runnable.class);
+      // fails on Java 19 and 20 unless preview features are enabled
+      ofVirtual.invoke(null);
+    } catch (Exception e) {
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    NAME = name;
+    UNSTARTED = unstarted;
+  }
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * Returns whether virtual threads can be created.
+   */
+  static boolean isAvailable() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * Creates a virtual thread running the given task. It has to be started,
+   * and can be joined like any other thread.
+   *
+   * @param name The name of the thread
+   * @param task The task
+   * @return the unstarted thread
+   * @throws UnsupportedOperationException if virtual threads are not
+   *   available
+   */
+  static Thread newThread(String name, Runnable task) {
+    if (OF_VIRTUAL == null) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21");
+    }
+    try {
+      Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+      return (Thread) UNSTARTED.invoke(builder, task);
+    } catch (IllegalAccessException e) {
+      throw new UnsupportedOperationException("Virtual threads cannot be created", e);
+    } catch (InvocationTargetException e) {
+      throw new UnsupportedOperationException("Virtual threads cannot be created",
+          e.getCause());
+    }
+  }
+}
@@ -17,37 +17,80 @@
 package com.google.api.client.sample.structuredcontent.batchinsert;
 
 import com.google.api.client.googleapis.GoogleUrl;
+import com.google.api.client.http.HttpContent;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestFactory;
 import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.xml.atom.AtomContent;
 import com.google.api.client.sample.structuredcontent.batchinsert.MultiThreadingAndBatchingExample.BatchError;
 import com.google.api.client.sample.structuredcontent.model.Product;
 import com.google.api.client.sample.structuredcontent.model.ProductFeed;
+import com.google.api.client.sample.structuredcontent.utils.BatchResultParser;
+import com.google.api.client.sample.structuredcontent.utils.BatchResultParser.BatchResult;
 import com.google.api.client.sample.structuredcontent.utils.BatchUtils;
 import com.google.api.client.sample.structuredcontent.utils.ClientLibraryUtils;
+import com.google.api.client.sample.structuredcontent.utils.RateLimiter;
 import com.google.api.client.xml.XmlNamespaceDictionary;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * <p>A worker thread that retrieves products from the given {@link CsvInputAdapter},
+ * <p>A worker thread that retrieves products from the given {@link InputAdapter},
  * collects them and sends them to the server as batches.
  *
  * <p>The parameter {@code maxProductsInBatch} that is set in the constructor
- * determines up to how many products will be sent in one batch. Any errors
+ * determines up to how many products will be sent in one batch, and
+ * {@code maxBatchBytes} how many bytes its feed may have, measured from the
+ * serialized entries. A batch the server rejects as too large (HTTP 413) is
+ * split in half, and the halves are sent on their own. If a
+ * {@link BatchSizeController} is given, it chooses the number of products per
+ * batch instead, up to its maximum, from the latency and interruptions of the
+ * batches sent by all threads. Any errors
  * that are encountered are inserted into the error lists that are also given
  * to the constructor.
  *
+ * <p>Products the server has not processed, since their batch failed with a
+ * transient HTTP error, could not be sent, or was interrupted, are sent again
+ * as the {@link RetryPolicy} allows, after a growing, randomized delay. Only
+ * those products are sent again, and the batch is acknowledged once all of
+ * them have been processed.
+ *
+ * <p>If a {@link RateLimiter} is given, each batch waits for it before it is
+ * sent, and the limiter is told whether the server has throttled it.
+ *
  * <p>All requests to the server will be made using the given HTTP request factory.
  *
+ * <p>If the input adapter is a {@link ColumnarInputAdapter}, the products are
+ * taken as {@link ColumnarProductBatch}es and written to the request from
+ * their columns; otherwise they are sent as a
+ * {@link com.google.api.client.sample.structuredcontent.model.ProductFeed}.
+ * Either way, the feed is serialized while it is sent, with chunked transfer
+ * encoding, rather than being buffered as a whole first.
+ *
+ * <p>If a {@link DeflaterPool} is given, request bodies are compressed with
+ * gzip on the worker thread, and compressed responses are requested. The
+ * bytes sent are counted per batch and in total (see {@link #getWireBytes()}).
+ *
+ * <p>If a {@link ProductFingerprintIndex} is given, only products that are new
+ * or have changed since they were last sent successfully are sent. The index
+ * is updated for each product the server has inserted successfully, so that
+ * products that failed are sent again by the next run.
+ *
+ * <p>Being a {@link Runnable}, a worker may also be run on a virtual thread
+ * (see {@link VirtualThreads}) instead of being started itself.
+ *
  * @author Birgit Vera Schmidt
  */
 public final class WorkerThread extends Thread {
@@ -57,6 +100,38 @@ public final class WorkerThread extends Thread {
   private static final Logger logger
       = Logger.getLogger(MultiThreadingAndBatchingExample.class.getName());
 
+  /**
+   * The HTTP status code of requests that are too large.
+   */
+  static final int REQUEST_TOO_LARGE = 413;
+
+  /**
+   * Thrown by {@link WorkerThread#executeProductBatch} if the server has
+   * rejected the batch as too large.
+   */
+  private static final class RequestTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+  }
+
+  /**
+   * Thrown by {@link WorkerThread#executeProductBatch} if the batch failed in
+   * a way that sending it again may help: with a transient HTTP error (see
+   * {@link RetryPolicy#isTransient}), or because it could not be sent at all.
+   */
+  private static final class TransientFailureException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The HTTP status code to report for the products if they are given up.
+     */
+    final int statusCode;
+
+    TransientFailureException(int statusCode, String message, Throwable cause) {
+      super(message, cause);
+      this.statusCode = statusCode;
+    }
+  }
+
   /**
    * The root URL of the Content API for Shopping Server.
    */
@@ -73,27 +148,79 @@ public final class WorkerThread extends Thread {
   private final XmlNamespaceDictionary namespaceDictionary;
 
   /**
-   * A {@code CsvInputAdapter} instance from which the products are retrieved
+   * An {@code InputAdapter} instance from which the products are retrieved
    * that should be inserted.
    */
-  private final CsvInputAdapter inputAdapter;
+  private final InputAdapter inputAdapter;
 
   /**
-   * A list where service and batching errors should be added to. If it is
-   * {@code null}, these errors will not be recorded.
+   * The handler recording the results of the products, including service and
+   * batching errors.
    */
-  private final Collection<BatchError> serviceErrorList;
+  private final BatchResultHandler resultHandler;
 
   /**
    * Maximum number of products that can be sent in one batch.
    */
   private final int maxProductsInBatch;
 
+  /**
+   * Maximum number of bytes of the feed sent in one batch, before
+   * compression.
+   */
+  private final long maxBatchBytes;
+
   /**
    * The user's account ID.
    */
   private final String userId;
 
+  /**
+   * The fingerprints of the products sent before, or {@code null} for sending
+   * all products.
+   */
+  private final ProductFingerprintIndex deltaIndex;
+
+  /**
+   * The pool of deflaters request bodies are compressed with, or {@code null}
+   * for sending them uncompressed.
+   */
+  private final DeflaterPool deflaterPool;
+
+  /**
+   * The cache of serialized entries of columnar batches, or {@code null} for
+   * serializing them every time they are sent.
+   */
+  private final EntryFragmentCache fragmentCache;
+
+  /**
+   * The controller choosing the number of products per batch, or
+   * {@code null} for sending {@link #maxProductsInBatch} products per batch.
+   */
+  private final BatchSizeController batchSizeController;
+
+  /**
+   * The policy for sending products again that the server has not processed,
+   * or {@code null} for reporting them as errors right away.
+   */
+  private final RetryPolicy retryPolicy;
+
+  /**
+   * The limiter of the requests sent for the account, or {@code null} for
+   * sending as fast as possible.
+   */
+  private final RateLimiter rateLimiter;
+
+  /**
+   * The number of bytes of the feeds sent so far, before compression.
+   */
+  private long contentBytes;
+
+  /**
+   * The number of bytes of the request bodies sent so far, after compression.
+   */
+  private long wireBytes;
+
   /**
    * Constructor setting up all required (final) parameters.
    *
@@ -108,11 +235,38 @@ public final class WorkerThread extends Thread {
    */
   public WorkerThread(HttpRequestFactory requestFactory,
       XmlNamespaceDictionary namespaceDictionary,
-      CsvInputAdapter inputAdapter,
+      InputAdapter inputAdapter,
       int maxProductsInBatch,
       Collection<BatchError> serviceErrorList,
       String userId,
       String rootUrl) {
+    this(requestFactory, namespaceDictionary, inputAdapter, maxProductsInBatch, serviceErrorList,
+        userId, rootUrl, new SenderOptions());
+  }
+
+  /**
+   * Constructor setting up all required (final) parameters and the optional
+   * ones given in the options.
+   *
+   * @param requestFactory The HTTP request factory to be used for all requests
+   * @param inputAdapter An input adapter that will supply the products to
+   *   be inserted. Must not be {@code null}.
+   * @param maxProductsInBatch The maximum number of products that can be sent
+   *   in one batch
+   * @param serviceErrorList A list where service and batching errors should
+   *   be added to. If it is {@code null}, these errors will not be recorded.
+   * @param userId Account ID of the user who is sending the products
+   * @param options The maximum size of a batch in bytes and the helpers
+   *   shared with the other senders, see {@link SenderOptions}
+   */
+  WorkerThread(HttpRequestFactory requestFactory,
+      XmlNamespaceDictionary namespaceDictionary,
+      InputAdapter inputAdapter,
+      int maxProductsInBatch,
+      Collection<BatchError> serviceErrorList,
+      String userId,
+      String rootUrl,
+      SenderOptions options) {
     if (requestFactory == null) {
       throw new IllegalArgumentException("transport must not be null");
     }
@@ -127,7 +281,10 @@ public final class WorkerThread extends Thread {
 
     this.maxProductsInBatch = maxProductsInBatch;
 
-    this.serviceErrorList = serviceErrorList;
+    this.maxBatchBytes = options.getMaxBatchBytes();
+
+    this.resultHandler = new BatchResultHandler(serviceErrorList, options.getDeltaIndex(),
+        options.getValidator());
 
     if (userId == null) {
       throw new IllegalArgumentException("userId must not be null");
@@ -138,6 +295,34 @@ public final class WorkerThread extends Thread {
       throw new IllegalArgumentException("rootUrl must not be null");
     }
     this.rootUrl = rootUrl;
+
+    this.deltaIndex = options.getDeltaIndex();
+
+    this.deflaterPool = options.getDeflaterPool();
+
+    this.fragmentCache = options.getFragmentCache();
+
+    this.batchSizeController = options.getBatchSizeController();
+
+    this.retryPolicy = options.getRetryPolicy();
+
+    this.rateLimiter = options.getRateLimiter();
+  }
+
+  /**
+   * Returns the number of bytes of the feeds sent so far, before compression.
+   * Should be called after the thread has finished.
+   */
+  public long getContentBytes() {
+    return contentBytes;
+  }
+
+  /**
+   * Returns the number of bytes of the request bodies sent so far, after
+   * compression. Should be called after the thread has finished.
+   */
+  public long getWireBytes() {
+    return wireBytes;
   }
 
   /**
@@ -146,7 +331,10 @@ public final class WorkerThread extends Thread {
    * that can be sent in one batch. It will then send that batch and repeat
    * this process, until there are no more products to be inserted. If
    * necessary, it will send a last batch with less than the maximum allowed
-   * number of products.
+   * number of products. Batches that the server has processed completely are
+   * acknowledged to the input adapter, for its checkpoint; products the
+   * server rejected count as processed, since sending them again would not
+   * help.
    *
    * @throws RuntimeException in case of an unexpected exception in input or
    *   output
@@ -154,10 +342,16 @@ public final class WorkerThread extends Thread {
   @Override
   public void run() {
     try {
+      if (inputAdapter instanceof ColumnarInputAdapter) {
+        runColumnar((ColumnarInputAdapter) inputAdapter);
+        return;
+      }
       while (true) {
-        List<Product> products = inputAdapter.getNextProducts(maxProductsInBatch);
+        List<Product> products = inputAdapter.getNextProducts(getBatchSize());
         if (products.size() > 0) {
-          sendBatch(products);
+          if (sendBatch(products)) {
+            inputAdapter.acknowledge(products);
+          }
         } else {
           break; // no more products available
         }
@@ -167,63 +361,403 @@ public final class WorkerThread extends Thread {
     }
   }
 
+  /**
+   * Does the same as {@link #run()}, but takes the products as columnar
+   * batches, which are serialized without creating a {@link Product} per
+   * product.
+   *
+   * @param columnarAdapter The input adapter
+   * @throws IOException if anything went wrong with input/output
+   */
+  private void runColumnar(ColumnarInputAdapter columnarAdapter) throws IOException {
+    while (true) {
+      ColumnarProductBatch batch = columnarAdapter.getNextBatch(getBatchSize());
+      if (batch.size() > 0) {
+        try {
+          if (sendBatch(batch)) {
+            columnarAdapter.acknowledge(batch);
+          }
+        } finally {
+          if (fragmentCache != null) {
+            fragmentCache.removeBatch(batch);
+          }
+        }
+      } else {
+        break; // no more products available
+      }
+    }
+  }
+
+  /**
+   * Returns the number of products to be sent in the next batch.
+   */
+  private int getBatchSize() {
+    return batchSizeController != null ? batchSizeController.getBatchSize() : maxProductsInBatch;
+  }
+
   /**
    * Sends all products in the list to the server, adding batch information
    * as appropriate. Warning: Will modify the products by adding/overwriting
    * batch information.
    *
    * @param products The list of products to be inserted
+   * @return {@code true} if the server has processed all products, {@code false}
+   *   if some of them have been given up
    * @throws IOException if anything went wrong with input/output
    */
-  private void sendBatch(List<Product> products) throws IOException {
-    ProductFeed feed = new ProductFeed();
+  private boolean sendBatch(List<Product> products) throws IOException {
+    // leave out the products that the server would reject anyway, and those
+    // that have not changed since they were last sent
+    Map<String, Long> fingerprints = deltaIndex != null ? new HashMap<String, Long>() : null;
+    products = resultHandler.selectProducts(products, fingerprints);
+    if (products.isEmpty()) {
+      return true;
+    }
+
     for (Product p : products) {
       // adding an "insert" batch operation, and
       // setting the batch ID to the product ID so that we can identify
       // products that had problems
       BatchUtils.configureForInsert(p, p.externalId);
     }
+
+    // send as many products in each batch as fit into maxBatchBytes
+    boolean allProcessed = true;
+    for (List<Product> group : splitProducts(products)) {
+      allProcessed &= sendProducts(group, fingerprints, 1);
+    }
+    return allProcessed;
+  }
+
+  /**
+   * Splits the given products, prepared for insertion, into consecutive
+   * groups whose feeds have at most {@link #maxBatchBytes} bytes, each with at
+   * least one product, like {@link ColumnarFeedContent#splitRows} does for
+   * columnar batches. Each entry is serialized once to measure it: its size is
+   * the size of a feed of just this entry minus the size of an empty feed.
+   * Since a feed declares its namespaces once, the summed sizes rather
+   * overestimate the size of a feed.
+   *
+   * @param products The products
+   * @return the groups of products
+   * @throws IOException if serializing failed
+   */
+  private List<List<Product>> splitProducts(List<Product> products) throws IOException {
+    List<List<Product>> groups = new ArrayList<List<Product>>();
+    if (maxBatchBytes == Long.MAX_VALUE || products.size() == 1) {
+      groups.add(products);
+      return groups;
+    }
+    long emptyFeedBytes = measureFeed(Collections.<Product>emptyList());
+    int start = 0;
+    long bytes = emptyFeedBytes;
+    for (int i = 0; i < products.size(); i++) {
+      long entryBytes = measureFeed(products.subList(i, i + 1)) - emptyFeedBytes;
+      if (i > start && bytes + entryBytes > maxBatchBytes) {
+        groups.add(products.subList(start, i));
+        start = i;
+        bytes = emptyFeedBytes;
+      }
+      bytes += entryBytes;
+    }
+    groups.add(products.subList(start, products.size()));
+    return groups;
+  }
+
+  /**
+   * Returns the number of bytes of the feed of the given products.
+   */
+  private long measureFeed(List<Product> products) throws IOException {
+    ProductFeed feed = new ProductFeed();
     feed.entries = products;
-    executeProductBatch(feed);
+    return ChunkedContent.measure(AtomContent.forFeed(namespaceDictionary, feed));
   }
 
   /**
-   * Sends a batch of products to the Content API for Shopping Server for inserting it.
+   * Sends the given products, prepared for insertion, in one batch, or in two
+   * halves if the batch is too large, recursively. Products the server has
+   * not processed are sent again as the retry policy allows.
+   *
+   * @param products The products to be inserted
+   * @param fingerprints The fingerprints of the products by product ID, or
+   *   {@code null}
+   * @param firstAttempt The number of the first attempt to send the products:
+   *   1, or for the halves of a batch that was too large, the attempt that
+   *   batch had reached, so that splitting does not give them more attempts
+   * @return {@code true} if the server has processed all products, {@code false}
+   *   if some of them have been given up
+   * @throws IOException if anything went wrong with input/output
+   */
+  private boolean sendProducts(List<Product> products, Map<String, Long> fingerprints,
+      int firstAttempt) throws IOException {
+    for (int attempt = firstAttempt; ; attempt++) {
+      ProductFeed feed = new ProductFeed();
+      feed.entries = products;
+      HttpContent content = AtomContent.forFeed(namespaceDictionary, feed);
+      List<String> batchIds = new ArrayList<String>(products.size());
+      for (Product p : products) {
+        batchIds.add(p.batchID);
+      }
+      int[] unprocessed;
+      TransientFailureException failure = null;
+      try {
+        unprocessed = executeProductBatch(content, batchIds, fingerprints);
+      } catch (RequestTooLargeException e) {
+        if (products.size() == 1) {
+          resultHandler.reportTooLarge(batchIds);
+          return true;
+        }
+        int half = products.size() / 2;
+        boolean firstHalfProcessed
+            = sendProducts(products.subList(0, half), fingerprints, attempt);
+        boolean secondHalfProcessed
+            = sendProducts(products.subList(half, products.size()), fingerprints, attempt);
+        return firstHalfProcessed && secondHalfProcessed;
+      } catch (TransientFailureException e) {
+        unprocessed = allPositions(batchIds.size());
+        failure = e;
+      }
+      if (unprocessed.length == 0) {
+        return true;
+      }
+      if (!prepareRetry(attempt, batchIds, unprocessed, failure)) {
+        return false;
+      }
+      List<Product> remaining = new ArrayList<Product>(unprocessed.length);
+      for (int position : unprocessed) {
+        remaining.add(products.get(position));
+      }
+      products = remaining;
+    }
+  }
+
+  /**
+   * Sends all products of the batch to the server, like
+   * {@link #sendBatch(List)}, without creating {@link Product}s.
+   *
+   * @param batch The batch of products to be inserted
+   * @return {@code true} if the server has processed all products, {@code false}
+   *   if some of them have been given up
+   * @throws IOException if anything went wrong with input/output
+   */
+  private boolean sendBatch(ColumnarProductBatch batch) throws IOException {
+    // leave out the products that the server would reject anyway, and those
+    // that have not changed since they were last sent
+    int[] rows = new int[batch.size()];
+    Map<String, Long> fingerprints = deltaIndex != null ? new HashMap<String, Long>() : null;
+    int count = resultHandler.selectRows(batch, rows, fingerprints);
+    if (count == 0) {
+      return true;
+    }
+
+    // send as many products in each batch as fit into maxBatchBytes
+    boolean allProcessed = true;
+    for (int[] group
+        : ColumnarFeedContent.splitRows(batch, rows, count, fragmentCache, maxBatchBytes)) {
+      allProcessed &= sendRows(batch, group, fingerprints, 1);
+    }
+    return allProcessed;
+  }
+
+  /**
+   * Sends the products of the given rows of a batch in one batch, or in two
+   * halves if the server rejects it as too large, recursively. Products the
+   * server has not processed are sent again as the retry policy allows.
+   *
+   * @param batch The batch of products
+   * @param rows The rows of the products to be inserted
+   * @param fingerprints The fingerprints of the products by product ID, or
+   *   {@code null}
+   * @param firstAttempt The number of the first attempt to send the products,
+   *   as for {@link #sendProducts}
+   * @return {@code true} if the server has processed all products, {@code false}
+   *   if some of them have been given up
+   * @throws IOException if anything went wrong with input/output
+   */
+  private boolean sendRows(ColumnarProductBatch batch, int[] rows,
+      Map<String, Long> fingerprints, int firstAttempt) throws IOException {
+    for (int attempt = firstAttempt; ; attempt++) {
+      List<String> batchIds = batch.getIds(rows, rows.length);
+      int[] unprocessed;
+      TransientFailureException failure = null;
+      try {
+        unprocessed = executeProductBatch(
+            new ColumnarFeedContent(batch, rows, rows.length, fragmentCache), batchIds,
+            fingerprints);
+      } catch (RequestTooLargeException e) {
+        if (rows.length == 1) {
+          resultHandler.reportTooLarge(batchIds);
+          return true;
+        }
+        int half = rows.length / 2;
+        boolean firstHalfProcessed
+            = sendRows(batch, Arrays.copyOfRange(rows, 0, half), fingerprints, attempt);
+        boolean secondHalfProcessed = sendRows(batch,
+            Arrays.copyOfRange(rows, half, rows.length), fingerprints, attempt);
+        return firstHalfProcessed && secondHalfProcessed;
+      } catch (TransientFailureException e) {
+        unprocessed = allPositions(batchIds.size());
+        failure = e;
+      }
+      if (unprocessed.length == 0) {
+        return true;
+      }
+      if (!prepareRetry(attempt, batchIds, unprocessed, failure)) {
+        return false;
+      }
+      int[] remaining = new int[unprocessed.length];
+      for (int i = 0; i < unprocessed.length; i++) {
+        remaining[i] = rows[unprocessed[i]];
+      }
+      rows = remaining;
+    }
+  }
+
+  /**
+   * Returns the positions of all products of a batch.
+   */
+  private static int[] allPositions(int size) {
+    int[] positions = new int[size];
+    for (int i = 0; i < size; i++) {
+      positions[i] = i;
+    }
+    return positions;
+  }
+
+  /**
+   * Waits before products the server has not processed are sent again, or
+   * reports them as errors if they have used up their attempts.
    *
-   * @param batchedProducts The list of products to be inserted
-   * @throws IOException if anything went wrong during the insertion
+   * @param attempt The number of attempts made so far for the products
+   * @param batchIds The batch IDs of the products of the last attempt
+   * @param unprocessed The positions in {@code batchIds} of the products not
+   *   processed
+   * @param failure The failure of the whole batch, or {@code null} if the
+   *   batch has been interrupted
+   * @return {@code true} if the products are to be sent again, {@code false}
+   *   if they have been reported as errors
+   * @throws InterruptedIOException if the thread has been interrupted while
+   *   waiting
    */
-  private void executeProductBatch(ProductFeed batchedProducts)
-      throws IOException {
-    // create atom feed content
-    AtomContent atomFeedContent = AtomContent.forFeed(namespaceDictionary, batchedProducts);
+  private boolean prepareRetry(int attempt, List<String> batchIds, int[] unprocessed,
+      TransientFailureException failure) throws InterruptedIOException {
+    String reason = failure != null ? failure.getMessage() : "batch was interrupted";
+    if (retryPolicy == null || !retryPolicy.canRetry(attempt)) {
+      if (retryPolicy != null) {
+        retryPolicy.recordExhausted(unprocessed.length);
+      }
+      resultHandler.reportUnprocessedProducts(batchIds, unprocessed,
+          failure != null ? failure.statusCode : 500,
+          "Not processed because " + reason + " (" + attempt + " attempt(s))");
+      return false;
+    }
+    long delayMillis = retryPolicy.recordRetry(attempt, unprocessed.length);
+    logger.log(Level.INFO, unprocessed.length + " product(s) not processed because " + reason
+        + "; sending them again in " + delayMillis + " ms.");
+    try {
+      Thread.sleep(delayMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for sending products again");
+    }
+    return true;
+  }
 
+  /**
+   * Sends a batch of products to the Content API for Shopping Server for inserting it.
+   *
+   * @param content The feed of products to be inserted
+   * @param batchIds The batch IDs of the products in the feed
+   * @param fingerprints The fingerprints of the products by product ID, to be
+   *   recorded in the delta index, or {@code null}
+   * @return the positions in {@code batchIds} of the products the server has
+   *   not processed since the batch has been interrupted; empty if it has
+   *   processed all products
+   * @throws RequestTooLargeException if the server has rejected the batch as
+   *   too large
+   * @throws TransientFailureException if the batch could not be sent, or the
+   *   server answered with a transient HTTP error
+   * @throws IOException if anything went wrong during the insertion, or the
+   *   server answered with any other HTTP error
+   */
+  private int[] executeProductBatch(HttpContent content, List<String> batchIds,
+      Map<String, Long> fingerprints) throws IOException {
     // build HTTP request
+    ChunkedContent sentContent = new ChunkedContent(content, deflaterPool);
     HttpRequest request = requestFactory
         .buildPostRequest(new GoogleUrl(rootUrl + userId + "/items/products/schema/batch"),
-           atomFeedContent);
+           sentContent);
+    if (deflaterPool != null) {
+      // the response is decompressed while it is parsed
+      request.getHeaders().setAcceptEncoding("gzip");
+    }
 
-    // execute the HTTP request
-    HttpResponse response = request.execute();
+    // execute the HTTP request, once the account's rate allows it
+    if (rateLimiter != null) {
+      try {
+        rateLimiter.acquire(batchIds.size());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for sending a batch");
+      }
+    }
+    long startNanos = System.nanoTime();
+    HttpResponse response;
+    try {
+      response = request.execute();
+    } catch (HttpResponseException e) {
+      response = e.getResponse();
+    } catch (IOException e) {
+      // the connection failed or timed out, which may not happen again
+      throw new TransientFailureException(500,
+          "the batch could not be sent (" + e.getMessage() + ")", e);
+    }
+    contentBytes += sentContent.getContentBytes();
+    wireBytes += sentContent.getWireBytes();
+    if (logger.isLoggable(Level.FINE)) {
+      logger.log(Level.FINE, "Sent " + batchIds.size() + " product(s) in "
+          + sentContent.getWireBytes() + " byte(s) (" + sentContent.getContentBytes()
+          + " uncompressed).");
+    }
 
     // interpret the results
-    if (HttpResponse.isSuccessStatusCode(response.getStatusCode())) {
-      ProductFeed processedProducts = response.parseAs(ProductFeed.class);
-      boolean batchWasInterrupted = processReturnedProducts(processedProducts);
-      if (batchWasInterrupted) {
-        reportUnprocessedProducts(batchedProducts, processedProducts);
+    int statusCode = response.getStatusCode();
+    if (rateLimiter != null) {
+      if (RateLimiter.isThrottling(statusCode)) {
+        rateLimiter.recordThrottled(startNanos);
+      } else if (HttpResponse.isSuccessStatusCode(statusCode)) {
+        rateLimiter.recordSuccess();
+      }
+    }
+    if (statusCode == REQUEST_TOO_LARGE) {
+      response.ignore();
+      if (batchSizeController != null) {
+        batchSizeController.recordTooLarge(startNanos);
+      }
+      logger.log(Level.INFO, "A batch of " + batchIds.size() + " product(s) was too large;"
+          + " splitting it.");
+      throw new RequestTooLargeException();
+    } else if (HttpResponse.isSuccessStatusCode(statusCode)) {
+      List<BatchResult> results = BatchResultParser.parse(response);
+      boolean batchWasInterrupted = resultHandler.processReturnedProducts(results, fingerprints);
+      if (batchSizeController != null) {
+        batchSizeController.recordProcessed(batchIds.size(), startNanos, batchWasInterrupted);
       }
+      return batchWasInterrupted ? resultHandler.getUnprocessed(batchIds, results) : new int[0];
+    } else if (RetryPolicy.isTransient(statusCode)) {
+      response.ignore();
+      throw new TransientFailureException(statusCode,
+          "the server answered with HTTP " + statusCode, null);
     } else {
       // According to the batch processing reference on
       // http://code.google.com/apis/gdata/docs/batch.html
       // this should never happen. If it does, create a bug report and
       // ask the user to send it to the Google Content API for Shopping team.
       logger.log(Level.SEVERE, "Content API for Shopping unexpectedly returned "
-          + "an HTTP error code (" + response.getStatusCode() + ") for a batch "
+          + "an HTTP error code (" + statusCode + ") for a batch "
           + "request.");
       try {
-        File file = ClientLibraryUtils.createBugReportFile(batchedProducts, response,
-            namespaceDictionary, userId);
+        File file = ClientLibraryUtils.createBugReportFile(content, response, userId);
         logger.log(Level.SEVERE, "A bug report file has been created here:\n"
             + file.getAbsolutePath() + "\n"
             + "Please send this file to "
@@ -235,66 +769,8 @@ public final class WorkerThread extends Thread {
       } catch (IOException e) {
         logger.log(Level.SEVERE, "A bug report file could not be created.");
       }
-      throw new RuntimeException();
-    }
-  }
-
-  /**
-   * <p>Helper function for examining the status codes returned for the individual
-   * products by the Content API for Shopping Server. Products with an error status
-   * code will be reported in the list for service errors.
-   *
-   * @param processedProducts The {@link ProductFeed} returned by the Content API for Shopping
-   *   API Server (and parsed by the Google API Client Library)
-   * @return {@code true} if the batch aborted with a {@code batch:interrupted}
-   *   error code, {@code false} otherwise
-   */
-  private boolean processReturnedProducts(ProductFeed processedProducts) {
-    boolean batchWasInterrupted = false;
-    Iterator<Product> productIterator = processedProducts.getEntries().iterator();
-    while (productIterator.hasNext()) {
-      Product p = productIterator.next();
-      if (p.batchInterrupted != null) {
-        batchWasInterrupted = true;
-      } else {
-        if (!HttpResponse.isSuccessStatusCode(p.batchStatus.code)) {
-          if (serviceErrorList != null) {
-            serviceErrorList.add(new BatchError(p.batchID, p.batchStatus.code,
-                p.batchStatus.reason, p.content.errors));
-          }
-        }
-      }
-    }
-    return batchWasInterrupted;
-  }
-
-  /**
-   * Helper function for reporting products that were not processed because
-   * of an interrupted batch.
-   *
-   * @param batchedProducts The feed of products that were sent to the server
-   * @param processedProducts The feed of products that was returned by the
-   *   server, not containing {@code batch:interrupted} error code entries any
-   *   more
-   */
-  private void reportUnprocessedProducts(ProductFeed batchedProducts,
-      ProductFeed processedProducts) {
-    // collect list of processed products
-    List<String> processed = new ArrayList<String>();
-    for (Product p : processedProducts.getEntries()) {
-      if (p.batchInterrupted == null) {
-        processed.add(p.batchID);
-      }
-    }
-
-    // add products that were not processed to the error list
-    for (Product p : batchedProducts.entries) {
-      if (processed.contains(p.batchID)) {
-        processed.remove(p.batchID);
-      } else {
-        serviceErrorList.add(new BatchError(p.batchID, 500,
-            "Not processed because batch was interrupted", null));
-      }
+      throw new IOException("Content API for Shopping returned HTTP " + statusCode
+          + " for a batch request");
     }
   }
 }
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.batchinsert;
+
+import com.google.api.client.sample.structuredcontent.batchinsert.CsvInputAdapter.ParsingError;
+import com.google.api.client.sample.structuredcontent.model.Link;
+import com.google.api.client.sample.structuredcontent.model.Product;
+import com.google.api.client.sample.structuredcontent.utils.ClientLibraryUtils;
+import com.google.api.client.xml.Xml;
+import com.google.api.client.xml.XmlNamespaceDictionary;
+import com.google.api.client.xml.atom.Atom;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>This class reads product data from an Atom feed, like the feeds returned
+ * by the Content API for Shopping or exported from other systems. Each
+ * {@code <entry>} element is one product, with its attributes in the
+ * {@code sc} and {@code scp} namespaces, exactly as they are sent to the
+ * server (see {@link Product}).
+ *
+ * <p>The feed is read with an {@link XmlPullParser}, one entry at a time,
+ * and each entry is bound to a {@link Product} by
+ * {@link Xml#parseElement}, so only the entries handed out are held in
+ * memory, never the whole feed. Entries lacking a required attribute are
+ * recorded as parsing errors, with the line the entry starts on. A feed
+ * that is not well-formed cannot be read any further, so it causes an
+ * {@link IOException}.
+ *
+ * <p>The ID, the self and edit links and the batch information of exported
+ * entries are dropped, since the server assigns them anew.
+ *
+ * <p>This class is thread-safe. Since the entries are bound while they are
+ * being read, the threads calling {@link #getNextProducts(int)} take turns.
+ */
+public class XmlFeedInputAdapter implements InputAdapter {
+  private final XmlPullParser parser;
+
+  /**
+   * The namespaces entries may use. Elements in other namespaces cannot be
+   * bound.
+   */
+  private final XmlNamespaceDictionary namespaceDictionary
+      = ClientLibraryUtils.createBatchingNamespaceDictionary();
+
+  /**
+   * The sink parsing errors are recorded in.
+   */
+  private volatile ParsingErrorSink errorSink = new ParsingErrorSink();
+
+  /**
+   * Whether the end of the feed has been reached, or reading it failed.
+   */
+  private boolean endOfInput = false;
+
+  /**
+   * The lock held while parsing, instead of the adapter's monitor, so that a
+   * virtual thread waiting for the input does not pin its carrier thread.
+   */
+  private final ReentrantLock parserLock = new ReentrantLock();
+
+  /**
+   * Whether {@link #stopIntake()} has been called.
+   */
+  private volatile boolean intakeStopped = false;
+
+  /**
+   * Constructor for reading an Atom feed from a stream. The encoding is taken
+   * from the XML declaration, UTF-8 by default.
+   *
+   * @param input An input stream that will return the feed
+   * @throws IOException if the parser could not be created
+   */
+  public XmlFeedInputAdapter(InputStream input) throws IOException {
+    try {
+      parser = Xml.createParser();
+      parser.setInput(input, null);
+    } catch (XmlPullParserException e) {
+      throw new IOException("Could not create the XML parser", e);
+    }
+  }
+
+  /**
+   * Parses and returns the next up to {@code maxNumOfProducts} products.
+   *
+   * @return A list of up to {@code maxNumOfProducts} products. It is empty if
+   *   and only if no more products are available, or if {@link #stopIntake()}
+   *   has been called.
+   * @throws IOException if anything went wrong during reading the products,
+   *   or if the feed is not well-formed
+   */
+  @Override
+  public List<Product> getNextProducts(int maxNumOfProducts) throws IOException {
+    List<Product> products = new ArrayList<Product>(maxNumOfProducts);
+    parserLock.lock();
+    try {
+      while (products.size() < maxNumOfProducts && !intakeStopped) {
+        Product product = parseNextEntry();
+        if (product == null) {
+          break; // no more products available
+        }
+        products.add(product);
+      }
+    } finally {
+      parserLock.unlock();
+    }
+    return products;
+  }
+
+  /**
+   * Does nothing, since this adapter does not track a checkpoint.
+   */
+  @Override
+  public void acknowledge(List<Product> products) {
+  }
+
+  @Override
+  public void stopIntake() {
+    intakeStopped = true;
+  }
+
+  @Override
+  public Collection<ParsingError> getParsingErrors() {
+    return errorSink.getSample();
+  }
+
+  @Override
+  public void setParsingErrorSink(ParsingErrorSink sink) {
+    errorSink = sink;
+  }
+
+  /**
+   * Records a parsing error in the sink, and stops the intake if the sink
+   * reports that too many records could not be parsed.
+   */
+  private void recordParsingError(ParsingError e) {
+    if (errorSink.add(e)) {
+      stopIntake();
+    }
+  }
+
+  /**
+   * Reads up to the next entry that describes a valid product and binds it.
+   * Invalid entries are recorded as parsing errors and skipped.
+   *
+   * @return The product, or {@code null} at the end of the feed
+   * @throws IOException if reading failed, or the feed is not well-formed
+   */
+  private Product parseNextEntry() throws IOException {
+    if (endOfInput) {
+      return null;
+    }
+    try {
+      while (true) {
+        int eventType = parser.next();
+        if (eventType == XmlPullParser.END_DOCUMENT) {
+          endOfInput = true;
+          return null;
+        }
+        if (eventType == XmlPullParser.START_TAG && "entry".equals(parser.getName())
+            && Atom.ATOM_NAMESPACE.equals(parser.getNamespace())) {
+          long lineNumber = parser.getLineNumber();
+          Product product = new Product();
+          // consumes the entry up to its end tag
+          Xml.parseElement(parser, product, namespaceDictionary, null);
+          errorSink.countRecord();
+          try {
+            return checkProduct(product, lineNumber);
+          } catch (ParsingError e) {
+            recordParsingError(e);
+          }
+        }
+      }
+    } catch (XmlPullParserException e) {
+      endOfInput = true;
+      throw new IOException("The feed is not well-formed", e);
+    } catch (IllegalArgumentException e) {
+      // thrown by the binding for elements in unknown namespaces
+      endOfInput = true;
+      throw new IOException("Could not bind the entry before line " + parser.getLineNumber(), e);
+    } catch (IOException e) {
+      endOfInput = true;
+      throw e;
+    }
+  }
+
+  /**
+   * Checks that all required attributes are given, and removes what the
+   * server assigns itself.
+   *
+   * @param product The product bound from an entry
+   * @param lineNumber The number of the line the entry starts on, for error
+   *   reporting
+   * @return the product
+   * @throws ParsingError if a required attribute is missing
+   */
+  private static Product checkProduct(Product product, long lineNumber) throws ParsingError {
+    String missing = null;
+    if (isEmpty(product.externalId)) {
+      missing = "ID";
+    } else if (isEmpty(product.title)) {
+      missing = "Title";
+    } else if (product.content == null || isEmpty(product.content.value)) {
+      missing = "Description";
+    } else if (isEmpty(product.condition)) {
+      missing = "Condition";
+    } else if (product.price == null || product.price.value == null) {
+      missing = "Price";
+    } else if (isEmpty(product.price.unit)) {
+      missing = "Currency";
+    }
+    if (missing != null) {
+      throw new ParsingError(product.externalId, null, "Required argument missing: " + missing,
+          lineNumber);
+    }
+
+    product.atomId = null;
+    product.batchOperation = null;
+    product.batchID = null;
+    product.batchStatus = null;
+    product.batchInterrupted = null;
+    for (Iterator<Link> i = product.links.iterator(); i.hasNext();) {
+      if (!"alternate".equals(i.next().rel)) {
+        i.remove();
+      }
+    }
+    return product;
+  }
+
+  private static boolean isEmpty(String value) {
+    return value == null || value.trim().length() == 0;
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.utils;
+
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.sample.structuredcontent.model.ServiceError;
+import com.google.api.client.sample.structuredcontent.model.ServiceErrors;
+import com.google.api.client.xml.Xml;
+import com.google.api.client.xml.atom.Atom;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * <p>Reads the response to a batch request, extracting only what is needed to
+ * tell which entries succeeded: the batch ID, the batch status or
+ * interruption, and the service errors of each entry.
+ *
+ * <p>Unlike {@code response.parseAs(ProductFeed.class)}, it does not create
+ * a {@link com.google.api.client.sample.structuredcontent.model.Product} per
+ * entry: it walks the response with an {@link XmlPullParser} and skips all
+ * other elements with their subtrees. The parsers are pooled, so that they
+ * are not created anew for every response.
+ *
+ * <p>The methods are thread-safe.
+ */
+public class BatchResultParser {
+  private static final String BATCH_NAMESPACE = "http://schemas.google.com/gdata/batch";
+  private static final String GD_NAMESPACE = "http://schemas.google.com/g/2005";
+
+  /**
+   * The parsers not in use at the moment.
+   */
+  private static final Queue<XmlPullParser> parsers
+      = new ConcurrentLinkedQueue<XmlPullParser>();
+
+  /**
+   * The result of one entry of a batch request.
+   */
+  public static class BatchResult {
+    /**
+     * The batch ID of the entry ({@code batch:id}).
+     */
+    public String batchId;
+
+    /**
+     * The status code of the entry ({@code batch:status/@code}), or 0 if the
+     * batch has been interrupted.
+     */
+    public int code;
+
+    /**
+     * The reason given with the status code or the interruption.
+     */
+    public String reason;
+
+    /**
+     * Whether this is the {@code batch:interrupted} entry.
+     */
+    public boolean interrupted;
+
+    /**
+     * The service errors of the entry ({@code content/gd:errors}), or
+     * {@code null} if there are none.
+     */
+    public ServiceErrors errors;
+  }
+
+  /**
+   * Reads the results of all entries of the given response to a batch
+   * request, and closes its content.
+   *
+   * @param response The response of the server
+   * @return the results in the order of the entries in the response
+   * @throws IOException if the response could not be read or is not a
+   *   well-formed feed
+   */
+  public static List<BatchResult> parse(HttpResponse response) throws IOException {
+    InputStream content = response.getContent();
+    if (content == null) {
+      return Collections.emptyList();
+    }
+    try {
+      return parse(content);
+    } finally {
+      content.close();
+    }
+  }
+
+  /**
+   * Reads the results of all entries of the given feed.
+   *
+   * @param content The feed returned for a batch request. Its encoding is
+   *   determined from the XML declaration.
+   * @return the results in the order of the entries in the feed
+   * @throws IOException if the feed could not be read or is not well-formed
+   */
+  public static List<BatchResult> parse(InputStream content) throws IOException {
+    XmlPullParser parser = acquireParser();
+    try {
+      parser.setInput(content, null);
+      List<BatchResult> results = new ArrayList<BatchResult>();
+      while (true) {
+        int eventType = parser.next();
+        if (eventType == XmlPullParser.END_DOCUMENT) {
+          return results;
+        }
+        if (eventType == XmlPullParser.START_TAG) {
+          if (isElement(parser, Atom.ATOM_NAMESPACE, "entry")) {
+            results.add(parseEntry(parser));
+          } else if (!isElement(parser, Atom.ATOM_NAMESPACE, "feed")) {
+            skipElement(parser);
+          }
+        }
+      }
+    } catch (XmlPullParserException e) {
+      throw new IOException("The batch response could not be parsed: " + e.getMessage(), e);
+    } finally {
+      parsers.add(parser);
+    }
+  }
+
+  private static XmlPullParser acquireParser() throws IOException {
+    XmlPullParser parser = parsers.poll();
+    if (parser != null) {
+      return parser;
+    }
+    try {
+      return Xml.createParser();
+    } catch (XmlPullParserException e) {
+      throw new IOException("No XML parser could be created: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Reads an entry, after its start tag, up to and including its end tag.
+   */
+  private static BatchResult parseEntry(XmlPullParser parser)
+      throws IOException, XmlPullParserException {
+    BatchResult result = new BatchResult();
+    while (nextChild(parser)) {
+      if (isElement(parser, BATCH_NAMESPACE, "id")) {
+        result.batchId = readText(parser);
+      } else if (isElement(parser, BATCH_NAMESPACE, "status")) {
+        result.code = parseCode(parser.getAttributeValue(null, "code"));
+        result.reason = parser.getAttributeValue(null, "reason");
+        skipElement(parser);
+      } else if (isElement(parser, BATCH_NAMESPACE, "interrupted")) {
+        result.interrupted = true;
+        result.reason = parser.getAttributeValue(null, "reason");
+        skipElement(parser);
+      } else if (isElement(parser, Atom.ATOM_NAMESPACE, "content")) {
+        result.errors = parseContent(parser);
+      } else {
+        skipElement(parser);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reads the content of an entry, returning its service errors, if any.
+   */
+  private static ServiceErrors parseContent(XmlPullParser parser)
+      throws IOException, XmlPullParserException {
+    ServiceErrors errors = null;
+    while (nextChild(parser)) {
+      if (isElement(parser, GD_NAMESPACE, "errors")) {
+        errors = new ServiceErrors();
+        errors.errors = new ArrayList<ServiceError>();
+        while (nextChild(parser)) {
+          if (isElement(parser, GD_NAMESPACE, "error")) {
+            errors.errors.add(parseError(parser));
+          } else {
+            skipElement(parser);
+          }
+        }
+      } else {
+        skipElement(parser);
+      }
+    }
+    return errors;
+  }
+
+  private static ServiceError parseError(XmlPullParser parser)
+      throws IOException, XmlPullParserException {
+    ServiceError error = new ServiceError();
+    error.name = "gd:error";
+    while (nextChild(parser)) {
+      if (isElement(parser, GD_NAMESPACE, "domain")) {
+        error.domain = readText(parser);
+      } else if (isElement(parser, GD_NAMESPACE, "code")) {
+        error.code = readText(parser);
+      } else if (isElement(parser, GD_NAMESPACE, "internalReason")) {
+        error.internalReason = readText(parser);
+      } else {
+        skipElement(parser);
+      }
+    }
+    return error;
+  }
+
+  /**
+   * Moves to the start tag of the next child element of the current element,
+   * skipping text.
+   *
+   * @return {@code true} if the parser is at the start tag of a child,
+   *   {@code false} if it is at the end tag of the current element
+   */
+  private static boolean nextChild(XmlPullParser parser)
+      throws IOException, XmlPullParserException {
+    while (true) {
+      int eventType = parser.next();
+      if (eventType == XmlPullParser.START_TAG) {
+        return true;
+      } else if (eventType == XmlPullParser.END_TAG) {
+        return false;
+      } else if (eventType == XmlPullParser.END_DOCUMENT) {
+        throw new XmlPullParserException("Unexpected end of the document");
+      }
+    }
+  }
+
+  /**
+   * Reads the text of the current element, up to and including its end tag.
+   */
+  private static String readText(XmlPullParser parser)
+      throws IOException, XmlPullParserException {
+    StringBuilder text = new StringBuilder();
+    while (true) {
+      int eventType = parser.next();
+      if (eventType == XmlPullParser.TEXT) {
+        text.append(parser.getText());
+      } else if (eventType == XmlPullParser.START_TAG) {
+        skipElement(parser);
+      } else if (eventType == XmlPullParser.END_TAG) {
+        return text.toString();
+      } else if (eventType == XmlPullParser.END_DOCUMENT) {
+        throw new XmlPullParserException("Unexpected end of the document");
+      }
+    }
+  }
+
+  /**
+   * Skips the current element with all its children, up to and including its
+   * end tag.
+   */
+  private static void skipElement(XmlPullParser parser)
+      throws IOException, XmlPullParserException {
+    int depth = 1;
+    while (depth > 0) {
+      int eventType = parser.next();
+      if (eventType == XmlPullParser.START_TAG) {
+        depth++;
+      } else if (eventType == XmlPullParser.END_TAG) {
+        depth--;
+      } else if (eventType == XmlPullParser.END_DOCUMENT) {
+        throw new XmlPullParserException("Unexpected end of the document");
+      }
+    }
+  }
+
+  private static boolean isElement(XmlPullParser parser, String namespace, String name) {
+    return name.equals(parser.getName()) && namespace.equals(parser.getNamespace());
+  }
+
+  private static int parseCode(String code) throws XmlPullParserException {
+    try {
+      return Integer.parseInt(code.trim());
+    } catch (RuntimeException e) {
+      throw new XmlPullParserException("Invalid status code: " + code);
+    }
+  }
+}
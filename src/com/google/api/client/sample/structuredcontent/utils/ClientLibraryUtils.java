@@ -18,6 +18,7 @@ package com.google.api.client.sample.structuredcontent.utils;
 
 import com.google.api.client.googleapis.GoogleHeaders;
 import com.google.api.client.googleapis.auth.clientlogin.ClientLogin;
+import com.google.api.client.http.HttpContent;
 import com.google.api.client.http.HttpParser;
 import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestFactory;
@@ -97,8 +98,26 @@ public class ClientLibraryUtils {
    */
   public static HttpRequestFactory createBareRequestFactory(final String applicationName,
       String username, String password, final HttpParser... parsers) throws IOException {
-    // create new transport
-    HttpTransport transport = new NetHttpTransport();
+    return createBareRequestFactory(new NetHttpTransport(), applicationName, username, password,
+        parsers);
+  }
+
+  /**
+   * Does the same as {@link #createBareRequestFactory(String, String, String, HttpParser...)},
+   * but sends all requests using the given transport, e.g. the transport of a
+   * {@link PooledHttpTransport}.
+   *
+   * @param transport       The transport to be used for all requests
+   * @param applicationName The name of the application that accesses the Structured Content API
+   *                        Server
+   * @param username        Username
+   * @param password        Password
+   * @return a new HttpRequestFactory
+   * @throws IOException if something went wrong during authentication
+   */
+  public static HttpRequestFactory createBareRequestFactory(HttpTransport transport,
+      final String applicationName, String username, String password,
+      final HttpParser... parsers) throws IOException {
     // ClientLogin
     ClientLogin authenticator = new ClientLogin();
     authenticator.transport = transport;
@@ -154,6 +173,22 @@ public class ClientLibraryUtils {
     return createBareRequestFactory(applicationName, username, password, newBatchingParser());
   }
 
+  /**
+   * Does the same as {@link #createBatchingRequestFactory(String, String, String)}, but sends all
+   * requests using the given transport.
+   *
+   * @param transport       The transport to be used for all requests
+   * @param applicationName The name of the application that accesses the Structured Content API
+   *                        Server
+   * @return a new HttpRequestFactory
+   * @throws IOException if something went wrong during authentication
+   */
+  public static HttpRequestFactory createBatchingRequestFactory(HttpTransport transport,
+      String applicationName, String username, String password) throws IOException {
+    return createBareRequestFactory(transport, applicationName, username, password,
+        newBatchingParser());
+  }
+
   /**
    * Returns a new standard parser.
    */
@@ -193,12 +228,7 @@ public class ClientLibraryUtils {
   public static File createBugReportFile(Feed<?> sentFeed, HttpResponse serverResponse,
       XmlNamespaceDictionary namespaceDictionary, String userId)
       throws IOException {
-    File file = new File("bugreport.scapi.txt");
-    int count = 1;
-    while (file.exists()) {
-      file = new File("bugreport" + (count++) + ".scapi.txt");
-    }
-    file.createNewFile();
+    File file = createNewBugReportFile();
     PrintStream out = new PrintStream(new FileOutputStream(file));
 
     try {
@@ -225,4 +255,55 @@ public class ClientLibraryUtils {
 
     return file;
   }
+
+  /**
+   * Creates a bug report file containing the request that was made to the server as well as the
+   * response received, for requests whose content is not a {@link Feed}. Is guaranteed to create
+   * a new file and to avoid overwriting an existing one.
+   *
+   * @param sentContent    The content that was sent to the server
+   * @param serverResponse The response received from the server
+   * @param userId         Account ID of the user for whom the request was sent
+   * @return the {@link File} containing the bug report
+   * @throws IOException if anything went wrong during the creation of the file
+   */
+  public static File createBugReportFile(HttpContent sentContent, HttpResponse serverResponse,
+      String userId) throws IOException {
+    File file = createNewBugReportFile();
+    PrintStream out = new PrintStream(new FileOutputStream(file));
+
+    try {
+      out.println("Time: " + System.currentTimeMillis());
+      out.println("UID: " + userId);
+      out.println();
+
+      out.println();
+      out.println("== Request ==");
+      sentContent.writeTo(out);
+      out.println();
+
+      out.println();
+      out.println("== Response ==");
+      out.println(serverResponse.parseAsString());
+      out.println();
+      out.close();
+    } catch (IOException e) {
+      out.close();
+    }
+
+    return file;
+  }
+
+  /**
+   * Creates a new, empty bug report file, without overwriting an existing one.
+   */
+  private static File createNewBugReportFile() throws IOException {
+    File file = new File("bugreport.scapi.txt");
+    int count = 1;
+    while (file.exists()) {
+      file = new File("bugreport" + (count++) + ".scapi.txt");
+    }
+    file.createNewFile();
+    return file;
+  }
 }
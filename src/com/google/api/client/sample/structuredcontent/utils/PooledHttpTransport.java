@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.utils;
+
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * <p>An {@link HttpTransport} based on the Apache HttpClient, keeping a pool
+ * of persistent connections for many threads sending requests at the same
+ * time. Unlike {@link com.google.api.client.http.javanet.NetHttpTransport},
+ * the number of connections per host is under control, so that each thread
+ * can keep its own connection alive instead of opening new ones.
+ *
+ * <p>Connections are kept alive as long as the server allows, or for
+ * {@link #DEFAULT_KEEP_ALIVE_MILLIS} if it does not say. All HTTPS connections
+ * share the default {@link SSLContext}, whose sessions are kept for an hour,
+ * so that new connections to the same server resume the TLS session of an
+ * earlier one instead of doing a full handshake.
+ *
+ * <p>The numbers of leased and idle connections and of threads waiting for a
+ * connection are available for monitoring.
+ */
+public class PooledHttpTransport {
+  /**
+   * How long connections are kept alive if the server does not say, in
+   * milliseconds.
+   */
+  public static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+
+  /**
+   * How long TLS sessions may be resumed, in seconds.
+   */
+  private static final int TLS_SESSION_TIMEOUT = 3600;
+
+  private final StatisticsConnManager connManager;
+  private final ApacheHttpTransport transport;
+
+  /**
+   * Creates a transport with a new connection pool.
+   *
+   * @param maxConnectionsPerRoute The maximum number of connections to one
+   *   server, usually the number of threads sending requests to it
+   * @param maxConnections The maximum number of connections to all servers
+   * @throws IOException if no TLS context could be created
+   */
+  public PooledHttpTransport(int maxConnectionsPerRoute, int maxConnections) throws IOException {
+    HttpParams params = new BasicHttpParams();
+    HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+    HttpConnectionParams.setStaleCheckingEnabled(params, true);
+    ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+    ConnManagerParams.setMaxConnectionsPerRoute(params,
+        new ConnPerRouteBean(maxConnectionsPerRoute));
+
+    SchemeRegistry schemeRegistry = new SchemeRegistry();
+    schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+    schemeRegistry.register(new Scheme("https", createSslSocketFactory(), 443));
+
+    connManager = new StatisticsConnManager(params, schemeRegistry);
+    DefaultHttpClient httpClient = new DefaultHttpClient(connManager, params);
+    httpClient.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+      @Override
+      public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+        long duration = super.getKeepAliveDuration(response, context);
+        return duration > 0 ? duration : DEFAULT_KEEP_ALIVE_MILLIS;
+      }
+    });
+    transport = new ApacheHttpTransport(httpClient);
+  }
+
+  /**
+   * Returns the socket factory for HTTPS connections, keeping the TLS
+   * sessions of the default {@link SSLContext} it uses for being resumed.
+   */
+  private static SSLSocketFactory createSslSocketFactory() throws IOException {
+    try {
+      SSLContext.getDefault().getClientSessionContext().setSessionTimeout(TLS_SESSION_TIMEOUT);
+    } catch (GeneralSecurityException e) {
+      throw new IOException("No TLS context could be created: " + e.getMessage(), e);
+    }
+    return SSLSocketFactory.getSocketFactory();
+  }
+
+  /**
+   * Returns the transport for creating request factories.
+   */
+  public HttpTransport getTransport() {
+    return transport;
+  }
+
+  /**
+   * Returns the number of connections in use by a request at the moment.
+   */
+  public int getLeasedConnections() {
+    return connManager.leased.size();
+  }
+
+  /**
+   * Returns the number of open connections waiting for the next request.
+   */
+  public int getIdleConnections() {
+    return Math.max(0, connManager.getConnectionsInPool() - connManager.leased.size());
+  }
+
+  /**
+   * Returns the number of requests waiting for a connection, since the
+   * maximum number of connections is in use.
+   */
+  public int getPendingRequests() {
+    return connManager.pending.get();
+  }
+
+  /**
+   * Returns a description of the state of the connection pool.
+   */
+  public String getStatistics() {
+    return getLeasedConnections() + " leased, " + getIdleConnections() + " idle, "
+        + getPendingRequests() + " pending";
+  }
+
+  /**
+   * Closes all connections. The transport cannot be used afterwards.
+   */
+  public void shutdown() {
+    connManager.shutdown();
+  }
+
+  /**
+   * A connection manager counting the connections handed out and the
+   * requests waiting for one.
+   */
+  private static class StatisticsConnManager extends ThreadSafeClientConnManager {
+    final Set<ManagedClientConnection> leased
+        = Collections.newSetFromMap(new ConcurrentHashMap<ManagedClientConnection, Boolean>());
+    final AtomicInteger pending = new AtomicInteger();
+
+    StatisticsConnManager(HttpParams params, SchemeRegistry schemeRegistry) {
+      super(params, schemeRegistry);
+    }
+
+    @Override
+    public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+      final ClientConnectionRequest request = super.requestConnection(route, state);
+      return new ClientConnectionRequest() {
+        @Override
+        public ManagedClientConnection getConnection(long timeout, TimeUnit unit)
+            throws InterruptedException, ConnectionPoolTimeoutException {
+          pending.incrementAndGet();
+          try {
+            ManagedClientConnection connection = request.getConnection(timeout, unit);
+            leased.add(connection);
+            return connection;
+          } finally {
+            pending.decrementAndGet();
+          }
+        }
+
+        @Override
+        public void abortRequest() {
+          request.abortRequest();
+        }
+      };
+    }
+
+    @Override
+    public void releaseConnection(ManagedClientConnection connection, long validDuration,
+        TimeUnit unit) {
+      leased.remove(connection);
+      super.releaseConnection(connection, validDuration, unit);
+    }
+  }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2026 The ejemploGoogleProdSearch Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.api.client.sample.structuredcontent.utils;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * <p>Limits the requests sent for one account to the Content API for Shopping
+ * Server, by requests per second and by entries per second, so that the
+ * account's quota is not exceeded. There is one limiter per account in the
+ * process (see {@link #forAccount}), shared by all threads sending requests
+ * for it.
+ *
+ * <p>Each limit is a token bucket, refilled at the limit's rate and holding up
+ * to one second's worth of tokens, so that short bursts are allowed. A request
+ * takes one request token and one entry token per entry it carries. If there
+ * are not enough tokens, it takes them anyway, leaving a debt that the refill
+ * pays off; the caller then sleeps until then, without holding a lock, and
+ * callers arriving later wait behind it.
+ *
+ * <p>The limiter learns from the server: whenever it throttles a request (see
+ * {@link #isThrottling}), both rates are halved, down to
+ * {@link #MIN_RATE_FACTOR} of the configured ones, and each successful
+ * request raises them again by {@link #RECOVERY_STEP} of the configured ones.
+ * Like the batch size of the batch insert example, the rates are only lowered
+ * once for all requests that were sent before the previous decrease.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class RateLimiter {
+  /**
+   * Logger used for logging all messages produced by this class.
+   */
+  private static final Logger logger = Logger.getLogger(RateLimiter.class.getName());
+
+  /**
+   * The lowest fraction of the configured rates the limiter goes down to.
+   */
+  public static final double MIN_RATE_FACTOR = 1.0 / 64;
+
+  /**
+   * The fraction of the configured rates by which each successful request
+   * raises the rates again.
+   */
+  public static final double RECOVERY_STEP = 1.0 / 32;
+
+  /**
+   * The limiters of the accounts, by account ID.
+   */
+  private static final ConcurrentMap<String, RateLimiter> limiters
+      = new ConcurrentHashMap<String, RateLimiter>();
+
+  private final String accountId;
+
+  /**
+   * The configured rates, per second; 0 for no limit.
+   */
+  private double maxRequestRate;
+  private double maxEntryRate;
+
+  /**
+   * The fraction of the configured rates currently allowed.
+   */
+  private double rateFactor = 1;
+
+  /**
+   * The tokens in the buckets; negative while there is a debt.
+   */
+  private double requestTokens;
+  private double entryTokens;
+
+  /**
+   * When the buckets were last refilled, from {@link System#nanoTime()}.
+   */
+  private long refillNanos = System.nanoTime();
+
+  /**
+   * Whether the rates have been lowered yet, and when they were lowered last,
+   * from {@link System#nanoTime()}.
+   */
+  private boolean decreased = false;
+  private long lastDecreaseNanos;
+
+  private long requests;
+  private long waits;
+  private long waitedNanos;
+  private long throttles;
+
+  private RateLimiter(String accountId) {
+    this.accountId = accountId;
+  }
+
+  /**
+   * Returns the limiter of the given account, creating it if necessary, and
+   * sets its rates.
+   *
+   * @param accountId The account ID
+   * @param requestsPerSecond The maximum number of requests per second, or 0
+   *   for no limit
+   * @param entriesPerSecond The maximum number of entries per second, or 0 for
+   *   no limit
+   * @return the limiter
+   */
+  public static RateLimiter forAccount(String accountId, double requestsPerSecond,
+      double entriesPerSecond) {
+    RateLimiter limiter = limiters.get(accountId);
+    if (limiter == null) {
+      RateLimiter newLimiter = new RateLimiter(accountId);
+      limiter = limiters.putIfAbsent(accountId, newLimiter);
+      if (limiter == null) {
+        limiter = newLimiter;
+      }
+    }
+    limiter.setRates(requestsPerSecond, entriesPerSecond);
+    return limiter;
+  }
+
+  /**
+   * Returns whether the server answered with the given HTTP status code
+   * because the account is sending too fast.
+   *
+   * @param statusCode The HTTP status code
+   */
+  public static boolean isThrottling(int statusCode) {
+    return statusCode == 429 || statusCode == 503;
+  }
+
+  /**
+   * Sets the configured rates. The buckets start full.
+   *
+   * @param requestsPerSecond The maximum number of requests per second, or 0
+   *   for no limit
+   * @param entriesPerSecond The maximum number of entries per second, or 0 for
+   *   no limit
+   */
+  public synchronized void setRates(double requestsPerSecond, double entriesPerSecond) {
+    if (requestsPerSecond < 0 || entriesPerSecond < 0) {
+      throw new IllegalArgumentException("Rates must not be negative");
+    }
+    maxRequestRate = requestsPerSecond;
+    maxEntryRate = entriesPerSecond;
+    requestTokens = requestsPerSecond;
+    entryTokens = entriesPerSecond;
+    refillNanos = System.nanoTime();
+  }
+
+  /**
+   * Waits until a request carrying the given number of entries may be sent.
+   *
+   * @param entries The number of entries of the request
+   * @throws InterruptedException if the thread has been interrupted while
+   *   waiting
+   */
+  public void acquire(int entries) throws InterruptedException {
+    long waitNanos = reserve(entries);
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /**
+   * Takes the tokens for a request, and returns how long the caller has to
+   * wait until the debt left is paid off, in nanoseconds.
+   */
+  private synchronized long reserve(int entries) {
+    long now = System.nanoTime();
+    double seconds = (now - refillNanos) / 1e9;
+    refillNanos = now;
+    requests++;
+
+    double waitSeconds = 0;
+    if (maxRequestRate > 0) {
+      double rate = maxRequestRate * rateFactor;
+      requestTokens = Math.min(rate, requestTokens + seconds * rate) - 1;
+      waitSeconds = Math.max(waitSeconds, -requestTokens / rate);
+    }
+    if (maxEntryRate > 0) {
+      double rate = maxEntryRate * rateFactor;
+      entryTokens = Math.min(rate, entryTokens + seconds * rate) - entries;
+      waitSeconds = Math.max(waitSeconds, -entryTokens / rate);
+    }
+    long waitNanos = (long) (waitSeconds * 1e9);
+    if (waitNanos > 0) {
+      waits++;
+      waitedNanos += waitNanos;
+    }
+    return waitNanos;
+  }
+
+  /**
+   * Records that the server has throttled a request, and halves the rates
+   * unless the request was sent before they were lowered last.
+   *
+   * @param startNanos When sending the request started, from
+   *   {@link System#nanoTime()}
+   */
+  public synchronized void recordThrottled(long startNanos) {
+    throttles++;
+    if ((decreased && startNanos - lastDecreaseNanos < 0) || rateFactor <= MIN_RATE_FACTOR) {
+      return;
+    }
+    rateFactor = Math.max(MIN_RATE_FACTOR, rateFactor / 2);
+    decreased = true;
+    lastDecreaseNanos = System.nanoTime();
+    // the tokens saved up at the old rates would be spent in a burst
+    requestTokens = Math.min(requestTokens, 0);
+    entryTokens = Math.min(entryTokens, 0);
+    logger.info("The server throttled account " + accountId + "; lowered the rates to "
+        + describeRates() + ".");
+  }
+
+  /**
+   * Records that the server has accepted a request, and raises the rates
+   * towards the configured ones.
+   */
+  public synchronized void recordSuccess() {
+    rateFactor = Math.min(1, rateFactor + RECOVERY_STEP);
+  }
+
+  /**
+   * Returns the fraction of the configured rates currently allowed.
+   */
+  public synchronized double getRateFactor() {
+    return rateFactor;
+  }
+
+  /**
+   * Returns a description of the current rates and of the waiting so far.
+   */
+  public synchronized String getStatistics() {
+    return describeRates() + ", " + requests + " request(s), " + waits + " waited "
+        + TimeUnit.NANOSECONDS.toMillis(waitedNanos) + " ms in total, " + throttles
+        + " throttled";
+  }
+
+  private String describeRates() {
+    String requestRate = maxRequestRate > 0
+        ? String.format(Locale.US, "%.2f requests/s", maxRequestRate * rateFactor)
+        : "unlimited requests";
+    String entryRate = maxEntryRate > 0
+        ? String.format(Locale.US, "%.2f entries/s", maxEntryRate * rateFactor)
+        : "unlimited entries";
+    return requestRate + " and " + entryRate;
+  }
+}